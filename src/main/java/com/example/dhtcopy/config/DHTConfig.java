@@ -1,33 +1,83 @@
 package com.example.dhtcopy.config;
 
 
+import com.example.dhtcopy.core.BoundedLoadPolicy;
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.DHTMetrics;
 import com.example.dhtcopy.core.Node;
 import com.example.dhtcopy.core.DistributedHashTable;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.example.dhtcopy.core.MovementScheduler;
+import com.example.dhtcopy.core.MerkleIndex;
+import com.example.dhtcopy.core.PlacementStrategy;
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+import com.example.dhtcopy.core.placement.JumpHashPlacementStrategy;
+import com.example.dhtcopy.core.placement.MaglevPlacementStrategy;
+import com.example.dhtcopy.core.placement.RendezvousPlacementStrategy;
+import com.example.dhtcopy.core.snapshot.SnapshotStore;
+import com.example.dhtcopy.core.compression.ValueCodec;
+import com.example.dhtcopy.core.storage.BitcaskStorageEngine;
+import com.example.dhtcopy.core.storage.EvictionPolicy;
+import com.example.dhtcopy.core.storage.HeapStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngineFactory;
+import com.example.dhtcopy.core.storage.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Configuration
 @EnableAsync
 public class DHTConfig {
-
-    @Autowired
-    private DistributedHashTable distributedHashTable;
+    private static final Logger logger = LoggerFactory.getLogger(DHTConfig.class);
 
     @ConfigurationProperties(prefix = "dht")
     public static class DHTProperties {
         private int replicationFactor = 3;
         private int virtualNodes = 150;
+        private String hashFunction = "murmur3";
+        private String placementStrategy = ConsistentHashRing.NAME;
+        private int maglevTableSize = MaglevPlacementStrategy.DEFAULT_TABLE_SIZE;
+        private BoundedLoad boundedLoad = new BoundedLoad();
+        // Число слотов кэша маршрутов кольца; 0 выключает кэш
+        private int routeCacheSize = 4096;
+        private Storage storage = new Storage();
+        private Snapshot snapshot = new Snapshot();
+        private Compression compression = new Compression();
+        private Decommission decommission = new Decommission();
+        private Movement movement = new Movement();
+        private AntiEntropy antiEntropy = new AntiEntropy();
+        private ReadRepair readRepair = new ReadRepair();
         private List<NodeConfig> initialNodes;
 
         public static class NodeConfig {
             private String id;
             private String host;
             private int port;
+            // Относительная емкость ноды, определяет долю ее токенов
+            private double weight = 1.0;
+            // Зона отказа (стойка, дата-центр) для разнесения реплик
+            private String zone = Node.DEFAULT_ZONE;
+            // Движок хранилища ноды; пусто - dht.storage.engine
+            private String storageEngine;
 
             // Getters and setters
             public String getId() { return id; }
@@ -38,6 +88,203 @@ public class DHTConfig {
 
             public int getPort() { return port; }
             public void setPort(int port) { this.port = port; }
+
+            public double getWeight() { return weight; }
+            public void setWeight(double weight) { this.weight = weight; }
+
+            public String getZone() { return zone; }
+            public void setZone(String zone) { this.zone = zone; }
+
+            public String getStorageEngine() { return storageEngine; }
+            public void setStorageEngine(String storageEngine) { this.storageEngine = storageEngine; }
+        }
+
+        // Локальное хранилище нод: heap - ConcurrentHashMap, off-heap - слабы вне кучи,
+        // bitcask - журнал сегментов на диске, переживает перезапуск,
+        // lsm - LSM-дерево на диске для данных больше памяти, ключи упорядочены
+        public static class Storage {
+            private String engine = HeapStorageEngine.NAME;
+            private int offHeapSlabSizeMb = 16;
+            // Каталог персистентных движков; данные ноды лежат в подкаталоге с ее id
+            private String dataDirectory = "data";
+            private int segmentSizeMb = 64;
+            private long mergeIntervalMs = BitcaskStorageEngine.DEFAULT_MERGE_INTERVAL_MS;
+            private int memtableSizeMb = 4;
+            // Журнал предзаписи нод: none | async | group-commit | sync
+            private String walMode = "none";
+            private long walGroupCommitWindowMicros = WriteAheadLog.DEFAULT_GROUP_COMMIT_WINDOW_MICROS;
+            private long walAsyncFlushIntervalMs = WriteAheadLog.DEFAULT_ASYNC_FLUSH_INTERVAL_MS;
+            private int walMaxSizeMb = 64;
+            // Бюджет памяти ноды в байтах (ключи, значения и накладные расходы); 0 - без ограничения
+            private long maxMemoryBytes = 0;
+            private String evictionPolicy = EvictionPolicy.Type.W_TINYLFU.configName();
+
+            // Getters and setters
+            public String getEngine() { return engine; }
+            public void setEngine(String engine) { this.engine = engine; }
+
+            public int getOffHeapSlabSizeMb() { return offHeapSlabSizeMb; }
+            public void setOffHeapSlabSizeMb(int offHeapSlabSizeMb) { this.offHeapSlabSizeMb = offHeapSlabSizeMb; }
+
+            public String getDataDirectory() { return dataDirectory; }
+            public void setDataDirectory(String dataDirectory) { this.dataDirectory = dataDirectory; }
+
+            public int getSegmentSizeMb() { return segmentSizeMb; }
+            public void setSegmentSizeMb(int segmentSizeMb) { this.segmentSizeMb = segmentSizeMb; }
+
+            public long getMergeIntervalMs() { return mergeIntervalMs; }
+            public void setMergeIntervalMs(long mergeIntervalMs) { this.mergeIntervalMs = mergeIntervalMs; }
+
+            public int getMemtableSizeMb() { return memtableSizeMb; }
+            public void setMemtableSizeMb(int memtableSizeMb) { this.memtableSizeMb = memtableSizeMb; }
+
+            public String getWalMode() { return walMode; }
+            public void setWalMode(String walMode) { this.walMode = walMode; }
+
+            public long getWalGroupCommitWindowMicros() { return walGroupCommitWindowMicros; }
+            public void setWalGroupCommitWindowMicros(long walGroupCommitWindowMicros) { this.walGroupCommitWindowMicros = walGroupCommitWindowMicros; }
+
+            public long getWalAsyncFlushIntervalMs() { return walAsyncFlushIntervalMs; }
+            public void setWalAsyncFlushIntervalMs(long walAsyncFlushIntervalMs) { this.walAsyncFlushIntervalMs = walAsyncFlushIntervalMs; }
+
+            public int getWalMaxSizeMb() { return walMaxSizeMb; }
+            public void setWalMaxSizeMb(int walMaxSizeMb) { this.walMaxSizeMb = walMaxSizeMb; }
+
+            public long getMaxMemoryBytes() { return maxMemoryBytes; }
+            public void setMaxMemoryBytes(long maxMemoryBytes) { this.maxMemoryBytes = maxMemoryBytes; }
+
+            public String getEvictionPolicy() { return evictionPolicy; }
+            public void setEvictionPolicy(String evictionPolicy) { this.evictionPolicy = evictionPolicy; }
+        }
+
+        // Consistent hashing with bounded loads, поддерживается только кольцом
+        public static class BoundedLoad {
+            private boolean enabled = false;
+            private double epsilon = 0.25;
+            private BoundedLoadPolicy.LoadMetric loadMetric = BoundedLoadPolicy.LoadMetric.KEYS;
+            private long refreshIntervalMs = 1000;
+
+            // Getters and setters
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+            public double getEpsilon() { return epsilon; }
+            public void setEpsilon(double epsilon) { this.epsilon = epsilon; }
+
+            public BoundedLoadPolicy.LoadMetric getLoadMetric() { return loadMetric; }
+            public void setLoadMetric(BoundedLoadPolicy.LoadMetric loadMetric) { this.loadMetric = loadMetric; }
+
+            public long getRefreshIntervalMs() { return refreshIntervalMs; }
+            public void setRefreshIntervalMs(long refreshIntervalMs) { this.refreshIntervalMs = refreshIntervalMs; }
+        }
+
+        // Снимки хранилищ нод: база и инкрементальные снимки, восстановление при старте
+        public static class Snapshot {
+            private boolean enabled = false;
+            private String directory = "data/snapshots";
+            private long intervalMs = 60000;
+            // Сколько инкрементальных снимков накапливается до новой базы
+            private int maxDeltas = SnapshotStore.DEFAULT_MAX_DELTAS;
+            // Потоки восстановления при старте; 0 - по числу процессоров
+            private int restoreThreads = 0;
+
+            // Getters and setters
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+            public String getDirectory() { return directory; }
+            public void setDirectory(String directory) { this.directory = directory; }
+
+            public long getIntervalMs() { return intervalMs; }
+            public void setIntervalMs(long intervalMs) { this.intervalMs = intervalMs; }
+
+            public int getMaxDeltas() { return maxDeltas; }
+            public void setMaxDeltas(int maxDeltas) { this.maxDeltas = maxDeltas; }
+
+            public int getRestoreThreads() { return restoreThreads; }
+            public void setRestoreThreads(int restoreThreads) { this.restoreThreads = restoreThreads; }
+        }
+
+        public static class Compression {
+            private boolean enabled = false;
+            // lz4 - быстрый кодек, deflate - сжимает сильнее ценой CPU
+            private String codec = ValueCodec.Codec.LZ4.configName();
+            // Значения короче порога хранятся как есть
+            private int thresholdBytes = ValueCodec.DEFAULT_THRESHOLD_BYTES;
+
+            // Getters and setters
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+            public String getCodec() { return codec; }
+            public void setCodec(String codec) { this.codec = codec; }
+
+            public int getThresholdBytes() { return thresholdBytes; }
+            public void setThresholdBytes(int thresholdBytes) { this.thresholdBytes = thresholdBytes; }
+        }
+
+        public static class Decommission {
+            // Потоков, параллельно пишущих отрезки выводимой ноды новым владельцам
+            private int workers = DistributedHashTable.DEFAULT_DECOMMISSION_WORKERS;
+            private int batchSize = DistributedHashTable.TRANSFER_CHUNK_SIZE;
+
+            // Getters and setters
+            public int getWorkers() { return workers; }
+            public void setWorkers(int workers) { this.workers = workers; }
+
+            public int getBatchSize() { return batchSize; }
+            public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+        }
+
+        public static class Movement {
+            // Пул переноса данных, отдельный от клиентских операций
+            private int workers = MovementScheduler.DEFAULT_WORKERS;
+            // Бюджеты скорости переноса, 0 - без ограничения
+            private long maxBytesPerSecond = MovementScheduler.DEFAULT_MAX_BYTES_PER_SECOND;
+            private long maxKeysPerSecond = MovementScheduler.DEFAULT_MAX_KEYS_PER_SECOND;
+            // Пока клиентская задержка выше цели, перенос замедляется; 0 - не подстраивать
+            private long targetLatencyMs = MovementScheduler.DEFAULT_TARGET_LATENCY_MS;
+
+            // Getters and setters
+            public int getWorkers() { return workers; }
+            public void setWorkers(int workers) { this.workers = workers; }
+
+            public long getMaxBytesPerSecond() { return maxBytesPerSecond; }
+            public void setMaxBytesPerSecond(long maxBytesPerSecond) { this.maxBytesPerSecond = maxBytesPerSecond; }
+
+            public long getMaxKeysPerSecond() { return maxKeysPerSecond; }
+            public void setMaxKeysPerSecond(long maxKeysPerSecond) { this.maxKeysPerSecond = maxKeysPerSecond; }
+
+            public long getTargetLatencyMs() { return targetLatencyMs; }
+            public void setTargetLatencyMs(long targetLatencyMs) { this.targetLatencyMs = targetLatencyMs; }
+        }
+
+        // Фоновая сверка реплик по деревьям хэшей
+        public static class AntiEntropy {
+            private boolean enabled = false;
+            private long intervalMs = 60000;
+            // Листьев дерева на отрезок кольца (степень двойки): больше листьев - точнее поиск расхождений
+            private int leavesPerRange = MerkleIndex.DEFAULT_LEAVES_PER_RANGE;
+
+            // Getters and setters
+            public boolean isEnabled() { return enabled; }
+            public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+            public long getIntervalMs() { return intervalMs; }
+            public void setIntervalMs(long intervalMs) { this.intervalMs = intervalMs; }
+
+            public int getLeavesPerRange() { return leavesPerRange; }
+            public void setLeavesPerRange(int leavesPerRange) { this.leavesPerRange = leavesPerRange; }
+        }
+
+        // Сверка реплик на пути чтения
+        public static class ReadRepair {
+            // Доля чтений, сравнивающих дайджесты всех реплик: 0 - выключено, 1 - каждое чтение
+            private double chance = 0.0;
+
+            // Getters and setters
+            public double getChance() { return chance; }
+            public void setChance(double chance) { this.chance = chance; }
         }
 
         // Getters and setters
@@ -47,6 +294,42 @@ public class DHTConfig {
         public int getVirtualNodes() { return virtualNodes; }
         public void setVirtualNodes(int virtualNodes) { this.virtualNodes = virtualNodes; }
 
+        public String getHashFunction() { return hashFunction; }
+        public void setHashFunction(String hashFunction) { this.hashFunction = hashFunction; }
+
+        public String getPlacementStrategy() { return placementStrategy; }
+        public void setPlacementStrategy(String placementStrategy) { this.placementStrategy = placementStrategy; }
+
+        public int getMaglevTableSize() { return maglevTableSize; }
+        public void setMaglevTableSize(int maglevTableSize) { this.maglevTableSize = maglevTableSize; }
+
+        public int getRouteCacheSize() { return routeCacheSize; }
+        public void setRouteCacheSize(int routeCacheSize) { this.routeCacheSize = routeCacheSize; }
+
+        public Storage getStorage() { return storage; }
+        public void setStorage(Storage storage) { this.storage = storage; }
+
+        public Snapshot getSnapshot() { return snapshot; }
+        public void setSnapshot(Snapshot snapshot) { this.snapshot = snapshot; }
+
+        public Compression getCompression() { return compression; }
+        public void setCompression(Compression compression) { this.compression = compression; }
+
+        public Decommission getDecommission() { return decommission; }
+        public void setDecommission(Decommission decommission) { this.decommission = decommission; }
+
+        public Movement getMovement() { return movement; }
+        public void setMovement(Movement movement) { this.movement = movement; }
+
+        public AntiEntropy getAntiEntropy() { return antiEntropy; }
+        public void setAntiEntropy(AntiEntropy antiEntropy) { this.antiEntropy = antiEntropy; }
+
+        public ReadRepair getReadRepair() { return readRepair; }
+        public void setReadRepair(ReadRepair readRepair) { this.readRepair = readRepair; }
+
+        public BoundedLoad getBoundedLoad() { return boundedLoad; }
+        public void setBoundedLoad(BoundedLoad boundedLoad) { this.boundedLoad = boundedLoad; }
+
         public List<NodeConfig> getInitialNodes() { return initialNodes; }
         public void setInitialNodes(List<NodeConfig> initialNodes) { this.initialNodes = initialNodes; }
     }
@@ -58,14 +341,152 @@ public class DHTConfig {
     }
 
     @Bean
-    public void initializeNodes() {
+    public PlacementStrategy placementStrategy(DHTProperties properties, DHTMetrics metrics) {
+        HashFunction hashFunction = HashFunctions.forName(properties.getHashFunction());
+        String strategy = properties.getPlacementStrategy() == null
+                ? ConsistentHashRing.NAME
+                : properties.getPlacementStrategy().trim().toLowerCase(Locale.ROOT);
+
+        DHTProperties.BoundedLoad boundedLoad = properties.getBoundedLoad();
+        if (boundedLoad.isEnabled() && !ConsistentHashRing.NAME.equals(strategy)) {
+            logger.warn("Bounded load mode is supported only by the '{}' placement strategy, ignoring it for '{}'",
+                    ConsistentHashRing.NAME, strategy);
+        }
+
+        return switch (strategy) {
+            case ConsistentHashRing.NAME -> {
+                ConsistentHashRing ring = new ConsistentHashRing(
+                        properties.getVirtualNodes(), properties.getReplicationFactor(), hashFunction);
+                if (boundedLoad.isEnabled()) {
+                    ring.setBoundedLoadPolicy(new BoundedLoadPolicy(
+                            boundedLoad.getEpsilon(), boundedLoad.getLoadMetric(), boundedLoad.getRefreshIntervalMs()));
+                    metrics.registerBoundedLoadMetrics(ring::getBoundedLoadLookups, ring::getBoundedLoadSpills);
+                }
+                if (properties.getRouteCacheSize() > 0) {
+                    ring.setRouteCacheSize(properties.getRouteCacheSize());
+                    metrics.registerRouteCacheMetrics(ring::getRouteCacheHits, ring::getRouteCacheMisses);
+                }
+                yield ring;
+            }
+            case RendezvousPlacementStrategy.NAME -> new RendezvousPlacementStrategy(hashFunction);
+            case JumpHashPlacementStrategy.NAME -> new JumpHashPlacementStrategy(hashFunction);
+            case MaglevPlacementStrategy.NAME -> new MaglevPlacementStrategy(hashFunction, properties.getMaglevTableSize());
+            default -> throw new IllegalArgumentException("Unknown placement strategy: " + properties.getPlacementStrategy());
+        };
+    }
+
+    @Bean
+    public StorageEngineFactory storageEngineFactory(DHTProperties properties) {
+        DHTProperties.Storage storage = properties.getStorage();
+        return new StorageEngineFactory(storage.getEngine(), storage.getOffHeapSlabSizeMb() * 1024 * 1024,
+                Path.of(storage.getDataDirectory()), storage.getSegmentSizeMb() * 1024 * 1024, storage.getMergeIntervalMs(),
+                storage.getMemtableSizeMb() * 1024L * 1024)
+                .withWriteAheadLog(WriteAheadLog.Durability.parse(storage.getWalMode()),
+                        storage.getWalGroupCommitWindowMicros(), storage.getWalAsyncFlushIntervalMs(),
+                        storage.getWalMaxSizeMb() * 1024L * 1024)
+                .withMemoryBudget(storage.getMaxMemoryBytes(), EvictionPolicy.Type.parse(storage.getEvictionPolicy()));
+    }
+
+    @Bean
+    public ValueCodec valueCodec(DHTProperties properties) {
+        DHTProperties.Compression compression = properties.getCompression();
+        // Выключенное сжатие все равно читает ранее сжатые значения
+        ValueCodec.Codec codec = compression.isEnabled() ? ValueCodec.Codec.parse(compression.getCodec()) : ValueCodec.Codec.NONE;
+        return new ValueCodec(codec, compression.getThresholdBytes());
+    }
+
+    @Bean
+    public SnapshotStore snapshotStore(DHTProperties properties) {
+        DHTProperties.Snapshot snapshot = properties.getSnapshot();
+        return new SnapshotStore(Path.of(snapshot.getDirectory()), snapshot.getMaxDeltas());
+    }
+
+    // Ноды поднимаются после сборки контекста, когда все зависимости уже созданы
+    @Bean
+    public ApplicationRunner nodeInitializer(DistributedHashTable distributedHashTable,
+                                             StorageEngineFactory storageEngineFactory, SnapshotStore snapshotStore) {
+        return args -> initializeNodes(distributedHashTable, storageEngineFactory, snapshotStore);
+    }
+
+    private void initializeNodes(DistributedHashTable distributedHashTable, StorageEngineFactory storageEngineFactory,
+                                 SnapshotStore snapshotStore) {
         DHTProperties properties = dhtProperties();
-        if (properties.getInitialNodes() != null) {
-            for (DHTProperties.NodeConfig nodeConfig : properties.getInitialNodes()) {
-                Node node = new Node(nodeConfig.getId(), nodeConfig.getHost(), nodeConfig.getPort());
-                distributedHashTable.addNode(node);
+        distributedHashTable.configureDecommission(properties.getDecommission().getWorkers(),
+                properties.getDecommission().getBatchSize());
+        DHTProperties.Movement movement = properties.getMovement();
+        distributedHashTable.configureMovement(movement.getWorkers(), movement.getMaxBytesPerSecond(),
+                movement.getMaxKeysPerSecond(), movement.getTargetLatencyMs());
+        if (properties.getAntiEntropy().isEnabled()) {
+            distributedHashTable.configureAntiEntropy(properties.getAntiEntropy().getLeavesPerRange());
+        }
+        distributedHashTable.configureReadRepair(properties.getReadRepair().getChance());
+        List<DHTProperties.NodeConfig> nodeConfigs = properties.getInitialNodes();
+        if (nodeConfigs == null || nodeConfigs.isEmpty()) {
+            return;
+        }
+
+        // Хранилища восстанавливаются из снимков параллельно; нода создается (и становится активной)
+        // только с восстановленным хранилищем, поверх снимка проигрывается журнал
+        boolean restore = properties.getSnapshot().isEnabled();
+        int threads = properties.getSnapshot().getRestoreThreads() > 0
+                ? properties.getSnapshot().getRestoreThreads()
+                : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, nodeConfigs.size()));
+        AtomicLong restoredBytes = new AtomicLong();
+        Set<String> failedRestores = ConcurrentHashMap.newKeySet();
+        long start = System.nanoTime();
+        try {
+            List<Future<Node>> nodes = new ArrayList<>();
+            for (DHTProperties.NodeConfig nodeConfig : nodeConfigs) {
+                nodes.add(executor.submit(() -> {
+                    StorageEngine storage = storageEngineFactory.create(nodeConfig.getId(), nodeConfig.getStorageEngine());
+                    Map<String, Long> expiries = new HashMap<>();
+                    if (restore) {
+                        try {
+                            SnapshotStore.RestoreResult result = snapshotStore.restore(nodeConfig.getId(), storage, expiries);
+                            distributedHashTable.getMetrics().recordSnapshotRestore(result);
+                            restoredBytes.addAndGet(result.bytes());
+                        } catch (RuntimeException e) {
+                            logger.error("Snapshot restore of node {} failed, node starts empty and joins with rebalance: {}",
+                                    nodeConfig.getId(), e.getMessage());
+                            failedRestores.add(nodeConfig.getId());
+                        }
+                    }
+                    Node node = new Node(nodeConfig.getId(), nodeConfig.getHost(), nodeConfig.getPort(),
+                            nodeConfig.getWeight(), nodeConfig.getZone(), storage,
+                            storageEngineFactory.createWriteAheadLog(nodeConfig.getId()), expiries);
+                    if (failedRestores.contains(nodeConfig.getId())) {
+                        // Частично восстановленный снимок и журнал поверх него отбрасываются
+                        node.clearData();
+                    }
+                    return node;
+                }));
+            }
+            // Ключи уже лежат на своих нодах - кольцо собирается без перебалансировки.
+            // Ноды с неудавшимся восстановлением входят последними, обычным потоком присоединения
+            List<Node> rejoining = new ArrayList<>();
+            for (Future<Node> future : nodes) {
+                Node node = future.get();
+                if (failedRestores.contains(node.getId())) {
+                    rejoining.add(node);
+                } else {
+                    distributedHashTable.addNode(node, false);
+                }
+            }
+            for (Node node : rejoining) {
+                distributedHashTable.addNode(node, true);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while initializing nodes", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to initialize nodes", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        if (restore) {
+            distributedHashTable.getMetrics().recordClusterRestore(restoredBytes.get(), System.nanoTime() - start);
         }
     }
 }
-
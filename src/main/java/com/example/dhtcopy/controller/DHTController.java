@@ -4,15 +4,19 @@ import com.example.dhtcopy.core.DistributedHashTable;
 import com.example.dhtcopy.core.Node;
 import com.example.dhtcopy.dto.KeyValueDto;
 import com.example.dhtcopy.dto.NodeDto;
+import com.example.dhtcopy.dto.ScanResultDto;
 import com.example.dhtcopy.dto.StatusDto;
 import com.example.dhtcopy.service.NodeService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -34,7 +38,7 @@ public class DHTController {
     @PostMapping("/data")
     public ResponseEntity<String> put(@Valid @RequestBody KeyValueDto keyValue) {
         try {
-            distributedHashTable.put(keyValue.getKey(), keyValue.getValue());
+            distributedHashTable.put(keyValue.getKey(), keyValue.getValue(), keyValue.ttl());
             return ResponseEntity.ok("Key stored successfully");
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -42,6 +46,62 @@ public class DHTController {
         }
     }
 
+    @PostMapping("/data/batch")
+    public ResponseEntity<String> putAll(@RequestBody List<@Valid KeyValueDto> entries) {
+        try {
+            // Пакет делится по TTL: у каждой части один срок жизни
+            Map<Duration, Map<String, String>> batches = new LinkedHashMap<>();
+            for (KeyValueDto entry : entries) {
+                batches.computeIfAbsent(entry.ttl(), ttl -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+            }
+            batches.forEach((ttl, batch) -> distributedHashTable.putAll(batch, ttl));
+            int stored = batches.values().stream().mapToInt(Map::size).sum();
+            return ResponseEntity.ok(stored + " keys stored successfully");
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to store keys: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/data")
+    public ResponseEntity<Map<String, String>> getAll(@RequestParam List<String> keys) {
+        try {
+            return ResponseEntity.ok(distributedHashTable.getAll(keys));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Бинарные значения: тело запроса и ответа - сырые байты без кодирования в строку
+    @PutMapping(value = "/data/{key}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<String> putBytes(@PathVariable String key, @RequestBody byte[] value,
+                                           @RequestParam(required = false) Long ttlSeconds) {
+        try {
+            if (ttlSeconds != null && ttlSeconds <= 0) {
+                return ResponseEntity.badRequest().body("TTL must be positive");
+            }
+            distributedHashTable.putBytes(key, value, ttlSeconds == null ? null : Duration.ofSeconds(ttlSeconds));
+            return ResponseEntity.ok("Key stored successfully");
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to store key: " + e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/data/{key}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getBytes(@PathVariable String key) {
+        try {
+            byte[] value = distributedHashTable.getBytes(key);
+            if (value != null) {
+                return ResponseEntity.ok(value);
+            } else {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/data/{key}")
     public ResponseEntity<String> get(@PathVariable String key) {
         try {
@@ -72,11 +132,31 @@ public class DHTController {
         }
     }
 
+    // Упорядоченный скан: /scan?prefix=user:&limit=100, следующая страница - с cursor из ответа
+    @GetMapping("/scan")
+    public ResponseEntity<?> scan(@RequestParam(required = false) String prefix,
+                                  @RequestParam(required = false) String from,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(defaultValue = "" + DistributedHashTable.DEFAULT_SCAN_LIMIT) int limit) {
+        try {
+            DistributedHashTable.ScanPage page = distributedHashTable.scan(prefix, from, cursor, limit);
+            Map<String, String> entries = new LinkedHashMap<>();
+            page.entries().forEach(entry -> entries.put(entry.getKey(), Node.decode(entry.getValue())));
+            return ResponseEntity.ok(new ScanResultDto(entries, page.nextCursor()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to scan keys: " + e.getMessage());
+        }
+    }
+
     // Node Management
     @PostMapping("/nodes")
     public ResponseEntity<String> addNode(@Valid @RequestBody NodeDto nodeDto) {
         try {
-            Node node = nodeService.createNode(nodeDto.getId(), nodeDto.getHost(), nodeDto.getPort());
+            Node node = nodeService.createNode(nodeDto.getId(), nodeDto.getHost(), nodeDto.getPort(),
+                    nodeDto.getWeight(), nodeDto.getZone(), nodeDto.getStorageEngine());
             distributedHashTable.addNode(node);
             return ResponseEntity.ok("Node added successfully");
         } catch (Exception e) {
@@ -90,7 +170,8 @@ public class DHTController {
         try {
             boolean removed = distributedHashTable.removeNode(nodeId);
             if (removed) {
-                return ResponseEntity.ok("Node removed successfully");
+                // Перенос идет в фоне, ход - GET /nodes/{nodeId}/decommission
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body("Node removal started");
             } else {
                 return ResponseEntity.notFound().build();
             }
@@ -100,6 +181,34 @@ public class DHTController {
         }
     }
 
+    @PutMapping("/nodes/{nodeId}/weight")
+    public ResponseEntity<String> updateNodeWeight(@PathVariable String nodeId, @RequestParam double weight) {
+        try {
+            boolean updated = distributedHashTable.updateNodeWeight(nodeId, weight);
+            if (updated) {
+                return ResponseEntity.ok("Node weight updated successfully");
+            } else {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to update node weight: " + e.getMessage());
+        }
+    }
+
+    // Ход вывода ноды: DELETE /nodes/{nodeId} отвечает сразу, removed - нода передала отрезки и вышла из кольца
+    @GetMapping("/nodes/{nodeId}/decommission")
+    public ResponseEntity<DistributedHashTable.DecommissionProgress> getDecommissionProgress(@PathVariable String nodeId) {
+        DistributedHashTable.DecommissionProgress progress = distributedHashTable.getDecommissionProgress(nodeId);
+        if (progress != null) {
+            return ResponseEntity.ok(progress);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping("/nodes")
     public ResponseEntity<List<NodeDto>> getAllNodes() {
         return ResponseEntity.ok(nodeService.getAllNodes());
@@ -125,7 +234,11 @@ public class DHTController {
         status.setTotalNodes(allNodes.size());
         status.setActiveNodes(activeNodes.size());
         status.setRebalancing(distributedHashTable.isRebalancing());
+        status.setMovement(distributedHashTable.getMovementProgress());
+        status.setMovementRateFactor(distributedHashTable.getMovementScheduler().getRateFactor());
         status.setDataDistribution(distributedHashTable.getDataDistribution());
+        status.setZoneCoverage(distributedHashTable.getZoneCoverage());
+        status.setTopologyEpoch(distributedHashTable.getHashRing().getTopologyEpoch());
 
         // Set metrics
         var metrics = distributedHashTable.getMetrics();
@@ -145,6 +258,17 @@ public class DHTController {
         return ResponseEntity.ok(status);
     }
 
+    // Внеочередной проход anti-entropy; 409 - сверка выключена или идет перенос данных
+    @PostMapping("/anti-entropy")
+    public ResponseEntity<DistributedHashTable.AntiEntropyResult> runAntiEntropy() {
+        DistributedHashTable.AntiEntropyResult result = distributedHashTable.runAntiEntropy();
+        if (result != null) {
+            return ResponseEntity.ok(result);
+        } else {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     @GetMapping("/distribution")
     public ResponseEntity<Map<String, Integer>> getDataDistribution() {
         return ResponseEntity.ok(distributedHashTable.getDataDistribution());
@@ -160,7 +284,10 @@ public class DHTController {
                 "failedOperations", metrics.getFailedOperations(),
                 "averageReadLatency", metrics.getAverageReadLatency(),
                 "averageWriteLatency", metrics.getAverageWriteLatency(),
-                "nodeOperations", metrics.getNodeOperations()
+                "nodeOperations", metrics.getNodeOperations(),
+                "boundedLoadLookups", metrics.getBoundedLoadLookups(),
+                "boundedLoadSpills", metrics.getBoundedLoadSpills(),
+                "routeCacheHitRatio", metrics.getRouteCacheHitRatio()
         );
         return ResponseEntity.ok(metricsMap);
     }
@@ -0,0 +1,42 @@
+package com.example.dhtcopy.core;
+
+/**
+ * Параметры режима consistent hashing with bounded loads (Mirrokni et al.): нода,
+ * нагрузка которой превышает (1 + epsilon) от средней с учетом веса, уступает ключ
+ * следующей позиции кольца.
+ */
+public final class BoundedLoadPolicy {
+
+    public enum LoadMetric {
+        // Количество хранимых ключей
+        KEYS,
+        // Скорость операций по Node.getOperationCount между замерами
+        OPERATIONS
+    }
+
+    private final double epsilon;
+    private final LoadMetric loadMetric;
+    private final long refreshIntervalMs;
+
+    public BoundedLoadPolicy(double epsilon, LoadMetric loadMetric, long refreshIntervalMs) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("Bounded load epsilon must be positive: " + epsilon);
+        }
+        if (refreshIntervalMs < 0) {
+            throw new IllegalArgumentException("Load refresh interval must not be negative: " + refreshIntervalMs);
+        }
+        this.epsilon = epsilon;
+        this.loadMetric = loadMetric;
+        this.refreshIntervalMs = refreshIntervalMs;
+    }
+
+    public double getEpsilon() { return epsilon; }
+    public LoadMetric getLoadMetric() { return loadMetric; }
+    public long getRefreshIntervalMs() { return refreshIntervalMs; }
+
+    @Override
+    public String toString() {
+        return "BoundedLoadPolicy{epsilon=" + epsilon + ", loadMetric=" + loadMetric +
+                ", refreshIntervalMs=" + refreshIntervalMs + "}";
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.dhtcopy.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Отслеживает нагрузку нод для режима bounded loads. Нагрузка замеряется не чаще
+ * refreshIntervalMs и публикуется неизменяемым набором перегруженных нод, поэтому
+ * в обычном случае (перегруженных нет) маршрутизация не выделяет память.
+ * Между замерами граница соблюдается приближенно.
+ */
+final class BoundedLoadTracker {
+    private final BoundedLoadPolicy policy;
+    private final long refreshIntervalNanos;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder spills = new LongAdder();
+    private volatile Loads loads = new Loads(Set.of(), Map.of(), System.nanoTime());
+
+    private static final class Loads {
+        final Set<Node> overloaded;
+        // Счетчики операций на момент замера - для вычисления скорости
+        final Map<String, Long> operationCounts;
+        final long takenAtNanos;
+
+        Loads(Set<Node> overloaded, Map<String, Long> operationCounts, long takenAtNanos) {
+            this.overloaded = overloaded;
+            this.operationCounts = operationCounts;
+            this.takenAtNanos = takenAtNanos;
+        }
+    }
+
+    BoundedLoadTracker(BoundedLoadPolicy policy) {
+        this.policy = policy;
+        this.refreshIntervalNanos = policy.getRefreshIntervalMs() * 1_000_000L;
+    }
+
+    BoundedLoadPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Возвращает natural, если ни одна из первых replicationFactor нод не перегружена,
+     * иначе - активные ноды в порядке кольца, пропуская перегруженные; если свободных
+     * не хватает, список добивается перегруженными из natural.
+     */
+    List<Node> apply(RingSnapshot snapshot, long keyHash, List<Node> natural, int replicationFactor) {
+        maybeRefresh(snapshot.members);
+        lookups.increment();
+
+        Set<Node> overloaded = loads.overloaded;
+        if (overloaded.isEmpty() || !containsAny(natural, overloaded)) {
+            return natural;
+        }
+
+        int target = Math.min(replicationFactor, natural.size());
+        List<Node> result = new ArrayList<>(target);
+        snapshot.collectReplicas(snapshot.indexFor(keyHash), target,
+                node -> node.isActive() && !overloaded.contains(node), result);
+        for (int i = 0; i < natural.size() && result.size() < target; i++) {
+            if (!result.contains(natural.get(i))) {
+                result.add(natural.get(i));
+            }
+        }
+
+        if (!result.equals(natural)) {
+            spills.increment();
+        }
+        return result;
+    }
+
+    private static boolean containsAny(List<Node> nodes, Set<Node> overloaded) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (overloaded.contains(nodes.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void maybeRefresh(Node[] members) {
+        if (System.nanoTime() - loads.takenAtNanos >= refreshIntervalNanos
+                && refreshing.compareAndSet(false, true)) {
+            try {
+                refresh(members);
+            } finally {
+                refreshing.set(false);
+            }
+        }
+    }
+
+    void refresh(Node[] members) {
+        Loads previous = loads;
+        long now = System.nanoTime();
+        double elapsedSeconds = Math.max(now - previous.takenAtNanos, 1) / 1e9;
+
+        Map<String, Long> operationCounts = new HashMap<>();
+        double[] memberLoads = new double[members.length];
+        double totalLoad = 0;
+        double totalWeight = 0;
+        for (int i = 0; i < members.length; i++) {
+            Node node = members[i];
+            long operations = node.getOperationCount();
+            operationCounts.put(node.getId(), operations);
+            if (!node.isActive()) {
+                continue;
+            }
+
+            memberLoads[i] = switch (policy.getLoadMetric()) {
+                case KEYS -> node.getDataSize();
+                case OPERATIONS -> (operations - previous.operationCounts.getOrDefault(node.getId(), operations))
+                        / elapsedSeconds;
+            };
+            totalLoad += memberLoads[i];
+            totalWeight += node.getWeight();
+        }
+
+        Set<Node> overloaded = new HashSet<>();
+        if (totalLoad > 0) {
+            for (int i = 0; i < members.length; i++) {
+                Node node = members[i];
+                if (!node.isActive()) {
+                    continue;
+                }
+                // Емкость ноды пропорциональна ее весу: ceil((1 + eps) * средняя нагрузка)
+                double capacity = Math.ceil((1 + policy.getEpsilon()) * totalLoad * node.getWeight() / totalWeight);
+                if (memberLoads[i] > capacity) {
+                    overloaded.add(node);
+                }
+            }
+        }
+
+        loads = new Loads(Set.copyOf(overloaded), operationCounts, now);
+    }
+
+    Set<Node> getOverloadedNodes() {
+        return loads.overloaded;
+    }
+
+    long getLookups() {
+        return lookups.sum();
+    }
+
+    long getSpills() {
+        return spills.sum();
+    }
+}
@@ -1,41 +1,52 @@
 package com.example.dhtcopy.core;
 
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
-
-@Component
-public class ConsistentHashRing {
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+public class ConsistentHashRing implements PlacementStrategy {
     private static final Logger logger = LoggerFactory.getLogger(ConsistentHashRing.class);
-    private final ConcurrentSkipListMap<Long, Node> ring = new ConcurrentSkipListMap<>();
-    private final Map<String, Set<Long>> nodeHashes = new ConcurrentHashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    public static final String NAME = "ring";
+    // Изменяемое состояние кольца, доступно только под writeLock
+    private final TreeMap<Long, Node> ring = new TreeMap<>();
+    // Токены ноды в порядке номеров виртуальных нод: при уменьшении веса снимается хвост
+    private final Map<String, List<Long>> nodeHashes = new HashMap<>();
+    private final Map<String, Node> members = new LinkedHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Опубликованный снимок для чтения без блокировок
+    private volatile RingSnapshot snapshot = RingSnapshot.EMPTY;
+    // Число виртуальных нод на единицу веса
     private final int virtualNodes;
-    private final MessageDigest md5;
+    // Длина заранее вычисленных списков реплик для каждого сегмента
+    private final int replicationFactor;
+    private final Consumer<Node> stateListener = this::onNodeStateChanged;
+    private final HashFunction hashFunction;
+    // Режим bounded loads; null - выключен
+    private volatile BoundedLoadTracker boundedLoad;
+    // Кэш маршрутов горячих ключей; null - выключен
+    private volatile RouteCache routeCache;
 
     public ConsistentHashRing() {
         this(150);
     }
 
     public ConsistentHashRing(int virtualNodes) {
+        this(virtualNodes, 3, HashFunctions.murmur3());
+    }
+
+    public ConsistentHashRing(int virtualNodes, int replicationFactor, HashFunction hashFunction) {
         this.virtualNodes = virtualNodes;
-        try {
-            this.md5 = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("MD5 algorithm not available", e);
-        }
+        this.replicationFactor = Math.max(1, replicationFactor);
+        this.hashFunction = hashFunction;
     }
 
+    @Override
     public void addNode(Node node) {
-        lock.writeLock().lock();
+        writeLock.lock();
         try {
             // Проверяем, что нода еще не добавлена
             if (nodeHashes.containsKey(node.getId())) {
@@ -43,257 +54,614 @@ public class ConsistentHashRing {
                 return;
             }
 
-            Set<Long> hashes = new HashSet<>();
-
-            for (int i = 0; i < virtualNodes; i++) {
-                String virtualNodeId = node.getId() + ":" + i;
-                long hash = hash(virtualNodeId);
-                ring.put(hash, node);
-                hashes.add(hash);
-            }
+            List<Long> hashes = new ArrayList<>();
+            appendTokens(node, hashes, tokenCount(node));
 
             nodeHashes.put(node.getId(), hashes);
-            logger.debug("Added node {} with {} virtual nodes", node.getId(), virtualNodes);
+            members.put(node.getId(), node);
+            node.addStateListener(stateListener);
+            publishSnapshot();
+            logger.debug("Added node {} with {} virtual nodes (weight {})",
+                    node.getId(), hashes.size(), node.getWeight());
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
+    @Override
     public boolean removeNode(String nodeId) {
-        lock.writeLock().lock();
+        writeLock.lock();
         try {
-            Set<Long> hashes = nodeHashes.remove(nodeId);
+            List<Long> hashes = nodeHashes.remove(nodeId);
             if (hashes != null) {
                 for (Long hash : hashes) {
                     ring.remove(hash);
                 }
+                Node removed = members.remove(nodeId);
+                if (removed != null) {
+                    removed.removeStateListener(stateListener);
+                }
+                publishSnapshot();
                 logger.debug("Removed node {} with {} virtual nodes", nodeId, hashes.size());
                 return true;
             }
             return false;
         } finally {
-            lock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
-    public Node getNode(String key) {
-        lock.readLock().lock();
+    // Смена активности ноды меняет списки реплик, смена веса - число ее токенов;
+    // в обоих случаях снимок пересобирается
+    private void onNodeStateChanged(Node node) {
+        writeLock.lock();
         try {
-            if (ring.isEmpty()) {
-                return null;
-            }
-
-            long hash = hash(key);
-            Map.Entry<Long, Node> entry = ring.ceilingEntry(hash);
+            if (members.get(node.getId()) == node) {
+                List<Long> hashes = nodeHashes.get(node.getId());
+                int previous = hashes.size();
+                int target = tokenCount(node);
+                if (target > previous) {
+                    appendTokens(node, hashes, target);
+                } else if (target < previous) {
+                    trimTokens(node, hashes, target);
+                }
+                if (target != previous) {
+                    logger.info("Node {} weight changed to {}: {} -> {} virtual nodes",
+                            node.getId(), node.getWeight(), previous, target);
+                }
 
-            if (entry == null) {
-                entry = ring.firstEntry();
+                publishSnapshot();
+                logger.debug("Rebuilt ring snapshot after node {} became {}",
+                        node.getId(), node.isActive() ? "active" : "inactive");
             }
-
-            Node node = entry.getValue();
-            return node.isActive() ? node : getNextActiveNode(hash);
         } finally {
-            lock.readLock().unlock();
+            writeLock.unlock();
         }
     }
 
-    private Node getNextActiveNode(long startHash) {
-        Map.Entry<Long, Node> current = ring.ceilingEntry(startHash);
+    // Количество токенов пропорционально весу ноды, но не меньше одного
+    private int tokenCount(Node node) {
+        return (int) Math.max(1, Math.round(virtualNodes * node.getWeight()));
+    }
+
+    // Токены нумеруются подряд, поэтому рост веса лишь добавляет новые сегменты,
+    // не трогая уже занятые нодой диапазоны
+    private void appendTokens(Node node, List<Long> hashes, int target) {
+        for (int i = hashes.size(); i < target; i++) {
+            long hash = hash(node.getId() + ":" + i);
+            ring.put(hash, node);
+            hashes.add(hash);
+        }
+    }
 
-        // Search forward in the ring
-        while (current != null) {
-            if (current.getValue().isActive()) {
-                return current.getValue();
-            }
-            current = ring.higherEntry(current.getKey());
+    private void trimTokens(Node node, List<Long> hashes, int target) {
+        while (hashes.size() > target) {
+            ring.remove(hashes.remove(hashes.size() - 1), node);
         }
+    }
 
-        // Wrap around to the beginning
+    // Пересобирает неизменяемый снимок из текущего состояния и увеличивает эпоху топологии;
+    // вызывается под writeLock при добавлении, удалении и смене состояния ноды
+    private void publishSnapshot() {
+        long[] tokens = new long[ring.size()];
+        Node[] owners = new Node[ring.size()];
+        int i = 0;
         for (Map.Entry<Long, Node> entry : ring.entrySet()) {
-            if (entry.getValue().isActive()) {
-                return entry.getValue();
-            }
+            tokens[i] = entry.getKey();
+            owners[i] = entry.getValue();
+            i++;
+        }
+        snapshot = new RingSnapshot(tokens, owners, members.values().toArray(new Node[0]),
+                replicationFactor, snapshot.epoch + 1);
+    }
+
+    @Override
+    public Node getNode(String key) {
+        RingSnapshot current = snapshot;
+        if (current.isEmpty()) {
+            return null;
+        }
+        if (boundedLoad != null || routeCache != null) {
+            // Полный список реплик, чтобы getNode и getNodes делили одну запись кэша
+            List<Node> replicas = getNodes(key, current.replicationFactor);
+            return replicas.isEmpty() ? null : replicas.get(0);
         }
 
-        return null; // No active nodes
+        List<Node> replicas = current.preferenceList(hash(key));
+        return replicas.isEmpty() ? null : replicas.get(0); // No active nodes
     }
 
-    // ОСНОВНОЕ ИСПРАВЛЕНИЕ: полностью переписанный метод getNodes
+    @Override
     public List<Node> getNodes(String key, int replicationFactor) {
-        lock.readLock().lock();
-        try {
-            if (ring.isEmpty()) {
-                return new ArrayList<>();
+        RingSnapshot current = snapshot;
+        if (current.isEmpty()) {
+            return List.of();
+        }
+
+        BoundedLoadTracker tracker = boundedLoad;
+        // С bounded loads маршрут зависит от текущей нагрузки, поэтому кэш не используется
+        RouteCache cache = tracker == null ? routeCache : null;
+        if (cache != null) {
+            List<Node> cached = cache.get(key, replicationFactor, current.epoch);
+            if (cached != null) {
+                return cached;
             }
+        }
 
-            // Получаем все уникальные активные ноды
-            List<Node> allActiveNodes = getAllActiveNodes();
+        long keyHash = hash(key);
+        List<Node> replicas = naturalNodes(current, keyHash, replicationFactor);
+        if (replicas.isEmpty()) {
+            logger.warn("No active nodes available for key: {}", key);
+            return replicas;
+        }
+
+        if (cache != null) {
+            cache.put(key, replicationFactor, current.epoch, replicas);
+        }
+        return tracker == null ? replicas : tracker.apply(current, keyHash, replicas, replicationFactor);
+    }
+
+    /**
+     * Хэши ключей сортируются один раз (поразрядно, без объектов-оберток), после чего
+     * массив токенов проходится одним проходом: сегмент каждого следующего ключа лежит
+     * не раньше предыдущего.
+     * Соседние ключи обычно попадают в один и тот же список реплик, поэтому к карте
+     * групп обращаемся только при смене списка.
+     */
+    @Override
+    public Map<List<Node>, List<String>> routeBatch(Collection<String> keys, int replicationFactor) {
+        RingSnapshot current = snapshot;
+        Map<List<Node>, List<String>> groups = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return groups;
+        }
+        if (current.isEmpty()) {
+            groups.put(List.of(), new ArrayList<>(keys));
+            return groups;
+        }
 
-            if (allActiveNodes.isEmpty()) {
-                logger.warn("No active nodes available for key: {}", key);
-                return new ArrayList<>();
+        String[] batch = keys.toArray(new String[0]);
+        long[] hashes = new long[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            hashes[i] = hash(batch[i]);
+        }
+        int[] order = sortedOrder(hashes);
+
+        BoundedLoadTracker tracker = boundedLoad;
+        boolean precomputed = replicationFactor <= current.replicationFactor;
+        long[] tokens = current.tokens;
+        int segment = 0;
+        List<Node> lastReplicas = null;
+        List<String> lastGroup = null;
+        for (int keyIndex : order) {
+            long keyHash = hashes[keyIndex];
+            while (segment < tokens.length && tokens[segment] < keyHash) {
+                segment++;
+            }
+            // Хэши за последним токеном принадлежат первому сегменту (переход через ноль)
+            int index = segment == tokens.length ? 0 : segment;
+
+            List<Node> replicas;
+            if (precomputed) {
+                List<Node> list = current.preferenceLists[index];
+                replicas = replicationFactor >= list.size() ? list : list.subList(0, replicationFactor);
+            } else {
+                replicas = walkRing(current, keyHash, replicationFactor);
+            }
+            if (tracker != null && !replicas.isEmpty()) {
+                replicas = tracker.apply(current, keyHash, replicas, replicationFactor);
             }
 
-            // Ограничиваем replicationFactor количеством доступных нод
-            int effectiveReplicationFactor = Math.min(replicationFactor, allActiveNodes.size());
+            if (replicas != lastReplicas) {
+                lastReplicas = replicas;
+                lastGroup = groups.computeIfAbsent(replicas, nodes -> new ArrayList<>());
+            }
+            lastGroup.add(batch[keyIndex]);
+        }
+        return groups;
+    }
+
+    // Поразрядная сортировка (LSD, 8 проходов по байту): индексы ключей по возрастанию хэша
+    private static int[] sortedOrder(long[] hashes) {
+        int n = hashes.length;
+        int[] order = new int[n];
+        int[] orderBuffer = new int[n];
+        long[] sortKeys = new long[n];
+        long[] sortKeysBuffer = new long[n];
+        for (int i = 0; i < n; i++) {
+            // Инверсия знакового бита: беззнаковый порядок совпадает со знаковым порядком токенов
+            sortKeys[i] = hashes[i] ^ Long.MIN_VALUE;
+            order[i] = i;
+        }
 
-            List<Node> result = new ArrayList<>();
-            Set<String> addedNodeIds = new LinkedHashSet<>(); // Для отслеживания уникальности
+        int[] counts = new int[257];
+        for (int shift = 0; shift < Long.SIZE; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) (sortKeys[i] >>> shift & 0xFF) + 1]++;
+            }
+            for (int digit = 0; digit < 256; digit++) {
+                counts[digit + 1] += counts[digit];
+            }
+            for (int i = 0; i < n; i++) {
+                int position = counts[(int) (sortKeys[i] >>> shift & 0xFF)]++;
+                sortKeysBuffer[position] = sortKeys[i];
+                orderBuffer[position] = order[i];
+            }
+
+            long[] swapKeys = sortKeys;
+            sortKeys = sortKeysBuffer;
+            sortKeysBuffer = swapKeys;
+            int[] swapOrder = order;
+            order = orderBuffer;
+            orderBuffer = swapOrder;
+        }
+        return order;
+    }
 
-            long keyHash = hash(key);
+    // В режиме bounded loads ключ мог быть записан на естественных владельцев до перегрузки
+    @Override
+    public List<Node> getFallbackNodes(String key, int replicationFactor) {
+        RingSnapshot current = snapshot;
+        if (boundedLoad == null || current.isEmpty()) {
+            return List.of();
+        }
+        return naturalNodes(current, hash(key), replicationFactor);
+    }
 
-            // Находим стартовую позицию в кольце
-            Map.Entry<Long, Node> startEntry = ring.ceilingEntry(keyHash);
-            if (startEntry == null) {
-                startEntry = ring.firstEntry();
+    /**
+     * Соседние сегменты, в списках реплик которых есть нода, склеиваются в один отрезок.
+     * Ключи, вынесенные режимом bounded loads за естественные реплики, в отрезки не входят.
+     */
+    @Override
+    public List<TokenRange> getTokenRanges(Node node, int replicationFactor) {
+        RingSnapshot current = snapshot;
+        long[] tokens = current.tokens;
+        List<TokenRange> ranges = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < tokens.length; i++) {
+            boolean owned = segmentReplicas(current, i, replicationFactor).contains(node);
+            if (owned && start < 0) {
+                start = i;
+            } else if (!owned && start >= 0) {
+                ranges.add(segments(tokens, start, i - 1));
+                start = -1;
+            }
+        }
+        if (start == 0) {
+            return List.of(TokenRange.FULL);
+        }
+        if (start > 0) {
+            // Хвостовой отрезок продолжается через ноль в первый, если тот тоже принадлежит ноде
+            if (!ranges.isEmpty() && ranges.get(0).startExclusive() == tokens[tokens.length - 1]) {
+                TokenRange head = ranges.remove(0);
+                ranges.add(new TokenRange(tokens[start - 1], head.endInclusive()));
+            } else {
+                ranges.add(segments(tokens, start, tokens.length - 1));
             }
+        }
+        return ranges;
+    }
 
-            // Создаем упорядоченный список всех виртуальных нод, начиная с правильной позиции
-            List<Map.Entry<Long, Node>> orderedVirtualNodes = getOrderedVirtualNodes(startEntry.getKey());
+    /**
+     * Добавление ноды и разница снимков под одной блокировкой. Токены прежнего кольца остаются
+     * и в новом, поэтому каждый новый сегмент целиком лежит в одном прежнем - его реплики
+     * и есть прежние реплики сегмента. Соседние сегменты с одинаковыми репликами склеиваются.
+     */
+    @Override
+    public List<RangeTransfer> addNodeWithTransfers(Node node, int replicationFactor) {
+        writeLock.lock();
+        try {
+            RingSnapshot before = snapshot;
+            addNode(node);
+            return gainedRanges(before, snapshot, node, replicationFactor);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            // Проходим по виртуальным нодам в порядке кольца и добавляем уникальные физические ноды
-            for (Map.Entry<Long, Node> entry : orderedVirtualNodes) {
-                Node physicalNode = entry.getValue();
+    /**
+     * Рост веса только дописывает токены ноды, поэтому разница считается так же, как при добавлении.
+     * При снижении веса нода ничего не получает - список пуст, лишние ключи она отдает сама.
+     */
+    @Override
+    public List<RangeTransfer> updateWeightWithTransfers(Node node, double weight, int replicationFactor) {
+        writeLock.lock();
+        try {
+            RingSnapshot before = snapshot;
+            // Слушатель состояния пересобирает снимок в этом же потоке, блокировка реентерабельна
+            node.setWeight(weight);
+            return gainedRanges(before, snapshot, node, replicationFactor);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-                // Добавляем только активные и еще не добавленные ноды
-                if (physicalNode.isActive() && addedNodeIds.add(physicalNode.getId())) {
-                    result.add(physicalNode);
+    // Сегменты нового снимка, в реплики которых входит нода и у которых сменился состав реплик
+    private List<RangeTransfer> gainedRanges(RingSnapshot before, RingSnapshot after, Node node, int replicationFactor) {
+        if (after == before || before.isEmpty()) {
+            return List.of();
+        }
+        long[] tokens = after.tokens;
+        List<RangeTransfer> transfers = new ArrayList<>();
+        for (int i = 0; i < tokens.length; i++) {
+            List<Node> current = segmentReplicas(after, i, replicationFactor);
+            if (!current.contains(node)) {
+                continue;
+            }
+            List<Node> previous = segmentReplicas(before, before.indexFor(tokens[i]), replicationFactor);
+            if (previous.size() == current.size() && previous.containsAll(current)) {
+                continue;
+            }
+            appendTransfer(transfers, segments(tokens, i, i), previous, current);
+        }
+        return transfers;
+    }
 
-                    if (result.size() >= effectiveReplicationFactor) {
-                        break;
-                    }
+    /**
+     * Реплики после удаления считаются по снимку кольца без токенов ноды, который не публикуется.
+     * Токены нового кольца - подмножество текущих, поэтому каждый текущий сегмент лежит в одном новом.
+     */
+    @Override
+    public List<RangeTransfer> planRemoval(Node node, int replicationFactor) {
+        writeLock.lock();
+        try {
+            RingSnapshot before = snapshot;
+            List<Long> nodeTokens = nodeHashes.get(node.getId());
+            if (nodeTokens == null || before.isEmpty()) {
+                return List.of();
+            }
+            TreeMap<Long, Node> remaining = new TreeMap<>(ring);
+            nodeTokens.forEach(token -> remaining.remove(token, node));
+            long[] tokens = new long[remaining.size()];
+            Node[] owners = new Node[remaining.size()];
+            int index = 0;
+            for (Map.Entry<Long, Node> entry : remaining.entrySet()) {
+                tokens[index] = entry.getKey();
+                owners[index] = entry.getValue();
+                index++;
+            }
+            Node[] members = this.members.values().stream().filter(member -> member != node).toArray(Node[]::new);
+            RingSnapshot after = new RingSnapshot(tokens, owners, members, this.replicationFactor, before.epoch);
+
+            List<RangeTransfer> transfers = new ArrayList<>();
+            for (int i = 0; i < before.tokens.length; i++) {
+                List<Node> previous = segmentReplicas(before, i, replicationFactor);
+                if (!previous.contains(node)) {
+                    continue;
                 }
+                List<Node> current = after.isEmpty()
+                        ? List.of()
+                        : segmentReplicas(after, after.indexFor(before.tokens[i]), replicationFactor);
+                appendTransfer(transfers, segments(before.tokens, i, i), previous, current);
             }
+            return transfers;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean supportsRangeTransfers() {
+        return true;
+    }
+
+    @Override
+    public long token(String key) {
+        return hash(key);
+    }
+
+    // Сегмент продолжает предыдущий отрезок, если примыкает к нему и реплики совпадают
+    private static void appendTransfer(List<RangeTransfer> transfers, TokenRange range, List<Node> previous, List<Node> current) {
+        RangeTransfer last = transfers.isEmpty() ? null : transfers.get(transfers.size() - 1);
+        if (last != null && last.range().endInclusive() == range.startExclusive()
+                && last.previousReplicas().equals(previous) && last.currentReplicas().equals(current)) {
+            transfers.set(transfers.size() - 1, new RangeTransfer(
+                    new TokenRange(last.range().startExclusive(), range.endInclusive()), last.previousReplicas(), last.currentReplicas()));
+        } else {
+            transfers.add(new RangeTransfer(range, List.copyOf(previous), List.copyOf(current)));
+        }
+    }
 
-            logger.debug("Selected {} unique nodes for key '{}': {}",
-                    result.size(), key,
-                    result.stream().map(Node::getId).collect(Collectors.toList()));
+    @Override
+    public Map<TokenRange, List<Node>> getSegments(int replicationFactor) {
+        RingSnapshot current = snapshot;
+        long[] tokens = current.tokens;
+        Map<TokenRange, List<Node>> result = new LinkedHashMap<>();
+        for (int i = 0; i < tokens.length; i++) {
+            result.put(segments(tokens, i, i), segmentReplicas(current, i, replicationFactor));
+        }
+        return result;
+    }
+
+    // Сегмент i - (tokens[i-1], tokens[i]], для i = 0 начинается от последнего токена
+    private static TokenRange segments(long[] tokens, int first, int last) {
+        long start = first == 0 ? tokens[tokens.length - 1] : tokens[first - 1];
+        return new TokenRange(start, tokens[last]);
+    }
 
+    private List<Node> segmentReplicas(RingSnapshot current, int segment, int replicationFactor) {
+        if (replicationFactor > current.replicationFactor) {
+            List<Node> result = new ArrayList<>(Math.min(replicationFactor, current.members.length));
+            current.collectReplicas(segment, replicationFactor, Node::isActive, result);
             return result;
-        } finally {
-            lock.readLock().unlock();
         }
+        List<Node> replicas = current.preferenceLists[segment];
+        return replicationFactor >= replicas.size() ? replicas : replicas.subList(0, replicationFactor);
     }
 
-    // Вспомогательный метод для получения упорядоченного списка виртуальных нод
-    private List<Map.Entry<Long, Node>> getOrderedVirtualNodes(long startHash) {
-        List<Map.Entry<Long, Node>> orderedNodes = new ArrayList<>();
+    private List<Node> naturalNodes(RingSnapshot current, long keyHash, int replicationFactor) {
+        if (replicationFactor > current.replicationFactor) {
+            // Запрошено больше реплик, чем вычислено заранее - идем по кольцу
+            return walkRing(current, keyHash, replicationFactor);
+        }
 
-        // Добавляем все ноды начиная с startHash до конца кольца
-        orderedNodes.addAll(ring.tailMap(startHash).entrySet());
+        List<Node> replicas = current.preferenceList(keyHash);
+        return replicationFactor >= replicas.size() ? replicas : replicas.subList(0, replicationFactor);
+    }
 
-        // Добавляем ноды от начала кольца до startHash (wrap around)
-        orderedNodes.addAll(ring.headMap(startHash).entrySet());
+    private List<Node> walkRing(RingSnapshot current, long keyHash, int replicationFactor) {
+        List<Node> result = new ArrayList<>(Math.min(replicationFactor, current.members.length));
+        // Проходим по виртуальным нодам в порядке кольца и добавляем уникальные активные
+        // физические ноды, сначала по одной на зону
+        current.collectReplicas(current.indexFor(keyHash), replicationFactor, Node::isActive, result);
+        return result;
+    }
 
-        return orderedNodes;
+    @Override
+    public long getTopologyEpoch() {
+        return snapshot.epoch;
     }
 
-    // Вспомогательный метод для получения уникальных активных нод
-    private List<Node> getAllActiveNodes() {
-        return new ArrayList<>(ring.values().stream()
-                .filter(Node::isActive)
-                .collect(Collectors.toMap(
-                        Node::getId,
-                        node -> node,
-                        (existing, replacement) -> existing)) // Убираем дубликаты по ID
-                .values());
+    // Включает кэш маршрутов на capacity слотов (округляется до степени двойки); 0 выключает его
+    public void setRouteCacheSize(int capacity) {
+        routeCache = capacity > 0 ? new RouteCache(capacity) : null;
+        logger.info("Route cache: {}", capacity > 0 ? routeCache.capacity() + " entries" : "disabled");
     }
 
-    public int getUniqueNodesCount() {
-        lock.readLock().lock();
-        try {
-            return nodeHashes.size();
-        } finally {
-            lock.readLock().unlock();
+    public long getRouteCacheHits() {
+        RouteCache cache = routeCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    public long getRouteCacheMisses() {
+        RouteCache cache = routeCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    // Включает режим bounded loads; null выключает его
+    public void setBoundedLoadPolicy(BoundedLoadPolicy policy) {
+        boundedLoad = policy == null ? null : new BoundedLoadTracker(policy);
+        logger.info("Bounded load mode: {}", policy == null ? "disabled" : policy);
+    }
+
+    public BoundedLoadPolicy getBoundedLoadPolicy() {
+        BoundedLoadTracker tracker = boundedLoad;
+        return tracker == null ? null : tracker.getPolicy();
+    }
+
+    // Принудительный замер нагрузки, не дожидаясь refreshIntervalMs
+    public void refreshLoads() {
+        BoundedLoadTracker tracker = boundedLoad;
+        if (tracker != null) {
+            tracker.refresh(snapshot.members);
         }
     }
 
-    public List<Node> getAllNodes() {
-        lock.readLock().lock();
-        try {
-            return new ArrayList<>(ring.values().stream()
-                    .collect(Collectors.toMap(
-                            Node::getId,
-                            node -> node,
-                            (existing, replacement) -> existing))
-                    .values());
-        } finally {
-            lock.readLock().unlock();
+    public Set<Node> getOverloadedNodes() {
+        BoundedLoadTracker tracker = boundedLoad;
+        return tracker == null ? Set.of() : tracker.getOverloadedNodes();
+    }
+
+    public long getBoundedLoadLookups() {
+        BoundedLoadTracker tracker = boundedLoad;
+        return tracker == null ? 0 : tracker.getLookups();
+    }
+
+    // Сколько раз список реплик отклонился от естественного из-за перегрузки
+    public long getBoundedLoadSpills() {
+        BoundedLoadTracker tracker = boundedLoad;
+        return tracker == null ? 0 : tracker.getSpills();
+    }
+
+    // Точный расчет по сегментам кольца: ширина сегмента - его доля пространства ключей
+    @Override
+    public Map<Integer, Double> getZoneCoverage(int replicationFactor) {
+        RingSnapshot current = snapshot;
+        if (current.isEmpty() || replicationFactor > current.replicationFactor) {
+            return PlacementStrategy.super.getZoneCoverage(replicationFactor);
+        }
+
+        Map<Integer, Double> coverage = new TreeMap<>();
+        int size = current.size();
+        for (int i = 0; i < size; i++) {
+            // Сегмент (tokens[i-1], tokens[i]]; разность по модулю 2^64 учитывает переход через ноль
+            long width = current.tokens[i] - current.tokens[i == 0 ? size - 1 : i - 1];
+            double share = size == 1 ? 1.0 : ((width >>> 1) * 2.0 + (width & 1)) / 0x1.0p64;
+
+            List<Node> replicas = current.preferenceLists[i];
+            int count = Math.min(replicationFactor, replicas.size());
+            Set<String> zones = new HashSet<>();
+            for (int j = 0; j < count; j++) {
+                zones.add(replicas.get(j).getZone());
+            }
+            coverage.merge(zones.size(), share, Double::sum);
         }
+        return coverage;
     }
 
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    @Override
+    public int getUniqueNodesCount() {
+        return snapshot.members.length;
+    }
+
+    @Override
+    public List<Node> getAllNodes() {
+        return new ArrayList<>(Arrays.asList(snapshot.members));
+    }
+
+    @Override
     public Map<String, Integer> getDataDistribution() {
-        lock.readLock().lock();
-        try {
-            Map<String, Integer> distribution = new HashMap<>();
-            for (Node node : getAllNodes()) {
-                distribution.put(node.getId(), node.getDataSize());
-            }
-            return distribution;
-        } finally {
-            lock.readLock().unlock();
+        Map<String, Integer> distribution = new HashMap<>();
+        for (Node node : snapshot.members) {
+            distribution.put(node.getId(), node.getDataSize());
         }
+        return distribution;
     }
 
     private long hash(String key) {
-        synchronized (md5) {
-            md5.reset();
-            md5.update(key.getBytes());
-            byte[] digest = md5.digest();
-
-            long hash = 0;
-            for (int i = 0; i < 4; i++) {
-                hash <<= 8;
-                hash |= ((int) digest[i]) & 0xFF;
-            }
-            return hash;
-        }
+        return hashFunction.hash(key);
     }
 
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    @Override
     public boolean isEmpty() {
-        lock.readLock().lock();
-        try {
-            return ring.isEmpty();
-        } finally {
-            lock.readLock().unlock();
-        }
+        return snapshot.isEmpty();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
     }
 
     // Диагностические методы для отладки
     public void printRingStructure() {
-        lock.readLock().lock();
-        try {
-            logger.info("=== CONSISTENT HASH RING STRUCTURE ===");
-            logger.info("Total virtual nodes in ring: {}", ring.size());
-            logger.info("Unique physical nodes: {}", getUniqueNodesCount());
-            logger.info("Virtual nodes per physical node: {}", virtualNodes);
-
-            Map<String, Integer> virtualNodeCount = new HashMap<>();
-            for (Node node : ring.values()) {
-                virtualNodeCount.merge(node.getId(), 1, Integer::sum);
-            }
-
-            logger.info("Actual virtual node distribution:");
-            virtualNodeCount.forEach((nodeId, count) ->
-                    logger.info("  Node {}: {} virtual nodes", nodeId, count));
-
-        } finally {
-            lock.readLock().unlock();
+        RingSnapshot current = snapshot;
+        logger.info("=== CONSISTENT HASH RING STRUCTURE ===");
+        logger.info("Total virtual nodes in ring: {}", current.size());
+        logger.info("Unique physical nodes: {}", current.members.length);
+        logger.info("Virtual nodes per unit of weight: {}", virtualNodes);
+
+        Map<String, Integer> virtualNodeCount = new HashMap<>();
+        for (Node node : current.owners) {
+            virtualNodeCount.merge(node.getId(), 1, Integer::sum);
         }
+
+        logger.info("Actual virtual node distribution:");
+        virtualNodeCount.forEach((nodeId, count) ->
+                logger.info("  Node {}: {} virtual nodes", nodeId, count));
     }
 
     // Метод для проверки консистентности кольца
     public boolean validateRingConsistency() {
-        lock.readLock().lock();
+        writeLock.lock();
         try {
-            // Проверяем, что количество виртуальных нод соответствует ожидаемому
-            for (Map.Entry<String, Set<Long>> entry : nodeHashes.entrySet()) {
+            // Проверяем, что количество виртуальных нод соответствует весу ноды
+            for (Map.Entry<String, List<Long>> entry : nodeHashes.entrySet()) {
                 String nodeId = entry.getKey();
-                Set<Long> hashes = entry.getValue();
+                List<Long> hashes = entry.getValue();
+                int expected = tokenCount(members.get(nodeId));
 
-                if (hashes.size() != virtualNodes) {
-                    logger.error("Node {} has {} virtual nodes, expected {}",
-                            nodeId, hashes.size(), virtualNodes);
+                if (hashes.size() != expected) {
+                    logger.error("Node {} has {} virtual nodes, expected {} for weight {}",
+                            nodeId, hashes.size(), expected, members.get(nodeId).getWeight());
                     return false;
                 }
 
@@ -307,9 +675,17 @@ public class ConsistentHashRing {
                 }
             }
 
+            // Опубликованный снимок должен совпадать с кольцом
+            RingSnapshot current = snapshot;
+            if (current.size() != ring.size() || current.members.length != nodeHashes.size()) {
+                logger.error("Published ring snapshot is out of date: {} tokens, expected {}",
+                        current.size(), ring.size());
+                return false;
+            }
+
             return true;
         } finally {
-            lock.readLock().unlock();
+            writeLock.unlock();
         }
     }
 
@@ -331,47 +707,46 @@ public class ConsistentHashRing {
     }
 
     public void debugKeyPlacement(String key, int replicationFactor) {
-        lock.readLock().lock();
-        try {
-            long keyHash = hash(key);
-            System.out.println("=== DEBUG: Key '" + key + "' placement ===");
-            System.out.println("Key hash: " + keyHash);
-
-            // Находим стартовую позицию
-            Map.Entry<Long, Node> startEntry = ring.ceilingEntry(keyHash);
-            if (startEntry == null) {
-                startEntry = ring.firstEntry();
-            }
-
-            System.out.println("Start position: " + startEntry.getKey() + " -> " + startEntry.getValue().getId());
-
-            // Показываем процесс выбора нод
-            List<Map.Entry<Long, Node>> orderedNodes = getOrderedVirtualNodes(startEntry.getKey());
-            Set<String> selectedNodes = new LinkedHashSet<>();
-
-            System.out.println("Walking the ring:");
-            int count = 0;
-            for (Map.Entry<Long, Node> entry : orderedNodes) {
-                String nodeId = entry.getValue().getId();
-                boolean isNew = selectedNodes.add(nodeId);
-
-                System.out.println("  Position " + entry.getKey() + " -> " + nodeId +
-                        (isNew ? " (SELECTED)" : " (duplicate, skipped)"));
+        RingSnapshot current = snapshot;
+        if (current.isEmpty()) {
+            System.out.println("=== DEBUG: ring is empty ===");
+            return;
+        }
 
-                if (isNew) {
-                    count++;
-                    if (count >= replicationFactor) {
-                        System.out.println("  Reached replication factor: " + replicationFactor);
-                        break;
-                    }
+        long keyHash = hash(key);
+        System.out.println("=== DEBUG: Key '" + key + "' placement ===");
+        System.out.println("Key hash: " + keyHash);
+
+        // Находим стартовую позицию
+        int start = current.indexFor(keyHash);
+        System.out.println("Start position: " + current.tokens[start] + " -> " + current.owners[start].getId());
+
+        // Показываем процесс выбора нод
+        Set<String> selectedNodes = new LinkedHashSet<>();
+
+        System.out.println("Walking the ring:");
+        int count = 0;
+        for (int i = 0; i < current.size(); i++) {
+            int index = (start + i) % current.size();
+            String nodeId = current.owners[index].getId();
+            boolean isNew = selectedNodes.add(nodeId);
+
+            System.out.println("  Position " + current.tokens[index] + " -> " + nodeId +
+                    " [zone " + current.owners[index].getZone() + "]" +
+                    (isNew ? " (SELECTED)" : " (duplicate, skipped)"));
+
+            if (isNew) {
+                count++;
+                if (count >= replicationFactor) {
+                    System.out.println("  Reached replication factor: " + replicationFactor);
+                    break;
                 }
             }
-
-            System.out.println("Final selected nodes: " + selectedNodes);
-            System.out.println("===============================");
-
-        } finally {
-            lock.readLock().unlock();
         }
+
+        System.out.println("Final selected nodes: " + selectedNodes);
+        System.out.println("Zone-aware replicas: " +
+                getNodes(key, replicationFactor).stream().map(Node::getId).toList());
+        System.out.println("===============================");
     }
 }
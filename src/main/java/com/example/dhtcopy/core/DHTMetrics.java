@@ -1,6 +1,11 @@
 package com.example.dhtcopy.core;
 
+import com.example.dhtcopy.core.snapshot.SnapshotStore;
+import com.example.dhtcopy.core.storage.BoundedStorageEngine;
+import com.example.dhtcopy.core.storage.LsmStorageEngine;
+import com.example.dhtcopy.core.storage.WriteAheadLog;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
@@ -11,6 +16,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToDoubleFunction;
 
 @Component
 public class DHTMetrics {
@@ -28,6 +35,18 @@ public class DHTMetrics {
 
     private final Map<String, AtomicLong> nodeOperations = new ConcurrentHashMap<>();
 
+    // Источники счетчиков режима bounded loads (задаются при его включении)
+    private volatile LongSupplier boundedLoadLookups = () -> 0;
+    private volatile LongSupplier boundedLoadSpills = () -> 0;
+    // Источники счетчиков кэша маршрутов
+    private volatile LongSupplier routeCacheHits = () -> 0;
+    private volatile LongSupplier routeCacheMisses = () -> 0;
+    // LSM-хранилища нод; gauge читают движок из карты, поэтому нода с тем же id после пересоздания подхватывается
+    private final Map<String, LsmStorageEngine> lsmEngines = new ConcurrentHashMap<>();
+    // Скорость последнего восстановления из снимка по нодам и по всему кластеру, МБ/с
+    private final Map<String, Double> restoreThroughput = new ConcurrentHashMap<>();
+    private volatile double clusterRestoreThroughput;
+
     @Autowired
     public DHTMetrics(MeterRegistry meterRegistry) {
         this.meterRegistry = meterRegistry;
@@ -149,6 +168,288 @@ public class DHTMetrics {
                 .register(meterRegistry);
     }
 
+    // Размер ноды; для хранилища с бюджетом памяти - еще занятые байты, вытеснения и доля попаданий
+    public void registerDataSizeGauge(Node node) {
+        String nodeId = node.getId();
+        registerDataSizeGauge(nodeId, node::getDataSize);
+        if (!(node.getStorageEngine() instanceof BoundedStorageEngine bounded)) {
+            return;
+        }
+        Gauge.builder("dht.node.resident_bytes", bounded, BoundedStorageEngine::getResidentBytes)
+                .tag("node_id", nodeId)
+                .baseUnit("bytes")
+                .description("Bytes of keys and values held within the node memory budget")
+                .register(meterRegistry);
+        Gauge.builder("dht.node.evictions", bounded, BoundedStorageEngine::getEvictionCount)
+                .tag("node_id", nodeId)
+                .description("Keys evicted to stay within the node memory budget")
+                .register(meterRegistry);
+        Gauge.builder("dht.node.hit_ratio", bounded, BoundedStorageEngine::getHitRatio)
+                .tag("node_id", nodeId)
+                .description("Share of node reads that found the key")
+                .register(meterRegistry);
+    }
+
+    // Метрики режима bounded loads: сколько маршрутизаций было и сколько из них ушло дальше по кольцу
+    public void registerBoundedLoadMetrics(LongSupplier lookups, LongSupplier spills) {
+        this.boundedLoadLookups = lookups;
+        this.boundedLoadSpills = spills;
+
+        Gauge.builder("dht.placement.bounded_load.lookups", lookups, LongSupplier::getAsLong)
+                .description("Lookups routed in bounded load mode")
+                .register(meterRegistry);
+        Gauge.builder("dht.placement.bounded_load.spills", spills, LongSupplier::getAsLong)
+                .description("Lookups spilled past an overloaded node")
+                .register(meterRegistry);
+    }
+
+    public long getBoundedLoadLookups() {
+        return boundedLoadLookups.getAsLong();
+    }
+
+    public long getBoundedLoadSpills() {
+        return boundedLoadSpills.getAsLong();
+    }
+
+    // Метрики кэша маршрутов: попадания, промахи и доля попаданий
+    public void registerRouteCacheMetrics(LongSupplier hits, LongSupplier misses) {
+        this.routeCacheHits = hits;
+        this.routeCacheMisses = misses;
+
+        Gauge.builder("dht.placement.route_cache.hits", hits, LongSupplier::getAsLong)
+                .description("Route cache hits")
+                .register(meterRegistry);
+        Gauge.builder("dht.placement.route_cache.misses", misses, LongSupplier::getAsLong)
+                .description("Route cache misses, including invalidation by topology epoch")
+                .register(meterRegistry);
+        Gauge.builder("dht.placement.route_cache.hit_ratio", this, DHTMetrics::getRouteCacheHitRatio)
+                .description("Share of lookups served from the route cache")
+                .register(meterRegistry);
+    }
+
+    public double getRouteCacheHitRatio() {
+        long hits = routeCacheHits.getAsLong();
+        long total = hits + routeCacheMisses.getAsLong();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    // Метрики LSM-хранилища ноды: усиление записи и чтения, объем несжатых данных сверх целей уровней
+    public void registerLsmMetrics(String nodeId, LsmStorageEngine engine) {
+        if (lsmEngines.put(nodeId, engine) != null) {
+            return;
+        }
+        registerLsmGauge(nodeId, "dht.storage.lsm.write_amplification",
+                "Bytes written to disk per byte written by clients", LsmStorageEngine::getWriteAmplification);
+        registerLsmGauge(nodeId, "dht.storage.lsm.read_amplification",
+                "SSTable blocks read per key lookup", LsmStorageEngine::getReadAmplification);
+        registerLsmGauge(nodeId, "dht.storage.lsm.compaction_backlog_bytes",
+                "Bytes above level size targets waiting for compaction", LsmStorageEngine::getCompactionBacklogBytes);
+    }
+
+    public void unregisterLsmMetrics(String nodeId) {
+        lsmEngines.remove(nodeId);
+    }
+
+    public long getLsmCompactionBacklogBytes() {
+        return lsmEngines.values().stream().mapToLong(LsmStorageEngine::getCompactionBacklogBytes).sum();
+    }
+
+    private void registerLsmGauge(String nodeId, String name, String description,
+                                  ToDoubleFunction<LsmStorageEngine> value) {
+        Gauge.builder(name, lsmEngines, engines -> {
+                    LsmStorageEngine engine = engines.get(nodeId);
+                    return engine == null ? 0.0 : value.applyAsDouble(engine);
+                })
+                .tag("node_id", nodeId)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    // Гистограммы журнала предзаписи: длительность fsync и сколько записей покрыл один fsync
+    public void registerWalMetrics(String nodeId, WriteAheadLog wal) {
+        Timer fsyncLatency = Timer.builder("dht.wal.fsync.latency")
+                .tag("node_id", nodeId)
+                .description("WAL fsync latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        DistributionSummary batchSize = DistributionSummary.builder("dht.wal.batch.size")
+                .tag("node_id", nodeId)
+                .description("WAL records made durable by one fsync")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        wal.setSyncListener((latencyNanos, records) -> {
+            fsyncLatency.record(latencyNanos, java.util.concurrent.TimeUnit.NANOSECONDS);
+            batchSize.record(records);
+        });
+    }
+
+    // Истечение TTL: число удаленных ключей и задержка удаления после срока (точность - тик колеса)
+    public void registerExpiryMetrics(Node node) {
+        Counter expired = Counter.builder("dht.ttl.expired")
+                .tag("node_id", node.getId())
+                .description("Keys reclaimed after their TTL ran out")
+                .register(meterRegistry);
+        Timer lag = Timer.builder("dht.ttl.expiry.lag")
+                .tag("node_id", node.getId())
+                .description("Delay between key expiry and its removal from storage")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        node.setExpiryListener((key, lagMillis) -> {
+            expired.increment();
+            lag.record(lagMillis, java.util.concurrent.TimeUnit.MILLISECONDS);
+        });
+    }
+
+    // Сжатие значений: время сжатия на координаторе, сэкономленные байты и время распаковки по нодам
+    public void recordCompression(String codec, long nanos) {
+        Timer.builder("dht.compression.compress.time")
+                .tag("codec", codec)
+                .description("CPU time spent compressing values at the coordinator")
+                .register(meterRegistry)
+                .record(nanos, java.util.concurrent.TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCompressionSaved(String nodeId, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        Counter.builder("dht.compression.saved_bytes")
+                .tag("node_id", nodeId)
+                .baseUnit("bytes")
+                .description("Bytes not written to node storage thanks to value compression")
+                .register(meterRegistry)
+                .increment(bytes);
+    }
+
+    public void recordDecompression(String nodeId, long nanos) {
+        Timer.builder("dht.compression.decompress.time")
+                .tag("node_id", nodeId)
+                .description("CPU time spent decompressing values read from the node")
+                .register(meterRegistry)
+                .record(nanos, java.util.concurrent.TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSnapshot(SnapshotStore.SnapshotResult result) {
+        if (result.entries() == 0 && !result.full()) {
+            return;
+        }
+        String type = result.full() ? "base" : "delta";
+        Timer.builder("dht.snapshot.duration")
+                .tag("type", type)
+                .description("Time to write a node snapshot")
+                .register(meterRegistry)
+                .record(result.nanos(), java.util.concurrent.TimeUnit.NANOSECONDS);
+        Counter.builder("dht.snapshot.bytes")
+                .tag("type", type)
+                .description("Bytes written to node snapshots")
+                .register(meterRegistry)
+                .increment(result.bytes());
+    }
+
+    public void recordSnapshotRestore(SnapshotStore.RestoreResult result) {
+        String nodeId = result.nodeId();
+        if (restoreThroughput.put(nodeId, result.throughputMbPerSecond()) == null) {
+            Gauge.builder("dht.snapshot.restore.throughput", restoreThroughput, map -> map.getOrDefault(nodeId, 0.0))
+                    .tag("node_id", nodeId)
+                    .baseUnit("MB/s")
+                    .description("Snapshot restore throughput of the node at startup")
+                    .register(meterRegistry);
+        }
+    }
+
+    // Суммарная скорость параллельного восстановления всех нод при старте
+    public void recordClusterRestore(long bytes, long nanos) {
+        clusterRestoreThroughput = nanos == 0 ? 0.0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+        Gauge.builder("dht.snapshot.restore.cluster_throughput", this, DHTMetrics::getClusterRestoreThroughput)
+                .baseUnit("MB/s")
+                .description("Combined snapshot restore throughput of all nodes at startup")
+                .register(meterRegistry);
+    }
+
+    public Map<String, Double> getRestoreThroughput() {
+        return new HashMap<>(restoreThroughput);
+    }
+
+    public double getClusterRestoreThroughput() {
+        return clusterRestoreThroughput;
+    }
+
+    // Перенос данных при входе и уходе нод: длительность, объем и доля от хранимых копий ключей
+    public void recordRebalance(DistributedHashTable.RebalanceResult result) {
+        Timer.builder("dht.rebalance.duration")
+                .tag("type", result.type())
+                .description("Time to move data after a membership change")
+                .register(meterRegistry)
+                .record(result.nanos(), java.util.concurrent.TimeUnit.NANOSECONDS);
+        Counter.builder("dht.rebalance.bytes")
+                .tag("type", result.type())
+                .baseUnit("bytes")
+                .description("Key and value bytes moved between nodes")
+                .register(meterRegistry)
+                .increment(result.bytesMoved());
+        DistributionSummary.builder("dht.rebalance.moved_fraction")
+                .tag("type", result.type())
+                .description("Moved keys as a fraction of stored key copies")
+                .register(meterRegistry)
+                .record(result.movedFraction());
+    }
+
+    // Доля бюджета переноса, оставленная клиентской задержкой, и очередь порций переноса
+    public void registerMovementMetrics(MovementScheduler movement) {
+        Gauge.builder("dht.movement.rate_factor", movement, MovementScheduler::getRateFactor)
+                .description("Fraction of the data movement budget currently allowed")
+                .register(meterRegistry);
+        Gauge.builder("dht.movement.queued", movement, MovementScheduler::getQueuedTasks)
+                .description("Data movement work items waiting for a worker")
+                .register(meterRegistry);
+    }
+
+    // Чтения со сверкой реплик по дайджестам и найденные в них расхождения
+    public void recordReadRepairCheck(boolean mismatch) {
+        Counter.builder("dht.read_repair.checks")
+                .description("Reads that compared replica digests")
+                .register(meterRegistry)
+                .increment();
+        if (mismatch) {
+            Counter.builder("dht.read_repair.mismatches")
+                    .description("Digest reads that found divergent replicas")
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    public void recordReadRepairWrites(int replicas) {
+        Counter.builder("dht.read_repair.repaired")
+                .description("Stale replica copies rewritten or removed by read repair")
+                .register(meterRegistry)
+                .increment(replicas);
+    }
+
+    // Проход anti-entropy: расхождение реплик, объем обмена хэшами и починенные ключи
+    public void recordAntiEntropy(DistributedHashTable.AntiEntropyResult result) {
+        Timer.builder("dht.antientropy.duration")
+                .description("Time to compare and repair replicas of all ranges")
+                .register(meterRegistry)
+                .record(result.nanos(), java.util.concurrent.TimeUnit.NANOSECONDS);
+        Counter.builder("dht.antientropy.divergent_leaves")
+                .description("Hash tree leaves that differed between replicas")
+                .register(meterRegistry)
+                .increment(result.leavesDivergent());
+        Counter.builder("dht.antientropy.hashes_compared")
+                .description("Tree node hashes exchanged to find divergent leaves")
+                .register(meterRegistry)
+                .increment(result.hashesCompared());
+        Counter.builder("dht.antientropy.keys_repaired")
+                .description("Replica copies rewritten or removed by anti-entropy")
+                .register(meterRegistry)
+                .increment(result.keysRepaired());
+        Counter.builder("dht.antientropy.bytes_repaired")
+                .baseUnit("bytes")
+                .description("Key and value bytes written by anti-entropy")
+                .register(meterRegistry)
+                .increment(result.bytesRepaired());
+    }
+
     // Метод для системных метрик
     public void registerSystemMetrics() {
         // Общее количество нод
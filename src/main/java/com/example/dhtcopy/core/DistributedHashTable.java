@@ -1,60 +1,245 @@
 package com.example.dhtcopy.core;
 
+import com.example.dhtcopy.core.compression.ValueCodec;
+import com.example.dhtcopy.core.storage.BoundedStorageEngine;
+import com.example.dhtcopy.core.storage.LsmStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngine;
 import com.example.dhtcopy.service.ReplicationService;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
 public class DistributedHashTable {
     private static final Logger logger = LoggerFactory.getLogger(DistributedHashTable.class);
 
-    private final ConsistentHashRing hashRing;
+    public static final int DEFAULT_SCAN_LIMIT = 100;
+    public static final int MAX_SCAN_LIMIT = 1000;
+    // Столько записей за раз запрашивается у каждой ноды при скане
+    static final int SCAN_BATCH_SIZE = 256;
+    // Перенос данных маршрутизирует ключи пачками такого размера, не копируя хранилище ноды целиком
+    public static final int TRANSFER_CHUNK_SIZE = 1024;
+    public static final int DEFAULT_DECOMMISSION_WORKERS = 4;
+    // Столько живет надгробие удаленного ключа: сверка реплик, не заставшая удаление за это время, вернет ключ
+    public static final long TOMBSTONE_GRACE_MS = 10 * 60 * 1000;
+    private static final int TOMBSTONE_PURGE_EVERY = 4096;
+
+    private final PlacementStrategy hashRing;
     private final ReplicationService replicationService;
     private final DHTMetrics metrics;
     private final int replicationFactor;
+    // Сжатие значений: один раз на координаторе, реплики хранят и передают сжатую форму
+    private final ValueCodec valueCodec;
+    // Версии значений для сверки реплик по последней записи
+    private final ValueVersion.Clock versionClock = new ValueVersion.Clock();
+    // Версии удалений: отсутствие ключа на реплике считается удалением, только если есть надгробие новее копий
+    private final Map<String, Long> tombstones = new ConcurrentHashMap<>();
+    private final AtomicLong removals = new AtomicLong();
     private final ExecutorService executorService;
+    // Перенос данных идет на своем ограниченном пуле с бюджетом скорости, не отнимая потоки у клиентских операций
+    private final MovementScheduler movement = new MovementScheduler();
     private final Map<String, CompletableFuture<Void>> rebalancingTasks = new ConcurrentHashMap<>();
+    private volatile RebalanceResult lastRebalance;
+    private volatile int decommissionWorkers = DEFAULT_DECOMMISSION_WORKERS;
+    private volatile int decommissionBatchSize = TRANSFER_CHUNK_SIZE;
+    // Ноды, которые сейчас отдают свои отрезки: запись в эти отрезки дублируется на будущих владельцев
+    private final Map<String, Decommission> decommissions = new ConcurrentHashMap<>();
+    // Ход вывода нод, включая завершенные
+    private final Map<String, Decommission> decommissionHistory = new ConcurrentHashMap<>();
+    // Отрезки, которые сейчас переносятся: клиентские записи и удаления в них отмечаются, чтобы перенос их не перетер
+    private final Set<TransferGuard> transferGuards = ConcurrentHashMap.newKeySet();
+    // Изменения состава идут по одному: следующее ждет, пока предыдущее закончит перенос
+    private final Semaphore topologyPermit = new Semaphore(1, true);
+    // Листьев на отрезок в деревьях хэшей нод; 0 - anti-entropy выключена
+    private volatile int merkleLeaves;
+    private final Object antiEntropyLock = new Object();
+    // Доля чтений, сверяющих реплики по дайджестам (dht.read-repair.chance)
+    private volatile double readRepairChance;
+
+    /**
+     * Итог переноса данных при изменении состава: сколько ключей и байт переехало
+     * относительно числа хранимых копий ключей в кластере на момент начала.
+     */
+    public record RebalanceResult(String nodeId, String type, long keysMoved, long bytesMoved, long storedKeys, long nanos) {
+        public static final String JOIN = "join";
+        public static final String DECOMMISSION = "decommission";
+        // Типы задач переноса без итога перебалансировки: уменьшение веса и перенос с отказавшей ноды
+        public static final String HAND_OFF = "hand-off";
+        public static final String REDISTRIBUTE = "redistribute";
+
+        public double movedFraction() {
+            return storedKeys == 0 ? 0.0 : (double) keysMoved / storedKeys;
+        }
+    }
 
     @Autowired
     public DistributedHashTable(
-            ConsistentHashRing hashRing,
+            PlacementStrategy hashRing,
             ReplicationService replicationService,
             DHTMetrics metrics,
+            ValueCodec valueCodec,
             @Value("${dht.replication-factor:3}") int replicationFactor) {
         this.hashRing = hashRing;
         this.replicationService = replicationService;
         this.metrics = metrics;
+        this.valueCodec = valueCodec;
         this.replicationFactor = replicationFactor;
         this.executorService = Executors.newCachedThreadPool();
+        metrics.registerMovementMetrics(movement);
     }
 
     public void addNode(Node node) {
+        addNode(node, true);
+    }
+
+    /**
+     * rebalance = false - нода входит в кольцо без переноса данных: так добавляются ноды,
+     * уже восстановившие свои ключи из снимков и журналов при старте кластера.
+     */
+    public void addNode(Node node, boolean rebalance) {
+        topologyPermit.acquireUninterruptibly();
+        try {
+            addNodeHoldingPermit(node, rebalance);
+        } catch (RuntimeException e) {
+            topologyPermit.release();
+            throw e;
+        }
+    }
+
+    private void addNodeHoldingPermit(Node node, boolean rebalance) {
         logger.info("Adding node: {}", node.getHost());
+        // Дерево включается до переноса, чтобы принятые отрезки сразу в него попали
+        if (merkleLeaves > 0) {
+            node.enableMerkleIndex(hashRing::token, merkleLeaves);
+        }
 
-        // Сначала добавляем ноду в кольцо
-        hashRing.addNode(node);
+        // Сначала добавляем ноду в кольцо; разница топологий - отрезки, которые она забирает
+        List<RangeTransfer> transfers;
+        if (rebalance) {
+            transfers = hashRing.addNodeWithTransfers(node, replicationFactor);
+        } else {
+            hashRing.addNode(node);
+            transfers = List.of();
+        }
+        // Отметки клиентов собираются с момента смены кольца, а не с начала переноса
+        TransferGuard guard = guardTransfers(transfers);
+        StorageEngine engine = node.getStorageEngine() instanceof BoundedStorageEngine bounded
+                ? bounded.getDelegate() : node.getStorageEngine();
+        if (engine instanceof LsmStorageEngine lsm) {
+            metrics.registerLsmMetrics(node.getId(), lsm);
+        }
+        if (node.getWriteAheadLog() != null) {
+            metrics.registerWalMetrics(node.getId(), node.getWriteAheadLog());
+        }
+        metrics.registerExpiryMetrics(node);
+        metrics.registerDataSizeGauge(node);
+        metrics.recordNodeAddition();
+        if (!rebalance) {
+            topologyPermit.release();
+            return;
+        }
 
         // Затем выполняем перебалансировку
-        CompletableFuture<Void> rebalanceTask = CompletableFuture.runAsync(() -> {
-            rebalanceAfterAddition(node);
-        }, executorService);
+        CompletableFuture<Void> rebalanceTask = movement.start(() -> {
+            rebalanceAfterAddition(node, transfers, guard);
+        });
 
         rebalancingTasks.put(node.getId(), rebalanceTask);
-        metrics.recordNodeAddition();
+        // Задача могла завершиться (в том числе с ошибкой) еще до регистрации
+        rebalanceTask.whenComplete((result, error) -> {
+            if (error != null) {
+                logger.error("Rebalancing after adding node {} failed: {}", node.getId(), error.getMessage());
+            }
+            transferGuards.remove(guard);
+            rebalancingTasks.remove(node.getId(), rebalanceTask);
+            topologyPermit.release();
+        });
+    }
+
+    // Меняет вес ноды на лету: кольцо перестраивает только сегменты ее хвостовых токенов,
+    // а данные переносятся лишь для ключей, у которых сменился владелец
+    public boolean updateNodeWeight(String nodeId, double weight) {
+        topologyPermit.acquireUninterruptibly();
+        try {
+            return updateNodeWeightHoldingPermit(nodeId, weight);
+        } catch (RuntimeException e) {
+            topologyPermit.release();
+            throw e;
+        }
+    }
+
+    // Разрешение возвращается, когда закончен перенос, или сразу, если переносить нечего
+    private boolean updateNodeWeightHoldingPermit(String nodeId, double weight) {
+        Node node = hashRing.getAllNodes().stream()
+                .filter(n -> n.getId().equals(nodeId))
+                .findFirst()
+                .orElse(null);
+
+        if (node == null) {
+            logger.warn("Node {} not found", nodeId);
+            topologyPermit.release();
+            return false;
+        }
+
+        double previousWeight = node.getWeight();
+        // Кольцо отдает только отрезки, состав реплик которых изменился
+        List<RangeTransfer> transfers = hashRing.updateWeightWithTransfers(node, weight, replicationFactor);
+        if (previousWeight == node.getWeight()) {
+            topologyPermit.release();
+            return true;
+        }
+        logger.info("Changing weight of node {} from {} to {}", nodeId, previousWeight, weight);
+        TransferGuard guard = guardTransfers(transfers);
+
+        // Нода получила новые диапазоны - забираем их ключи у прежних владельцев, иначе отдаем лишние
+        CompletableFuture<Void> rebalanceTask = weight > previousWeight
+                ? movement.start(() -> rebalanceAfterAddition(node, transfers, guard))
+                : movement.start(() -> handOffDisplacedKeys(node));
+
+        rebalancingTasks.put(nodeId, rebalanceTask);
+        rebalanceTask.whenComplete((result, error) -> {
+            if (error != null) {
+                logger.error("Rebalancing after weight change of node {} failed: {}", nodeId, error.getMessage());
+            }
+            transferGuards.remove(guard);
+            rebalancingTasks.remove(nodeId, rebalanceTask);
+            topologyPermit.release();
+        });
+        return true;
     }
 
+    /**
+     * Удаление идет в фоне: живая нода сначала передает свои отрезки (ход - getDecommissionProgress),
+     * с отказавшей данные перераспределяются. true - нода найдена и удаление начато.
+     */
     public boolean removeNode(String nodeId) {
+        topologyPermit.acquireUninterruptibly();
+        try {
+            return removeNodeHoldingPermit(nodeId);
+        } catch (RuntimeException e) {
+            topologyPermit.release();
+            throw e;
+        }
+    }
+
+    private boolean removeNodeHoldingPermit(String nodeId) {
         logger.info("Removing node: {}", nodeId);
 
         Node nodeToRemove = hashRing.getAllNodes().stream()
@@ -64,37 +249,77 @@ public class DistributedHashTable {
 
         if (nodeToRemove == null) {
             logger.warn("Node {} not found", nodeId);
+            topologyPermit.release();
             return false;
         }
 
-        Map<String, String> dataToRedistribute = new HashMap<>(nodeToRemove.getAllData());
+        // Живая нода отдает отрезки до выхода из кольца; отказавшая уже вне маршрутов,
+        // и ее данные перераспределяются маршрутизацией
+        if (nodeToRemove.isActive() && hashRing.supportsRangeTransfers()) {
+            return decommission(nodeToRemove);
+        }
 
         nodeToRemove.setActive(false);
         boolean removed = hashRing.removeNode(nodeId);
+        metrics.unregisterLsmMetrics(nodeId);
 
-        if (removed && !dataToRedistribute.isEmpty()) {
+        if (removed && nodeToRemove.getDataSize() > 0) {
             // ВАЖНО: проверяем, есть ли другие активные ноды
             List<Node> remainingActiveNodes = hashRing.getAllNodes().stream()
                     .filter(Node::isActive)
                     .toList();
 
             if (!remainingActiveNodes.isEmpty()) {
-                CompletableFuture.runAsync(() -> {
-                    redistributeData(dataToRedistribute);
-                }, executorService);
+                // Данные читаются из хранилища ноды по ходу переноса; память, файлы движка
+                // и журнал освобождаются, когда перенос закончен
+                CompletableFuture<Void> redistribution = movement.start(() -> redistributeData(nodeToRemove));
+                rebalancingTasks.put(nodeId, redistribution);
+                redistribution.whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Redistribution from node {} failed: {}", nodeId, error.getMessage());
+                    }
+                    rebalancingTasks.remove(nodeId, redistribution);
+                    nodeToRemove.close();
+                    topologyPermit.release();
+                });
             } else {
                 logger.warn("No remaining active nodes to redistribute data from {}", nodeId);
+                nodeToRemove.close();
+                topologyPermit.release();
             }
 
             metrics.recordNodeRemoval();
+        } else {
+            nodeToRemove.close();
+            topologyPermit.release();
         }
 
         return removed;
     }
 
 
+    // Строковый API - обертка над байтовым, значения кодируются в UTF-8
     public void put(String key, String value) {
+        putBytes(key, Node.encode(value));
+    }
+
+    public void put(String key, String value, Duration ttl) {
+        putBytes(key, Node.encode(value), ttl);
+    }
+
+    public String get(String key) {
+        return Node.decode(getBytes(key));
+    }
+
+    public void putBytes(String key, byte[] value) {
+        putBytes(key, value, null);
+    }
+
+    // ttl == null - ключ бессрочный; срок переводится в абсолютный здесь, чтобы реплики истекли одновременно
+    public void putBytes(String key, byte[] value, Duration ttl) {
         long startTime = System.currentTimeMillis();
+        long expiresAt = expiresAt(ttl, startTime);
+        byte[] stored = encode(value);
 
         try {
             List<Node> nodes = hashRing.getNodes(key, replicationFactor);
@@ -112,14 +337,16 @@ public class DistributedHashTable {
 
             logger.debug("Storing key '{}' on {} nodes: {}", key, targetNodes.size(),
                     targetNodes.stream().map(Node::getId).collect(Collectors.toList()));
+            touchTransfers(key);
 
             List<CompletableFuture<Boolean>> futures = new ArrayList<>();
 
             for (Node node : targetNodes) {
                 CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
                     try {
-                        node.put(key, value);
+                        node.putBytes(key, stored, expiresAt);
                         metrics.recordNodeOperation(node.getId());
+                        metrics.recordCompressionSaved(node.getId(), value.length - stored.length + ValueVersion.HEADER_SIZE);
                         return true;
                     } catch (Exception e) {
                         logger.error("Failed to store key {} on node {}: {}", key, node.getId(), e.getMessage());
@@ -150,9 +377,11 @@ public class DistributedHashTable {
                 metrics.recordFailedOperation();
                 throw new RuntimeException("Failed to achieve write quorum");
             }
+            writePending(key, stored, expiresAt, targetNodes);
 
             long latency = System.currentTimeMillis() - startTime;
             metrics.recordWriteOperation(latency);
+            movement.recordForegroundLatency(latency);
 
         } catch (Exception e) {
             metrics.recordFailedOperation();
@@ -160,7 +389,7 @@ public class DistributedHashTable {
         }
     }
 
-    public String get(String key) {
+    public byte[] getBytes(String key) {
         long startTime = System.currentTimeMillis();
 
         try {
@@ -170,24 +399,148 @@ public class DistributedHashTable {
                 return null;
             }
 
-            // Try to read from nodes in order of preference
-            for (Node node : nodes) {
-                try {
-                    String value = node.get(key);
+            // Try to read from nodes in order of preference; часть чтений сверяет реплики по дайджестам
+            double chance = readRepairChance;
+            byte[] value = chance > 0 && ThreadLocalRandom.current().nextDouble() < chance
+                    ? readWithRepair(key, nodes)
+                    : readFirst(key, nodes, List.of());
+            if (value == null) {
+                // Ключ мог остаться на естественных владельцах (режим bounded loads)
+                value = readFirst(key, hashRing.getFallbackNodes(key, replicationFactor), nodes);
+            }
+
+            long latency = System.currentTimeMillis() - startTime;
+            metrics.recordReadOperation(latency);
+            movement.recordForegroundLatency(latency);
+            return value;
+
+        } catch (Exception e) {
+            metrics.recordFailedOperation();
+            throw e;
+        }
+    }
+
+    // Пакетная запись: ключи группируются по списку реплик, и каждая нода получает
+    // одну задачу на группу вместо задачи на ключ. Кворум проверяется для каждой группы.
+    public void putAll(Map<String, String> entries) {
+        putAll(entries, null);
+    }
+
+    // Один TTL на весь пакет
+    public void putAll(Map<String, String> entries, Duration ttl) {
+        Map<String, byte[]> encoded = new LinkedHashMap<>();
+        entries.forEach((key, value) -> encoded.put(key, Node.encode(value)));
+        putAllBytes(encoded, ttl);
+    }
+
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> decoded = new HashMap<>();
+        getAllBytes(keys).forEach((key, value) -> decoded.put(key, Node.decode(value)));
+        return decoded;
+    }
+
+    public void putAllBytes(Map<String, byte[]> entries) {
+        putAllBytes(entries, null);
+    }
+
+    public void putAllBytes(Map<String, byte[]> entries, Duration ttl) {
+        long startTime = System.currentTimeMillis();
+        long expiresAt = expiresAt(ttl, startTime);
+        Map<String, byte[]> stored = new HashMap<>();
+        entries.forEach((key, value) -> stored.put(key, encode(value)));
+
+        try {
+            Map<List<Node>, List<String>> groups = hashRing.routeBatch(entries.keySet(), replicationFactor);
+
+            for (Map.Entry<List<Node>, List<String>> group : groups.entrySet()) {
+                List<Node> targetNodes = group.getKey();
+                List<String> keys = group.getValue();
+                if (targetNodes.isEmpty()) {
+                    throw new IllegalStateException("No active nodes available");
+                }
+                keys.forEach(this::touchTransfers);
+
+                List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+                for (Node node : targetNodes) {
+                    futures.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            for (String key : keys) {
+                                byte[] value = stored.get(key);
+                                node.putBytes(key, value, expiresAt);
+                                metrics.recordNodeOperation(node.getId());
+                                metrics.recordCompressionSaved(node.getId(),
+                                        entries.get(key).length - value.length + ValueVersion.HEADER_SIZE);
+                            }
+                            return true;
+                        } catch (Exception e) {
+                            logger.error("Failed to store batch of {} keys on node {}: {}",
+                                    keys.size(), node.getId(), e.getMessage());
+                            return false;
+                        }
+                    }, executorService));
+                }
+
+                int requiredSuccess = Math.min((targetNodes.size() / 2) + 1, targetNodes.size());
+                int successCount = 0;
+                for (CompletableFuture<Boolean> future : futures) {
+                    try {
+                        if (future.get(5, TimeUnit.SECONDS)) {
+                            successCount++;
+                            if (successCount >= requiredSuccess) {
+                                break;
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.error("Batch write operation failed: {}", e.getMessage());
+                    }
+                }
+
+                if (successCount < requiredSuccess) {
+                    throw new RuntimeException("Failed to achieve write quorum for " + keys.size() + " keys");
+                }
+                for (String key : keys) {
+                    writePending(key, stored.get(key), expiresAt, targetNodes);
+                }
+            }
+
+            long latency = System.currentTimeMillis() - startTime;
+            for (int i = 0; i < entries.size(); i++) {
+                metrics.recordWriteOperation(latency);
+            }
+            movement.recordForegroundLatency(latency);
+
+        } catch (Exception e) {
+            metrics.recordFailedOperation();
+            throw e;
+        }
+    }
+
+    // Пакетное чтение: маршрутизация всей пачки за один проход по кольцу
+    public Map<String, byte[]> getAllBytes(Collection<String> keys) {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            Map<String, byte[]> result = new HashMap<>();
+            Map<List<Node>, List<String>> groups = hashRing.routeBatch(keys, replicationFactor);
+
+            for (Map.Entry<List<Node>, List<String>> group : groups.entrySet()) {
+                for (String key : group.getValue()) {
+                    byte[] value = readFirst(key, group.getKey(), List.of());
+                    if (value == null) {
+                        value = readFirst(key, hashRing.getFallbackNodes(key, replicationFactor), group.getKey());
+                    }
                     if (value != null) {
-                        metrics.recordNodeOperation(node.getId());
-                        long latency = System.currentTimeMillis() - startTime;
-                        metrics.recordReadOperation(latency);
-                        return value;
+                        result.put(key, value);
                     }
-                } catch (Exception e) {
-                    logger.error("Failed to read key {} from node {}: {}", key, node.getId(), e.getMessage());
                 }
             }
 
             long latency = System.currentTimeMillis() - startTime;
-            metrics.recordReadOperation(latency);
-            return null;
+            for (int i = 0; i < keys.size(); i++) {
+                metrics.recordReadOperation(latency);
+            }
+            movement.recordForegroundLatency(latency);
+            return result;
 
         } catch (Exception e) {
             metrics.recordFailedOperation();
@@ -195,9 +548,290 @@ public class DistributedHashTable {
         }
     }
 
+    private byte[] readFirst(String key, List<Node> nodes, List<Node> alreadyTried) {
+        for (Node node : nodes) {
+            if (alreadyTried.contains(node)) {
+                continue;
+            }
+            try {
+                byte[] value = node.getBytes(key);
+                if (value != null) {
+                    metrics.recordNodeOperation(node.getId());
+                    return decode(node, value);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to read key {} from node {}: {}", key, node.getId(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Чтение с проверкой реплик: значение читается с первой реплики, с остальных параллельно -
+     * только дайджесты. При расхождении значения дочитываются с разошедшихся реплик и побеждает
+     * последняя запись по правилу anti-entropy: отсутствие ключа без надгробия не считается удалением.
+     * Клиент получает победившее значение, а отставшие реплики перезаписываются асинхронно
+     * в полосе REPAIR планировщика переноса.
+     */
+    private byte[] readWithRepair(String key, List<Node> nodes) {
+        List<CompletableFuture<Long>> digestReads = new ArrayList<>(nodes.size() - 1);
+        for (Node node : nodes.subList(1, nodes.size())) {
+            digestReads.add(CompletableFuture.supplyAsync(() -> node.getDigest(key), executorService));
+        }
+        Node first = nodes.get(0);
+        byte[] data;
+        try {
+            data = first.getBytes(key);
+        } catch (Exception e) {
+            // Без значения первой реплики сверять не с чем - обычное чтение с остальных
+            logger.error("Failed to read key {} from node {}: {}", key, first.getId(), e.getMessage());
+            return readFirst(key, nodes, List.of(first));
+        }
+        Long dataDigest = data == null ? null : MerkleIndex.entryHash(key, data);
+
+        List<Node> replicas = new ArrayList<>(nodes.size());
+        List<byte[]> values = new ArrayList<>(nodes.size());
+        replicas.add(first);
+        values.add(data);
+        List<Node> divergent = new ArrayList<>();
+        for (int i = 0; i < digestReads.size(); i++) {
+            Node node = nodes.get(i + 1);
+            try {
+                Long digest = digestReads.get(i).join();
+                if (Objects.equals(digest, dataDigest)) {
+                    replicas.add(node);
+                    values.add(data);
+                } else {
+                    divergent.add(node);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to read digest of key {} from node {}: {}", key, node.getId(), e.getMessage());
+            }
+        }
+        metrics.recordReadRepairCheck(!divergent.isEmpty());
+        if (divergent.isEmpty()) {
+            if (data == null) {
+                return null;
+            }
+            metrics.recordNodeOperation(first.getId());
+            return decode(first, data);
+        }
+
+        for (Node node : divergent) {
+            try {
+                values.add(node.getBytes(key));
+                replicas.add(node);
+            } catch (Exception e) {
+                logger.error("Failed to read key {} from node {}: {}", key, node.getId(), e.getMessage());
+            }
+        }
+        int winner = ValueVersion.newest(values);
+        byte[] value = winner < 0 || isDeletedAfter(key, values.get(winner)) ? null : values.get(winner);
+        Node source = winner < 0 ? first : replicas.get(winner);
+        if (values.stream().anyMatch(current -> !Arrays.equals(current, value))) {
+            scheduleReadRepair(key, value, source, replicas, values);
+        }
+        if (value == null) {
+            return null;
+        }
+        metrics.recordNodeOperation(source.getId());
+        return decode(source, value);
+    }
+
+    private void scheduleReadRepair(String key, byte[] value, Node source, List<Node> replicas, List<byte[]> values) {
+        long expiresAt = value == null ? Node.NO_EXPIRY : source.getExpiresAt(key);
+        movement.submit(MovementScheduler.Lane.REPAIR, () -> {
+            int repaired = 0;
+            for (int i = 0; i < replicas.size(); i++) {
+                if (Arrays.equals(values.get(i), value)) {
+                    continue;
+                }
+                Node replica = replicas.get(i);
+                try {
+                    // Реплика успела получить новую запись - ее не трогаем
+                    if (!Arrays.equals(replica.getBytes(key), values.get(i))) {
+                        continue;
+                    }
+                    if (value == null) {
+                        replica.removeBytes(key);
+                    } else {
+                        replica.putBytes(key, value, expiresAt);
+                    }
+                    repaired++;
+                } catch (Exception e) {
+                    logger.error("Read repair of key {} on node {} failed: {}", key, replica.getId(), e.getMessage());
+                }
+            }
+            metrics.recordReadRepairWrites(repaired);
+        });
+    }
+
+    /**
+     * Страница скана: записи по возрастанию ключа и курсор следующей страницы
+     * (null - диапазон исчерпан).
+     */
+    public record ScanPage(List<Map.Entry<String, byte[]>> entries, String nextCursor) {
+    }
+
+    /**
+     * Упорядоченный скан кластера: ключи с префиксом prefix, начиная с from, продолжая после cursor
+     * (любой из параметров может быть null). Каждая нода отдает свой диапазон пачками,
+     * координатор сливает их k-way слиянием и убирает дубликаты реплик, так что память
+     * координатора - O(нод * пачка) независимо от размера результата.
+     */
+    public ScanPage scan(String prefix, String from, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Scan limit must be positive: " + limit);
+        }
+        limit = Math.min(limit, MAX_SCAN_LIMIT);
+        String lower = prefix == null ? "" : prefix;
+        if (from != null && from.compareTo(lower) > 0) {
+            lower = from;
+        }
+        if (cursor != null) {
+            // Курсор - последний выданный ключ; следующая страница начинается строго после него
+            String after = decodeCursor(cursor) + '\0';
+            if (after.compareTo(lower) > 0) {
+                lower = after;
+            }
+        }
+        String upper = prefix == null ? null : prefixEnd(prefix);
+
+        long startTime = System.currentTimeMillis();
+        Iterator<Map.Entry<String, byte[]>> merged = scanBytes(lower, upper);
+        List<Map.Entry<String, byte[]>> entries = new ArrayList<>(Math.min(limit, SCAN_BATCH_SIZE));
+        while (entries.size() < limit && merged.hasNext()) {
+            entries.add(merged.next());
+        }
+        String nextCursor = entries.size() == limit && merged.hasNext()
+                ? encodeCursor(entries.get(entries.size() - 1).getKey())
+                : null;
+        metrics.recordReadOperation(System.currentTimeMillis() - startTime);
+        return new ScanPage(entries, nextCursor);
+    }
+
+    /**
+     * Ленивый упорядоченный обход ключей [fromInclusive, toExclusive) по всем активным нодам
+     * (toExclusive == null - до конца). Значения распакованы; для ключа, лежащего на нескольких
+     * репликах, выдается одна запись. Нода, отказавшая во время скана, пропускается -
+     * ее ключи покрывают остальные реплики.
+     */
+    public Iterator<Map.Entry<String, byte[]>> scanBytes(String fromInclusive, String toExclusive) {
+        PriorityQueue<NodeCursor> heads = new PriorityQueue<>();
+        List<Node> nodes = hashRing.getAllNodes();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (node.isActive()) {
+                NodeCursor nodeCursor = new NodeCursor(node, i, fromInclusive, toExclusive);
+                if (nodeCursor.advance()) {
+                    heads.add(nodeCursor);
+                }
+            }
+        }
+
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public Map.Entry<String, byte[]> next() {
+                NodeCursor head = heads.poll();
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, byte[]> entry = head.current;
+                // Тот же ключ на других репликах пропускается
+                while (!heads.isEmpty() && heads.peek().current.getKey().equals(entry.getKey())) {
+                    NodeCursor duplicate = heads.poll();
+                    if (duplicate.advance()) {
+                        heads.add(duplicate);
+                    }
+                }
+                if (head.advance()) {
+                    heads.add(head);
+                }
+                return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), decode(head.node, entry.getValue()));
+            }
+        };
+    }
+
+    // Позиция скана на одной ноде: текущая запись и остаток последней пачки
+    private final class NodeCursor implements Comparable<NodeCursor> {
+        private final Node node;
+        private final int order;
+        private final String toExclusive;
+        private String from;
+        private Iterator<Map.Entry<String, byte[]>> batch = Collections.emptyIterator();
+        private boolean exhausted;
+        private Map.Entry<String, byte[]> current;
+
+        NodeCursor(Node node, int order, String fromInclusive, String toExclusive) {
+            this.node = node;
+            this.order = order;
+            this.from = fromInclusive;
+            this.toExclusive = toExclusive;
+        }
+
+        boolean advance() {
+            if (!batch.hasNext() && !exhausted) {
+                try {
+                    List<Map.Entry<String, byte[]>> next = node.scanBytes(from, toExclusive, SCAN_BATCH_SIZE);
+                    metrics.recordNodeOperation(node.getId());
+                    exhausted = next.size() < SCAN_BATCH_SIZE;
+                    if (!next.isEmpty()) {
+                        from = next.get(next.size() - 1).getKey() + '\0';
+                    }
+                    batch = next.iterator();
+                } catch (Exception e) {
+                    logger.error("Failed to scan node {}: {}", node.getId(), e.getMessage());
+                    exhausted = true;
+                }
+            }
+            current = batch.hasNext() ? batch.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public int compareTo(NodeCursor other) {
+            int byKey = current.getKey().compareTo(other.current.getKey());
+            return byKey != 0 ? byKey : Integer.compare(order, other.order);
+        }
+    }
+
+    // Наименьшая строка больше всех строк с префиксом; null - такой нет
+    static String prefixEnd(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    private static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid scan cursor: " + cursor, e);
+        }
+    }
+
     public boolean remove(String key) {
         try {
-            List<Node> nodes = hashRing.getNodes(key, replicationFactor);
+            List<Node> nodes = new ArrayList<>(hashRing.getNodes(key, replicationFactor));
+            nodes.addAll(hashRing.getFallbackNodes(key, replicationFactor));
+            // Иначе передача отрезка вернула бы удаленный ключ будущему владельцу
+            nodes.addAll(pendingReplicas(key, nodes));
+            touchTransfers(key);
+            recordTombstone(key);
             boolean removed = false;
 
             // Удаляем только с уникальных нод
@@ -205,7 +839,7 @@ public class DistributedHashTable {
             for (Node node : nodes) {
                 if (processedNodes.add(node.getId())) { // Только если нода еще не обработана
                     try {
-                        String removedValue = node.remove(key);
+                        byte[] removedValue = node.removeBytes(key);
                         if (removedValue != null) {
                             removed = true;
                             metrics.recordNodeOperation(node.getId());
@@ -228,157 +862,588 @@ public class DistributedHashTable {
         }
     }
 
-    private void rebalanceAfterAddition(Node newNode) {
-        logger.info("Starting rebalancing after adding node: {}", newNode.getId());
+    /**
+     * Вывод ноды: каждый ее отрезок передается новым владельцам, пока нода остается в кольце
+     * и отвечает на чтения. Снимок ключей ноды берется один раз, ключи группируются по отрезкам
+     * и пачками по decommissionBatchSize отправляются в пул переноса, не больше decommissionWorkers пачек сразу;
+     * значения пачка читает сама.
+     * Записи и удаления в передаваемых отрезках на это время дублируются на будущих владельцев.
+     * Перенос идет в фоне; нода покидает кольцо, только если все пачки записаны без ошибок.
+     */
+    private boolean decommission(Node node) {
+        long start = System.nanoTime();
+        long storedKeys = hashRing.getAllNodes().stream().mapToLong(Node::getDataSize).sum();
+        List<RangeTransfer> plan = hashRing.planRemoval(node, replicationFactor).stream()
+                .filter(transfer -> !transfer.gainers().isEmpty())
+                .toList();
+        Decommission state = new Decommission(node, plan,
+                movement.startJob(RebalanceResult.DECOMMISSION, node.getId(), plan.size(), node.getDataSize()));
+        decommissions.put(node.getId(), state);
+        decommissionHistory.put(node.getId(), state);
+        // Отметки берутся после регистрации вывода: клиент, отметивший ключ, уже пишет его будущим владельцам
+        TransferGuard guard = guardTransfers(plan);
+
+        CompletableFuture<Void> task = movement.start(() -> handOffRanges(state, guard, storedKeys, start));
+        rebalancingTasks.put(node.getId(), task);
+        task.whenComplete((result, error) -> {
+            if (error != null) {
+                logger.error("Decommission of node {} failed: {}", node.getId(), error.getMessage());
+            }
+            transferGuards.remove(guard);
+            decommissions.remove(node.getId(), state);
+            state.job.finish();
+            rebalancingTasks.remove(node.getId(), task);
+            topologyPermit.release();
+        });
+        return true;
+    }
 
-        List<Node> allNodes = hashRing.getAllNodes();
-        Set<String> keysToMove = new HashSet<>();
-        Map<String, String> dataToMove = new HashMap<>();
-
-        // Собираем все уникальные ключи из системы
-        Set<String> allKeys = new HashSet<>();
-        for (Node existingNode : allNodes) {
-            if (!existingNode.getId().equals(newNode.getId())) {
-                allKeys.addAll(existingNode.getAllData().keySet());
-            }
-        }
-
-        // Для каждого ключа определяем правильных владельцев
-        for (String key : allKeys) {
-            List<Node> correctOwners = hashRing.getNodes(key, replicationFactor);
-
-            // Получаем уникальные ID владельцев
-            Set<String> correctOwnerIds = correctOwners.stream()
-                    .map(Node::getId)
-                    .collect(Collectors.toSet());
-
-            // Если новая нода должна владеть этим ключом
-            if (correctOwnerIds.contains(newNode.getId())) {
-
-                // Найдем ноду, которая имеет этот ключ и может его отдать
-                for (Node existingNode : allNodes) {
-                    if (!existingNode.getId().equals(newNode.getId()) &&
-                            existingNode.getAllData().containsKey(key)) {
-
-                        // Если существующая нода больше не должна владеть этим ключом
-                        if (!correctOwnerIds.contains(existingNode.getId())) {
-                            String value = existingNode.getAllData().get(key);
-                            if (value != null && !keysToMove.contains(key)) {
-                                dataToMove.put(key, value);
-                                keysToMove.add(key);
-                                // Удаляем с неправильного владельца
-                                existingNode.remove(key);
-                                logger.debug("Moving key '{}' from node '{}' to node '{}'",
-                                        key, existingNode.getId(), newNode.getId());
-                                break; // Берем только одну копию
-                            }
+    private void handOffRanges(Decommission state, TransferGuard guard, long storedKeys, long start) {
+        Node node = state.node;
+        int workers = decommissionWorkers;
+        int batchSize = decommissionBatchSize;
+        logger.info("Decommissioning node {}: {} ranges, {} keys, {} workers, batches of {}",
+                node.getId(), state.ranges, state.keysTotal, workers, batchSize);
+
+        // Под блокировкой движка берется только снимок ключей; значения пачка читает сама, вне обхода.
+        // Пачки не обгоняют запись: следующая ждет, пока в работе меньше workers других
+        Map<RangeTransfer, List<String>> keysByTransfer = new LinkedHashMap<>();
+        for (String key : node.keys()) {
+            RangeTransfer transfer = state.find(hashRing.token(key));
+            if (transfer == null) {
+                state.job.advance(1);
+            } else {
+                keysByTransfer.computeIfAbsent(transfer, t -> new ArrayList<>()).add(key);
+            }
+        }
+        Semaphore inFlight = new Semaphore(workers);
+        long reportEvery = Math.max(batchSize, state.keysTotal / 10);
+        long submitted = 0;
+        for (Map.Entry<RangeTransfer, List<String>> entry : keysByTransfer.entrySet()) {
+            for (List<String> keys : chunks(entry.getValue(), batchSize)) {
+                submitBatch(inFlight, state, guard, entry.getKey(), keys);
+                if ((submitted + keys.size()) / reportEvery > submitted / reportEvery) {
+                    logger.info("Decommission of node {}: scanned {}/{} keys, moved {}",
+                            node.getId(), state.job.progress().keysDone(), state.keysTotal, state.job.keysMoved());
+                }
+                submitted += keys.size();
+            }
+        }
+        // Все разрешения вернулись - все пачки записаны
+        inFlight.acquireUninterruptibly(workers);
+        state.job.rangesDone(state.ranges);
+
+        long failed = state.keysFailed.get();
+        if (failed > 0) {
+            // Часть копий не дошла до новых владельцев: нода остается в кольце со всеми данными
+            logger.error("Decommission of node {} failed: {} key copies were not handed off, node stays in the ring",
+                    node.getId(), failed);
+            return;
+        }
+
+        node.setActive(false);
+        hashRing.removeNode(node.getId());
+        decommissions.remove(node.getId(), state);
+        state.removed = true;
+        node.close();
+        metrics.unregisterLsmMetrics(node.getId());
+        metrics.recordNodeRemoval();
+
+        RebalanceResult result = new RebalanceResult(node.getId(), RebalanceResult.DECOMMISSION, state.job.keysMoved(),
+                state.job.bytesMoved(), storedKeys, System.nanoTime() - start);
+        lastRebalance = result;
+        metrics.recordRebalance(result);
+        logger.info("Decommissioned node {}: {} ranges, moved {} key copies ({} bytes), in {} ms",
+                node.getId(), state.ranges, result.keysMoved(), result.bytesMoved(), result.nanos() / 1_000_000);
+    }
+
+    private void submitBatch(Semaphore inFlight, Decommission state, TransferGuard guard, RangeTransfer transfer,
+                             List<String> batch) {
+        inFlight.acquireUninterruptibly();
+        try {
+            movement.submit(MovementScheduler.Lane.DECOMMISSION,
+                            () -> sendBatch(state, guard, transfer.gainers(), batch))
+                    .whenComplete((result, error) -> {
+                        if (error != null) {
+                            state.keysFailed.addAndGet(batch.size());
+                            logger.error("Failed to hand off a batch of {} keys from node {}: {}",
+                                    batch.size(), state.node.getId(), error.getMessage());
                         }
+                        inFlight.release();
+                    });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void sendBatch(Decommission state, TransferGuard guard, List<Node> gainers, List<String> keys) {
+        Map<String, byte[]> batch = state.node.readBatch(keys);
+        long batchBytes = bytesOf(batch);
+        for (Node gainer : gainers) {
+            movement.throttle(batch.size(), batchBytes);
+            for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+                String key = entry.getKey();
+                try {
+                    // Ключ записан или удален клиентом после начала вывода - его версия новее пачки
+                    if (guard.putUnlessTouched(gainer, key, entry.getValue(), state.node.getExpiresAt(key))) {
+                        state.job.moved(1, key.length() + entry.getValue().length);
                     }
+                } catch (Exception e) {
+                    state.keysFailed.incrementAndGet();
+                    logger.error("Failed to hand off key {} from node {} to node {}: {}",
+                            key, state.node.getId(), gainer.getId(), e.getMessage());
                 }
             }
         }
+        state.job.advance(keys.size());
+    }
 
-        // Перемещаем данные на новую ноду
-        int movedKeys = 0;
-        for (Map.Entry<String, String> entry : dataToMove.entrySet()) {
+    private TransferGuard guardTransfers(List<RangeTransfer> transfers) {
+        TransferGuard guard = new TransferGuard(transfers.stream().map(RangeTransfer::range).toList());
+        if (!transfers.isEmpty()) {
+            transferGuards.add(guard);
+        }
+        return guard;
+    }
+
+    // Отмечает ключ во всех переносах, отрезки которых его содержат; вызывается до записи на реплики
+    private void touchTransfers(String key) {
+        if (transferGuards.isEmpty()) {
+            return;
+        }
+        long token = hashRing.token(key);
+        for (TransferGuard guard : transferGuards) {
+            if (guard.covers(token)) {
+                guard.touch(key);
+            }
+        }
+    }
+
+    // Будущие владельцы ключа, если он лежит в отрезке, который сейчас передает одна из его реплик
+    private List<Node> pendingReplicas(String key, Collection<Node> replicas) {
+        if (decommissions.isEmpty()) {
+            return List.of();
+        }
+        long token = hashRing.token(key);
+        List<Node> pending = new ArrayList<>();
+        for (Decommission state : decommissions.values()) {
+            if (!replicas.contains(state.node)) {
+                continue;
+            }
+            RangeTransfer transfer = state.find(token);
+            if (transfer != null) {
+                for (Node gainer : transfer.gainers()) {
+                    if (!replicas.contains(gainer) && !pending.contains(gainer)) {
+                        pending.add(gainer);
+                    }
+                }
+            }
+        }
+        return pending;
+    }
+
+    private void writePending(String key, byte[] stored, long expiresAt, Collection<Node> replicas) {
+        List<Node> pending = pendingReplicas(key, replicas);
+        if (!pending.isEmpty()) {
+            // Пачка вывода, прочитанная до этой записи, ключ уже не пишет
+            touchTransfers(key);
+        }
+        for (Node node : pending) {
             try {
-                newNode.put(entry.getKey(), entry.getValue());
-                movedKeys++;
+                node.putBytes(key, stored, expiresAt);
             } catch (Exception e) {
-                logger.error("Failed to move key {} to new node {}: {}",
-                        entry.getKey(), newNode.getId(), e.getMessage());
+                logger.error("Failed to store key {} on pending replica {}: {}", key, node.getId(), e.getMessage());
             }
         }
+    }
 
-        logger.info("Rebalancing completed for node: {}. Moved {} keys", newNode.getId(), movedKeys);
-        rebalancingTasks.remove(newNode.getId());
+    // finished и !removed - перенос не удался, нода осталась в кольце
+    public record DecommissionProgress(String nodeId, int ranges, long keysTotal, long keysScanned,
+                                       long keysMoved, long bytesMoved, long keysFailed, boolean finished,
+                                       boolean removed) {
     }
 
-    private void redistributeData(Map<String, String> dataToRedistribute) {
-        if (dataToRedistribute.isEmpty()) {
-            logger.info("No data to redistribute");
-            return;
+    // Ход вывода ноды; null - нода не выводилась
+    public DecommissionProgress getDecommissionProgress(String nodeId) {
+        Decommission state = decommissionHistory.get(nodeId);
+        return state == null ? null : state.progress();
+    }
+
+    // Параллелизм и размер пачки при выводе нод (dht.decommission)
+    public void configureDecommission(int workers, int batchSize) {
+        if (workers <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Decommission workers and batch size must be positive: "
+                    + workers + ", " + batchSize);
         }
+        this.decommissionWorkers = workers;
+        this.decommissionBatchSize = batchSize;
+    }
 
-        logger.info("Redistributing {} keys", dataToRedistribute.size());
+    /**
+     * Ключи, которые клиенты записали или удалили в передаваемых отрезках, пока идет перенос.
+     * Пачка переноса прочитана с источника раньше, поэтому такой ключ она не пишет: иначе старое
+     * значение перетерло бы новое, а удаленный ключ вернулся бы. Отметка клиента и проверка
+     * с записью пачки идут под блокировкой полосы ключа и не перемежаются.
+     */
+    private static final class TransferGuard {
+        private static final int LOCK_STRIPES = 64;
+
+        private final NavigableMap<Long, TokenRange> byEnd = new TreeMap<>();
+        private final Set<String> touched = ConcurrentHashMap.newKeySet();
+        private final Object[] locks = new Object[LOCK_STRIPES];
+
+        TransferGuard(List<TokenRange> ranges) {
+            ranges.forEach(range -> byEnd.put(range.endInclusive(), range));
+            for (int i = 0; i < locks.length; i++) {
+                locks[i] = new Object();
+            }
+        }
 
-        List<Node> availableNodes = hashRing.getAllNodes().stream()
-                .filter(Node::isActive)
-                .collect(Collectors.toList());
+        // Отрезки не пересекаются - поиск как в Decommission.find
+        boolean covers(long token) {
+            if (byEnd.isEmpty()) {
+                return false;
+            }
+            Map.Entry<Long, TokenRange> entry = byEnd.ceilingEntry(token);
+            TokenRange range = entry == null ? byEnd.firstEntry().getValue() : entry.getValue();
+            return range.contains(token);
+        }
 
-        if (availableNodes.isEmpty()) {
-            logger.error("Cannot redistribute data: no active nodes available");
-            return;
+        void touch(String key) {
+            synchronized (lock(key)) {
+                touched.add(key);
+            }
         }
 
-        int redistributedKeys = 0;
-        int failedKeys = 0;
+        // false - ключ уже записан или удален клиентом, пачка его пропускает
+        boolean putUnlessTouched(Node target, String key, byte[] value, long expiresAt) {
+            synchronized (lock(key)) {
+                if (touched.contains(key)) {
+                    return false;
+                }
+                target.putBytes(key, value, expiresAt);
+                return true;
+            }
+        }
 
-        for (Map.Entry<String, String> entry : dataToRedistribute.entrySet()) {
-            try {
-                // Используем внутренний метод без дополнительной репликации
-                boolean success = putInternalSafe(entry.getKey(), entry.getValue());
-                if (success) {
-                    redistributedKeys++;
-                } else {
-                    failedKeys++;
+        private Object lock(String key) {
+            return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+        }
+    }
+
+    // Состояние вывода ноды: передаваемые отрезки, упорядоченные по концу, и ход переноса
+    private static final class Decommission {
+        private final Node node;
+        private final int ranges;
+        private final NavigableMap<Long, RangeTransfer> byEnd = new TreeMap<>();
+        private final long keysTotal;
+        private final MovementScheduler.Job job;
+        private final AtomicLong keysFailed = new AtomicLong();
+        private volatile boolean removed;
+
+        Decommission(Node node, List<RangeTransfer> plan, MovementScheduler.Job job) {
+            this.node = node;
+            this.ranges = plan.size();
+            this.keysTotal = node.getDataSize();
+            this.job = job;
+            plan.forEach(transfer -> byEnd.put(transfer.range().endInclusive(), transfer));
+        }
+
+        // Отрезки не пересекаются: токен лежит в ближайшем отрезке с концом не меньше него
+        // или в отрезке, переходящем через ноль (у него наименьший конец)
+        RangeTransfer find(long token) {
+            if (byEnd.isEmpty()) {
+                return null;
+            }
+            Map.Entry<Long, RangeTransfer> entry = byEnd.ceilingEntry(token);
+            RangeTransfer transfer = entry == null ? byEnd.firstEntry().getValue() : entry.getValue();
+            return transfer.range().contains(token) ? transfer : null;
+        }
+
+        DecommissionProgress progress() {
+            MovementScheduler.Progress progress = job.progress();
+            return new DecommissionProgress(node.getId(), ranges, keysTotal, progress.keysDone(),
+                    progress.keysMoved(), progress.bytesMoved(), keysFailed.get(), progress.finished(), removed);
+        }
+    }
+
+    /**
+     * Забирает на ноду ключи отрезков, в реплики которых она вошла. Каждый отрезок читается только
+     * с прежних реплик, которые его теряют (или с одной прежней реплики, если никто не теряет),
+     * пачки всех источников читаются и пишутся параллельно. С источника ключ удаляется
+     * только после того, как новая нода его записала.
+     */
+    private void rebalanceAfterAddition(Node newNode, List<RangeTransfer> transfers, TransferGuard guard) {
+        logger.info("Starting rebalancing after adding node: {} ({} ranges)", newNode.getId(), transfers.size());
+        long start = System.nanoTime();
+        long storedKeys = hashRing.getAllNodes().stream().mapToLong(Node::getDataSize).sum();
+
+        Map<Node, List<TokenRange>> rangesBySource = new LinkedHashMap<>();
+        for (RangeTransfer transfer : transfers) {
+            List<Node> sources = transfer.losers();
+            if (sources.isEmpty()) {
+                transfer.previousReplicas().stream().filter(Node::isActive).findFirst().ifPresent(sources::add);
+            }
+            for (Node source : sources) {
+                if (source != newNode && source.isActive()) {
+                    rangesBySource.computeIfAbsent(source, node -> new ArrayList<>()).add(transfer.range());
                 }
+            }
+        }
+
+        // Новая нода забирает примерно свою долю хранимых копий
+        int nodeCount = Math.max(1, hashRing.getAllNodes().size());
+        MovementScheduler.Job job = movement.startJob(RebalanceResult.JOIN, newNode.getId(),
+                rangesBySource.values().stream().mapToInt(List::size).sum(), storedKeys / nodeCount);
+        // Снимки ключей берутся на координаторе, каждая пачка читается, ждет бюджета и пишется
+        // отдельной задачей полосы - восстановление реплик встает в очередь между пачками
+        Map<Node, List<String>> acknowledged = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (Map.Entry<Node, List<TokenRange>> entry : rangesBySource.entrySet()) {
+            Node source = entry.getKey();
+            List<String> released = Collections.synchronizedList(new ArrayList<>());
+            acknowledged.put(source, released);
+            for (List<String> keys : chunks(source.keysInRanges(entry.getValue(), hashRing::token), TRANSFER_CHUNK_SIZE)) {
+                batches.add(movement.submit(MovementScheduler.Lane.REBALANCE,
+                        () -> streamBatch(source, keys, newNode, guard, job, released)));
+            }
+        }
+        try {
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+            // Удаляем с прежних владельцев уже после записи всех пачек
+            for (Map.Entry<Node, List<String>> entry : acknowledged.entrySet()) {
+                releaseMoved(entry.getKey(), entry.getValue());
+                job.rangesDone(rangesBySource.get(entry.getKey()).size());
+                logger.debug("Streamed {} ranges from node {} to node {}, released {} keys",
+                        rangesBySource.get(entry.getKey()).size(), entry.getKey().getId(), newNode.getId(),
+                        entry.getValue().size());
+            }
+        } finally {
+            job.finish();
+        }
+
+        RebalanceResult result = new RebalanceResult(newNode.getId(), RebalanceResult.JOIN, job.keysMoved(),
+                job.bytesMoved(), storedKeys, System.nanoTime() - start);
+        lastRebalance = result;
+        metrics.recordRebalance(result);
+        logger.info("Rebalancing completed for node: {}. Moved {} keys ({} bytes) of {} stored from {} nodes in {} ms",
+                newNode.getId(), result.keysMoved(), result.bytesMoved(), storedKeys, rangesBySource.size(),
+                result.nanos() / 1_000_000);
+    }
+
+    // Копирует пачку ключей с источника на целевую ноду; acknowledged - ключи, за которые источник больше не отвечает
+    private void streamBatch(Node source, List<String> keys, Node target, TransferGuard guard,
+                             MovementScheduler.Job job, List<String> acknowledged) {
+        Map<String, byte[]> batch = source.readBatch(keys);
+        throttleChunk(batch);
+        for (Map.Entry<List<Node>, List<String>> group : hashRing.routeBatch(batch.keySet(), replicationFactor).entrySet()) {
+            List<Node> owners = group.getKey();
+            if (!owners.contains(target)) {
+                continue;
+            }
+            for (String key : group.getValue()) {
+                try {
+                    // Ключ уже пришел с другой прежней реплики; ключ, записанный или удаленный клиентом
+                    // после входа ноды, пачка не трогает - иначе удаленный ключ вернулся бы.
+                    // Ключ переезжает со своим сроком жизни
+                    byte[] value = batch.get(key);
+                    if (!target.containsKey(key)
+                            && guard.putUnlessTouched(target, key, value, source.getExpiresAt(key))) {
+                        job.moved(1, key.length() + value.length);
+                    }
+                    if (!owners.contains(source)) {
+                        acknowledged.add(key);
+                    }
+                } catch (Exception e) {
+                    logger.error("Failed to move key {} from node {} to node {}: {}",
+                            key, source.getId(), target.getId(), e.getMessage());
+                }
+            }
+        }
+        job.advance(keys.size());
+    }
+
+    private void releaseMoved(Node source, List<String> keys) {
+        for (String key : keys) {
+            try {
+                source.removeBytes(key);
             } catch (Exception e) {
-                logger.error("Failed to redistribute key {}: {}", entry.getKey(), e.getMessage());
-                failedKeys++;
+                logger.error("Failed to remove moved key {} from node {}: {}", key, source.getId(), e.getMessage());
             }
         }
+    }
 
-        logger.info("Data redistribution completed. Redistributed {} keys, failed {} keys",
-                redistributedKeys, failedKeys);
+    // Пачки по size подряд идущих элементов снимка
+    private static <T> List<List<T>> chunks(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += size) {
+            chunks.add(items.subList(from, Math.min(items.size(), from + size)));
+        }
+        return chunks;
     }
 
-    // Безопасный внутренний метод для записи
-    private boolean putInternalSafe(String key, String value) {
+    // Отдает новым владельцам ключи, за которые нода больше не отвечает
+    private void handOffDisplacedKeys(Node node) {
+        logger.info("Handing off displaced keys from node: {}", node.getId());
+
+        // Пачки снимка ключей маршрутизируются отдельными задачами полосы; с самой ноды ключи удаляются после всех пачек
+        MovementScheduler.Job job = movement.startJob(RebalanceResult.HAND_OFF, node.getId(), 1, node.getDataSize());
+        List<String> handedOff = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (List<String> keys : chunks(node.keys(), TRANSFER_CHUNK_SIZE)) {
+            batches.add(movement.submit(MovementScheduler.Lane.REBALANCE,
+                    () -> handOffBatch(node, keys, handedOff, job)));
+        }
         try {
-            List<Node> nodes = hashRing.getNodes(key, replicationFactor);
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+        } catch (RuntimeException e) {
+            job.finish();
+            throw e;
+        }
 
-            if (nodes.isEmpty()) {
-                logger.warn("No nodes available for key: {}", key);
-                return false;
+        int movedKeys = 0;
+        for (String key : handedOff) {
+            try {
+                node.removeBytes(key);
+                movedKeys++;
+            } catch (Exception e) {
+                logger.error("Failed to remove displaced key {} from node {}: {}",
+                        key, node.getId(), e.getMessage());
             }
+        }
 
-            // Убираем дублирование нод и ограничиваем количество
-            Set<String> usedNodeIds = new HashSet<>();
-            List<Node> targetNodes = nodes.stream()
-                    .filter(Node::isActive) // ТОЛЬКО активные ноды
-                    .filter(node -> usedNodeIds.add(node.getId()))
-                    .limit(replicationFactor)
-                    .toList();
+        job.rangesDone(1);
+        job.finish();
+        logger.info("Hand-off completed for node: {}. Moved {} keys", node.getId(), movedKeys);
+    }
 
-            if (targetNodes.isEmpty()) {
-                logger.warn("No active target nodes for key: {}", key);
-                return false;
+    private void handOffBatch(Node node, List<String> keys, List<String> handedOff, MovementScheduler.Job job) {
+        Map<String, byte[]> chunk = node.readBatch(keys);
+        throttleChunk(chunk);
+        for (Map.Entry<List<Node>, List<String>> group : hashRing.routeBatch(chunk.keySet(), replicationFactor).entrySet()) {
+            if (group.getKey().contains(node)) {
+                continue;
+            }
+            for (String key : group.getValue()) {
+                byte[] value = chunk.get(key);
+                if (storeOnReplicas(key, value, node.getExpiresAt(key), group.getKey())) {
+                    handedOff.add(key);
+                    job.moved(1, key.length() + value.length);
+                }
             }
+        }
+        job.advance(keys.size());
+    }
 
-            // Записываем на все доступные ноды
-            boolean anySuccess = false;
-            for (Node node : targetNodes) {
+    // Переносит все ключи удаляемой ноды на их новые реплики, читая ее хранилище пачками
+    private void redistributeData(Node source) {
+        logger.info("Redistributing {} keys from node {}", source.getDataSize(), source.getId());
+
+        List<Node> availableNodes = hashRing.getAllNodes().stream()
+                .filter(Node::isActive)
+                .collect(Collectors.toList());
+
+        if (availableNodes.isEmpty()) {
+            logger.error("Cannot redistribute data: no active nodes available");
+            return;
+        }
+
+        // Отказавшая нода: ее ключи восстанавливают число реплик, поэтому пачки идут полосой восстановления
+        MovementScheduler.Job job = movement.startJob(RebalanceResult.REDISTRIBUTE, source.getId(), 1, source.getDataSize());
+        AtomicInteger redistributed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (List<String> keys : chunks(source.keys(), TRANSFER_CHUNK_SIZE)) {
+            batches.add(movement.submit(MovementScheduler.Lane.REPAIR,
+                    () -> redistributeChunk(source, keys, redistributed, failed, job)));
+        }
+        try {
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).join();
+            job.rangesDone(1);
+        } finally {
+            job.finish();
+        }
+
+        logger.info("Data redistribution completed. Redistributed {} keys, failed {} keys",
+                redistributed.get(), failed.get());
+    }
+
+    // Ключи пачки маршрутизируются вместе и пишутся сразу на свои реплики
+    private void redistributeChunk(Node source, List<String> keys, AtomicInteger redistributed, AtomicInteger failed,
+                                   MovementScheduler.Job job) {
+        Map<String, byte[]> chunk = source.readBatch(keys);
+        throttleChunk(chunk);
+        Map<List<Node>, List<String>> groups = hashRing.routeBatch(chunk.keySet(), replicationFactor);
+        for (Map.Entry<List<Node>, List<String>> group : groups.entrySet()) {
+            for (String key : group.getValue()) {
                 try {
-                    node.put(key, value);
-                    anySuccess = true;
+                    byte[] value = chunk.get(key);
+                    if (storeOnReplicas(key, value, source.getExpiresAt(key), group.getKey())) {
+                        redistributed.incrementAndGet();
+                        job.moved(1, key.length() + value.length);
+                    } else {
+                        failed.incrementAndGet();
+                    }
                 } catch (Exception e) {
-                    logger.error("Failed to store key {} on node {} during redistribution: {}",
-                            key, node.getId(), e.getMessage());
+                    logger.error("Failed to redistribute key {}: {}", key, e.getMessage());
+                    failed.incrementAndGet();
                 }
             }
+        }
+        job.advance(keys.size());
+    }
 
-            return anySuccess;
+    private void throttleChunk(Map<String, byte[]> chunk) {
+        movement.throttle(chunk.size(), bytesOf(chunk));
+    }
 
-        } catch (Exception e) {
-            logger.error("Exception in putInternalSafe for key {}: {}", key, e.getMessage());
+    private static long bytesOf(Map<String, byte[]> chunk) {
+        long bytes = 0;
+        for (Map.Entry<String, byte[]> entry : chunk.entrySet()) {
+            bytes += entry.getKey().length() + entry.getValue().length;
+        }
+        return bytes;
+    }
+
+    // Записывает ключ на уже выбранные реплики без кворума; true, если удалась хотя бы одна запись
+    private boolean storeOnReplicas(String key, byte[] value, long expiresAt, List<Node> nodes) {
+        if (nodes.isEmpty()) {
+            logger.warn("No nodes available for key: {}", key);
             return false;
         }
+
+        // Убираем дублирование нод и ограничиваем количество
+        Set<String> usedNodeIds = new HashSet<>();
+        List<Node> targetNodes = nodes.stream()
+                .filter(Node::isActive) // ТОЛЬКО активные ноды
+                .filter(node -> usedNodeIds.add(node.getId()))
+                .limit(replicationFactor)
+                .toList();
+
+        if (targetNodes.isEmpty()) {
+            logger.warn("No active target nodes for key: {}", key);
+            return false;
+        }
+
+        // Записываем на все доступные ноды
+        boolean anySuccess = false;
+        for (Node node : targetNodes) {
+            try {
+                node.putBytes(key, value, expiresAt);
+                anySuccess = true;
+            } catch (Exception e) {
+                logger.error("Failed to store key {} on node {} during redistribution: {}",
+                        key, node.getId(), e.getMessage());
+            }
+        }
+
+        return anySuccess;
     }
 
 
     // Внутренний метод для репликации без логирования метрик
-    private void putInternal(String key, String value) {
+    private void putInternal(String key, byte[] value) {
         List<Node> nodes = hashRing.getNodes(key, replicationFactor);
 
         if (nodes.isEmpty()) {
@@ -394,7 +1459,7 @@ public class DistributedHashTable {
 
         for (Node node : targetNodes) {
             try {
-                node.put(key, value);
+                node.putBytes(key, value);
             } catch (Exception e) {
                 logger.error("Failed to store key {} on node {} during redistribution: {}",
                         key, node.getId(), e.getMessage());
@@ -402,6 +1467,229 @@ public class DistributedHashTable {
         }
     }
 
+    // Хранимая форма: сжатое значение с версией записи
+    private byte[] encode(byte[] value) {
+        long start = System.nanoTime();
+        byte[] stored = valueCodec.encode(value);
+        if (stored.length != value.length) {
+            metrics.recordCompression(valueCodec.getCodec().configName(), System.nanoTime() - start);
+        }
+        return ValueVersion.stamp(versionClock.next(), stored);
+    }
+
+    // Распаковка только на пути чтения; время относится к ноде, с которой прочитано значение
+    private byte[] decode(Node node, byte[] versioned) {
+        byte[] stored = ValueVersion.payload(versioned);
+        if (stored == null || !ValueCodec.isCompressed(stored)) {
+            return ValueCodec.decode(stored);
+        }
+        long start = System.nanoTime();
+        byte[] value = ValueCodec.decode(stored);
+        metrics.recordDecompression(node.getId(), System.nanoTime() - start);
+        return value;
+    }
+
+    private static long expiresAt(Duration ttl, long now) {
+        if (ttl == null) {
+            return Node.NO_EXPIRY;
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TTL must be positive: " + ttl);
+        }
+        return now + ttl.toMillis();
+    }
+
+    // Вероятность проверки реплик при чтении: 0 - не проверять, 1 - каждое чтение
+    public void configureReadRepair(double chance) {
+        if (!(chance >= 0 && chance <= 1)) {
+            throw new IllegalArgumentException("Read repair chance must be within [0, 1]: " + chance);
+        }
+        this.readRepairChance = chance;
+    }
+
+    // Итог прохода anti-entropy: сколько отрезков и листьев разошлись и сколько ключей пришлось чинить
+    public record AntiEntropyResult(int rangesCompared, int rangesDivergent, int leavesDivergent,
+                                    long hashesCompared, long keysCompared, long keysRepaired,
+                                    long bytesRepaired, long nanos) {
+    }
+
+    // Включает деревья хэшей на всех нодах (и на добавляемых позже) для фоновой сверки реплик
+    public void configureAntiEntropy(int leavesPerRange) {
+        if (leavesPerRange <= 0 || Integer.bitCount(leavesPerRange) != 1) {
+            throw new IllegalArgumentException("Leaves per range must be a power of two: " + leavesPerRange);
+        }
+        merkleLeaves = leavesPerRange;
+        for (Node node : hashRing.getAllNodes()) {
+            node.enableMerkleIndex(hashRing::token, leavesPerRange);
+        }
+    }
+
+    public boolean isAntiEntropyEnabled() {
+        return merkleLeaves > 0;
+    }
+
+    /**
+     * Сверяет реплики каждого отрезка кольца по деревьям хэшей и чинит разошедшиеся ключи.
+     * Реплики обмениваются корнями и спускаются только в несовпавшие поддеревья, ключи читаются
+     * лишь из разошедшихся листьев - объем работы пропорционален расхождению, а не данным.
+     * Проход идет в полосе REPAIR планировщика переноса и пропускается, пока идет перенос данных
+     * (отрезки в этот момент меняют владельцев). null - проход не выполнялся.
+     */
+    public AntiEntropyResult runAntiEntropy() {
+        if (merkleLeaves == 0) {
+            return null;
+        }
+        Map<TokenRange, List<Node>> segments = hashRing.getSegments(replicationFactor);
+        if (segments.isEmpty()) {
+            logger.warn("Anti-entropy is not supported by placement strategy {}", hashRing.getClass().getSimpleName());
+            return null;
+        }
+        synchronized (antiEntropyLock) {
+            if (isRebalancing()) {
+                logger.info("Anti-entropy pass skipped: data movement in progress");
+                return null;
+            }
+            AntiEntropyResult[] result = new AntiEntropyResult[1];
+            movement.submit(MovementScheduler.Lane.REPAIR, () -> result[0] = compareReplicas(segments)).join();
+            metrics.recordAntiEntropy(result[0]);
+            if (result[0].keysRepaired() > 0) {
+                logger.info("Anti-entropy repaired {} keys in {} leaves of {} ranges",
+                        result[0].keysRepaired(), result[0].leavesDivergent(), result[0].rangesDivergent());
+            }
+            return result[0];
+        }
+    }
+
+    private AntiEntropyResult compareReplicas(Map<TokenRange, List<Node>> segments) {
+        long startTime = System.nanoTime();
+        purgeTombstones();
+        // Границы листьев у всех реплик одинаковые - по концам отрезков текущего кольца
+        long[] ends = segments.keySet().stream().mapToLong(TokenRange::endInclusive).toArray();
+        for (Node node : hashRing.getAllNodes()) {
+            MerkleIndex merkle = node.getMerkleIndex();
+            if (merkle != null) {
+                merkle.layout(ends);
+            }
+        }
+
+        MovementScheduler.Job job = movement.startJob("anti-entropy", null, segments.size(), 0);
+        int rangesCompared = 0;
+        int rangesDivergent = 0;
+        int leavesDivergent = 0;
+        long keysCompared = 0;
+        long[] hashesCompared = new long[1];
+        try {
+            int range = 0;
+            for (List<Node> owners : segments.values()) {
+                if (isRebalancing()) {
+                    logger.info("Anti-entropy pass interrupted by data movement");
+                    break;
+                }
+                List<Node> replicas = owners.stream()
+                        .filter(node -> node.isActive() && node.getMerkleIndex() != null)
+                        .toList();
+                if (replicas.size() > 1) {
+                    rangesCompared++;
+                    long[] reference = replicas.get(0).getMerkleIndex().tree(range);
+                    Set<Integer> leaves = new TreeSet<>();
+                    for (Node replica : replicas.subList(1, replicas.size())) {
+                        leaves.addAll(MerkleIndex.diff(reference, replica.getMerkleIndex().tree(range), hashesCompared));
+                    }
+                    if (!leaves.isEmpty()) {
+                        rangesDivergent++;
+                        leavesDivergent += leaves.size();
+                    }
+                    for (int leaf : leaves) {
+                        keysCompared += repairLeaf(range, leaf, replicas, job);
+                    }
+                }
+                job.rangesDone(1);
+                range++;
+            }
+        } finally {
+            job.finish();
+        }
+        return new AntiEntropyResult(rangesCompared, rangesDivergent, leavesDivergent, hashesCompared[0],
+                keysCompared, job.keysMoved(), job.bytesMoved(), System.nanoTime() - startTime);
+    }
+
+    // Сравнивает хэши ключей листа на всех репликах; чинятся только ключи с разными хэшами
+    private int repairLeaf(int range, int leaf, List<Node> replicas, MovementScheduler.Job job) {
+        List<Map<String, Long>> entries = new ArrayList<>(replicas.size());
+        Set<String> keys = new TreeSet<>();
+        for (Node replica : replicas) {
+            Map<String, Long> leafEntries = replica.getMerkleIndex().leafEntries(range, leaf);
+            entries.add(leafEntries);
+            keys.addAll(leafEntries.keySet());
+        }
+        for (String key : keys) {
+            Long reference = entries.get(0).get(key);
+            if (entries.stream().allMatch(leafEntries -> Objects.equals(reference, leafEntries.get(key)))) {
+                continue;
+            }
+            try {
+                repairKey(key, replicas, job);
+            } catch (IllegalStateException e) {
+                // Реплика стала неактивной - ключ дочинит следующий проход
+                logger.debug("Anti-entropy repair of key {} skipped: {}", key, e.getMessage());
+            }
+        }
+        job.advance(keys.size());
+        return keys.size();
+    }
+
+    /**
+     * Побеждает последняя запись: значение с наибольшей версией. Отсутствие ключа - не голос за удаление:
+     * копия могла быть вытеснена движком или еще не дописана, поэтому ключ восстанавливается на всех репликах.
+     * Удаляются только копии старше надгробия ключа.
+     */
+    private void repairKey(String key, List<Node> replicas, MovementScheduler.Job job) {
+        List<byte[]> values = new ArrayList<>(replicas.size());
+        for (Node replica : replicas) {
+            values.add(replica.getBytes(key));
+        }
+        int winner = ValueVersion.newest(values);
+        byte[] value = winner < 0 || isDeletedAfter(key, values.get(winner)) ? null : values.get(winner);
+        long expiresAt = value == null ? Node.NO_EXPIRY : replicas.get(winner).getExpiresAt(key);
+        for (int i = 0; i < replicas.size(); i++) {
+            Node replica = replicas.get(i);
+            byte[] current = values.get(i);
+            if (!Arrays.equals(current, value)) {
+                long bytes = key.length() + (value == null ? 0 : value.length);
+                movement.throttle(1, bytes);
+                // Пока ждали бюджета, реплика могла получить новую запись - ее не трогаем
+                if (Arrays.equals(replica.getBytes(key), current)) {
+                    if (value == null) {
+                        replica.removeBytes(key);
+                    } else {
+                        replica.putBytes(key, value, expiresAt);
+                    }
+                    job.moved(1, bytes);
+                }
+            }
+            // Значения могли совпасть при устаревшем дереве (ключ вытеснен движком в обход ноды)
+            replica.refreshMerkleIndex(key);
+        }
+    }
+
+    private void recordTombstone(String key) {
+        tombstones.put(key, versionClock.next());
+        if (removals.incrementAndGet() % TOMBSTONE_PURGE_EVERY == 0) {
+            purgeTombstones();
+        }
+    }
+
+    // Ключ удален позже, чем записано значение
+    private boolean isDeletedAfter(String key, byte[] value) {
+        Long tombstone = tombstones.get(key);
+        return tombstone != null && tombstone > ValueVersion.version(value);
+    }
+
+    private void purgeTombstones() {
+        long expired = System.currentTimeMillis() - TOMBSTONE_GRACE_MS;
+        tombstones.values().removeIf(version -> ValueVersion.timestamp(version) < expired);
+    }
+
     public List<Node> getAllNodes() {
         return hashRing.getAllNodes();
     }
@@ -410,15 +1698,39 @@ public class DistributedHashTable {
         return hashRing.getDataDistribution();
     }
 
+    public Map<Integer, Double> getZoneCoverage() {
+        return hashRing.getZoneCoverage(replicationFactor);
+    }
+
+    // Размер пула переноса и его бюджеты (dht.movement)
+    public void configureMovement(int workers, long maxBytesPerSecond, long maxKeysPerSecond, long targetLatencyMs) {
+        movement.configure(workers, maxBytesPerSecond, maxKeysPerSecond, targetLatencyMs);
+    }
+
+    // Идущие и недавние задачи переноса: отрезки, перенесенные ключи, ETA
+    public List<MovementScheduler.Progress> getMovementProgress() {
+        return movement.getProgress();
+    }
+
+    public MovementScheduler getMovementScheduler() {
+        return movement;
+    }
+
+    // Перенос после добавления ноды, смены веса или вывод ноды
     public boolean isRebalancing() {
-        return !rebalancingTasks.isEmpty();
+        return !rebalancingTasks.isEmpty() || !decommissions.isEmpty();
+    }
+
+    // Последний завершенный перенос данных; null - переносов еще не было
+    public RebalanceResult getLastRebalance() {
+        return lastRebalance;
     }
 
     public DHTMetrics getMetrics() {
         return metrics;
     }
 
-    public ConsistentHashRing getHashRing(){
+    public PlacementStrategy getHashRing(){
         return this.hashRing;
     }
 
@@ -429,7 +1741,7 @@ public class DistributedHashTable {
 
         for (Node node : allNodes) {
             logger.info("Node {}: {} keys", node.getId(), node.getDataSize());
-            Map<String, String> nodeData = node.getAllData();
+            Map<String, byte[]> nodeData = node.getAllBytes();
 
             // Показываем первые несколько ключей
             int count = 0;
@@ -444,19 +1756,45 @@ public class DistributedHashTable {
         }
     }
 
-    // Метод для подсчета уникальных ключей в системе
+    /**
+     * Число уникальных ключей: каждый ключ считается один раз - на первой живой реплике своего
+     * сегмента, без общего множества ключей и без чтения значений. Стратегии без токенов
+     * сегментов не дают - для них ключи всех нод собираются в множество.
+     */
     public int getUniqueKeyCount() {
-        Set<String> allUniqueKeys = new HashSet<>();
-        List<Node> allNodes = hashRing.getAllNodes();
-
-        for (Node node : allNodes) {
-            allUniqueKeys.addAll(node.getAllData().keySet());
+        Map<TokenRange, List<Node>> segments = hashRing.getSegments(replicationFactor);
+        if (segments.isEmpty()) {
+            Set<String> allUniqueKeys = new HashSet<>();
+            for (Node node : hashRing.getAllNodes()) {
+                node.forEachKey(allUniqueKeys::add);
+            }
+            return allUniqueKeys.size();
         }
 
-        return allUniqueKeys.size();
+        // Соседние сегменты с одной первой репликой склеиваются
+        Map<Node, List<TokenRange>> primaryRanges = new LinkedHashMap<>();
+        segments.forEach((range, replicas) -> {
+            if (replicas.isEmpty()) {
+                return;
+            }
+            List<TokenRange> ranges = primaryRanges.computeIfAbsent(replicas.get(0), node -> new ArrayList<>());
+            TokenRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last.endInclusive() == range.startExclusive()) {
+                ranges.set(ranges.size() - 1, new TokenRange(last.startExclusive(), range.endInclusive()));
+            } else {
+                ranges.add(range);
+            }
+        });
+        long count = 0;
+        for (Map.Entry<Node, List<TokenRange>> entry : primaryRanges.entrySet()) {
+            count += entry.getKey().countInRanges(entry.getValue(), hashRing::token);
+        }
+        return (int) count;
     }
 
+    @PreDestroy
     public void shutdown() {
+        movement.shutdown();
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
@@ -466,5 +1804,14 @@ public class DistributedHashTable {
             executorService.shutdownNow();
             Thread.currentThread().interrupt();
         }
+
+        // Персистентные движки и журналы сбрасывают данные на диск
+        for (Node node : hashRing.getAllNodes()) {
+            try {
+                node.close();
+            } catch (Exception e) {
+                logger.error("Failed to close storage of node {}: {}", node.getId(), e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,271 @@
+package com.example.dhtcopy.core;
+
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Дерево хэшей ноды для anti-entropy, обновляемое при каждой записи. Кольцо делится на отрезки
+ * между соседними токенами (у всех реплик отрезка одни и те же границы), отрезок - на leavesPerRange
+ * равных листьев. Лист хранит XOR хэшей (ключ, значение) своих ключей, поэтому запись и удаление
+ * меняют один лист за O(1); внутренние узлы считаются из листьев при сравнении.
+ * Хэш каждого ключа хранится в порядке токенов: по расходящемуся листу реплики обмениваются
+ * только его ключами.
+ */
+public final class MerkleIndex {
+    public static final int DEFAULT_LEAVES_PER_RANGE = 16;
+    private static final HashFunction HASH = HashFunctions.murmur3();
+
+    // Ключ в порядке токена; ключи с одинаковым токеном упорядочены по строке
+    private record TokenKey(long token, String key) implements Comparable<TokenKey> {
+        @Override
+        public int compareTo(TokenKey other) {
+            int byToken = Long.compare(token, other.token);
+            return byToken != 0 ? byToken : key.compareTo(other.key);
+        }
+    }
+
+    // Границы отрезков и листья; листья отрезка создаются при первом его ключе
+    private static final class Layout {
+        private final long[] ends;
+        private final AtomicLongArray[] leaves;
+
+        Layout(long[] ends) {
+            this.ends = ends;
+            this.leaves = new AtomicLongArray[Math.max(1, ends.length)];
+        }
+    }
+
+    private final ToLongFunction<String> token;
+    private final int leavesPerRange;
+    private final ConcurrentSkipListMap<TokenKey, Long> hashes = new ConcurrentSkipListMap<>();
+    // Запись меняет лист под блокировкой чтения, смена границ пересчитывает листья под блокировкой записи
+    private final ReentrantReadWriteLock layoutLock = new ReentrantReadWriteLock();
+    private volatile Layout layout = new Layout(new long[0]);
+
+    public MerkleIndex(ToLongFunction<String> token, int leavesPerRange) {
+        if (leavesPerRange <= 0 || Integer.bitCount(leavesPerRange) != 1) {
+            throw new IllegalArgumentException("Leaves per range must be a power of two: " + leavesPerRange);
+        }
+        this.token = token;
+        this.leavesPerRange = leavesPerRange;
+    }
+
+    public static long entryHash(String key, byte[] value) {
+        long keyHash = HASH.hash(key);
+        return keyHash ^ Long.rotateLeft(HASH.hash(value) * 0x9E3779B97F4A7C15L, 17);
+    }
+
+    // Вызывается под блокировкой ключа вместе с записью в хранилище
+    public void put(String key, byte[] value) {
+        update(new TokenKey(token.applyAsLong(key), key), entryHash(key, value));
+    }
+
+    public void remove(String key) {
+        update(new TokenKey(token.applyAsLong(key), key), null);
+    }
+
+    private void update(TokenKey tokenKey, Long hash) {
+        layoutLock.readLock().lock();
+        try {
+            Long previous = hash == null ? hashes.remove(tokenKey) : hashes.put(tokenKey, hash);
+            long delta = (previous == null ? 0 : previous) ^ (hash == null ? 0 : hash);
+            if (delta != 0) {
+                xorLeaf(layout, tokenKey.token, delta);
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    // Хэш ключа из дерева; null - ключа нет
+    public Long hash(String key) {
+        return hashes.get(new TokenKey(token.applyAsLong(key), key));
+    }
+
+    public void clear() {
+        layoutLock.writeLock().lock();
+        try {
+            hashes.clear();
+            layout = new Layout(layout.ends);
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Задает границы отрезков (концы в порядке кольца). При смене состава листья пересчитываются
+     * из хранимых хэшей ключей, без чтения хранилища.
+     */
+    public void layout(long[] ends) {
+        if (Arrays.equals(layout.ends, ends)) {
+            return;
+        }
+        layoutLock.writeLock().lock();
+        try {
+            if (Arrays.equals(layout.ends, ends)) {
+                return;
+            }
+            Layout rebuilt = new Layout(ends.clone());
+            hashes.forEach((tokenKey, hash) -> xorLeaf(rebuilt, tokenKey.token, hash));
+            layout = rebuilt;
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Дерево отрезка в виде кучи: [0] - корень, дети узла i - 2i+1 и 2i+2, листья - в конце.
+     * Отрезок без ключей - дерево из нулей.
+     */
+    public long[] tree(int range) {
+        AtomicLongArray leaves = layout.leaves[range];
+        long[] tree = new long[2 * leavesPerRange - 1];
+        int firstLeaf = leavesPerRange - 1;
+        if (leaves != null) {
+            for (int i = 0; i < leavesPerRange; i++) {
+                tree[firstLeaf + i] = leaves.get(i);
+            }
+        }
+        for (int i = firstLeaf - 1; i >= 0; i--) {
+            tree[i] = combine(tree[2 * i + 1], tree[2 * i + 2]);
+        }
+        return tree;
+    }
+
+    public long root(int range) {
+        return tree(range)[0];
+    }
+
+    // Хэши ключей листа: по ним реплики находят расходящиеся ключи
+    public Map<String, Long> leafEntries(int range, int leaf) {
+        Layout current = layout;
+        TokenRange bounds = leafRange(current.ends, range, leaf);
+        Map<String, Long> entries = new HashMap<>();
+        for (Map<TokenKey, Long> part : slices(bounds)) {
+            part.forEach((tokenKey, hash) -> entries.put(tokenKey.key, hash));
+        }
+        return entries;
+    }
+
+    public int getLeavesPerRange() {
+        return leavesPerRange;
+    }
+
+    /**
+     * Листья, в которых деревья расходятся: спуск от корня только в несовпавшие поддеревья.
+     * hashesCompared - сколько хэшей узлов пришлось сравнить (объем обмена деревьями).
+     */
+    public static List<Integer> diff(long[] left, long[] right, long[] hashesCompared) {
+        List<Integer> leaves = new ArrayList<>();
+        int firstLeaf = (left.length - 1) / 2;
+        diff(left, right, 0, firstLeaf, leaves, hashesCompared);
+        return leaves;
+    }
+
+    private static void diff(long[] left, long[] right, int node, int firstLeaf, List<Integer> leaves, long[] compared) {
+        compared[0]++;
+        if (left[node] == right[node]) {
+            return;
+        }
+        if (node >= firstLeaf) {
+            leaves.add(node - firstLeaf);
+            return;
+        }
+        diff(left, right, 2 * node + 1, firstLeaf, leaves, compared);
+        diff(left, right, 2 * node + 2, firstLeaf, leaves, compared);
+    }
+
+    private static long combine(long left, long right) {
+        long h = left * 0x9E3779B97F4A7C15L + Long.rotateLeft(right, 31);
+        h ^= h >>> 33;
+        return h * 0xFF51AFD7ED558CCDL;
+    }
+
+    private void xorLeaf(Layout target, long tokenValue, long delta) {
+        int range = rangeFor(target.ends, tokenValue);
+        AtomicLongArray leaves = target.leaves[range];
+        if (leaves == null) {
+            synchronized (target) {
+                leaves = target.leaves[range];
+                if (leaves == null) {
+                    leaves = new AtomicLongArray(leavesPerRange);
+                    target.leaves[range] = leaves;
+                }
+            }
+        }
+        leaves.accumulateAndGet(leafFor(target.ends, range, tokenValue), delta, (a, b) -> a ^ b);
+    }
+
+    // Отрезок (ends[i-1], ends[i]]; токены за последним концом попадают в первый отрезок
+    private static int rangeFor(long[] ends, long tokenValue) {
+        if (ends.length <= 1) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(ends, tokenValue);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == ends.length ? 0 : index;
+    }
+
+    private static long rangeStart(long[] ends, int range) {
+        if (ends.length <= 1) {
+            return ends.length == 0 ? Long.MIN_VALUE : ends[0];
+        }
+        return range == 0 ? ends[ends.length - 1] : ends[range - 1];
+    }
+
+    // Ширина листа; отрезок во все кольцо (start == end) имеет ширину 2^64
+    private long leafWidth(long start, long end) {
+        long span = end - start;
+        if (span == 0) {
+            return Long.divideUnsigned(-1L, leavesPerRange) + 1;
+        }
+        return Long.divideUnsigned(span - 1, leavesPerRange) + 1;
+    }
+
+    private int leafFor(long[] ends, int range, long tokenValue) {
+        long start = rangeStart(ends, range);
+        long end = ends.length == 0 ? start : ends[range];
+        return (int) Long.divideUnsigned(tokenValue - start - 1, leafWidth(start, end));
+    }
+
+    private TokenRange leafRange(long[] ends, int range, int leaf) {
+        long start = rangeStart(ends, range);
+        long end = ends.length == 0 ? start : ends[range];
+        long width = leafWidth(start, end);
+        long leafStart = start + width * leaf;
+        long leafEnd = leaf == leavesPerRange - 1 ? end : leafStart + width;
+        return new TokenRange(leafStart, leafEnd);
+    }
+
+    // Ключи отрезка (start, end] из упорядоченной карты; отрезок через ноль - двумя кусками
+    private List<Map<TokenKey, Long>> slices(TokenRange bounds) {
+        long start = bounds.startExclusive();
+        long end = bounds.endInclusive();
+        if (bounds.isFull()) {
+            return List.of(hashes);
+        }
+        TokenKey from = new TokenKey(start + 1, "");
+        if (start < end) {
+            return List.of(end == Long.MAX_VALUE ? hashes.tailMap(from) : hashes.subMap(from, new TokenKey(end + 1, "")));
+        }
+        // (start, MAX] и [MIN, end]
+        Map<TokenKey, Long> tail = start == Long.MAX_VALUE ? Map.of() : hashes.tailMap(from);
+        return List.of(tail, hashes.headMap(new TokenKey(end + 1, "")));
+    }
+}
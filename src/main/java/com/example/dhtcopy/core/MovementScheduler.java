@@ -0,0 +1,328 @@
+package com.example.dhtcopy.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Планировщик переноса данных (вход и вывод нод, восстановление реплик), отдельный от клиентских операций.
+ * Перенос идет на ограниченном пуле потоков, задачи ждут в очереди по полосам: восстановление реплик
+ * раньше вывода нод, вывод раньше перебалансировки. Скорость ограничена бюджетами байт и ключей в секунду.
+ * Доля бюджета подстраивается под задержку клиентских операций (AIMD): пока сглаженная задержка выше цели,
+ * доля раз в интервал уменьшается вдвое, иначе растет на шаг.
+ */
+public final class MovementScheduler {
+    public static final int DEFAULT_WORKERS = 4;
+    public static final long DEFAULT_MAX_BYTES_PER_SECOND = 64L * 1024 * 1024;
+    // 0 - без ограничения
+    public static final long DEFAULT_MAX_KEYS_PER_SECOND = 0;
+    public static final long DEFAULT_TARGET_LATENCY_MS = 10;
+    static final double MIN_RATE_FACTOR = 0.05;
+    static final double RATE_FACTOR_STEP = 0.05;
+    static final long ADJUST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // Бюджет, который успевает накопиться за простой
+    static final long MAX_BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double LATENCY_SMOOTHING = 0.5;
+    // Сколько завершенных задач видно в ходе переноса
+    private static final int FINISHED_JOBS_KEPT = 16;
+
+    // Полосы в порядке приоритета
+    public enum Lane {
+        REPAIR, DECOMMISSION, REBALANCE
+    }
+
+    /**
+     * Ход задачи переноса. keysEstimated - оценка объема работы (для вывода ноды - ее ключи),
+     * keysDone - сколько из них обработано; по ним считается ETA, -1 - оценки пока нет.
+     */
+    public record Progress(long id, String type, String nodeId, int rangesTotal, int rangesDone,
+                           long keysEstimated, long keysDone, long keysMoved, long bytesMoved,
+                           long elapsedMs, long etaMs, boolean finished) {
+    }
+
+    // Задача переноса: счетчики хода, которые обновляют потоки переноса
+    public final class Job {
+        private final long id;
+        private final String type;
+        private final String nodeId;
+        private final int rangesTotal;
+        private final long keysEstimated;
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger rangesDone = new AtomicInteger();
+        private final AtomicLong keysDone = new AtomicLong();
+        private final AtomicLong keysMoved = new AtomicLong();
+        private final AtomicLong bytesMoved = new AtomicLong();
+        private volatile long finishedNanos;
+
+        private Job(long id, String type, String nodeId, int rangesTotal, long keysEstimated) {
+            this.id = id;
+            this.type = type;
+            this.nodeId = nodeId;
+            this.rangesTotal = rangesTotal;
+            this.keysEstimated = keysEstimated;
+        }
+
+        public void rangesDone(int ranges) {
+            rangesDone.addAndGet(ranges);
+        }
+
+        public void advance(long keys) {
+            keysDone.addAndGet(keys);
+        }
+
+        public void moved(long keys, long bytes) {
+            keysMoved.addAndGet(keys);
+            bytesMoved.addAndGet(bytes);
+        }
+
+        public long keysMoved() {
+            return keysMoved.get();
+        }
+
+        public long bytesMoved() {
+            return bytesMoved.get();
+        }
+
+        public void finish() {
+            if (finishedNanos == 0) {
+                finishedNanos = System.nanoTime();
+                finishJob(this);
+            }
+        }
+
+        public Progress progress() {
+            boolean finished = finishedNanos != 0;
+            long elapsed = (finished ? finishedNanos : System.nanoTime()) - startNanos;
+            long done = keysDone.get();
+            long eta;
+            if (finished) {
+                eta = 0;
+            } else if (done > 0 && keysEstimated > 0) {
+                eta = TimeUnit.NANOSECONDS.toMillis((long) (elapsed * (double) Math.max(0, keysEstimated - done) / done));
+            } else {
+                eta = -1;
+            }
+            return new Progress(id, type, nodeId, rangesTotal, rangesDone.get(), keysEstimated, done,
+                    keysMoved.get(), bytesMoved.get(), TimeUnit.NANOSECONDS.toMillis(elapsed), eta, finished);
+        }
+    }
+
+    // Темп по виртуальному времени: каждая порция сдвигает момент, раньше которого следующая не начнется
+    private static final class Pacer {
+        private long next;
+
+        synchronized long reserve(long amount, double perSecond) {
+            if (perSecond <= 0 || amount <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            next = Math.max(next, now - MAX_BURST_NANOS);
+            long wait = next - now;
+            next += (long) (amount * 1_000_000_000.0 / perSecond);
+            return Math.max(0, wait);
+        }
+    }
+
+    private static final class LaneTask implements Runnable {
+        private final Lane lane;
+        private final long sequence;
+        private final Runnable work;
+
+        LaneTask(Lane lane, long sequence, Runnable work) {
+            this.lane = lane;
+            this.sequence = sequence;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            work.run();
+        }
+    }
+
+    private static final Comparator<Runnable> LANE_ORDER = Comparator
+            .comparing((Runnable task) -> ((LaneTask) task).lane)
+            .thenComparingLong(task -> ((LaneTask) task).sequence);
+
+    private final ThreadPoolExecutor workers;
+    // Координаторы задач только раздают работу пулу и ждут ее, поэтому не ограничены
+    private final ExecutorService coordinators;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Pacer bytePacer = new Pacer();
+    private final Pacer keyPacer = new Pacer();
+    private final Map<Long, Job> activeJobs = new LinkedHashMap<>();
+    private final Map<Long, Job> finishedJobs = new LinkedHashMap<>();
+    private volatile long maxBytesPerSecond = DEFAULT_MAX_BYTES_PER_SECOND;
+    private volatile long maxKeysPerSecond = DEFAULT_MAX_KEYS_PER_SECOND;
+    private volatile long targetLatencyMs = DEFAULT_TARGET_LATENCY_MS;
+    private volatile double rateFactor = 1.0;
+    // Задержки клиентских операций за текущий интервал; счетчики не блокируют клиентский путь
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder latencyCount = new LongAdder();
+    private double latencyEwma = -1;
+    private long lastAdjustNanos = System.nanoTime();
+
+    public MovementScheduler() {
+        this.workers = new ThreadPoolExecutor(DEFAULT_WORKERS, DEFAULT_WORKERS, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(16, LANE_ORDER), threadFactory("dht-movement-"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.coordinators = Executors.newCachedThreadPool(threadFactory("dht-movement-coordinator-"));
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Размер пула и бюджеты переноса (dht.movement); 0 в бюджете или цели задержки - без ограничения
+    public void configure(int workerCount, long maxBytesPerSecond, long maxKeysPerSecond, long targetLatencyMs) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Movement workers must be positive: " + workerCount);
+        }
+        if (maxBytesPerSecond < 0 || maxKeysPerSecond < 0 || targetLatencyMs < 0) {
+            throw new IllegalArgumentException("Movement budgets must not be negative");
+        }
+        if (workerCount > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(workerCount);
+            workers.setCorePoolSize(workerCount);
+        } else {
+            workers.setCorePoolSize(workerCount);
+            workers.setMaximumPoolSize(workerCount);
+        }
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.maxKeysPerSecond = maxKeysPerSecond;
+        this.targetLatencyMs = targetLatencyMs;
+    }
+
+    // Запускает координатор задачи переноса
+    public CompletableFuture<Void> start(Runnable coordinator) {
+        return CompletableFuture.runAsync(coordinator, coordinators);
+    }
+
+    // Ставит порцию работы в очередь своей полосы
+    public CompletableFuture<Void> submit(Lane lane, Runnable work) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        workers.execute(new LaneTask(lane, sequence.incrementAndGet(), () -> {
+            try {
+                work.run();
+                future.complete(null);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    public Job startJob(String type, String nodeId, int rangesTotal, long keysEstimated) {
+        Job job = new Job(sequence.incrementAndGet(), type, nodeId, rangesTotal, keysEstimated);
+        synchronized (activeJobs) {
+            activeJobs.put(job.id, job);
+        }
+        return job;
+    }
+
+    private void finishJob(Job job) {
+        synchronized (activeJobs) {
+            activeJobs.remove(job.id);
+            finishedJobs.put(job.id, job);
+            if (finishedJobs.size() > FINISHED_JOBS_KEPT) {
+                finishedJobs.remove(finishedJobs.keySet().iterator().next());
+            }
+        }
+    }
+
+    // Идущие задачи, затем последние завершенные
+    public List<Progress> getProgress() {
+        List<Job> jobs;
+        synchronized (activeJobs) {
+            jobs = new ArrayList<>(activeJobs.values());
+            jobs.addAll(finishedJobs.values());
+        }
+        return jobs.stream().map(Job::progress).toList();
+    }
+
+    /**
+     * Ждет, пока бюджет позволит перенести порцию из keys ключей и bytes байт.
+     * Вызывается потоком переноса перед записью порции.
+     */
+    public void throttle(long keys, long bytes) {
+        adjustRate();
+        double factor = rateFactor;
+        long wait = Math.max(bytePacer.reserve(bytes, maxBytesPerSecond * factor),
+                keyPacer.reserve(keys, maxKeysPerSecond * factor));
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    // Задержка клиентской операции; по ней подстраивается доля бюджета переноса
+    public void recordForegroundLatency(long latencyMs) {
+        latencySum.add(latencyMs);
+        latencyCount.increment();
+    }
+
+    // Раз в интервал: средняя задержка интервала сглаживается; выше цели - доля вдвое меньше,
+    // иначе (или без клиентских операций) - на шаг больше
+    synchronized void adjustRate() {
+        long now = System.nanoTime();
+        if (now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+        lastAdjustNanos = now;
+        long count = latencyCount.sumThenReset();
+        long sum = latencySum.sumThenReset();
+        boolean slow = false;
+        if (count > 0) {
+            double average = (double) sum / count;
+            latencyEwma = latencyEwma < 0 ? average : latencyEwma + LATENCY_SMOOTHING * (average - latencyEwma);
+            slow = targetLatencyMs > 0 && latencyEwma > targetLatencyMs;
+        }
+        rateFactor = slow ? Math.max(MIN_RATE_FACTOR, rateFactor / 2) : Math.min(1.0, rateFactor + RATE_FACTOR_STEP);
+    }
+
+    public double getRateFactor() {
+        return rateFactor;
+    }
+
+    public int getQueuedTasks() {
+        return workers.getQueue().size();
+    }
+
+    public int getWorkers() {
+        return workers.getMaximumPoolSize();
+    }
+
+    public void shutdown() {
+        coordinators.shutdown();
+        workers.shutdown();
+        try {
+            if (!coordinators.awaitTermination(60, TimeUnit.SECONDS)) {
+                coordinators.shutdownNow();
+            }
+            if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            coordinators.shutdownNow();
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,68 +1,459 @@
 package com.example.dhtcopy.core;
 
+import com.example.dhtcopy.core.compression.ValueCodec;
+import com.example.dhtcopy.core.storage.BoundedStorageEngine;
+import com.example.dhtcopy.core.storage.HeapStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngine;
+import com.example.dhtcopy.core.storage.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 public class Node {
+    private static final Logger logger = LoggerFactory.getLogger(Node.class);
+
+    public static final String DEFAULT_ZONE = "default";
+    // Срок жизни "без истечения" в putBytes(key, value, expiresAt)
+    public static final long NO_EXPIRY = 0;
+
+    private static final int EXPIRY_LOCK_STRIPES = 64;
+    // Один поток крутит колеса таймеров всех нод: тик обрабатывает только истекающие ключи
+    private static final ScheduledExecutorService EXPIRY_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "dht-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final String id;
     private final String host;
     private final int port;
-    private final Map<String, String> storage = new ConcurrentHashMap<>();
+    // Зона отказа (стойка, дата-центр): реплики ключа по возможности разносятся по разным зонам
+    private final String zone;
+    // Локальное хранилище ключей; по умолчанию ConcurrentHashMap в куче
+    private final StorageEngine storage;
+    // Журнал предзаписи; null - изменения не журналируются (dht.storage.wal-mode: none)
+    private final WriteAheadLog wal;
     private volatile boolean active = true;
+    // Относительная емкость ноды: доля ключей пропорциональна весу
+    private volatile double weight = 1.0;
     private final LocalDateTime createdAt = LocalDateTime.now();
     private volatile LocalDateTime lastHealthCheck = LocalDateTime.now();
     private final AtomicLong operationCount = new AtomicLong(0);
+    // Подписчики на смену активности или веса ноды (например, кольцо пересобирает маршруты)
+    private final List<Consumer<Node>> stateListeners = new CopyOnWriteArrayList<>();
+    // Ключи, измененные после последнего снимка; null - изменения не отслеживаются
+    private volatile Set<String> changedKeys;
+    // После clearData инкрементальный снимок невозможен - нужен полный
+    private volatile boolean changesLost;
+    // Писатели отмечают ключи под блокировкой чтения, смена набора - под блокировкой записи
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+    // Таймеры ключей с TTL; истекший ключ невидим сразу, а удаляется из хранилища на тике колеса
+    private final Map<String, TimingWheel.Timer> expiries = new ConcurrentHashMap<>();
+    // Создается при первой записи с TTL; до этого запись идет без блокировок истечения
+    private volatile TimingWheel timingWheel;
+    private ScheduledFuture<?> expiryTask;
+    // Запись ключа и смена его таймера атомарны относительно удаления истекшего ключа
+    private final Object[] expiryLocks = new Object[EXPIRY_LOCK_STRIPES];
+    private final AtomicLong expiredCount = new AtomicLong();
+    private volatile ExpiryListener expiryListener;
+    // Упорядоченный индекс ключей для сканов по диапазону, если движок сам не упорядочен.
+    // Строится при первом скане; ключи, вытесненные движком в обход ноды, вычищаются при скане
+    private volatile NavigableSet<String> sortedKeys;
+    // Дерево хэшей для anti-entropy; null - не ведется
+    private volatile MerkleIndex merkleIndex;
+    // Ключи, вытесненные бюджетом памяти; разбираются после записи, когда блокировки ключа уже сняты
+    private final Queue<String> evictedKeys = new ConcurrentLinkedQueue<>();
+
+    // Уведомление об удалении истекшего ключа; lagMillis - задержка удаления после срока
+    @FunctionalInterface
+    public interface ExpiryListener {
+        void onExpired(String key, long lagMillis);
+    }
+
+    /**
+     * Ключи, измененные с предыдущего вызова; keys == null - нужен полный снимок
+     * (первый вызов или хранилище очищалось).
+     */
+    public record Changes(Set<String> keys) {
+        public boolean isFull() {
+            return keys == null;
+        }
+    }
 
     public Node(String id, String host, int port) {
+        this(id, host, port, 1.0, DEFAULT_ZONE);
+    }
+
+    public Node(String id, String host, int port, double weight) {
+        this(id, host, port, weight, DEFAULT_ZONE);
+    }
+
+    public Node(String id, String host, int port, double weight, String zone) {
+        this(id, host, port, weight, zone, new HeapStorageEngine());
+    }
+
+    public Node(String id, String host, int port, double weight, String zone, StorageEngine storage) {
+        this(id, host, port, weight, zone, storage, null);
+    }
+
+    public Node(String id, String host, int port, double weight, String zone, StorageEngine storage, WriteAheadLog wal) {
+        this(id, host, port, weight, zone, storage, wal, Map.of());
+    }
+
+    /**
+     * Журнал проигрывается в хранилище сразу: нода стартует с состоянием на момент падения.
+     * restoredExpiries - сроки ключей, восстановленных из снимка; вместе со сроками из журнала
+     * по ним заводятся таймеры, а ключи, истекшие за время простоя, удаляются на первом тике.
+     */
+    public Node(String id, String host, int port, double weight, String zone, StorageEngine storage, WriteAheadLog wal,
+                Map<String, Long> restoredExpiries) {
         this.id = id;
         this.host = host;
         this.port = port;
+        this.weight = validateWeight(weight);
+        this.zone = zone == null || zone.isBlank() ? DEFAULT_ZONE : zone;
+        this.storage = Objects.requireNonNull(storage, "storage");
+        this.wal = wal;
+        for (int i = 0; i < expiryLocks.length; i++) {
+            expiryLocks[i] = new Object();
+        }
+        if (storage instanceof BoundedStorageEngine bounded) {
+            bounded.setEvictionListener(evictedKeys::add);
+        }
+        Map<String, Long> recovered = new HashMap<>(restoredExpiries);
+        if (wal != null) {
+            wal.recover(storage, recovered);
+        }
+        if (!recovered.isEmpty()) {
+            TimingWheel wheel = timingWheel();
+            recovered.forEach((key, expiresAt) -> {
+                if (storage.containsKey(key)) {
+                    expiries.put(key, wheel.schedule(key, expiresAt));
+                }
+            });
+        }
     }
 
-    public String put(String key, String value) {
+    // Основной путь данных: значения хранятся и передаются как сырые байты
+    public byte[] putBytes(String key, byte[] value) {
+        return putBytes(key, value, NO_EXPIRY);
+    }
+
+    /**
+     * Запись с абсолютным сроком жизни (epoch ms, NO_EXPIRY - бессрочно). Срок считает координатор,
+     * поэтому реплики ключа истекают одновременно. Запись без срока снимает прежний TTL ключа.
+     */
+    public byte[] putBytes(String key, byte[] value, long expiresAt) {
         if (!active) {
             throw new IllegalStateException("Node " + id + " is not active");
         }
+        Objects.requireNonNull(value, "value");
         operationCount.incrementAndGet();
-        return storage.put(key, value);
+        return writeWithExpiry(key, value, expiresAt);
     }
 
-    public String get(String key) {
+    public byte[] getBytes(String key) {
         if (!active) {
             throw new IllegalStateException("Node " + id + " is not active");
         }
         operationCount.incrementAndGet();
-        return storage.get(key);
+        byte[] value = storage.get(key);
+        return value == null || isExpired(key) ? null : value;
     }
 
-    public String remove(String key) {
+    /**
+     * Дайджест значения для сверки реплик без передачи самого значения; null - ключа нет.
+     * С деревом хэшей дайджест берется из него, и значение из хранилища не читается.
+     */
+    public Long getDigest(String key) {
+        MerkleIndex merkle = merkleIndex;
+        if (merkle == null) {
+            byte[] value = getBytes(key);
+            return value == null ? null : MerkleIndex.entryHash(key, value);
+        }
+        if (!active) {
+            throw new IllegalStateException("Node " + id + " is not active");
+        }
+        operationCount.incrementAndGet();
+        return isExpired(key) ? null : merkle.hash(key);
+    }
+
+    public byte[] removeBytes(String key) {
         if (!active) {
             throw new IllegalStateException("Node " + id + " is not active");
         }
         operationCount.incrementAndGet();
-        return storage.remove(key);
+        TimingWheel wheel = timingWheel;
+        if (wheel == null) {
+            return delete(key);
+        }
+        synchronized (expiryLock(key)) {
+            byte[] previous = delete(key);
+            TimingWheel.Timer timer = expiries.remove(key);
+            if (timer != null) {
+                wheel.cancel(timer);
+                if (timer.getExpiresAt() <= System.currentTimeMillis()) {
+                    previous = null;
+                }
+            }
+            return previous;
+        }
+    }
+
+    // Строковый API - тонкая обертка над байтовым (UTF-8). Пишется значение без версии, а читается
+    // хранимая форма: заголовок версии и конверт сжатия координатора снимаются
+    public String put(String key, String value) {
+        return decodeStored(putBytes(key, encode(value)));
+    }
+
+    public String get(String key) {
+        return decodeStored(getBytes(key));
+    }
+
+    public String remove(String key) {
+        return decodeStored(removeBytes(key));
     }
 
     public boolean containsKey(String key) {
-        return active && storage.containsKey(key);
+        return active && storage.containsKey(key) && !isExpired(key);
+    }
+
+    // Истекшие, но еще не удаленные ключи не попадают в выборку (и не переносятся при ребалансировке)
+    public Map<String, byte[]> getAllBytes() {
+        Map<String, byte[]> data = new ConcurrentHashMap<>();
+        forEachEntry(data::put);
+        return data;
     }
 
     public Map<String, String> getAllData() {
-        return new ConcurrentHashMap<>(storage);
+        Map<String, String> data = new ConcurrentHashMap<>();
+        forEachEntry((key, value) -> data.put(key, decodeStored(value)));
+        return data;
+    }
+
+    /**
+     * Обход живых записей без копии хранилища. Движок может держать блокировку на время обхода,
+     * поэтому action не должен менять эту же ноду - ключи для удаления собираются и удаляются после.
+     */
+    public void forEachEntry(BiConsumer<String, byte[]> action) {
+        storage.forEach((key, value) -> {
+            if (!isExpired(key)) {
+                action.accept(key, value);
+            }
+        });
+    }
+
+    /**
+     * Снимок ключей, токены которых попадают в отрезки. Под блокировкой движка читаются только ключи,
+     * значения перенос читает потом пачками через readBatch - движок не держится на время паузы
+     * бюджета и записи на другие ноды.
+     */
+    public List<String> keysInRanges(List<TokenRange> ranges, ToLongFunction<String> token) {
+        List<String> keys = new ArrayList<>();
+        if (ranges.isEmpty()) {
+            return keys;
+        }
+        boolean full = ranges.stream().anyMatch(TokenRange::isFull);
+        forEachKey(key -> {
+            if (full || TokenRange.anyContains(ranges, token.applyAsLong(key))) {
+                keys.add(key);
+            }
+        });
+        return keys;
+    }
+
+    // Снимок всех живых ключей ноды, без значений
+    public List<String> keys() {
+        List<String> keys = new ArrayList<>();
+        forEachKey(keys::add);
+        return keys;
+    }
+
+    // Значения пачки ключей, каждое читается отдельно; удаленные и истекшие после снимка ключи пропускаются
+    public Map<String, byte[]> readBatch(Collection<String> keys) {
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (String key : keys) {
+            byte[] value = storage.get(key);
+            if (value != null && !isExpired(key)) {
+                batch.put(key, value);
+            }
+        }
+        return batch;
+    }
+
+    // Обход живых ключей без чтения значений
+    public void forEachKey(Consumer<String> action) {
+        storage.forEachKey(key -> {
+            if (!isExpired(key)) {
+                action.accept(key);
+            }
+        });
+    }
+
+    // Число живых ключей, токены которых попадают в отрезки; значения не читаются
+    public long countInRanges(List<TokenRange> ranges, ToLongFunction<String> token) {
+        long[] count = new long[1];
+        forEachKey(key -> {
+            if (TokenRange.anyContains(ranges, token.applyAsLong(key))) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    public void transferBytes(Map<String, byte[]> data) {
+        if (!active) {
+            throw new IllegalStateException("Cannot transfer data to inactive node");
+        }
+        data.forEach((key, value) -> writeWithExpiry(key, value, NO_EXPIRY));
     }
 
     public void transferData(Map<String, String> data) {
         if (!active) {
             throw new IllegalStateException("Cannot transfer data to inactive node");
         }
-        storage.putAll(data);
+        data.forEach((key, value) -> writeWithExpiry(key, encode(value), NO_EXPIRY));
     }
 
     public void clearData() {
-        storage.clear();
+        if (wal == null) {
+            storage.clear();
+        } else {
+            wal.logClear(storage::clear);
+        }
+        sortedKeys = null;
+        MerkleIndex merkle = merkleIndex;
+        if (merkle != null) {
+            merkle.clear();
+        }
+        TimingWheel wheel = timingWheel;
+        if (wheel != null) {
+            expiries.values().forEach(wheel::cancel);
+            expiries.clear();
+        }
+        changesLost = true;
+    }
+
+    /**
+     * Не больше limit живых записей из [fromInclusive, toExclusive) по возрастанию ключа
+     * (toExclusive == null - до конца). Память - O(limit) независимо от размера диапазона.
+     */
+    public List<Map.Entry<String, byte[]>> scanBytes(String fromInclusive, String toExclusive, int limit) {
+        if (!active) {
+            throw new IllegalStateException("Node " + id + " is not active");
+        }
+        operationCount.incrementAndGet();
+        List<Map.Entry<String, byte[]>> page = new ArrayList<>(Math.min(limit, 1024));
+        if (storage.isOrdered()) {
+            String from = fromInclusive;
+            while (page.size() < limit) {
+                int requested = limit - page.size();
+                List<Map.Entry<String, byte[]>> batch = storage.scanPage(from, toExclusive, requested);
+                for (Map.Entry<String, byte[]> entry : batch) {
+                    if (!isExpired(entry.getKey())) {
+                        page.add(entry);
+                    }
+                }
+                if (batch.size() < requested) {
+                    break;
+                }
+                // Часть пачки отброшена как истекшая - дочитываем после последнего ключа
+                from = batch.get(batch.size() - 1).getKey() + '\0';
+            }
+            return page;
+        }
+
+        NavigableSet<String> index = sortedKeys();
+        NavigableSet<String> range = toExclusive == null
+                ? index.tailSet(fromInclusive, true)
+                : index.subSet(fromInclusive, true, toExclusive, false);
+        for (String key : range) {
+            if (page.size() >= limit) {
+                break;
+            }
+            byte[] value = storage.get(key);
+            if (value == null) {
+                // Ключ вытеснен или удален параллельно - убираем из индекса, если его нет и сейчас
+                index.remove(key);
+                if (storage.containsKey(key)) {
+                    index.add(key);
+                }
+            } else if (!isExpired(key)) {
+                page.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            }
+        }
+        return page;
+    }
+
+    // Срок жизни ключа (epoch ms) или NO_EXPIRY
+    public long getExpiresAt(String key) {
+        TimingWheel.Timer timer = timingWheel == null ? null : expiries.get(key);
+        return timer == null ? NO_EXPIRY : timer.getExpiresAt();
+    }
+
+    // Сроки всех ключей с TTL - переносятся вместе с данными при уходе ноды
+    public Map<String, Long> getExpiries() {
+        Map<String, Long> result = new HashMap<>();
+        expiries.forEach((key, timer) -> result.put(key, timer.getExpiresAt()));
+        return result;
+    }
+
+    // Следующий drainChanges вернет полный набор (например, инкрементальный снимок не удался)
+    public void requireFullSnapshot() {
+        changesLost = true;
+    }
+
+    // Включает отслеживание (если выключено) и начинает новый набор измененных ключей
+    public Changes drainChanges() {
+        changeLock.writeLock().lock();
+        try {
+            Set<String> previous = changedKeys;
+            boolean full = previous == null || changesLost;
+            changedKeys = ConcurrentHashMap.newKeySet();
+            changesLost = false;
+            return new Changes(full ? null : previous);
+        } finally {
+            changeLock.writeLock().unlock();
+        }
+    }
+
+    // Закрывает журнал и хранилище; после этого нода не принимает записи
+    public void close() {
+        synchronized (expiries) {
+            if (expiryTask != null) {
+                expiryTask.cancel(false);
+            }
+        }
+        if (wal != null) {
+            wal.close();
+        }
+        storage.close();
     }
 
     public int getDataSize() {
@@ -81,11 +472,305 @@ public class Node {
     public String getId() { return id; }
     public String getHost() { return host; }
     public int getPort() { return port; }
+    public String getZone() { return zone; }
+    public StorageEngine getStorageEngine() { return storage; }
+    public WriteAheadLog getWriteAheadLog() { return wal; }
     public boolean isActive() { return active; }
-    public void setActive(boolean active) { this.active = active; }
+    public void setActive(boolean active) {
+        if (this.active != active) {
+            this.active = active;
+            notifyStateListeners();
+        }
+    }
+    public double getWeight() { return weight; }
+    public void setWeight(double weight) {
+        double validated = validateWeight(weight);
+        if (this.weight != validated) {
+            this.weight = validated;
+            notifyStateListeners();
+        }
+    }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public LocalDateTime getLastHealthCheck() { return lastHealthCheck; }
     public long getOperationCount() { return operationCount.get(); }
+    public long getExpiredCount() { return expiredCount.get(); }
+    // Ключи, ожидающие истечения
+    public int getPendingExpiries() { return expiries.size(); }
+    public void setExpiryListener(ExpiryListener expiryListener) { this.expiryListener = expiryListener; }
+
+    public void addStateListener(Consumer<Node> listener) {
+        stateListeners.add(listener);
+    }
+
+    public void removeStateListener(Consumer<Node> listener) {
+        stateListeners.remove(listener);
+    }
+
+    public static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String decode(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decodeStored(byte[] stored) {
+        return decode(ValueCodec.decode(ValueVersion.payload(stored)));
+    }
+
+    private byte[] write(String key, byte[] value, long expiresAt) {
+        MerkleIndex merkle = merkleIndex;
+        byte[] previous;
+        if (merkle == null) {
+            previous = store(key, value, expiresAt);
+        } else {
+            // Хранилище и дерево меняются под блокировкой ключа, иначе параллельные записи их разведут
+            synchronized (expiryLock(key)) {
+                previous = store(key, value, expiresAt);
+                merkle.put(key, value);
+            }
+        }
+        NavigableSet<String> index = sortedKeys;
+        if (index != null) {
+            index.add(key);
+        }
+        markChanged(key);
+        return previous;
+    }
+
+    // Срок жизни пишется в журнал вместе со значением - после рестарта ключ истечет в тот же срок
+    private byte[] store(String key, byte[] value, long expiresAt) {
+        return wal == null ? storage.put(key, value) : wal.logPut(key, value, expiresAt, () -> storage.put(key, value));
+    }
+
+    private byte[] delete(String key) {
+        MerkleIndex merkle = merkleIndex;
+        byte[] previous;
+        if (merkle == null) {
+            previous = erase(key);
+        } else {
+            synchronized (expiryLock(key)) {
+                previous = erase(key);
+                merkle.remove(key);
+            }
+        }
+        NavigableSet<String> index = sortedKeys;
+        if (index != null) {
+            index.remove(key);
+            // Параллельная запись могла вернуть ключ между remove хранилища и индекса
+            if (storage.containsKey(key)) {
+                index.add(key);
+            }
+        }
+        markChanged(key);
+        return previous;
+    }
+
+    private byte[] erase(String key) {
+        return wal == null ? storage.remove(key) : wal.logRemove(key, () -> storage.remove(key));
+    }
+
+    /**
+     * Включает дерево хэшей для anti-entropy и заполняет его текущими ключами. Дерево публикуется
+     * до обхода хранилища; каждый ключ перечитывается под своей блокировкой, поэтому параллельная
+     * запись не оставит в дереве старое значение.
+     */
+    public MerkleIndex enableMerkleIndex(ToLongFunction<String> token, int leavesPerRange) {
+        synchronized (storage) {
+            MerkleIndex merkle = merkleIndex;
+            if (merkle != null) {
+                return merkle;
+            }
+            MerkleIndex created = new MerkleIndex(token, leavesPerRange);
+            merkleIndex = created;
+            storage.forEach((key, value) -> refreshMerkleIndex(created, key));
+            return created;
+        }
+    }
+
+    public MerkleIndex getMerkleIndex() {
+        return merkleIndex;
+    }
+
+    /**
+     * Сверяет хэш ключа в дереве с хранилищем - например, если движок вытеснил ключ в обход ноды.
+     * Истекший ключ считается отсутствующим.
+     */
+    public void refreshMerkleIndex(String key) {
+        MerkleIndex merkle = merkleIndex;
+        if (merkle != null) {
+            refreshMerkleIndex(merkle, key);
+        }
+    }
+
+    private void refreshMerkleIndex(MerkleIndex merkle, String key) {
+        synchronized (expiryLock(key)) {
+            byte[] value = storage.get(key);
+            if (value == null || isExpired(key)) {
+                merkle.remove(key);
+            } else {
+                merkle.put(key, value);
+            }
+        }
+    }
+
+    // Индекс публикуется до заполнения, чтобы записи во время обхода хранилища в него попали
+    private NavigableSet<String> sortedKeys() {
+        NavigableSet<String> index = sortedKeys;
+        if (index != null) {
+            return index;
+        }
+        synchronized (storage) {
+            index = sortedKeys;
+            if (index == null) {
+                index = new ConcurrentSkipListSet<>();
+                sortedKeys = index;
+                NavigableSet<String> created = index;
+                storage.forEach((key, value) -> created.add(key));
+            }
+            return index;
+        }
+    }
+
+    private byte[] writeWithExpiry(String key, byte[] value, long expiresAt) {
+        try {
+            TimingWheel wheel = expiresAt == NO_EXPIRY ? timingWheel : timingWheel();
+            if (wheel == null) {
+                return write(key, value, NO_EXPIRY);
+            }
+            synchronized (expiryLock(key)) {
+                byte[] previous = write(key, value, expiresAt);
+                TimingWheel.Timer old = expiresAt == NO_EXPIRY
+                        ? expiries.remove(key)
+                        : expiries.put(key, wheel.schedule(key, expiresAt));
+                if (old != null) {
+                    wheel.cancel(old);
+                    // Перезапись истекшего ключа - для вызывающего прежнего значения не было
+                    if (old.getExpiresAt() <= System.currentTimeMillis()) {
+                        previous = null;
+                    }
+                }
+                // Снимок, забравший ключ между записью и сменой таймера, прочитал прежний срок
+                markChanged(key);
+                return previous;
+            }
+        } finally {
+            forgetEvicted();
+        }
+    }
+
+    /**
+     * Убирает вытесненные ключи из таймеров, индекса сканов и дерева хэшей и отмечает их для снимка.
+     * Разбор идет вне блокировки записанного ключа: иначе две записи, вытеснившие ключи друг друга,
+     * ждали бы блокировки друг друга. Ключ, уже записанный заново, не трогается.
+     */
+    private void forgetEvicted() {
+        String key;
+        while ((key = evictedKeys.poll()) != null) {
+            synchronized (expiryLock(key)) {
+                if (storage.containsKey(key)) {
+                    continue;
+                }
+                TimingWheel.Timer timer = expiries.remove(key);
+                if (timer != null) {
+                    timingWheel.cancel(timer);
+                }
+                MerkleIndex merkle = merkleIndex;
+                if (merkle != null) {
+                    merkle.remove(key);
+                }
+                NavigableSet<String> index = sortedKeys;
+                if (index != null) {
+                    index.remove(key);
+                    // Запись без TTL идет без блокировки ключа и могла вернуть его после проверки
+                    if (storage.containsKey(key)) {
+                        index.add(key);
+                    }
+                }
+            }
+            markChanged(key);
+        }
+    }
+
+    private boolean isExpired(String key) {
+        if (timingWheel == null) {
+            return false;
+        }
+        TimingWheel.Timer timer = expiries.get(key);
+        return timer != null && timer.getExpiresAt() <= System.currentTimeMillis();
+    }
+
+    private TimingWheel timingWheel() {
+        TimingWheel wheel = timingWheel;
+        if (wheel != null) {
+            return wheel;
+        }
+        synchronized (expiries) {
+            if (timingWheel == null) {
+                TimingWheel created = new TimingWheel(System.currentTimeMillis());
+                long tick = created.getTickMs();
+                expiryTask = EXPIRY_TIMER.scheduleAtFixedRate(this::expireDue, tick, tick, TimeUnit.MILLISECONDS);
+                timingWheel = created;
+            }
+            return timingWheel;
+        }
+    }
+
+    // Тик колеса: удаляет из хранилища ключи, чьи таймеры сработали и не были сменены записью
+    private void expireDue() {
+        try {
+            long now = System.currentTimeMillis();
+            for (TimingWheel.Timer timer : timingWheel.advance(now)) {
+                String key = timer.getKey();
+                synchronized (expiryLock(key)) {
+                    if (expiries.get(key) != timer) {
+                        continue;
+                    }
+                    // Таймер снимается после удаления: при ошибке ключ остается невидимым
+                    delete(key);
+                    expiries.remove(key, timer);
+                }
+                expiredCount.incrementAndGet();
+                ExpiryListener listener = expiryListener;
+                if (listener != null) {
+                    listener.onExpired(key, Math.max(0, now - timer.getExpiresAt()));
+                }
+            }
+        } catch (RuntimeException e) {
+            // Исключение в периодической задаче остановило бы все последующие тики
+            logger.warn("Failed to expire keys on node {}: {}", id, e.getMessage());
+        }
+    }
+
+    private Object expiryLock(String key) {
+        return expiryLocks[(key.hashCode() & 0x7fffffff) % EXPIRY_LOCK_STRIPES];
+    }
+
+    // Ключ отмечается после записи: снимок, забравший набор, прочитает уже новое значение
+    private void markChanged(String key) {
+        if (changedKeys == null) {
+            return;
+        }
+        changeLock.readLock().lock();
+        try {
+            changedKeys.add(key);
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    private static double validateWeight(double weight) {
+        if (!(weight > 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Node weight must be a positive number: " + weight);
+        }
+        return weight;
+    }
+
+    private void notifyStateListeners() {
+        for (Consumer<Node> listener : stateListeners) {
+            listener.accept(this);
+        }
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -102,7 +787,7 @@ public class Node {
 
     @Override
     public String toString() {
-        return String.format("Node{id='%s', host='%s', port=%d, active=%s, dataSize=%d, operations=%d}",
-                id, host, port, active, storage.size(), operationCount.get());
+        return String.format("Node{id='%s', host='%s', port=%d, zone='%s', active=%s, weight=%.2f, dataSize=%d, operations=%d}",
+                id, host, port, zone, active, weight, storage.size(), operationCount.get());
     }
 }
\ No newline at end of file
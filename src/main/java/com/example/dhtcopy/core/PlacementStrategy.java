@@ -0,0 +1,140 @@
+package com.example.dhtcopy.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Алгоритм размещения ключей по нодам. По умолчанию - кольцо с виртуальными нодами
+ * (ConsistentHashRing); альтернативы лежат в пакете core.placement и выбираются
+ * через dht.placement-strategy. Стратегии подписываются на изменения ноды и
+ * пересобирают маршруты при смене ее активности или веса.
+ */
+public interface PlacementStrategy {
+
+    void addNode(Node node);
+
+    boolean removeNode(String nodeId);
+
+    Node getNode(String key);
+
+    // Упорядоченный список уникальных активных нод, отвечающих за ключ
+    List<Node> getNodes(String key, int replicationFactor);
+
+    /**
+     * Маршрутизирует пачку ключей: ключи сгруппированы по одинаковому списку реплик.
+     * Реализация по умолчанию - поштучный getNodes.
+     */
+    default Map<List<Node>, List<String>> routeBatch(Collection<String> keys, int replicationFactor) {
+        Map<List<Node>, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(getNodes(key, replicationFactor), nodes -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    // Дополнительные ноды, где ключ мог сохраниться при другом распределении (для чтения и удаления)
+    default List<Node> getFallbackNodes(String key, int replicationFactor) {
+        return List.of();
+    }
+
+    /**
+     * Отрезки кольца, в которых нода входит в список реплик, - чтобы обходить только ее ключи
+     * из этих отрезков. Стратегии без токенов отдают все кольцо; token для них не важен.
+     */
+    default List<TokenRange> getTokenRanges(Node node, int replicationFactor) {
+        return List.of(TokenRange.FULL);
+    }
+
+    /**
+     * Добавляет ноду и возвращает отрезки, в списки реплик которых она вошла, с прежними и новыми
+     * репликами - разницу топологий до и после добавления. Стратегии без токенов отдают все кольцо
+     * с прежним составом в качестве прежних реплик.
+     */
+    default List<RangeTransfer> addNodeWithTransfers(Node node, int replicationFactor) {
+        List<Node> previous = getAllNodes().stream().filter(Node::isActive).toList();
+        addNode(node);
+        return previous.isEmpty() ? List.of() : List.of(new RangeTransfer(TokenRange.FULL, previous, List.of(node)));
+    }
+
+    /**
+     * Меняет вес ноды и возвращает отрезки, реплики которых от этого изменились, с прежними
+     * и новыми репликами. Стратегии без токенов отдают все кольцо с остальными активными нодами
+     * в качестве прежних реплик.
+     */
+    default List<RangeTransfer> updateWeightWithTransfers(Node node, double weight, int replicationFactor) {
+        node.setWeight(weight);
+        List<Node> previous = getAllNodes().stream().filter(other -> other != node && other.isActive()).toList();
+        return previous.isEmpty() ? List.of() : List.of(new RangeTransfer(TokenRange.FULL, previous, List.of(node)));
+    }
+
+    // true - getTokenRanges и planRemoval описывают размещение точно (кольцо токенов)
+    default boolean supportsRangeTransfers() {
+        return false;
+    }
+
+    /**
+     * Отрезки, в реплики которых входит нода, с репликами сейчас и после ее удаления.
+     * Кольцо не меняется: нода остается в маршрутах, пока ее отрезки передаются.
+     * Стратегии без токенов ничего не планируют - данные переносятся маршрутизацией после удаления.
+     */
+    default List<RangeTransfer> planRemoval(Node node, int replicationFactor) {
+        return List.of();
+    }
+
+    /**
+     * Все сегменты кольца между соседними токенами в порядке кольца, с их репликами.
+     * У всех реплик сегмента одни и те же границы - по ним anti-entropy сравнивает деревья хэшей.
+     * Стратегии без токенов сегментов не дают.
+     */
+    default Map<TokenRange, List<Node>> getSegments(int replicationFactor) {
+        return Map.of();
+    }
+
+    // Позиция ключа на кольце токенов
+    default long token(String key) {
+        return 0;
+    }
+
+    List<Node> getAllNodes();
+
+    default int getUniqueNodesCount() {
+        return getAllNodes().size();
+    }
+
+    default boolean isEmpty() {
+        return getAllNodes().isEmpty();
+    }
+
+    default Map<String, Integer> getDataDistribution() {
+        Map<String, Integer> distribution = new HashMap<>();
+        for (Node node : getAllNodes()) {
+            distribution.put(node.getId(), node.getDataSize());
+        }
+        return distribution;
+    }
+
+    /**
+     * Доля пространства ключей в зависимости от того, по скольким различным зонам
+     * разнесены реплики. По умолчанию оценивается по выборке ключей.
+     */
+    default Map<Integer, Double> getZoneCoverage(int replicationFactor) {
+        int samples = 4096;
+        Map<Integer, Double> coverage = new TreeMap<>();
+        for (int i = 0; i < samples; i++) {
+            List<Node> replicas = getNodes("zone-coverage-" + i, replicationFactor);
+            int zones = (int) replicas.stream().map(Node::getZone).distinct().count();
+            coverage.merge(zones, 1.0 / samples, Double::sum);
+        }
+        return coverage;
+    }
+
+    // Монотонно растущая эпоха топологии: меняется при любом изменении состава или состояния нод
+    long getTopologyEpoch();
+
+    String name();
+}
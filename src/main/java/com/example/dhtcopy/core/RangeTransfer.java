@@ -0,0 +1,25 @@
+package com.example.dhtcopy.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Отрезок кольца, у которого изменился список реплик: previousReplicas - до изменения топологии,
+ * currentReplicas - после. Ключи отрезка копируются с нод, которые его теряют.
+ */
+public record RangeTransfer(TokenRange range, List<Node> previousReplicas, List<Node> currentReplicas) {
+
+    // Новые реплики отрезка, которых не было среди прежних
+    public List<Node> gainers() {
+        List<Node> gainers = new ArrayList<>(currentReplicas);
+        gainers.removeAll(previousReplicas);
+        return gainers;
+    }
+
+    // Прежние реплики, больше не отвечающие за отрезок
+    public List<Node> losers() {
+        List<Node> losers = new ArrayList<>(previousReplicas);
+        losers.removeAll(currentReplicas);
+        return losers;
+    }
+}
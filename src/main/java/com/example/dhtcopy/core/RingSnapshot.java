@@ -0,0 +1,129 @@
+package com.example.dhtcopy.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Неизменяемый снимок кольца: отсортированные токены и параллельный массив владельцев.
+ * Публикуется целиком при изменении состава кольца, поэтому чтение не требует блокировок.
+ * Для каждого сегмента заранее вычислен список реплик, так что маршрутизация ключа -
+ * это один бинарный поиск без аллокаций. Реплики сначала разносятся по разным зонам,
+ * и лишь если зон меньше, чем реплик, добираются из уже занятых.
+ */
+final class RingSnapshot {
+    static final RingSnapshot EMPTY = new RingSnapshot(new long[0], new Node[0], new Node[0], 0, 0);
+
+    final long[] tokens;
+    final Node[] owners;
+    final Node[] members;
+    // preferenceLists[i] - упорядоченные уникальные активные ноды для сегмента (tokens[i-1], tokens[i]]
+    final List<Node>[] preferenceLists;
+    final int replicationFactor;
+    // Количество различных зон среди активных нод
+    final int activeZones;
+    // Эпоха топологии: растет с каждым опубликованным снимком
+    final long epoch;
+
+    RingSnapshot(long[] tokens, Node[] owners, Node[] members, int replicationFactor, long epoch) {
+        this.epoch = epoch;
+        this.tokens = tokens;
+        this.owners = owners;
+        this.members = members;
+        this.replicationFactor = replicationFactor;
+        this.activeZones = countActiveZones(members);
+        this.preferenceLists = buildPreferenceLists(replicationFactor);
+    }
+
+    boolean isEmpty() {
+        return tokens.length == 0;
+    }
+
+    int size() {
+        return tokens.length;
+    }
+
+    // Индекс первого токена >= hash, с переходом через ноль кольца
+    int indexFor(long hash) {
+        int index = Arrays.binarySearch(tokens, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == tokens.length ? 0 : index;
+    }
+
+    List<Node> preferenceList(long hash) {
+        return preferenceLists[indexFor(hash)];
+    }
+
+    /**
+     * Собирает до target уникальных подходящих нод по часовой стрелке от позиции start:
+     * первый проход берет по одной ноде на зону, второй добивает список остальными нодами
+     * в порядке кольца. Оба прохода останавливаются, как только набрано нужное число.
+     */
+    void collectReplicas(int start, int target, Predicate<Node> eligible, List<Node> out) {
+        int size = owners.length;
+        int zoneTarget = Math.min(target, activeZones);
+
+        if (zoneTarget > 1) {
+            Set<String> usedZones = new HashSet<>();
+            for (int step = 0; step < size && out.size() < zoneTarget; step++) {
+                Node node = owners[(start + step) % size];
+                if (eligible.test(node) && !usedZones.contains(node.getZone()) && !out.contains(node)) {
+                    out.add(node);
+                    usedZones.add(node.getZone());
+                }
+            }
+        }
+
+        for (int step = 0; step < size && out.size() < target; step++) {
+            Node node = owners[(start + step) % size];
+            if (eligible.test(node) && !out.contains(node)) {
+                out.add(node);
+            }
+        }
+    }
+
+    private static int countActiveZones(Node[] members) {
+        Set<String> zones = new HashSet<>();
+        for (Node member : members) {
+            if (member.isActive()) {
+                zones.add(member.getZone());
+            }
+        }
+        return zones.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Node>[] buildPreferenceLists(int replicationFactor) {
+        List<Node>[] lists = new List[owners.length];
+        if (owners.length == 0) {
+            return lists;
+        }
+
+        int activeMembers = 0;
+        for (Node member : members) {
+            if (member.isActive()) {
+                activeMembers++;
+            }
+        }
+        int target = Math.min(replicationFactor, activeMembers);
+
+        List<Node> previous = null;
+        List<Node> replicas = new ArrayList<>(target);
+        for (int i = 0; i < owners.length; i++) {
+            replicas.clear();
+            collectReplicas(i, target, Node::isActive, replicas);
+
+            // Соседние сегменты обычно имеют одинаковый набор реплик - переиспользуем список
+            if (previous == null || !previous.equals(replicas)) {
+                previous = List.copyOf(replicas);
+            }
+            lists[i] = previous;
+        }
+        return lists;
+    }
+}
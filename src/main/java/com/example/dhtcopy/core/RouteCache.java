@@ -0,0 +1,77 @@
+package com.example.dhtcopy.core;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный кэш маршрутов для горячих ключей с прямым отображением: слот выбирается
+ * по String.hashCode, который строка кэширует, так что попадание обходится без хэширования
+ * ключа и бинарного поиска по кольцу. Каждая запись помечена эпохой топологии и считается
+ * промахом, как только эпоха сменилась, - кэш инвалидируется целиком без обхода слотов.
+ */
+final class RouteCache {
+    private final Entry[] entries;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // Неизменяемая запись: final-поля делают безопасной публикацию через гонку по слоту
+    private static final class Entry {
+        final long epoch;
+        final String key;
+        final int replicationFactor;
+        final List<Node> replicas;
+
+        Entry(long epoch, String key, int replicationFactor, List<Node> replicas) {
+            this.epoch = epoch;
+            this.key = key;
+            this.replicationFactor = replicationFactor;
+            this.replicas = replicas;
+        }
+    }
+
+    RouteCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Route cache capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    List<Node> get(String key, int replicationFactor, long epoch) {
+        Entry entry = entries[slot(key)];
+        if (entry != null && entry.epoch == epoch && replicationFactor <= entry.replicationFactor
+                && entry.key.equals(key)) {
+            hits.increment();
+            List<Node> replicas = entry.replicas;
+            return replicationFactor >= replicas.size() ? replicas : replicas.subList(0, replicationFactor);
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(String key, int replicationFactor, long epoch, List<Node> replicas) {
+        entries[slot(key)] = new Entry(epoch, key, replicationFactor, replicas);
+    }
+
+    private int slot(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+}
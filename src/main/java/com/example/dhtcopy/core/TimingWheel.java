@@ -0,0 +1,208 @@
+package com.example.dhtcopy.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Иерархическое колесо таймеров для истечения TTL ключей. Уровень k состоит из wheelSize
+ * корзин шириной tick * wheelSize^k; таймер кладется на нижний уровень, куда дотягивается
+ * его срок, и спускается ниже, когда колесо доходит до его корзины. Добавление и отмена - O(1)
+ * (двусвязный список корзины), шаг колеса обрабатывает одну корзину нижнего уровня, без обхода ключей.
+ * Сроки дальше верхнего уровня ждут в его последней корзине и перекладываются при каждом обороте.
+ */
+public final class TimingWheel {
+    public static final long DEFAULT_TICK_MS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 64;
+    public static final int DEFAULT_LEVELS = 4;
+
+    // Таймер ключа; отменяется через cancel, срабатывает не раньше expiresAt
+    public static final class Timer {
+        private final String key;
+        private final long expiresAt;
+        private long expirationTick;
+        private Bucket bucket;
+        private Timer prev;
+        private Timer next;
+
+        private Timer(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    private static final class Bucket {
+        private Timer head;
+
+        void add(Timer timer) {
+            timer.bucket = this;
+            timer.prev = null;
+            timer.next = head;
+            if (head != null) {
+                head.prev = timer;
+            }
+            head = timer;
+        }
+
+        void remove(Timer timer) {
+            if (timer.prev != null) {
+                timer.prev.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            }
+            timer.bucket = null;
+            timer.prev = null;
+            timer.next = null;
+        }
+
+        // Забирает все таймеры корзины
+        Timer drain() {
+            Timer first = head;
+            head = null;
+            return first;
+        }
+    }
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final Bucket[][] levels;
+    // spans[k] - ширина корзины уровня k в тиках
+    private final long[] spans;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long startMs) {
+        this(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, DEFAULT_LEVELS, startMs);
+    }
+
+    public TimingWheel(long tickMs, int wheelSize, int levelCount, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2 || levelCount < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel: tick=" + tickMs + " size=" + wheelSize
+                    + " levels=" + levelCount);
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.levels = new Bucket[levelCount][wheelSize];
+        this.spans = new long[levelCount];
+        long span = 1;
+        for (int level = 0; level < levelCount; level++) {
+            spans[level] = span;
+            for (int slot = 0; slot < wheelSize; slot++) {
+                levels[level][slot] = new Bucket();
+            }
+            span *= wheelSize;
+        }
+        this.currentTick = startMs / tickMs;
+    }
+
+    public Timer schedule(String key, long expiresAt) {
+        Timer timer = new Timer(key, expiresAt);
+        // Срабатывает на первом тике не раньше срока
+        timer.expirationTick = Math.floorDiv(expiresAt + tickMs - 1, tickMs);
+        lock.lock();
+        try {
+            place(timer);
+            size++;
+        } finally {
+            lock.unlock();
+        }
+        return timer;
+    }
+
+    public void cancel(Timer timer) {
+        lock.lock();
+        try {
+            if (timer.bucket != null) {
+                timer.bucket.remove(timer);
+                size--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Продвигает колесо до nowMs тик за тиком и возвращает сработавшие таймеры.
+     * Вызывается одним потоком (тиком ноды); отставание догоняется за один вызов.
+     */
+    public List<Timer> advance(long nowMs) {
+        long targetTick = nowMs / tickMs;
+        List<Timer> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            while (currentTick < targetTick) {
+                currentTick++;
+                // Сначала спускаем верхние уровни: их таймеры могут попасть в корзину текущего тика
+                for (int level = levels.length - 1; level > 0; level--) {
+                    if (currentTick % spans[level] == 0) {
+                        Bucket bucket = levels[level][(int) ((currentTick / spans[level]) % wheelSize)];
+                        for (Timer timer = bucket.drain(); timer != null; ) {
+                            Timer next = timer.next;
+                            timer.bucket = null;
+                            if (timer.expirationTick <= currentTick) {
+                                size--;
+                                expired.add(timer);
+                            } else {
+                                place(timer);
+                            }
+                            timer = next;
+                        }
+                    }
+                }
+                Bucket due = levels[0][(int) (currentTick % wheelSize)];
+                for (Timer timer = due.drain(); timer != null; ) {
+                    Timer next = timer.next;
+                    timer.bucket = null;
+                    size--;
+                    expired.add(timer);
+                    timer = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return expired;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    // Вызывается под lock
+    private void place(Timer timer) {
+        // Уже просроченные таймеры срабатывают на следующем тике
+        long tick = Math.max(timer.expirationTick, currentTick + 1);
+        long delta = tick - currentTick;
+        int top = levels.length - 1;
+        for (int level = 0; level <= top; level++) {
+            if (delta < spans[level] * wheelSize) {
+                levels[level][(int) ((tick / spans[level]) % wheelSize)].add(timer);
+                return;
+            }
+        }
+        // Дальше горизонта колеса: корзина верхнего уровня, которая будет спущена последней
+        long lastSlot = currentTick / spans[top] + wheelSize - 1;
+        levels[top][(int) (lastSlot % wheelSize)].add(timer);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.dhtcopy.core;
+
+import java.util.List;
+
+/**
+ * Отрезок кольца токенов (startExclusive, endInclusive] с переходом через ноль,
+ * если start >= end. start == end - все кольцо.
+ */
+public record TokenRange(long startExclusive, long endInclusive) {
+    public static final TokenRange FULL = new TokenRange(Long.MIN_VALUE, Long.MIN_VALUE);
+
+    public boolean isFull() {
+        return startExclusive == endInclusive;
+    }
+
+    public boolean contains(long token) {
+        if (startExclusive < endInclusive) {
+            return token > startExclusive && token <= endInclusive;
+        }
+        return isFull() || token > startExclusive || token <= endInclusive;
+    }
+
+    public static boolean anyContains(List<TokenRange> ranges, long token) {
+        for (TokenRange range : ranges) {
+            if (range.contains(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.dhtcopy.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Версия значения для разрешения расхождений реплик по последней записи. Координатор ставит
+ * на хранимую форму (уже после сжатия) заголовок [F5 'D' 'V'][версия, 8 байт]; реплики хранят,
+ * журналируют и передают значение вместе с ним, так что версия переживает перезапуск и перенос.
+ * Версия - время записи на координаторе в мс, сдвинутое на COUNTER_BITS, плюс счетчик внутри
+ * миллисекунды. Значение без заголовка (записанное в ноду напрямую или до появления версий)
+ * имеет версию NONE и уступает любой записи через координатор.
+ */
+public final class ValueVersion {
+    public static final int HEADER_SIZE = 11;
+    public static final long NONE = 0;
+    static final int COUNTER_BITS = 16;
+
+    private static final byte MAGIC_0 = (byte) 0xF5;
+    private static final byte MAGIC_1 = 'D';
+    private static final byte MAGIC_2 = 'V';
+
+    private ValueVersion() {
+    }
+
+    // Строго растущие версии одного координатора
+    public static final class Clock {
+        private final AtomicLong last = new AtomicLong();
+
+        public long next() {
+            long now = System.currentTimeMillis() << COUNTER_BITS;
+            return last.updateAndGet(previous -> Math.max(previous + 1, now));
+        }
+    }
+
+    public static byte[] stamp(long version, byte[] stored) {
+        byte[] result = new byte[HEADER_SIZE + stored.length];
+        result[0] = MAGIC_0;
+        result[1] = MAGIC_1;
+        result[2] = MAGIC_2;
+        for (int i = 0; i < Long.BYTES; i++) {
+            result[3 + i] = (byte) (version >>> (56 - 8 * i));
+        }
+        System.arraycopy(stored, 0, result, HEADER_SIZE, stored.length);
+        return result;
+    }
+
+    public static long version(byte[] stored) {
+        if (!isStamped(stored)) {
+            return NONE;
+        }
+        long version = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            version = version << 8 | (stored[3 + i] & 0xFF);
+        }
+        return version;
+    }
+
+    // Хранимая форма без заголовка версии; null остается null
+    public static byte[] payload(byte[] stored) {
+        return stored == null || !isStamped(stored) ? stored : Arrays.copyOfRange(stored, HEADER_SIZE, stored.length);
+    }
+
+    // Время записи версии, мс
+    public static long timestamp(long version) {
+        return version >>> COUNTER_BITS;
+    }
+
+    /**
+     * Индекс самого нового значения (null - ключа на реплике нет), -1 - ключа нет нигде.
+     * При равных версиях побеждает большее по байтам значение, чтобы все сверки выбирали одно и то же.
+     */
+    public static int newest(List<byte[]> values) {
+        int winner = -1;
+        long winnerVersion = NONE;
+        for (int i = 0; i < values.size(); i++) {
+            byte[] value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+            long version = version(value);
+            if (winner < 0 || version > winnerVersion
+                    || version == winnerVersion && Arrays.compareUnsigned(value, values.get(winner)) > 0) {
+                winner = i;
+                winnerVersion = version;
+            }
+        }
+        return winner;
+    }
+
+    private static boolean isStamped(byte[] stored) {
+        return stored.length >= HEADER_SIZE && stored[0] == MAGIC_0 && stored[1] == MAGIC_1 && stored[2] == MAGIC_2;
+    }
+}
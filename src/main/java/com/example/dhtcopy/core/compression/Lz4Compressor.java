@@ -0,0 +1,162 @@
+package com.example.dhtcopy.core.compression;
+
+import java.util.Arrays;
+
+/**
+ * Быстрый LZ77-компрессор в блочном формате LZ4: последовательности [токен][литералы][смещение][длина совпадения],
+ * поиск совпадений по хеш-таблице из 4096 позиций без цепочек. Сжимает хуже Deflate,
+ * но в разы быстрее и распаковывается простым копированием байтов.
+ */
+final class Lz4Compressor {
+    private static final int MIN_MATCH = 4;
+    // Последние 5 байт - всегда литералы, последнее совпадение начинается не ближе 12 байт к концу
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int HASH_LOG = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+
+    private Lz4Compressor() {
+    }
+
+    static byte[] compress(byte[] src) {
+        int length = src.length;
+        byte[] dst = new byte[length + length / 255 + 16];
+        int op = 0;
+        int anchor = 0;
+
+        if (length > MF_LIMIT) {
+            // Позиция + 1, чтобы 0 означал пустую ячейку
+            int[] table = new int[1 << HASH_LOG];
+            int limit = length - MF_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            int ip = 0;
+            while (ip < limit) {
+                int sequence = readInt(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    // Чем дольше нет совпадений, тем крупнее шаг: несжимаемые данные проходятся быстро
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+                if (ip < limit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2 + 1;
+                }
+            }
+        }
+
+        // Хвост литералов без совпадения
+        int literals = length - anchor;
+        int token = Math.min(literals, RUN_MASK) << 4;
+        dst[op++] = (byte) token;
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        return Arrays.copyOf(dst, op);
+    }
+
+    static byte[] decompress(byte[] src, int offset, int length, int originalLength) {
+        byte[] dst = new byte[originalLength];
+        int ip = offset;
+        int end = offset + length;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip >= end) {
+                    break;
+                }
+
+                int distance = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - distance;
+                if (distance == 0 || ref < 0) {
+                    throw new IllegalArgumentException("Corrupted LZ4 block: bad match offset " + distance);
+                }
+                if (distance >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    // Совпадение перекрывает себя (повтор короткого фрагмента) - копируем побайтно
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Corrupted LZ4 block", e);
+        }
+        if (op != originalLength) {
+            throw new IllegalArgumentException("Corrupted LZ4 block: " + op + " bytes instead of " + originalLength);
+        }
+        return dst;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, int distance, int matchLength,
+                                     byte[] dst, int op) {
+        int matchCode = matchLength - MIN_MATCH;
+        dst[op++] = (byte) (Math.min(literals, RUN_MASK) << 4 | Math.min(matchCode, RUN_MASK));
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, literalStart, dst, op, literals);
+        op += literals;
+        dst[op++] = (byte) distance;
+        dst[op++] = (byte) (distance >>> 8);
+        return writeLength(matchCode, dst, op);
+    }
+
+    // Длина от 15 и выше продолжается байтами по 255 и остатком
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length < RUN_MASK) {
+            return op;
+        }
+        int remaining = length - RUN_MASK;
+        while (remaining >= 255) {
+            dst[op++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[op++] = (byte) remaining;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int index) {
+        return (src[index] & 0xFF) | (src[index + 1] & 0xFF) << 8 | (src[index + 2] & 0xFF) << 16 | src[index + 3] << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.dhtcopy.core.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие значений на координаторе. Сжатое значение хранится в конверте
+ * [F5 'D' 'Z'][кодек][исходная длина, 4 байта][данные]; значение без конверта хранится как есть.
+ * 0xF5 не встречается в UTF-8, так что текстовые значения с конвертом не путаются; бинарное значение,
+ * случайно начинающееся с этих байт, записывается в конверте NONE.
+ * Значения короче порога и несжимаемые значения не сжимаются.
+ */
+public class ValueCodec {
+    public static final int DEFAULT_THRESHOLD_BYTES = 1024;
+    public static final int HEADER_SIZE = 8;
+
+    private static final byte MAGIC_0 = (byte) 0xF5;
+    private static final byte MAGIC_1 = 'D';
+    private static final byte MAGIC_2 = 'Z';
+
+    public enum Codec {
+        NONE(0),
+        LZ4(1),
+        DEFLATE(2);
+
+        private final byte id;
+
+        Codec(int id) {
+            this.id = (byte) id;
+        }
+
+        public static Codec parse(String value) {
+            String normalized = value.trim().toUpperCase(Locale.ROOT);
+            for (Codec codec : values()) {
+                if (codec.name().equals(normalized)) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Unknown compression codec: " + value + " (supported: none, lz4, deflate)");
+        }
+
+        public String configName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        static Codec of(byte id) {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Unknown compression codec id: " + id);
+        }
+    }
+
+    private final Codec codec;
+    private final int thresholdBytes;
+
+    // Без сжатия: encode только экранирует значения, похожие на конверт
+    public ValueCodec() {
+        this(Codec.NONE, DEFAULT_THRESHOLD_BYTES);
+    }
+
+    public ValueCodec(Codec codec, int thresholdBytes) {
+        this.codec = codec;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    // Форма значения для хранения на репликах
+    public byte[] encode(byte[] value) {
+        if (codec != Codec.NONE && value.length >= thresholdBytes) {
+            byte[] compressed = codec == Codec.LZ4 ? Lz4Compressor.compress(value) : deflate(value);
+            if (compressed.length + HEADER_SIZE < value.length) {
+                return envelope(codec, compressed, value.length);
+            }
+        }
+        return isEnvelope(value) ? envelope(Codec.NONE, value, value.length) : value;
+    }
+
+    // Исходное значение по хранимой форме; null остается null
+    public static byte[] decode(byte[] stored) {
+        if (stored == null || !isEnvelope(stored)) {
+            return stored;
+        }
+        int originalLength = originalLength(stored);
+        int payload = stored.length - HEADER_SIZE;
+        return switch (Codec.of(stored[3])) {
+            case NONE -> Arrays.copyOfRange(stored, HEADER_SIZE, stored.length);
+            case LZ4 -> Lz4Compressor.decompress(stored, HEADER_SIZE, payload, originalLength);
+            case DEFLATE -> inflate(stored, HEADER_SIZE, payload, originalLength);
+        };
+    }
+
+    public static boolean isCompressed(byte[] stored) {
+        return stored != null && isEnvelope(stored) && stored[3] != Codec.NONE.id;
+    }
+
+    // Длина значения до сжатия
+    public static int originalLength(byte[] stored) {
+        if (!isEnvelope(stored)) {
+            return stored.length;
+        }
+        return (stored[4] & 0xFF) << 24 | (stored[5] & 0xFF) << 16 | (stored[6] & 0xFF) << 8 | (stored[7] & 0xFF);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public int getThresholdBytes() {
+        return thresholdBytes;
+    }
+
+    private static boolean isEnvelope(byte[] value) {
+        return value.length >= HEADER_SIZE && value[0] == MAGIC_0 && value[1] == MAGIC_1 && value[2] == MAGIC_2;
+    }
+
+    private static byte[] envelope(Codec codec, byte[] payload, int originalLength) {
+        byte[] result = new byte[HEADER_SIZE + payload.length];
+        result[0] = MAGIC_0;
+        result[1] = MAGIC_1;
+        result[2] = MAGIC_2;
+        result[3] = codec.id;
+        result[4] = (byte) (originalLength >>> 24);
+        result[5] = (byte) (originalLength >>> 16);
+        result[6] = (byte) (originalLength >>> 8);
+        result[7] = (byte) originalLength;
+        System.arraycopy(payload, 0, result, HEADER_SIZE, payload.length);
+        return result;
+    }
+
+    private static byte[] deflate(byte[] value) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(value);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(value.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int offset, int length, int originalLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, offset, length);
+            byte[] result = new byte[originalLength];
+            int written = 0;
+            while (written < originalLength && !inflater.finished()) {
+                int n = inflater.inflate(result, written, originalLength - written);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                written += n;
+            }
+            if (written != originalLength) {
+                throw new IllegalArgumentException("Corrupted deflate value: " + written + " bytes instead of " + originalLength);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted deflate value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
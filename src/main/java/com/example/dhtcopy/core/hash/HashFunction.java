@@ -0,0 +1,22 @@
+package com.example.dhtcopy.core.hash;
+
+/**
+ * Хэш-функция, задающая позицию ключа и виртуальных нод на кольце.
+ * Реализации обязаны быть потокобезопасными и не использовать общих блокировок.
+ */
+public interface HashFunction {
+
+    long hash(byte[] data, int offset, int length);
+
+    default long hash(byte[] data) {
+        return hash(data, 0, data.length);
+    }
+
+    // Строка кодируется в UTF-8 в буфер потока, без копии String.getBytes()
+    default long hash(CharSequence key) {
+        Utf8Buffer buffer = Utf8Buffer.current().write(key);
+        return hash(buffer.bytes(), 0, buffer.length());
+    }
+
+    String name();
+}
@@ -0,0 +1,48 @@
+package com.example.dhtcopy.core.hash;
+
+import java.util.Locale;
+
+/**
+ * Выбор хэш-функции по имени из конфигурации (dht.hash-function).
+ */
+public final class HashFunctions {
+    public static final String DEFAULT = Murmur3HashFunction.NAME;
+
+    private static final HashFunction MURMUR3 = new Murmur3HashFunction();
+    private static final HashFunction XXHASH64 = new XxHash64HashFunction();
+    private static final HashFunction MD5 = new Md5HashFunction();
+
+    private HashFunctions() {
+    }
+
+    public static HashFunction forName(String name) {
+        if (name == null || name.isBlank()) {
+            return MURMUR3;
+        }
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case Murmur3HashFunction.NAME:
+            case "murmur3-128":
+                return MURMUR3;
+            case XxHash64HashFunction.NAME:
+            case "xxhash":
+                return XXHASH64;
+            case Md5HashFunction.NAME:
+                return MD5;
+            default:
+                throw new IllegalArgumentException("Unknown hash function: " + name
+                        + " (supported: murmur3, xxhash64, md5)");
+        }
+    }
+
+    public static HashFunction murmur3() {
+        return MURMUR3;
+    }
+
+    public static HashFunction xxHash64() {
+        return XXHASH64;
+    }
+
+    public static HashFunction md5() {
+        return MD5;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.dhtcopy.core.hash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Прежняя схема токенов: первые 4 байта MD5 (32-битное пространство).
+ * Оставлена для совместимости с уже размеченными кольцами; дайджест свой у каждого потока.
+ */
+public final class Md5HashFunction implements HashFunction {
+    public static final String NAME = "md5";
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 algorithm not available", e);
+        }
+    });
+
+    @Override
+    public long hash(byte[] data, int offset, int length) {
+        MessageDigest md5 = DIGESTS.get();
+        md5.reset();
+        md5.update(data, offset, length);
+        byte[] digest = md5.digest();
+
+        long hash = 0;
+        for (int i = 0; i < 4; i++) {
+            hash <<= 8;
+            hash |= ((int) digest[i]) & 0xFF;
+        }
+        return hash;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
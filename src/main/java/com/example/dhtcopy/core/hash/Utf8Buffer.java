@@ -0,0 +1,62 @@
+package com.example.dhtcopy.core.hash;
+
+/**
+ * Переиспользуемый буфер потока для UTF-8 представления ключа.
+ * Позволяет хэшировать строки без аллокации массива на каждый вызов.
+ */
+final class Utf8Buffer {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final ThreadLocal<Utf8Buffer> BUFFERS = ThreadLocal.withInitial(Utf8Buffer::new);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    private Utf8Buffer() {
+    }
+
+    static Utf8Buffer current() {
+        return BUFFERS.get();
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    Utf8Buffer write(CharSequence value) {
+        int chars = value.length();
+        if (bytes.length < chars * 3) {
+            bytes = new byte[chars * 3];
+        }
+
+        int position = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Непарный суррогат кодируется как '?', так же как в String.getBytes(UTF_8)
+                bytes[position++] = (byte) '?';
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = position;
+        return this;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.dhtcopy.core.hash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 (seed 0).
+ */
+public final class XxHash64HashFunction implements HashFunction {
+    public static final String NAME = "xxhash64";
+
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    @Override
+    public long hash(byte[] data, int offset, int length) {
+        int position = offset;
+        int end = offset + length;
+        long h64;
+
+        if (length >= 32) {
+            long v1 = P1 + P2;
+            long v2 = P2;
+            long v3 = 0;
+            long v4 = -P1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, (long) LONG_LE.get(data, position));
+                v2 = round(v2, (long) LONG_LE.get(data, position + 8));
+                v3 = round(v3, (long) LONG_LE.get(data, position + 16));
+                v4 = round(v4, (long) LONG_LE.get(data, position + 24));
+                position += 32;
+            } while (position <= limit);
+
+            h64 = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h64 = mergeRound(h64, v1);
+            h64 = mergeRound(h64, v2);
+            h64 = mergeRound(h64, v3);
+            h64 = mergeRound(h64, v4);
+        } else {
+            h64 = P5;
+        }
+
+        h64 += length;
+
+        while (position + 8 <= end) {
+            h64 ^= round(0, (long) LONG_LE.get(data, position));
+            h64 = Long.rotateLeft(h64, 27) * P1 + P4;
+            position += 8;
+        }
+        if (position + 4 <= end) {
+            h64 ^= ((int) INT_LE.get(data, position) & 0xFFFFFFFFL) * P1;
+            h64 = Long.rotateLeft(h64, 23) * P2 + P3;
+            position += 4;
+        }
+        while (position < end) {
+            h64 ^= (data[position] & 0xFF) * P5;
+            h64 = Long.rotateLeft(h64, 11) * P1;
+            position++;
+        }
+
+        h64 ^= h64 >>> 33;
+        h64 *= P2;
+        h64 ^= h64 >>> 29;
+        h64 *= P3;
+        h64 ^= h64 >>> 32;
+        return h64;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * P1 + P4;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.dhtcopy.core.placement;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.PlacementStrategy;
+import com.example.dhtcopy.core.hash.HashFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Общее управление составом кластера для альтернативных стратегий размещения.
+ * Изменения идут под блокировкой записи, после чего наследник публикует неизменяемое
+ * состояние для чтения без блокировок - так же, как снимки ConsistentHashRing.
+ */
+public abstract class AbstractPlacementStrategy implements PlacementStrategy {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractPlacementStrategy.class);
+
+    protected final HashFunction hashFunction;
+    private final Map<String, Node> members = new LinkedHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Consumer<Node> stateListener = this::onNodeStateChanged;
+    private volatile Node[] memberSnapshot = new Node[0];
+    private volatile long topologyEpoch;
+
+    protected AbstractPlacementStrategy(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+    }
+
+    @Override
+    public void addNode(Node node) {
+        writeLock.lock();
+        try {
+            if (members.containsKey(node.getId())) {
+                logger.warn("Node {} is already placed by {}", node.getId(), name());
+                return;
+            }
+            members.put(node.getId(), node);
+            node.addStateListener(stateListener);
+            publish();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeNode(String nodeId) {
+        writeLock.lock();
+        try {
+            Node removed = members.remove(nodeId);
+            if (removed == null) {
+                return false;
+            }
+            removed.removeStateListener(stateListener);
+            publish();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void onNodeStateChanged(Node node) {
+        writeLock.lock();
+        try {
+            if (members.get(node.getId()) == node) {
+                publish();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void publish() {
+        Node[] snapshot = members.values().toArray(new Node[0]);
+        rebuild(snapshot);
+        memberSnapshot = snapshot;
+        topologyEpoch++;
+    }
+
+    /**
+     * Пересчитывает структуры маршрутизации для нового состава или смены активности нод.
+     * Вызывается под блокировкой записи; members - в порядке добавления.
+     */
+    protected abstract void rebuild(Node[] members);
+
+    @Override
+    public Node getNode(String key) {
+        List<Node> nodes = getNodes(key, 1);
+        return nodes.isEmpty() ? null : nodes.get(0);
+    }
+
+    @Override
+    public long getTopologyEpoch() {
+        return topologyEpoch;
+    }
+
+    @Override
+    public List<Node> getAllNodes() {
+        return new ArrayList<>(Arrays.asList(memberSnapshot));
+    }
+
+    @Override
+    public int getUniqueNodesCount() {
+        return memberSnapshot.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return memberSnapshot.length == 0;
+    }
+
+    protected static Node[] activeNodes(Node[] members) {
+        return Arrays.stream(members).filter(Node::isActive).toArray(Node[]::new);
+    }
+
+    // Финализатор SplitMix64: перемешивает комбинацию хэша ключа и ноды
+    protected static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.dhtcopy.core.placement;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.hash.HashFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Jump Consistent Hash (Lamping, Veach): ключ отображается в номер шарда 0..N-1 без
+ * какой-либо таблицы. Шардами служат ноды в порядке добавления, поэтому перемещение
+ * минимально только при добавлении или удалении последней ноды; удаление из середины
+ * перенумеровывает хвост. Реплики - следующие по номеру активные шарды.
+ * Веса нод не учитываются: все шарды равноправны.
+ */
+public class JumpHashPlacementStrategy extends AbstractPlacementStrategy {
+    public static final String NAME = "jump";
+
+    private volatile Node[] buckets = new Node[0];
+
+    public JumpHashPlacementStrategy(HashFunction hashFunction) {
+        super(hashFunction);
+    }
+
+    @Override
+    protected void rebuild(Node[] members) {
+        // Номера шардов не должны сдвигаться при падении ноды - неактивные пропускаются при поиске
+        buckets = members;
+    }
+
+    @Override
+    public List<Node> getNodes(String key, int replicationFactor) {
+        Node[] current = buckets;
+        if (current.length == 0 || replicationFactor <= 0) {
+            return List.of();
+        }
+
+        int start = jumpConsistentHash(hashFunction.hash(key), current.length);
+        List<Node> result = new ArrayList<>(Math.min(replicationFactor, current.length));
+        for (int i = 0; i < current.length && result.size() < replicationFactor; i++) {
+            Node node = current[(start + i) % current.length];
+            if (node.isActive()) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.dhtcopy.core.placement;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.hash.HashFunction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maglev hashing: таблица поиска простого размера M заполняется по перестановкам
+ * каждой ноды, после чего ключ маршрутизируется за O(1) - одно обращение к таблице.
+ * Реплики - следующие уникальные ноды по таблице. Таблица строится только из
+ * активных нод и пересобирается при смене состава, активности или веса; число слотов
+ * ноды пропорционально ее весу.
+ */
+public class MaglevPlacementStrategy extends AbstractPlacementStrategy {
+    public static final String NAME = "maglev";
+    public static final int DEFAULT_TABLE_SIZE = 65537;
+
+    private final int tableSize;
+    private volatile State state = new State(new Node[0], 0);
+
+    private static final class State {
+        final Node[] table;
+        final int activeNodes;
+
+        State(Node[] table, int activeNodes) {
+            this.table = table;
+            this.activeNodes = activeNodes;
+        }
+    }
+
+    public MaglevPlacementStrategy(HashFunction hashFunction) {
+        this(hashFunction, DEFAULT_TABLE_SIZE);
+    }
+
+    public MaglevPlacementStrategy(HashFunction hashFunction, int tableSize) {
+        super(hashFunction);
+        // Размер таблицы должен быть простым, чтобы каждая перестановка покрывала все слоты
+        this.tableSize = BigInteger.valueOf(Math.max(tableSize, 3) - 1).nextProbablePrime().intValueExact();
+    }
+
+    @Override
+    protected void rebuild(Node[] members) {
+        Node[] active = activeNodes(members);
+        if (active.length == 0) {
+            state = new State(new Node[0], 0);
+            return;
+        }
+
+        long[] offsets = new long[active.length];
+        long[] skips = new long[active.length];
+        long[] next = new long[active.length];
+        double[] weights = new double[active.length];
+        double[] credits = new double[active.length];
+        double maxWeight = 0;
+        for (int i = 0; i < active.length; i++) {
+            weights[i] = active[i].getWeight();
+            maxWeight = Math.max(maxWeight, weights[i]);
+            offsets[i] = Math.floorMod(hashFunction.hash(active[i].getId() + "#offset"), (long) tableSize);
+            skips[i] = Math.floorMod(hashFunction.hash(active[i].getId() + "#skip"), (long) tableSize - 1) + 1;
+        }
+
+        Node[] table = new Node[tableSize];
+        int filled = 0;
+        while (filled < tableSize) {
+            for (int i = 0; i < active.length && filled < tableSize; i++) {
+                // Самая тяжелая нода занимает слот каждый раунд, остальные - пропорционально весу
+                credits[i] += weights[i] / maxWeight;
+                if (credits[i] < 1) {
+                    continue;
+                }
+                credits[i] -= 1;
+
+                int slot = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+                while (table[slot] != null) {
+                    next[i]++;
+                    slot = (int) ((offsets[i] + next[i] * skips[i]) % tableSize);
+                }
+                table[slot] = active[i];
+                next[i]++;
+                filled++;
+            }
+        }
+        state = new State(table, active.length);
+    }
+
+    @Override
+    public Node getNode(String key) {
+        State current = state;
+        if (current.activeNodes == 0) {
+            return null;
+        }
+        return current.table[slotFor(hashFunction.hash(key))];
+    }
+
+    @Override
+    public List<Node> getNodes(String key, int replicationFactor) {
+        State current = state;
+        int count = Math.min(replicationFactor, current.activeNodes);
+        if (count <= 0) {
+            return List.of();
+        }
+
+        int slot = slotFor(hashFunction.hash(key));
+        List<Node> result = new ArrayList<>(count);
+        for (int i = 0; i < tableSize && result.size() < count; i++) {
+            Node node = current.table[(slot + i) % tableSize];
+            if (!result.contains(node)) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    private int slotFor(long hash) {
+        return (int) Long.remainderUnsigned(hash, tableSize);
+    }
+
+    public int getTableSize() {
+        return tableSize;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
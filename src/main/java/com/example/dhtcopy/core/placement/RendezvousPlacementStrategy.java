@@ -0,0 +1,94 @@
+package com.example.dhtcopy.core.placement;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.hash.HashFunction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rendezvous (Highest Random Weight) hashing: ключ достается нодам с наибольшим
+ * псевдослучайным весом hash(key, node). Не требует виртуальных нод и при смене
+ * состава перемещает минимально возможную долю ключей, но поиск стоит O(N),
+ * поэтому подходит для небольших кластеров. Веса нод учитываются по схеме
+ * weighted HRW: score = -weight / ln(u), где u - равномерная величина из хэша.
+ */
+public class RendezvousPlacementStrategy extends AbstractPlacementStrategy {
+    public static final String NAME = "rendezvous";
+
+    private volatile State state = new State(new Node[0], new long[0], new double[0]);
+
+    private static final class State {
+        final Node[] nodes;
+        final long[] seeds;
+        final double[] weights;
+
+        State(Node[] nodes, long[] seeds, double[] weights) {
+            this.nodes = nodes;
+            this.seeds = seeds;
+            this.weights = weights;
+        }
+    }
+
+    public RendezvousPlacementStrategy(HashFunction hashFunction) {
+        super(hashFunction);
+    }
+
+    @Override
+    protected void rebuild(Node[] members) {
+        Node[] active = activeNodes(members);
+        long[] seeds = new long[active.length];
+        double[] weights = new double[active.length];
+        for (int i = 0; i < active.length; i++) {
+            seeds[i] = hashFunction.hash(active[i].getId());
+            weights[i] = active[i].getWeight();
+        }
+        state = new State(active, seeds, weights);
+    }
+
+    @Override
+    public List<Node> getNodes(String key, int replicationFactor) {
+        State current = state;
+        int count = Math.min(replicationFactor, current.nodes.length);
+        if (count <= 0) {
+            return List.of();
+        }
+
+        long keyHash = hashFunction.hash(key);
+        // Частичная сортировка вставками: храним count лучших нод по убыванию веса
+        Node[] best = new Node[count];
+        double[] bestScores = new double[count];
+        int filled = 0;
+        for (int i = 0; i < current.nodes.length; i++) {
+            double score = score(mix(keyHash ^ current.seeds[i]), current.weights[i]);
+            if (filled == count && score <= bestScores[count - 1]) {
+                continue;
+            }
+            int position = filled < count ? filled++ : count - 1;
+            while (position > 0 && score > bestScores[position - 1]) {
+                best[position] = best[position - 1];
+                bestScores[position] = bestScores[position - 1];
+                position--;
+            }
+            best[position] = current.nodes[i];
+            bestScores[position] = score;
+        }
+
+        List<Node> result = new ArrayList<>(count);
+        for (int i = 0; i < filled; i++) {
+            result.add(best[i]);
+        }
+        return result;
+    }
+
+    // Старшие 53 бита хэша дают u в (0, 1); при равных весах порядок совпадает с порядком u
+    private static double score(long hash, double weight) {
+        double u = ((hash >>> 11) + 0.5) * 0x1.0p-53;
+        return -weight / Math.log(u);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.dhtcopy.core.snapshot;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.storage.StorageEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Снимки хранилищ нод в каталоге directory/nodeId: базовый снимок со всеми ключами
+ * и цепочка инкрементальных с ключами, измененными после предыдущего снимка.
+ * Снимок читает хранилище по ходу записи файла, не копируя его и не останавливая писателей:
+ * записи, пришедшие во время снимка, попадут в следующий инкрементальный.
+ *
+ * Файл: [magic][версия][тип][номер], затем блоки [число записей][длина][crc32c][записи],
+ * блок с нулем записей завершает файл. Запись: [длина ключа][длина значения или -1 - удаление]
+ * [срок жизни, epoch ms или 0 - только у значения][ключ][значение]. Файлы версии 1 (без срока) читаются.
+ * Файл пишется под временным именем, так что недописанный снимок при старте не виден.
+ */
+public class SnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+
+    public static final int DEFAULT_MAX_DELTAS = 8;
+
+    private static final int MAGIC = 0x534E4150;
+    private static final byte VERSION = 2;
+    private static final byte VERSION_WITHOUT_EXPIRY = 1;
+    private static final byte TYPE_BASE = 0;
+    private static final byte TYPE_DELTA = 1;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int TOMBSTONE_LENGTH = -1;
+    private static final String BASE_SUFFIX = "-base.snap";
+    private static final String DELTA_SUFFIX = "-delta.snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public record SnapshotResult(String nodeId, boolean full, long entries, long bytes, long nanos) {
+    }
+
+    public record RestoreResult(String nodeId, int files, long entries, long bytes, long nanos) {
+        public double throughputMbPerSecond() {
+            return nanos == 0 ? 0.0 : bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+        }
+    }
+
+    private final Path directory;
+    private final int maxDeltas;
+    // Снимки одной ноды не должны писаться параллельно
+    private final Map<String, ReentrantLock> nodeLocks = new ConcurrentHashMap<>();
+
+    public SnapshotStore(Path directory) {
+        this(directory, DEFAULT_MAX_DELTAS);
+    }
+
+    public SnapshotStore(Path directory, int maxDeltas) {
+        this.directory = directory;
+        this.maxDeltas = maxDeltas;
+    }
+
+    /**
+     * Пишет снимок ноды: полный, если отслеживание изменений только включилось, хранилище очищалось,
+     * цепочка достигла maxDeltas или изменилась больше половины ключей; иначе инкрементальный.
+     * Если изменений нет, файл не создается (entries == 0).
+     */
+    public SnapshotResult snapshot(Node node) {
+        ReentrantLock lock = nodeLocks.computeIfAbsent(node.getId(), id -> new ReentrantLock());
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            Path nodeDirectory = directory.resolve(node.getId());
+            Files.createDirectories(nodeDirectory);
+            Chain chain = chain(nodeDirectory);
+            StorageEngine storage = node.getStorageEngine();
+
+            Node.Changes changes = node.drainChanges();
+            boolean full = changes.isFull() || chain.base == null || chain.deltas.size() >= maxDeltas
+                    || changes.keys().size() > storage.size() / 2;
+            if (!full && changes.keys().isEmpty()) {
+                return new SnapshotResult(node.getId(), false, 0, 0, System.nanoTime() - start);
+            }
+
+            long sequence = chain.lastSequence() + 1;
+            Path file = nodeDirectory.resolve(String.format("%012d%s", sequence, full ? BASE_SUFFIX : DELTA_SUFFIX));
+            Writer writer = new Writer(file, full ? TYPE_BASE : TYPE_DELTA, sequence);
+            try {
+                if (full) {
+                    storage.forEach((key, value) -> writer.add(key, value, node.getExpiresAt(key)));
+                } else {
+                    // Удаленный ключ пишется маркером удаления
+                    for (String key : changes.keys()) {
+                        writer.add(key, storage.get(key), node.getExpiresAt(key));
+                    }
+                }
+                writer.finish();
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                // Забранные изменения потеряны для цепочки - следующий снимок должен быть полным
+                node.requireFullSnapshot();
+                throw e;
+            }
+
+            if (full) {
+                // Новая база заменяет всю прежнюю цепочку
+                for (Path old : chain.all()) {
+                    Files.deleteIfExists(old);
+                }
+            }
+            SnapshotResult result = new SnapshotResult(node.getId(), full, writer.entries, writer.bytes,
+                    System.nanoTime() - start);
+            logger.debug("Snapshot of node {}: {} entries, {} bytes ({})", node.getId(), result.entries(),
+                    result.bytes(), full ? "base" : "delta");
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to snapshot node " + node.getId(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RestoreResult restore(String nodeId, StorageEngine target) {
+        return restore(nodeId, target, new HashMap<>());
+    }
+
+    /**
+     * Восстанавливает хранилище ноды из последней базы и следующих за ней инкрементальных снимков.
+     * Сроки ключей с TTL складываются в expiries - нода заводит по ним таймеры.
+     * Поврежденный блок прерывает восстановление с исключением.
+     */
+    public RestoreResult restore(String nodeId, StorageEngine target, Map<String, Long> expiries) {
+        long start = System.nanoTime();
+        Path nodeDirectory = directory.resolve(nodeId);
+        if (!Files.isDirectory(nodeDirectory)) {
+            return new RestoreResult(nodeId, 0, 0, 0, 0);
+        }
+        try {
+            Chain chain = chain(nodeDirectory);
+            if (chain.base == null) {
+                return new RestoreResult(nodeId, 0, 0, 0, 0);
+            }
+            long entries = 0;
+            long bytes = 0;
+            for (Path file : chain.all()) {
+                entries += read(file, target, expiries);
+                bytes += Files.size(file);
+            }
+            RestoreResult result = new RestoreResult(nodeId, chain.all().size(), entries, bytes, System.nanoTime() - start);
+            logger.info("Restored node {} from {} snapshot files: {} entries, {} MB/s", nodeId, result.files(),
+                    result.entries(), String.format("%.1f", result.throughputMbPerSecond()));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to restore snapshot of node " + nodeId, e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Последняя база и инкрементальные снимки после нее; брошенные временные файлы удаляются
+    private static Chain chain(Path nodeDirectory) throws IOException {
+        Path base = null;
+        long baseSequence = -1;
+        List<Path> deltas = new ArrayList<>();
+        try (Stream<Path> files = Files.list(nodeDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(BASE_SUFFIX) && sequence(file) > baseSequence) {
+                    base = file;
+                    baseSequence = sequence(file);
+                } else if (name.endsWith(DELTA_SUFFIX)) {
+                    deltas.add(file);
+                }
+            }
+        }
+        long from = baseSequence;
+        deltas.removeIf(delta -> sequence(delta) < from);
+        deltas.sort(Comparator.comparingLong(SnapshotStore::sequence));
+        return new Chain(base, deltas);
+    }
+
+    private static long sequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('-')));
+    }
+
+    private static long read(Path file, StorageEngine target, Map<String, Long> expiries) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1024 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            byte version = in.readByte();
+            if (version != VERSION && version != VERSION_WITHOUT_EXPIRY) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            in.readByte();
+            in.readLong();
+
+            long entries = 0;
+            while (true) {
+                int count = in.readInt();
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (count == 0) {
+                    return entries;
+                }
+                byte[] block = new byte[length];
+                in.readFully(block);
+                CRC32C crc = new CRC32C();
+                crc.update(block);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException("Checksum mismatch in snapshot " + file + " after " + entries + " entries");
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                for (int i = 0; i < count; i++) {
+                    int keyLength = buffer.getInt();
+                    int valueLength = buffer.getInt();
+                    long expiresAt = valueLength != TOMBSTONE_LENGTH && version == VERSION ? buffer.getLong() : Node.NO_EXPIRY;
+                    String key = new String(block, buffer.position(), keyLength, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + keyLength);
+                    if (valueLength == TOMBSTONE_LENGTH) {
+                        target.remove(key);
+                    } else {
+                        target.put(key, Arrays.copyOfRange(block, buffer.position(), buffer.position() + valueLength));
+                        buffer.position(buffer.position() + valueLength);
+                    }
+                    if (expiresAt == Node.NO_EXPIRY) {
+                        expiries.remove(key);
+                    } else {
+                        expiries.put(key, expiresAt);
+                    }
+                }
+                entries += count;
+            }
+        }
+    }
+
+    private record Chain(Path base, List<Path> deltas) {
+        long lastSequence() {
+            if (!deltas.isEmpty()) {
+                return sequence(deltas.get(deltas.size() - 1));
+            }
+            return base == null ? 0 : sequence(base);
+        }
+
+        List<Path> all() {
+            List<Path> files = new ArrayList<>();
+            if (base != null) {
+                files.add(base);
+            }
+            files.addAll(deltas);
+            return files;
+        }
+    }
+
+    private static final class Writer {
+        private final Path file;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+        private final DataOutputStream blockOut = new DataOutputStream(block);
+        private int blockEntries;
+        private long entries;
+        private long bytes;
+
+        Writer(Path file, byte type, long sequence) throws IOException {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 256 * 1024));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            out.writeLong(sequence);
+        }
+
+        void add(String key, byte[] value, long expiresAt) {
+            try {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                blockOut.writeInt(keyBytes.length);
+                blockOut.writeInt(value == null ? TOMBSTONE_LENGTH : value.length);
+                if (value != null) {
+                    blockOut.writeLong(expiresAt);
+                }
+                blockOut.write(keyBytes);
+                if (value != null) {
+                    blockOut.write(value);
+                }
+                blockEntries++;
+                entries++;
+                if (block.size() >= BLOCK_SIZE) {
+                    flushBlock();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void finish() throws IOException {
+            flushBlock();
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.close();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            bytes = Files.size(file);
+        }
+
+        void abort() throws IOException {
+            out.close();
+            Files.deleteIfExists(temp);
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockEntries == 0) {
+                return;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(block.toByteArray());
+            out.writeInt(blockEntries);
+            out.writeInt(block.size());
+            out.writeInt((int) crc.getValue());
+            block.writeTo(out);
+            block.reset();
+            blockEntries = 0;
+        }
+    }
+}
@@ -0,0 +1,623 @@
+package com.example.dhtcopy.core.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Персистентное хранилище в стиле Bitcask: все изменения дописываются в журнал сегментов,
+ * отображенных в память (MappedByteBuffer), а в памяти держится только keydir - ключ и
+ * позиция последней версии значения. Чтение - одно обращение к отображенному сегменту.
+ *
+ * Запись сегмента: [crc32c][длина ключа][длина значения или -1 для удаления][ключ][значение].
+ * Закрытые сегменты получают hint-файл с ключами и смещениями, по которому keydir
+ * восстанавливается при старте без чтения значений. Фоновое сжатие переписывает сегменты,
+ * где мертвые записи занимают не меньше mergeThreshold, оставляя только живые.
+ *
+ * Запись в отображенную память переживает падение процесса; на диск сегмент
+ * сбрасывается при закрытии и при смене активного сегмента.
+ */
+public class BitcaskStorageEngine implements StorageEngine {
+    private static final Logger logger = LoggerFactory.getLogger(BitcaskStorageEngine.class);
+
+    public static final String NAME = "bitcask";
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_MERGE_INTERVAL_MS = 60_000;
+    public static final double DEFAULT_MERGE_THRESHOLD = 0.5;
+
+    private static final String DATA_SUFFIX = ".data";
+    private static final String HINT_SUFFIX = ".hint";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final double mergeThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // keydir: ключ -> последняя запись; меняется только под блокировкой записи
+    private final Map<String, Location> keyDir = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final ScheduledExecutorService merger;
+    private Segment active;
+    private boolean closed;
+
+    public BitcaskStorageEngine(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MERGE_INTERVAL_MS, DEFAULT_MERGE_THRESHOLD);
+    }
+
+    public BitcaskStorageEngine(Path directory, int segmentSize, long mergeIntervalMs, double mergeThreshold) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Segment size must be at least 1 KB: " + segmentSize);
+        }
+        if (!(mergeThreshold > 0 && mergeThreshold <= 1)) {
+            throw new IllegalArgumentException("Merge threshold must be in (0, 1]: " + mergeThreshold);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.mergeThreshold = mergeThreshold;
+
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open bitcask directory " + directory, e);
+        }
+
+        if (mergeIntervalMs > 0) {
+            merger = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "bitcask-merge-" + directory.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            merger.scheduleWithFixedDelay(this::mergeQuietly, mergeIntervalMs, mergeIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            merger = null;
+        }
+    }
+
+    @Override
+    public byte[] get(String key) {
+        lock.readLock().lock();
+        try {
+            Location location = keyDir.get(key);
+            return location == null ? null : readValue(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        lock.readLock().lock();
+        try {
+            return keyDir.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] put(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Location previous = keyDir.put(key, append(keyBytes, value));
+            return discard(previous);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Location previous = keyDir.remove(key);
+            if (previous == null) {
+                return null;
+            }
+            // Маркер удаления нужен только до сжатия старых сегментов с этим ключом
+            Location tombstone = append(keyBytes, null);
+            tombstone.segment.deadBytes += tombstone.length;
+            return discard(previous);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keyDir.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            keyDir.clear();
+            for (Segment segment : segments.values()) {
+                Files.deleteIfExists(hintPath(segment.id));
+                Files.deleteIfExists(segment.path);
+            }
+            segments.clear();
+            active = createSegment(0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear bitcask directory " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Выполняется под блокировкой чтения: action не должен изменять это хранилище
+    @Override
+    public void forEach(BiConsumer<String, byte[]> action) {
+        lock.readLock().lock();
+        try {
+            keyDir.forEach((key, location) -> action.accept(key, readValue(location)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ключи берутся из keydir в памяти - файлы данных не читаются
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            keyDir.keySet().forEach(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    // Сбрасывает активный сегмент на диск и пишет для него hint-файл, чтобы следующий старт не сканировал данные
+    @Override
+    public void close() {
+        if (merger != null) {
+            merger.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            active.buffer.force();
+            writeHint(active);
+            keyDir.clear();
+            segments.clear();
+        } catch (IOException e) {
+            logger.error("Failed to write hint file on close of {}: {}", directory, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Сжимает закрытые сегменты, в которых доля мертвых записей достигла порога.
+     * Запускается по расписанию; возвращает число переписанных сегментов.
+     */
+    public int merge() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.end > 0 && segment.deadBytes >= segment.end * mergeThreshold) {
+                    candidates.add(segment);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int merged = 0;
+        for (Segment segment : candidates) {
+            if (compact(segment)) {
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private void mergeQuietly() {
+        try {
+            int merged = merge();
+            if (merged > 0) {
+                logger.info("Merged {} bitcask segments in {}", merged, directory);
+            }
+        } catch (Exception e) {
+            logger.error("Bitcask merge in {} failed: {}", directory, e.getMessage());
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Bitcask storage " + directory + " is closed");
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // Незавершенное сжатие или запись hint-файла: исходные файлы целы
+                    Files.delete(file);
+                } else if (name.endsWith(DATA_SUFFIX)) {
+                    ids.add(Integer.parseInt(name.substring(0, name.length() - DATA_SUFFIX.length())));
+                }
+            }
+        }
+        ids.sort(null);
+
+        for (int id : ids) {
+            Segment segment = mapSegment(id, dataPath(id), -1);
+            if (!loadHint(segment)) {
+                scan(segment);
+            }
+            segments.put(id, segment);
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(0, segmentSize);
+        } else {
+            // Последний сегмент продолжает дописываться - его hint-файл станет неверным
+            active = segments.lastEntry().getValue();
+            Files.deleteIfExists(hintPath(active.id));
+        }
+        logger.info("Opened bitcask storage {}: {} keys in {} segments", directory, keyDir.size(), segments.size());
+    }
+
+    // Восстанавливает keydir по записям сегмента, проверяя контрольные суммы
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int offset = 0;
+        while (offset + HEADER_SIZE <= capacity) {
+            int keyLength = buffer.getInt(offset + 4);
+            int valueLength = buffer.getInt(offset + 8);
+            if (keyLength < 0 || valueLength < TOMBSTONE) {
+                break;
+            }
+            long length = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            if (offset + length > capacity || buffer.getInt(offset) != checksum(buffer, offset, (int) length)) {
+                break;
+            }
+            String key = readKey(buffer, offset);
+            apply(segment, key, offset, (int) length, valueLength == TOMBSTONE);
+            offset += (int) length;
+        }
+        segment.end = offset;
+
+        // Оборванная запись в хвосте: затираем остаток, чтобы старые байты не ожили при следующем скане
+        if (offset + HEADER_SIZE <= capacity && (buffer.getLong(offset) != 0 || buffer.getInt(offset + 8) != 0)) {
+            logger.warn("Truncating corrupted tail of bitcask segment {} at offset {}", segment.path, offset);
+            buffer.put(offset, new byte[capacity - offset]);
+        }
+    }
+
+    private boolean loadHint(Segment segment) throws IOException {
+        Path hint = hintPath(segment.id);
+        if (!Files.exists(hint)) {
+            return false;
+        }
+        byte[] bytes = Files.readAllBytes(hint);
+        if (bytes.length < 4) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - 4);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - 4)) {
+            logger.warn("Ignoring corrupted hint file {}", hint);
+            return false;
+        }
+
+        int end = 0;
+        int position = 0;
+        while (position < bytes.length - 4) {
+            int keyLength = buffer.getInt(position);
+            int valueLength = buffer.getInt(position + 4);
+            int offset = buffer.getInt(position + 8);
+            String key = new String(bytes, position + 12, keyLength, StandardCharsets.UTF_8);
+            int length = HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            apply(segment, key, offset, length, valueLength == TOMBSTONE);
+            end = Math.max(end, offset + length);
+            position += 12 + keyLength;
+        }
+        segment.end = end;
+        return true;
+    }
+
+    // Hint-файл: [длина ключа][длина значения][смещение записи][ключ]... [crc32c]
+    private void writeHint(Segment segment) throws IOException {
+        Path hint = hintPath(segment.id);
+        Path temp = hint.resolveSibling(hint.getFileName() + TEMP_SUFFIX);
+        ByteBuffer buffer = segment.buffer;
+        CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)), new CRC32C());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            int offset = 0;
+            while (offset < segment.end) {
+                int keyLength = buffer.getInt(offset + 4);
+                int valueLength = buffer.getInt(offset + 8);
+                byte[] key = new byte[keyLength];
+                buffer.get(offset + HEADER_SIZE, key);
+                out.writeInt(keyLength);
+                out.writeInt(valueLength);
+                out.writeInt(offset);
+                out.write(key);
+                offset += HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+        }
+        Files.move(temp, hint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void apply(Segment segment, String key, int offset, int length, boolean tombstone) {
+        Location previous = tombstone ? keyDir.remove(key) : keyDir.put(key, new Location(segment, offset, length));
+        if (previous != null) {
+            previous.segment.deadBytes += previous.length;
+        }
+        if (tombstone) {
+            segment.deadBytes += length;
+        }
+    }
+
+    private Location append(byte[] keyBytes, byte[] value) {
+        int length = HEADER_SIZE + keyBytes.length + (value == null ? 0 : value.length);
+        if (active.end + length > active.buffer.capacity()) {
+            rotate(length);
+        }
+        int offset = active.end;
+        ByteBuffer buffer = active.buffer;
+        buffer.putInt(offset + 4, keyBytes.length);
+        buffer.putInt(offset + 8, value == null ? TOMBSTONE : value.length);
+        buffer.put(offset + HEADER_SIZE, keyBytes);
+        if (value != null) {
+            buffer.put(offset + HEADER_SIZE + keyBytes.length, value);
+        }
+        // Контрольная сумма пишется последней: оборванная запись не пройдет проверку при старте
+        buffer.putInt(offset, checksum(buffer, offset, length));
+        active.end += length;
+        return new Location(active, offset, length);
+    }
+
+    // Закрывает активный сегмент и открывает следующий; запись больше сегмента получает сегмент по размеру
+    private void rotate(int minCapacity) {
+        try {
+            active.buffer.force();
+            writeHint(active);
+            active = createSegment(active.id + 1, Math.max(segmentSize, minCapacity));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll bitcask segment in " + directory, e);
+        }
+    }
+
+    private byte[] discard(Location previous) {
+        if (previous == null) {
+            return null;
+        }
+        previous.segment.deadBytes += previous.length;
+        return readValue(previous);
+    }
+
+    /**
+     * Переписывает живые записи сегмента в новый файл с тем же номером, так что порядок
+     * сегментов при восстановлении не меняется. Копирование идет без блокировки записи;
+     * под ней только подменяются позиции в keydir, если ключ с тех пор не перезаписан.
+     */
+    private boolean compact(Segment segment) throws IOException {
+        List<Integer> kept = new ArrayList<>();
+        List<String> keptKeys = new ArrayList<>();
+        long keptBytes = 0;
+        ByteBuffer source = segment.buffer;
+
+        for (int offset = 0; offset < segment.end; ) {
+            int keyLength = source.getInt(offset + 4);
+            int valueLength = source.getInt(offset + 8);
+            int length = HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            String key = readKey(source, offset);
+
+            boolean keep;
+            lock.readLock().lock();
+            try {
+                if (closed || segments.get(segment.id) != segment) {
+                    return false;
+                }
+                Location current = keyDir.get(key);
+                if (valueLength == TOMBSTONE) {
+                    // Маркер удаления нужен, пока в более старых сегментах может лежать значение
+                    keep = current == null && segments.firstKey() != segment.id;
+                } else {
+                    keep = current != null && current.segment == segment && current.offset == offset;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            if (keep) {
+                kept.add(offset);
+                keptKeys.add(key);
+                keptBytes += length;
+            }
+            offset += length;
+        }
+
+        Path temp = segment.path.resolveSibling(segment.path.getFileName() + TEMP_SUFFIX);
+        Segment compacted = null;
+        int[] newOffsets = new int[kept.size()];
+        if (!kept.isEmpty()) {
+            compacted = mapSegment(segment.id, temp, (int) keptBytes);
+            int position = 0;
+            for (int i = 0; i < kept.size(); i++) {
+                int offset = kept.get(i);
+                int length = HEADER_SIZE + source.getInt(offset + 4) + Math.max(source.getInt(offset + 8), 0);
+                compacted.buffer.put(position, source, offset, length);
+                newOffsets[i] = position;
+                position += length;
+            }
+            compacted.end = position;
+            compacted.buffer.force();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (closed || segments.get(segment.id) != segment) {
+                Files.deleteIfExists(temp);
+                return false;
+            }
+            // Сначала убираем старый hint: при сбое до записи нового сегмент просто просканируется
+            Files.deleteIfExists(hintPath(segment.id));
+            if (compacted == null) {
+                segments.remove(segment.id);
+                Files.delete(segment.path);
+                return true;
+            }
+
+            // Отображение остается действительным после переименования файла
+            Files.move(temp, segment.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Segment replacement = new Segment(segment.id, segment.path, compacted.buffer);
+            replacement.end = compacted.end;
+            for (int i = 0; i < kept.size(); i++) {
+                int oldOffset = kept.get(i);
+                int length = HEADER_SIZE + source.getInt(oldOffset + 4) + Math.max(source.getInt(oldOffset + 8), 0);
+                String key = keptKeys.get(i);
+                Location current = keyDir.get(key);
+                if (source.getInt(oldOffset + 8) != TOMBSTONE && current != null
+                        && current.segment == segment && current.offset == oldOffset) {
+                    keyDir.put(key, new Location(replacement, newOffsets[i], length));
+                } else {
+                    replacement.deadBytes += length;
+                }
+            }
+            segments.put(segment.id, replacement);
+            writeHint(replacement);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Segment createSegment(int id, int capacity) throws IOException {
+        Segment segment = mapSegment(id, dataPath(id), capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    // capacity < 0 - отобразить файл целиком; иначе файл расширяется до capacity
+    private static Segment mapSegment(int id, Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = capacity < 0 ? channel.size() : capacity;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(id, path, buffer);
+        }
+    }
+
+    private byte[] readValue(Location location) {
+        ByteBuffer buffer = location.segment.buffer;
+        int keyLength = buffer.getInt(location.offset + 4);
+        byte[] value = new byte[buffer.getInt(location.offset + 8)];
+        buffer.get(location.offset + HEADER_SIZE + keyLength, value);
+        return value;
+    }
+
+    private static String readKey(ByteBuffer buffer, int offset) {
+        byte[] key = new byte[buffer.getInt(offset + 4)];
+        buffer.get(offset + HEADER_SIZE, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    // CRC32C по записи без поля самой суммы
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + 4, length - 4));
+        return (int) crc.getValue();
+    }
+
+    private Path dataPath(int id) {
+        return directory.resolve(String.format("%010d%s", id, DATA_SUFFIX));
+    }
+
+    private Path hintPath(int id) {
+        return directory.resolve(String.format("%010d%s", id, HINT_SUFFIX));
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        // Позиция после последней записи
+        int end;
+        // Байты перезаписанных и удаленных записей - основание для сжатия
+        long deadBytes;
+
+        Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Location(Segment segment, int offset, int length) {
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.dhtcopy.core.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Фильтр Блума SSTable: отсекает чтение блока для ключей, которых в файле точно нет.
+ * Позиции считаются двойным хэшированием по 64-битному хэшу ключа (h1 + i * h2).
+ */
+final class BloomFilter {
+    private final long[] bits;
+    private final int hashCount;
+
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.hashCount = hashCount;
+    }
+
+    // При 10 битах на ключ доля ложных срабатываний около 1%
+    static BloomFilter build(long[] keyHashes, int count, int bitsPerKey) {
+        long numBits = Math.max(64, (long) count * bitsPerKey);
+        long[] bits = new long[(int) ((numBits + 63) / 64)];
+        int hashCount = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2))));
+        BloomFilter filter = new BloomFilter(bits, hashCount);
+        for (int i = 0; i < count; i++) {
+            filter.add(keyHashes[i]);
+        }
+        return filter;
+    }
+
+    static BloomFilter read(ByteBuffer buffer) {
+        int hashCount = buffer.getInt();
+        long[] bits = new long[buffer.getInt()];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buffer.getLong();
+        }
+        return new BloomFilter(bits, hashCount);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    boolean mightContain(long keyHash) {
+        long numBits = (long) bits.length * 64;
+        int h1 = (int) keyHash;
+        int h2 = (int) (keyHash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long keyHash) {
+        long numBits = (long) bits.length * 64;
+        int h1 = (int) keyHash;
+        int h2 = (int) (keyHash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.dhtcopy.core.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище с бюджетом памяти: оборачивает любой движок и при превышении maxBytes вытесняет
+ * ключи по политике (W-TinyLFU или LRU). Вес записи - байты ключа и значения плюс оценка
+ * накладных расходов на объекты и узел карты.
+ *
+ * Запись, удаление и вытеснение идут под одной блокировкой, чтобы политика и движок не расходились.
+ * Чтение блокировку не ждет: обращение учитывается, только если она свободна (как буфер чтения в Caffeine).
+ * Вытеснение не журналируется: после перезапуска журнал вернет ключи, и бюджет отсечет их снова.
+ * Вытесненные при записи ключи передаются слушателю уже после снятия блокировки - владелец движка
+ * (Node) убирает их из своих таймеров и индексов, которые иначе продолжали бы считать ключ живым.
+ */
+public class BoundedStorageEngine implements StorageEngine {
+    // Заголовок и массив строки ключа, заголовок byte[] значения, узел ConcurrentHashMap
+    public static final long ENTRY_OVERHEAD = 96;
+
+    private final StorageEngine delegate;
+    private final long maxBytes;
+    private final EvictionPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long residentBytes;
+    private volatile Consumer<String> evictionListener;
+
+    public BoundedStorageEngine(StorageEngine delegate, long maxBytes, EvictionPolicy.Type policyType) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + maxBytes);
+        }
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+        this.policy = EvictionPolicy.create(policyType, maxBytes);
+        // Персистентный движок открывается с данными - учитываем их и сразу укладываемся в бюджет
+        List<String> evicted = new ArrayList<>();
+        delegate.forEach((key, value) -> policy.recordWrite(key, weigh(key, value), evicted));
+        evicted.forEach(delegate::remove);
+        evictions.addAndGet(evicted.size());
+        residentBytes = policy.weightedSize();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] value = delegate.get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        if (lock.tryLock()) {
+            try {
+                policy.recordAccess(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public byte[] put(String key, byte[] value) {
+        List<String> evicted = new ArrayList<>();
+        lock.lock();
+        try {
+            byte[] previous = delegate.put(key, value);
+            policy.recordWrite(key, weigh(key, value), evicted);
+            for (String victim : evicted) {
+                delegate.remove(victim);
+            }
+            residentBytes = policy.weightedSize();
+            evictions.addAndGet(evicted.size());
+            return previous;
+        } finally {
+            lock.unlock();
+            Consumer<String> listener = evictionListener;
+            if (listener != null) {
+                evicted.forEach(listener);
+            }
+        }
+    }
+
+    @Override
+    public byte[] remove(String key) {
+        lock.lock();
+        try {
+            byte[] previous = delegate.remove(key);
+            policy.recordRemoval(key);
+            residentBytes = policy.weightedSize();
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return delegate.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            delegate.clear();
+            policy.clear();
+            residentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, byte[]> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        delegate.forEachKey(action);
+    }
+
+    @Override
+    public void scan(String fromInclusive, String toExclusive, BiConsumer<String, byte[]> action) {
+        delegate.scan(fromInclusive, toExclusive, action);
+    }
+
+    @Override
+    public boolean isOrdered() {
+        return delegate.isOrdered();
+    }
+
+    @Override
+    public List<Map.Entry<String, byte[]>> scanPage(String fromInclusive, String toExclusive, int limit) {
+        return delegate.scanPage(fromInclusive, toExclusive, limit);
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    public static long weigh(String key, byte[] value) {
+        return ENTRY_OVERHEAD + key.length() + value.length;
+    }
+
+    // Ключи, вытесненные при открытии движка, слушатель не получает - их уже нет при обходе владельцем
+    public void setEvictionListener(Consumer<String> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    public StorageEngine getDelegate() {
+        return delegate;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public EvictionPolicy.Type getPolicyType() {
+        return policy.type();
+    }
+}
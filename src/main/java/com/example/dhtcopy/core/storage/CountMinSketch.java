@@ -0,0 +1,78 @@
+package com.example.dhtcopy.core.storage;
+
+/**
+ * Приблизительная частота обращений к ключам для допуска W-TinyLFU: 4 строки 4-битных
+ * счетчиков (насыщаются на 15), оценка - минимум по строкам. После sampleSize приращений
+ * все счетчики делятся пополам, так что старая популярность со временем забывается.
+ * Не потокобезопасен - вызывается под блокировкой политики.
+ */
+final class CountMinSketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int MIN_WIDTH = 1024;
+    private static final int MAX_WIDTH = 1 << 22;
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final byte[] table;
+    private final int width;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    CountMinSketch(long expectedEntries) {
+        long clamped = Math.max(MIN_WIDTH, Math.min(MAX_WIDTH, expectedEntries));
+        this.width = Integer.highestOneBit((int) (clamped - 1)) << 1;
+        this.mask = width - 1;
+        this.table = new byte[DEPTH * width];
+        this.sampleSize = 10 * width;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * width + index(hash, row);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[row * width + index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    void clear() {
+        java.util.Arrays.fill(table, (byte) 0);
+        additions = 0;
+    }
+
+    // Старение: частоты делятся пополам
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) (table[i] >>> 1);
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[row];
+        mixed += mixed >>> 32;
+        return (int) mixed & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
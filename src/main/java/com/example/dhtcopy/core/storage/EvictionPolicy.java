@@ -0,0 +1,125 @@
+package com.example.dhtcopy.core.storage;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Политика вытеснения для хранилища с бюджетом памяти. Ведет порядок ключей с их весом
+ * в байтах и решает, кого вытеснить; сами данные остаются в хранилище.
+ * Все методы вызываются под блокировкой BoundedStorageEngine.
+ */
+public abstract class EvictionPolicy {
+
+    public enum Type {
+        LRU,
+        W_TINYLFU;
+
+        public static Type parse(String value) {
+            String normalized = value.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+            for (Type type : values()) {
+                if (type.name().equals(normalized)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown eviction policy: " + value + " (supported: lru, w-tinylfu)");
+        }
+
+        public String configName() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    static EvictionPolicy create(Type type, long maxBytes) {
+        return switch (type) {
+            case LRU -> new LruPolicy(maxBytes);
+            case W_TINYLFU -> new WTinyLfuPolicy(maxBytes);
+        };
+    }
+
+    abstract void recordAccess(String key);
+
+    // Добавляет или обновляет ключ; вытесненные ключи (возможно, и сам key) дописываются в evicted
+    abstract void recordWrite(String key, long weight, List<String> evicted);
+
+    abstract void recordRemoval(String key);
+
+    abstract void clear();
+
+    abstract long weightedSize();
+
+    abstract Type type();
+
+    static final class Entry {
+        final String key;
+        long weight;
+        int queue;
+        Entry prev;
+        Entry next;
+
+        Entry(String key, long weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    // Двусвязная очередь по давности обращения: голова - последний использованный ключ
+    static final class AccessQueue {
+        private Entry head;
+        private Entry tail;
+        private long bytes;
+
+        void addFirst(Entry entry) {
+            entry.prev = null;
+            entry.next = head;
+            if (head != null) {
+                head.prev = entry;
+            } else {
+                tail = entry;
+            }
+            head = entry;
+            bytes += entry.weight;
+        }
+
+        void remove(Entry entry) {
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            } else {
+                tail = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            bytes -= entry.weight;
+        }
+
+        void moveToFront(Entry entry) {
+            if (head != entry) {
+                remove(entry);
+                addFirst(entry);
+            }
+        }
+
+        void reweigh(Entry entry, long weight) {
+            bytes += weight - entry.weight;
+            entry.weight = weight;
+        }
+
+        Entry peekLast() {
+            return tail;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            bytes = 0;
+        }
+    }
+}
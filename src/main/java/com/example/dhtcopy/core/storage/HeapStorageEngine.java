@@ -0,0 +1,58 @@
+package com.example.dhtcopy.core.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// Хранилище по умолчанию: обычная ConcurrentHashMap в куче
+public class HeapStorageEngine implements StorageEngine {
+    public static final String NAME = "heap";
+
+    private final Map<String, byte[]> storage = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] get(String key) {
+        return storage.get(key);
+    }
+
+    @Override
+    public byte[] put(String key, byte[] value) {
+        return storage.put(key, value);
+    }
+
+    @Override
+    public byte[] remove(String key) {
+        return storage.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return storage.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return storage.size();
+    }
+
+    @Override
+    public void clear() {
+        storage.clear();
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, byte[]> action) {
+        storage.forEach(action);
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        storage.keySet().forEach(action);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.dhtcopy.core.storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Вытесняет давно не использованные ключи, пока суммарный вес не уложится в бюджет
+final class LruPolicy extends EvictionPolicy {
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final AccessQueue queue = new AccessQueue();
+
+    LruPolicy(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    void recordAccess(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            queue.moveToFront(entry);
+        }
+    }
+
+    @Override
+    void recordWrite(String key, long weight, List<String> evicted) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, weight);
+            entries.put(key, entry);
+            queue.addFirst(entry);
+        } else {
+            queue.reweigh(entry, weight);
+            queue.moveToFront(entry);
+        }
+        while (queue.bytes() > maxBytes) {
+            Entry victim = queue.peekLast();
+            queue.remove(victim);
+            entries.remove(victim.key);
+            evicted.add(victim.key);
+        }
+    }
+
+    @Override
+    void recordRemoval(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            queue.remove(entry);
+        }
+    }
+
+    @Override
+    void clear() {
+        entries.clear();
+        queue.clear();
+    }
+
+    @Override
+    long weightedSize() {
+        return queue.bytes();
+    }
+
+    @Override
+    Type type() {
+        return Type.LRU;
+    }
+}
@@ -0,0 +1,915 @@
+package com.example.dhtcopy.core.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * LSM-дерево для данных больше оперативной памяти. Запись попадает в memtable
+ * (ConcurrentSkipListMap); заполненная memtable замораживается и фоном сбрасывается
+ * в SSTable уровня 0. Фоновая leveled-компактация сливает L0 в L1, а переполненные
+ * уровни - в следующий, так что на уровнях от L1 файлы не пересекаются по ключам.
+ *
+ * Чтение идет от новых данных к старым: memtable, замороженные memtable, L0 от новых
+ * файлов к старым, затем по одному файлу на уровень; фильтры Блума отсекают лишние блоки.
+ * Ключи упорядочены, поэтому scan обходит диапазон слиянием без сортировки.
+ *
+ * Memtable, не сброшенная на диск, теряется при падении процесса; close() ее сбрасывает.
+ */
+public class LsmStorageEngine implements StorageEngine {
+    private static final Logger logger = LoggerFactory.getLogger(LsmStorageEngine.class);
+
+    public static final String NAME = "lsm";
+    public static final long DEFAULT_MEMTABLE_SIZE = 4 * 1024 * 1024;
+
+    // Маркер удаления: сравнивается только по ссылке, наружу не отдается
+    static final byte[] TOMBSTONE = new byte[0];
+    // Значение живой записи при обходе только ключей
+    static final byte[] PRESENT = new byte[0];
+
+    private static final int MAX_LEVELS = 7;
+    private static final int L0_COMPACTION_TRIGGER = 4;
+    private static final int LEVEL_SIZE_MULTIPLIER = 10;
+    private static final int MAX_IMMUTABLE_MEMTABLES = 2;
+    // Накладные расходы узла skiplist на запись - для оценки размера memtable
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String TABLE_SUFFIX = ".sst";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    record Entry(String key, byte[] value) {
+    }
+
+    private final Path directory;
+    private final long memtableSize;
+    private final long levelBaseSize;
+    private final long targetFileSize;
+    // Читатели и запись в memtable - под блокировкой чтения; подмена memtable и файлов - под блокировкой записи
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Запись последовательна: put возвращает прежнее значение и ведет точный счетчик ключей
+    private final ReentrantLock writeMutex = new ReentrantLock();
+    private final ExecutorService flushExecutor;
+    private final ExecutorService compactionExecutor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    private volatile Memtable memtable = new Memtable();
+    // Замороженные memtable в очереди на сброс, новые в начале
+    private final Deque<Memtable> immutables = new ArrayDeque<>();
+    // levels[0] - новые файлы первыми, могут пересекаться; остальные уровни отсортированы по первому ключу
+    private final List<List<SSTable>> levels = new ArrayList<>();
+    // Последний сжатый ключ уровня: компактация обходит уровень по кругу
+    private final String[] compactPointers = new String[MAX_LEVELS];
+    private final AtomicLong nextFileId = new AtomicLong();
+    private Future<?> lastFlush = CompletableFuture.completedFuture(null);
+    private volatile long liveKeys;
+    private volatile boolean closed;
+
+    // Счетчики для усиления записи и чтения
+    private final LongAdder userBytes = new LongAdder();
+    private final LongAdder diskBytes = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder blocksRead = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    public LsmStorageEngine(Path directory) {
+        this(directory, DEFAULT_MEMTABLE_SIZE);
+    }
+
+    public LsmStorageEngine(Path directory, long memtableSize) {
+        if (memtableSize < 1024) {
+            throw new IllegalArgumentException("Memtable size must be at least 1 KB: " + memtableSize);
+        }
+        this.directory = directory;
+        this.memtableSize = memtableSize;
+        this.levelBaseSize = memtableSize * LEVEL_SIZE_MULTIPLIER;
+        this.targetFileSize = memtableSize;
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            levels.add(new ArrayList<>());
+        }
+
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open LSM directory " + directory, e);
+        }
+
+        this.flushExecutor = Executors.newSingleThreadExecutor(daemonThreads("lsm-flush-"));
+        this.compactionExecutor = Executors.newSingleThreadExecutor(daemonThreads("lsm-compaction-"));
+        scheduleCompaction();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        if (closed) {
+            return null;
+        }
+        return visible(lookup(key));
+    }
+
+    @Override
+    public byte[] put(String key, byte[] value) {
+        writeMutex.lock();
+        try {
+            ensureOpen();
+            byte[] previous = visible(lookup(key));
+            insert(key, value);
+            if (previous == null) {
+                liveKeys++;
+            }
+            return previous;
+        } finally {
+            writeMutex.unlock();
+        }
+    }
+
+    @Override
+    public byte[] remove(String key) {
+        writeMutex.lock();
+        try {
+            ensureOpen();
+            byte[] previous = visible(lookup(key));
+            if (previous != null) {
+                insert(key, TOMBSTONE);
+                liveKeys--;
+            }
+            return previous;
+        } finally {
+            writeMutex.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) liveKeys;
+    }
+
+    @Override
+    public void clear() {
+        writeMutex.lock();
+        try {
+            ensureOpen();
+            lock.writeLock().lock();
+            try {
+                memtable = new Memtable();
+                immutables.clear();
+                for (List<SSTable> level : levels) {
+                    for (SSTable table : level) {
+                        discard(table);
+                    }
+                    level.clear();
+                }
+                liveKeys = 0;
+                writeManifest();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear LSM directory " + directory, e);
+        } finally {
+            writeMutex.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, byte[]> action) {
+        scan(null, null, action);
+    }
+
+    // Слияние без копирования значений: блоки SSTable читаются, но значения в них пропускаются
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Iterator<Entry> merged = new MergingIterator(sources(null, true));
+            while (merged.hasNext()) {
+                Entry entry = merged.next();
+                if (entry.value() != TOMBSTONE) {
+                    action.accept(entry.key());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Слияние всех источников по возрастанию ключа; action не должен изменять это хранилище
+    @Override
+    public void scan(String from, String to, BiConsumer<String, byte[]> action) {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Iterator<Entry> merged = new MergingIterator(sources(from, false));
+            while (merged.hasNext()) {
+                Entry entry = merged.next();
+                if (to != null && entry.key().compareTo(to) >= 0) {
+                    break;
+                }
+                if (entry.value() != TOMBSTONE) {
+                    action.accept(entry.key(), entry.value());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isOrdered() {
+        return true;
+    }
+
+    @Override
+    public List<Map.Entry<String, byte[]>> scanPage(String fromInclusive, String toExclusive, int limit) {
+        List<Map.Entry<String, byte[]>> page = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return page;
+            }
+            Iterator<Entry> merged = new MergingIterator(sources(fromInclusive, false));
+            while (page.size() < limit && merged.hasNext()) {
+                Entry entry = merged.next();
+                if (toExclusive != null && entry.key().compareTo(toExclusive) >= 0) {
+                    break;
+                }
+                if (entry.value() != TOMBSTONE) {
+                    page.add(new AbstractMap.SimpleImmutableEntry<>(entry.key(), entry.value()));
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    // Останавливает фоновые задачи и сбрасывает все memtable на диск
+    @Override
+    public void close() {
+        writeMutex.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            shutdown(flushExecutor);
+            shutdown(compactionExecutor);
+
+            lock.writeLock().lock();
+            try {
+                if (!memtable.entries.isEmpty()) {
+                    immutables.addFirst(memtable);
+                    memtable = new Memtable();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            while (flushOldest()) {
+                // сбрасываем очередь целиком
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (List<SSTable> level : levels) {
+                    for (SSTable table : level) {
+                        table.close();
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to close LSM storage {}: {}", directory, e.getMessage());
+        } finally {
+            writeMutex.unlock();
+        }
+    }
+
+    // Замораживает текущую memtable и ждет, пока она окажется в SSTable
+    public void flush() {
+        writeMutex.lock();
+        try {
+            ensureOpen();
+            if (!memtable.entries.isEmpty()) {
+                rotate();
+            }
+            lastFlush.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Memtable flush failed", e.getCause());
+        } finally {
+            writeMutex.unlock();
+        }
+    }
+
+    // Доводит дерево до равновесия: выполняет все компактации, которые назрели сейчас
+    public void compact() {
+        ensureOpen();
+        try {
+            compactionExecutor.submit(this::compactUntilBalanced).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Compaction failed", e.getCause());
+        }
+    }
+
+    // Байты, записанные на диск (сброс и компактация), на байт пользовательских данных
+    public double getWriteAmplification() {
+        long user = userBytes.sum();
+        return user == 0 ? 0.0 : (double) diskBytes.sum() / user;
+    }
+
+    // Прочитанные блоки SSTable на один поиск ключа
+    public double getReadAmplification() {
+        long count = lookups.sum();
+        return count == 0 ? 0.0 : (double) blocksRead.sum() / count;
+    }
+
+    // Объем данных сверх целевых размеров уровней, который еще предстоит сжать
+    public long getCompactionBacklogBytes() {
+        lock.readLock().lock();
+        try {
+            long backlog = 0;
+            if (levels.get(0).size() >= L0_COMPACTION_TRIGGER) {
+                backlog += levelBytes(0);
+            }
+            for (int level = 1; level < MAX_LEVELS - 1; level++) {
+                backlog += Math.max(0, levelBytes(level) - maxBytesForLevel(level));
+            }
+            return backlog;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Integer> getLevelFileCounts() {
+        lock.readLock().lock();
+        try {
+            return levels.stream().map(List::size).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private static byte[] visible(byte[] value) {
+        return value == TOMBSTONE ? null : value;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("LSM storage " + directory + " is closed");
+        }
+    }
+
+    // Значение, TOMBSTONE или null, если ключ нигде не встречается
+    private byte[] lookup(String key) {
+        lock.readLock().lock();
+        try {
+            lookups.increment();
+            byte[] value = memtable.entries.get(key);
+            if (value != null) {
+                return value;
+            }
+            for (Memtable frozen : immutables) {
+                value = frozen.entries.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+
+            long keyHash = SSTable.hash(key.getBytes(StandardCharsets.UTF_8));
+            for (SSTable table : levels.get(0)) {
+                value = table.get(key, keyHash, blocksRead);
+                if (value != null) {
+                    return value;
+                }
+            }
+            for (int level = 1; level < MAX_LEVELS; level++) {
+                SSTable table = findTable(levels.get(level), key);
+                if (table != null) {
+                    value = table.get(key, keyHash, blocksRead);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read key from " + directory, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Вызывается под writeMutex
+    private void insert(String key, byte[] value) {
+        int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+        lock.readLock().lock();
+        try {
+            memtable.entries.put(key, value);
+            memtable.bytes += keyLength + value.length + ENTRY_OVERHEAD;
+        } finally {
+            lock.readLock().unlock();
+        }
+        userBytes.add(keyLength + value.length);
+        if (memtable.bytes >= memtableSize) {
+            rotate();
+        }
+    }
+
+    // Вызывается под writeMutex. Если сброс не успевает, запись ждет его (backpressure)
+    private void rotate() {
+        int pending;
+        lock.writeLock().lock();
+        try {
+            immutables.addFirst(memtable);
+            memtable = new Memtable();
+            pending = immutables.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastFlush = flushExecutor.submit(this::flushQuietly);
+
+        if (pending > MAX_IMMUTABLE_MEMTABLES) {
+            try {
+                lastFlush.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("Memtable flush in {} failed: {}", directory, e.getCause().getMessage());
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flushOldest();
+            scheduleCompaction();
+        } catch (IOException e) {
+            // Memtable остается в очереди - следующий сброс повторит попытку, начиная с нее
+            logger.error("Memtable flush in {} failed: {}", directory, e.getMessage());
+        }
+    }
+
+    // Сбрасывает самую старую замороженную memtable в новый файл L0; false - очередь пуста
+    private boolean flushOldest() throws IOException {
+        Memtable frozen;
+        lock.readLock().lock();
+        try {
+            frozen = immutables.peekLast();
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (frozen == null) {
+            return false;
+        }
+
+        long id = nextFileId.getAndIncrement();
+        SSTable.Writer writer = new SSTable.Writer(tablePath(id));
+        SSTable table;
+        try {
+            for (Map.Entry<String, byte[]> entry : frozen.entries.entrySet()) {
+                writer.add(entry.getKey(), entry.getValue());
+            }
+            table = writer.finish(id);
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (immutables.peekLast() != frozen) {
+                // Хранилище очищено, пока шел сброс
+                discard(table);
+                return true;
+            }
+            immutables.removeLast();
+            levels.get(0).add(0, table);
+            writeManifest();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        diskBytes.add(table.fileSize);
+        return true;
+    }
+
+    private void scheduleCompaction() {
+        if (!closed && compactionScheduled.compareAndSet(false, true)) {
+            try {
+                compactionExecutor.execute(this::compactUntilBalanced);
+            } catch (RejectedExecutionException e) {
+                compactionScheduled.set(false);
+            }
+        }
+    }
+
+    private void compactUntilBalanced() {
+        compactionScheduled.set(false);
+        try {
+            Compaction compaction;
+            while (!closed && (compaction = pickCompaction()) != null) {
+                runCompaction(compaction);
+            }
+        } catch (Exception e) {
+            logger.error("Compaction in {} failed: {}", directory, e.getMessage());
+        }
+    }
+
+    private Compaction pickCompaction() {
+        lock.readLock().lock();
+        try {
+            List<SSTable> level0 = levels.get(0);
+            if (level0.size() >= L0_COMPACTION_TRIGGER) {
+                // Файлы L0 пересекаются - сливаем их все вместе с пересекающимися файлами L1
+                List<SSTable> inputs = new ArrayList<>(level0);
+                String from = inputs.stream().map(table -> table.firstKey).min(Comparator.naturalOrder()).orElseThrow();
+                String to = inputs.stream().map(table -> table.lastKey).max(Comparator.naturalOrder()).orElseThrow();
+                return new Compaction(0, inputs, overlapping(levels.get(1), from, to));
+            }
+
+            for (int level = 1; level < MAX_LEVELS - 1; level++) {
+                if (levelBytes(level) > maxBytesForLevel(level)) {
+                    List<SSTable> files = levels.get(level);
+                    String pointer = compactPointers[level];
+                    SSTable picked = files.stream()
+                            .filter(table -> pointer == null || table.firstKey.compareTo(pointer) > 0)
+                            .findFirst()
+                            .orElse(files.get(0));
+                    compactPointers[level] = picked.lastKey;
+                    return new Compaction(level, List.of(picked),
+                            overlapping(levels.get(level + 1), picked.firstKey, picked.lastKey));
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void runCompaction(Compaction compaction) throws IOException {
+        int outputLevel = compaction.level + 1;
+        boolean dropTombstones;
+        lock.readLock().lock();
+        try {
+            // Маркеры удаления можно выбросить, только если глубже не осталось старых версий
+            dropTombstones = levels.subList(outputLevel + 1, MAX_LEVELS).stream().allMatch(List::isEmpty);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Приоритет источников: входы верхнего уровня (в L0 - от новых к старым), затем нижний уровень
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        compaction.upper.forEach(table -> sources.add(table.iterator(null)));
+        compaction.lower.forEach(table -> sources.add(table.iterator(null)));
+        Iterator<Entry> merged = new MergingIterator(sources);
+
+        List<SSTable> outputs = new ArrayList<>();
+        SSTable.Writer writer = null;
+        long writerId = 0;
+        try {
+            while (merged.hasNext()) {
+                Entry entry = merged.next();
+                if (entry.value() == TOMBSTONE && dropTombstones) {
+                    continue;
+                }
+                if (writer == null) {
+                    writerId = nextFileId.getAndIncrement();
+                    writer = new SSTable.Writer(tablePath(writerId));
+                }
+                writer.add(entry.key(), entry.value());
+                if (writer.estimatedSize() >= targetFileSize) {
+                    outputs.add(writer.finish(writerId));
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                outputs.add(writer.finish(writerId));
+                writer = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            for (SSTable output : outputs) {
+                discard(output);
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<SSTable> upperLevel = levels.get(compaction.level);
+            List<SSTable> lowerLevel = levels.get(outputLevel);
+            if (closed || !upperLevel.containsAll(compaction.upper) || !lowerLevel.containsAll(compaction.lower)) {
+                // Хранилище очищено или закрывается - результат не нужен
+                for (SSTable output : outputs) {
+                    discard(output);
+                }
+                return;
+            }
+            upperLevel.removeAll(compaction.upper);
+            lowerLevel.removeAll(compaction.lower);
+            lowerLevel.addAll(outputs);
+            lowerLevel.sort(Comparator.comparing(table -> table.firstKey));
+            writeManifest();
+            for (SSTable input : compaction.upper) {
+                discard(input);
+            }
+            for (SSTable input : compaction.lower) {
+                discard(input);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        diskBytes.add(outputs.stream().mapToLong(table -> table.fileSize).sum());
+        compactions.increment();
+        logger.debug("Compacted {} files from L{} into {} files on L{} in {}",
+                compaction.upper.size() + compaction.lower.size(), compaction.level, outputs.size(), outputLevel, directory);
+    }
+
+    // Источники в порядке от новых к старым; вызывается под блокировкой чтения.
+    // keysOnly - значения SSTable не копируются, живые записи несут пустой маркер PRESENT
+    private List<Iterator<Entry>> sources(String from, boolean keysOnly) {
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        sources.add(memtableIterator(memtable, from));
+        for (Memtable frozen : immutables) {
+            sources.add(memtableIterator(frozen, from));
+        }
+        for (SSTable table : levels.get(0)) {
+            sources.add(table.iterator(from, keysOnly));
+        }
+        for (int level = 1; level < MAX_LEVELS; level++) {
+            for (SSTable table : levels.get(level)) {
+                if (from == null || table.lastKey.compareTo(from) >= 0) {
+                    sources.add(table.iterator(from, keysOnly));
+                }
+            }
+        }
+        return sources;
+    }
+
+    private static Iterator<Entry> memtableIterator(Memtable memtable, String from) {
+        Map<String, byte[]> entries = from == null ? memtable.entries : memtable.entries.tailMap(from);
+        Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                Map.Entry<String, byte[]> entry = iterator.next();
+                return new Entry(entry.getKey(), entry.getValue());
+            }
+        };
+    }
+
+    // Файл уровня >= 1, в диапазон которого попадает ключ
+    private static SSTable findTable(List<SSTable> level, String key) {
+        int low = 0;
+        int high = level.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            SSTable table = level.get(mid);
+            if (table.lastKey.compareTo(key) < 0) {
+                low = mid + 1;
+            } else if (table.firstKey.compareTo(key) > 0) {
+                high = mid - 1;
+            } else {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    private static List<SSTable> overlapping(List<SSTable> level, String from, String to) {
+        return level.stream().filter(table -> table.overlaps(from, to)).toList();
+    }
+
+    private long levelBytes(int level) {
+        return levels.get(level).stream().mapToLong(table -> table.fileSize).sum();
+    }
+
+    private long maxBytesForLevel(int level) {
+        long bytes = levelBaseSize;
+        for (int i = 1; i < level; i++) {
+            bytes *= LEVEL_SIZE_MULTIPLIER;
+        }
+        return bytes;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        Set<Long> live = new HashSet<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 2) {
+                    continue;
+                }
+                if (parts[0].equals("next-file-id")) {
+                    nextFileId.set(Math.max(nextFileId.get(), Long.parseLong(parts[1])));
+                } else {
+                    int level = Integer.parseInt(parts[0]);
+                    long id = Long.parseLong(parts[1]);
+                    levels.get(level).add(SSTable.open(id, tablePath(id)));
+                    live.add(id);
+                    nextFileId.set(Math.max(nextFileId.get(), id + 1));
+                }
+            }
+        }
+        levels.get(0).sort(Comparator.comparingLong((SSTable table) -> table.id).reversed());
+        for (int level = 1; level < MAX_LEVELS; level++) {
+            levels.get(level).sort(Comparator.comparing(table -> table.firstKey));
+        }
+
+        // Файлы вне манифеста - следы прерванного сброса или компактации
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    Files.delete(file);
+                } else if (name.endsWith(TABLE_SUFFIX)
+                        && !live.contains(Long.parseLong(name.substring(0, name.length() - TABLE_SUFFIX.length())))) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        long[] count = new long[1];
+        scan(null, null, (key, value) -> count[0]++);
+        liveKeys = count[0];
+        logger.info("Opened LSM storage {}: {} keys, files per level {}", directory, liveKeys, getLevelFileCounts());
+    }
+
+    // Манифест перечисляет файлы по уровням; пишется атомарной заменой. Вызывается под блокировкой записи
+    private void writeManifest() throws IOException {
+        StringBuilder content = new StringBuilder();
+        content.append("next-file-id ").append(nextFileId.get()).append('\n');
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            for (SSTable table : levels.get(level)) {
+                content.append(level).append(' ').append(table.id).append('\n');
+            }
+        }
+        Path manifest = directory.resolve(MANIFEST);
+        Path temp = directory.resolve(MANIFEST + TEMP_SUFFIX);
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void discard(SSTable table) throws IOException {
+        table.close();
+        Files.deleteIfExists(table.path);
+    }
+
+    private Path tablePath(long id) {
+        return directory.resolve(String.format("%012d%s", id, TABLE_SUFFIX));
+    }
+
+    private java.util.concurrent.ThreadFactory daemonThreads(String prefix) {
+        return task -> {
+            Thread thread = new Thread(task, prefix + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Memtable {
+        final ConcurrentSkipListMap<String, byte[]> entries = new ConcurrentSkipListMap<>();
+        // Оценка занятой памяти; меняется только под writeMutex
+        volatile long bytes;
+    }
+
+    private record Compaction(int level, List<SSTable> upper, List<SSTable> lower) {
+    }
+
+    /**
+     * K-way слияние отсортированных источников. Источники перечислены от новых к старым:
+     * для одинаковых ключей остается запись из самого нового, остальные пропускаются.
+     */
+    private static final class MergingIterator implements Iterator<Entry> {
+        private final PriorityQueue<Cursor> heap = new PriorityQueue<>(
+                Comparator.comparing((Cursor cursor) -> cursor.current.key()).thenComparingInt(cursor -> cursor.priority));
+
+        MergingIterator(List<Iterator<Entry>> sources) {
+            for (int i = 0; i < sources.size(); i++) {
+                Iterator<Entry> source = sources.get(i);
+                if (source.hasNext()) {
+                    heap.add(new Cursor(source, i, source.next()));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            Cursor top = heap.poll();
+            if (top == null) {
+                throw new NoSuchElementException();
+            }
+            Entry result = top.current;
+            advance(top);
+            while (!heap.isEmpty() && heap.peek().current.key().equals(result.key())) {
+                advance(heap.poll());
+            }
+            return result;
+        }
+
+        private void advance(Cursor cursor) {
+            if (cursor.source.hasNext()) {
+                cursor.current = cursor.source.next();
+                heap.add(cursor);
+            }
+        }
+
+        private static final class Cursor {
+            final Iterator<Entry> source;
+            final int priority;
+            Entry current;
+
+            Cursor(Iterator<Entry> source, int priority, Entry current) {
+                this.source = source;
+                this.priority = priority;
+                this.current = current;
+            }
+        }
+    }
+}
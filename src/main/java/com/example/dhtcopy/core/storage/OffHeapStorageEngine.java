@@ -0,0 +1,423 @@
+package com.example.dhtcopy.core.storage;
+
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище вне кучи: ключи и значения лежат в слабах ByteBuffer.allocateDirect,
+ * а индекс - открытая адресация на примитивных массивах. В куче не остается объектов
+ * на каждую запись, поэтому миллионы ключей почти не нагружают сборщик мусора.
+ *
+ * Запись занимает блок размером в степень двойки: [длина ключа][длина значения][ключ][значение].
+ * Освобожденные блоки складываются в списки по классу размера и переиспользуются;
+ * записи больше слаба получают собственный буфер, который отпускается при удалении.
+ */
+public class OffHeapStorageEngine implements StorageEngine {
+    public static final String NAME = "off-heap";
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final HashFunction HASH = HashFunctions.murmur3();
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_BLOCK_SHIFT = 4;
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final double MAX_LOAD = 0.75;
+
+    private final int slabSize;
+    private final int slabShift;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Слабы памяти вне кучи; адрес записи - (номер слаба << 32) | смещение
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private int currentSlab = -1;
+    private int slabOffset;
+    // Освобожденные блоки по классу размера (log2 размера блока)
+    private final LongStack[] freeBlocks;
+
+    // Индекс: адрес записи + 1 (0 - пусто, -1 - удалено) и хэш ключа для быстрого отсева
+    private long[] addresses = new long[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+    private int tombstones;
+    private long allocatedBytes;
+    private long liveBytes;
+
+    public OffHeapStorageEngine() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    public OffHeapStorageEngine(int slabSize) {
+        if (slabSize < 1024 || Integer.bitCount(slabSize) != 1) {
+            throw new IllegalArgumentException("Slab size must be a power of two of at least 1 KB: " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.slabShift = Integer.numberOfTrailingZeros(slabSize);
+        this.freeBlocks = new LongStack[slabShift + 1];
+        for (int i = 0; i < freeBlocks.length; i++) {
+            freeBlocks[i] = new LongStack();
+        }
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        lock.readLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            return slot < 0 ? null : readValue(addresses[slot] - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        lock.readLock().lock();
+        try {
+            return find(keyBytes, hash) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] put(String key, byte[] valueBytes) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        int recordSize = HEADER_SIZE + keyBytes.length + valueBytes.length;
+
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot >= 0) {
+                long address = addresses[slot] - 1;
+                byte[] previous = readValue(address);
+                if (blockShift(recordSize) != blockShift(recordLength(address))) {
+                    // Запись не помещается в прежний блок - переезжаем в блок другого класса
+                    free(address);
+                    address = allocate(recordSize);
+                    addresses[slot] = address + 1;
+                }
+                write(address, keyBytes, valueBytes);
+                return previous;
+            }
+
+            if (size + tombstones + 1 > addresses.length * MAX_LOAD) {
+                resize();
+                slot = find(keyBytes, hash);
+            }
+            int insertAt = -slot - 1;
+            if (addresses[insertAt] == TOMBSTONE) {
+                tombstones--;
+            }
+            long address = allocate(recordSize);
+            write(address, keyBytes, valueBytes);
+            addresses[insertAt] = address + 1;
+            hashes[insertAt] = hash;
+            size++;
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] remove(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(keyBytes);
+        lock.writeLock().lock();
+        try {
+            int slot = find(keyBytes, hash);
+            if (slot < 0) {
+                return null;
+            }
+            long address = addresses[slot] - 1;
+            byte[] previous = readValue(address);
+            free(address);
+            addresses[slot] = TOMBSTONE;
+            size--;
+            tombstones++;
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            addresses = new long[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+            size = 0;
+            tombstones = 0;
+            // Буферы отпускаются сборщику мусора, память вне кучи освобождается вместе с ними
+            slabs.clear();
+            currentSlab = -1;
+            slabOffset = 0;
+            for (LongStack blocks : freeBlocks) {
+                blocks.clear();
+            }
+            allocatedBytes = 0;
+            liveBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Выполняется под блокировкой чтения: action не должен изменять это хранилище
+    @Override
+    public void forEach(BiConsumer<String, byte[]> action) {
+        lock.readLock().lock();
+        try {
+            for (long entry : addresses) {
+                if (entry != EMPTY && entry != TOMBSTONE) {
+                    action.accept(readKey(entry - 1), readValue(entry - 1));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Значения не копируются из слабов
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            for (long entry : addresses) {
+                if (entry != EMPTY && entry != TOMBSTONE) {
+                    action.accept(readKey(entry - 1));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    // Память вне кучи, выделенная под слабы
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return allocatedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Память, занятая живыми записями (с округлением до блока)
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int hash(byte[] keyBytes) {
+        long hash = HASH.hash(keyBytes);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    // Индекс слота с ключом или -(слот для вставки) - 1
+    private int find(byte[] keyBytes, int hash) {
+        int mask = addresses.length - 1;
+        int firstTombstone = -1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = addresses[slot];
+            if (entry == EMPTY) {
+                return -(firstTombstone >= 0 ? firstTombstone : slot) - 1;
+            }
+            if (entry == TOMBSTONE) {
+                if (firstTombstone < 0) {
+                    firstTombstone = slot;
+                }
+            } else if (hashes[slot] == hash && keyEquals(entry - 1, keyBytes)) {
+                return slot;
+            }
+        }
+    }
+
+    // Пересборка индекса по сохраненным хэшам, без чтения ключей из слабов
+    private void resize() {
+        int capacity = addresses.length;
+        while (size + 1 > capacity * MAX_LOAD / 2 && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        if (size + 1 > capacity * MAX_LOAD) {
+            throw new IllegalStateException("Off-heap index is full: " + size + " entries");
+        }
+
+        long[] oldAddresses = addresses;
+        int[] oldHashes = hashes;
+        addresses = new long[capacity];
+        hashes = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldAddresses.length; i++) {
+            long entry = oldAddresses[i];
+            if (entry != EMPTY && entry != TOMBSTONE) {
+                int slot = oldHashes[i] & mask;
+                while (addresses[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                addresses[slot] = entry;
+                hashes[slot] = oldHashes[i];
+            }
+        }
+        tombstones = 0;
+    }
+
+    private long allocate(int recordSize) {
+        int shift = blockShift(recordSize);
+        if (shift > slabShift) {
+            // Запись больше слаба - отдельный буфер под нее одну
+            slabs.add(ByteBuffer.allocateDirect(recordSize));
+            allocatedBytes += recordSize;
+            liveBytes += recordSize;
+            return (long) (slabs.size() - 1) << 32;
+        }
+
+        int blockSize = 1 << shift;
+        liveBytes += blockSize;
+        LongStack reusable = freeBlocks[shift];
+        if (!reusable.isEmpty()) {
+            return reusable.pop();
+        }
+
+        if (currentSlab < 0 || slabOffset + blockSize > slabSize) {
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            allocatedBytes += slabSize;
+            currentSlab = slabs.size() - 1;
+            slabOffset = 0;
+        }
+        long address = ((long) currentSlab << 32) | slabOffset;
+        slabOffset += blockSize;
+        return address;
+    }
+
+    private void free(long address) {
+        int recordSize = recordLength(address);
+        int shift = blockShift(recordSize);
+        if (shift > slabShift) {
+            slabs.set((int) (address >>> 32), null);
+            allocatedBytes -= recordSize;
+            liveBytes -= recordSize;
+            return;
+        }
+        liveBytes -= 1 << shift;
+        freeBlocks[shift].push(address);
+    }
+
+    private static int blockShift(int recordSize) {
+        int shift = 32 - Integer.numberOfLeadingZeros(recordSize - 1);
+        return Math.max(shift, MIN_BLOCK_SHIFT);
+    }
+
+    private void write(long address, byte[] keyBytes, byte[] valueBytes) {
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        slab.putInt(offset, keyBytes.length);
+        slab.putInt(offset + 4, valueBytes.length);
+        slab.put(offset + HEADER_SIZE, keyBytes);
+        slab.put(offset + HEADER_SIZE + keyBytes.length, valueBytes);
+    }
+
+    private int recordLength(long address) {
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        return HEADER_SIZE + slab.getInt(offset) + slab.getInt(offset + 4);
+    }
+
+    private boolean keyEquals(long address, byte[] keyBytes) {
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        if (slab.getInt(offset) != keyBytes.length) {
+            return false;
+        }
+        int start = offset + HEADER_SIZE;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (slab.get(start + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readKey(long address) {
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        byte[] keyBytes = new byte[slab.getInt(offset)];
+        slab.get(offset + HEADER_SIZE, keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readValue(long address) {
+        ByteBuffer slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        int keyLength = slab.getInt(offset);
+        byte[] valueBytes = new byte[slab.getInt(offset + 4)];
+        slab.get(offset + HEADER_SIZE + keyLength, valueBytes);
+        return valueBytes;
+    }
+
+    // Стек адресов на примитивном массиве - без упаковки в Long
+    private static final class LongStack {
+        private long[] values = new long[16];
+        private int size;
+
+        void push(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long pop() {
+            return values[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            values = new long[16];
+            size = 0;
+        }
+    }
+}
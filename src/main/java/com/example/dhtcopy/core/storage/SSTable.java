@@ -0,0 +1,353 @@
+package com.example.dhtcopy.core.storage;
+
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Неизменяемый отсортированный файл LSM-дерева:
+ * [блоки данных][индекс блоков][фильтр Блума][футер].
+ * Блок - последовательность записей [длина ключа][длина значения или -1][ключ][значение].
+ * Индекс (первый ключ и смещение каждого блока) и фильтр держатся в памяти,
+ * так что точечное чтение - не больше одного чтения блока с диска.
+ */
+final class SSTable implements Closeable {
+    static final int BLOCK_SIZE = 4096;
+    static final int BLOOM_BITS_PER_KEY = 10;
+
+    private static final HashFunction HASH = HashFunctions.murmur3();
+    private static final int MAGIC = 0x4C534D31;
+    private static final int FOOTER_SIZE = 8 + 8 + 4 + 4;
+    private static final int TOMBSTONE_LENGTH = -1;
+
+    final long id;
+    final Path path;
+    final long fileSize;
+    final int entryCount;
+    final String firstKey;
+    final String lastKey;
+
+    private final FileChannel channel;
+    private final String[] blockFirstKeys;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final BloomFilter bloom;
+
+    private SSTable(long id, Path path, FileChannel channel, long fileSize, int entryCount,
+                    String[] blockFirstKeys, long[] blockOffsets, int[] blockLengths, String lastKey, BloomFilter bloom) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.entryCount = entryCount;
+        this.blockFirstKeys = blockFirstKeys;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.firstKey = blockFirstKeys.length == 0 ? null : blockFirstKeys[0];
+        this.lastKey = lastKey;
+        this.bloom = bloom;
+    }
+
+    static SSTable open(long id, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            ByteBuffer footer = readFully(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            int entryCount = footer.getInt();
+            if (footer.getInt() != MAGIC) {
+                throw new IOException("Not an SSTable: " + path);
+            }
+
+            ByteBuffer index = readFully(channel, indexOffset, (int) (bloomOffset - indexOffset));
+            int blocks = index.getInt();
+            String[] firstKeys = new String[blocks];
+            long[] offsets = new long[blocks];
+            int[] lengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                firstKeys[i] = readString(index);
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+            }
+            String lastKey = blocks == 0 ? null : readString(index);
+
+            BloomFilter bloom = BloomFilter.read(
+                    readFully(channel, bloomOffset, (int) (fileSize - FOOTER_SIZE - bloomOffset)));
+            return new SSTable(id, path, channel, fileSize, entryCount, firstKeys, offsets, lengths, lastKey, bloom);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static long hash(byte[] keyBytes) {
+        return HASH.hash(keyBytes);
+    }
+
+    boolean overlaps(String from, String to) {
+        return firstKey != null && lastKey.compareTo(from) >= 0 && firstKey.compareTo(to) <= 0;
+    }
+
+    /**
+     * Ищет ключ в файле: null - ключа здесь нет, LsmStorageEngine.TOMBSTONE - ключ удален.
+     * blocksRead считает прочитанные блоки для метрики усиления чтения.
+     */
+    byte[] get(String key, long keyHash, LongAdder blocksRead) throws IOException {
+        if (firstKey == null || key.compareTo(firstKey) < 0 || key.compareTo(lastKey) > 0 || !bloom.mightContain(keyHash)) {
+            return null;
+        }
+        int block = blockFor(key);
+        blocksRead.increment();
+        ByteBuffer buffer = readBlock(block);
+        while (buffer.hasRemaining()) {
+            String entryKey = readString(buffer);
+            int valueLength = buffer.getInt();
+            int cmp = entryKey.compareTo(key);
+            if (cmp == 0) {
+                if (valueLength == TOMBSTONE_LENGTH) {
+                    return LsmStorageEngine.TOMBSTONE;
+                }
+                byte[] value = new byte[valueLength];
+                buffer.get(value);
+                return value;
+            }
+            if (cmp > 0) {
+                return null;
+            }
+            buffer.position(buffer.position() + Math.max(valueLength, 0));
+        }
+        return null;
+    }
+
+    Iterator<LsmStorageEngine.Entry> iterator(String from) {
+        return iterator(from, false);
+    }
+
+    // Записи по возрастанию ключа начиная с from (null - с начала файла);
+    // keysOnly - значения пропускаются, живая запись несет маркер PRESENT
+    Iterator<LsmStorageEngine.Entry> iterator(String from, boolean keysOnly) {
+        int startBlock = from == null || firstKey == null ? 0 : Math.max(0, blockFor(from));
+        return new Iterator<>() {
+            private int block = startBlock;
+            private ByteBuffer buffer;
+            private LsmStorageEngine.Entry next = advance();
+
+            private LsmStorageEngine.Entry advance() {
+                try {
+                    while (true) {
+                        if (buffer == null || !buffer.hasRemaining()) {
+                            if (block >= blockOffsets.length) {
+                                return null;
+                            }
+                            buffer = readBlock(block++);
+                        }
+                        String key = readString(buffer);
+                        int valueLength = buffer.getInt();
+                        byte[] value;
+                        if (valueLength == TOMBSTONE_LENGTH) {
+                            value = LsmStorageEngine.TOMBSTONE;
+                        } else if (keysOnly) {
+                            value = LsmStorageEngine.PRESENT;
+                            buffer.position(buffer.position() + valueLength);
+                        } else {
+                            value = new byte[valueLength];
+                            buffer.get(value);
+                        }
+                        if (from == null || key.compareTo(from) >= 0) {
+                            return new LsmStorageEngine.Entry(key, value);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read " + path, e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public LsmStorageEngine.Entry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                LsmStorageEngine.Entry current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Последний блок, первый ключ которого не больше key
+    private int blockFor(String key) {
+        int index = Arrays.binarySearch(blockFirstKeys, key);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        return readFully(channel, blockOffsets[block], blockLengths[block]);
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of SSTable file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Пишет SSTable из записей, поданных по возрастанию ключа.
+     * Файл становится виден только после finish() - до этого он лежит под временным именем.
+     */
+    static final class Writer {
+        private final Path path;
+        private final Path temp;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+        private final DataOutputStream blockOut = new DataOutputStream(block);
+        private final List<String> blockFirstKeys = new ArrayList<>();
+        private final List<long[]> blockPositions = new ArrayList<>();
+        private long[] keyHashes = new long[1024];
+        private int entryCount;
+        private long written;
+        private String blockFirstKey;
+        private String lastKey;
+
+        Writer(Path path) throws IOException {
+            this.path = path;
+            this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024));
+        }
+
+        void add(String key, byte[] value) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (blockFirstKey == null) {
+                blockFirstKey = key;
+            }
+            blockOut.writeInt(keyBytes.length);
+            blockOut.write(keyBytes);
+            if (value == LsmStorageEngine.TOMBSTONE) {
+                blockOut.writeInt(TOMBSTONE_LENGTH);
+            } else {
+                blockOut.writeInt(value.length);
+                blockOut.write(value);
+            }
+
+            if (entryCount == keyHashes.length) {
+                keyHashes = Arrays.copyOf(keyHashes, entryCount * 2);
+            }
+            keyHashes[entryCount++] = hash(keyBytes);
+            lastKey = key;
+            if (block.size() >= BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        // Примерный размер файла - по нему компактация режет выход на файлы
+        long estimatedSize() {
+            return written + block.size();
+        }
+
+        int entryCount() {
+            return entryCount;
+        }
+
+        SSTable finish(long id) throws IOException {
+            flushBlock();
+            long indexOffset = written;
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            index.writeInt(blockFirstKeys.size());
+            for (int i = 0; i < blockFirstKeys.size(); i++) {
+                writeString(index, blockFirstKeys.get(i));
+                index.writeLong(blockPositions.get(i)[0]);
+                index.writeInt((int) blockPositions.get(i)[1]);
+            }
+            if (lastKey != null) {
+                writeString(index, lastKey);
+            }
+            write(indexBytes);
+
+            long bloomOffset = written;
+            ByteArrayOutputStream bloomBytes = new ByteArrayOutputStream();
+            BloomFilter.build(keyHashes, entryCount, BLOOM_BITS_PER_KEY).write(new DataOutputStream(bloomBytes));
+            write(bloomBytes);
+
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeInt(entryCount);
+            out.writeInt(MAGIC);
+            out.flush();
+            out.close();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+            return open(id, path);
+        }
+
+        void abort() throws IOException {
+            out.close();
+            Files.deleteIfExists(temp);
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) {
+                return;
+            }
+            blockFirstKeys.add(blockFirstKey);
+            blockPositions.add(new long[]{written, block.size()});
+            write(block);
+            block.reset();
+            blockFirstKey = null;
+        }
+
+        private void write(ByteArrayOutputStream bytes) throws IOException {
+            bytes.writeTo((OutputStream) out);
+            written += bytes.size();
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.dhtcopy.core.storage;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Локальное хранилище ключей ноды. Реализации должны быть потокобезопасными:
+ * нода обслуживает запись, чтение и перебалансировку из разных потоков.
+ * Значения - сырые байты; массивы не копируются, поэтому после записи их нельзя изменять.
+ */
+public interface StorageEngine {
+
+    byte[] get(String key);
+
+    // Возвращает предыдущее значение или null
+    byte[] put(String key, byte[] value);
+
+    byte[] remove(String key);
+
+    default boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    int size();
+
+    void clear();
+
+    // Обход всех записей; порядок не определен
+    void forEach(BiConsumer<String, byte[]> action);
+
+    /**
+     * Обход ключей без чтения значений; порядок не определен. Движки, хранящие значения на диске
+     * или вне кучи, переопределяют метод, чтобы отбор ключей не читал значения.
+     */
+    default void forEachKey(Consumer<String> action) {
+        forEach((key, value) -> action.accept(key));
+    }
+
+    /**
+     * Обход записей с ключами из [fromInclusive, toExclusive) по возрастанию ключа; null - без границы.
+     * По умолчанию диапазон собирается и сортируется в памяти; упорядоченные движки переопределяют обход.
+     */
+    default void scan(String fromInclusive, String toExclusive, BiConsumer<String, byte[]> action) {
+        TreeMap<String, byte[]> sorted = new TreeMap<>();
+        forEach((key, value) -> {
+            if ((fromInclusive == null || key.compareTo(fromInclusive) >= 0)
+                    && (toExclusive == null || key.compareTo(toExclusive) < 0)) {
+                sorted.put(key, value);
+            }
+        });
+        sorted.forEach(action);
+    }
+
+    // true - ключи хранятся упорядоченно и scanPage не сортирует данные в памяти
+    default boolean isOrdered() {
+        return false;
+    }
+
+    /**
+     * Не больше limit записей из [fromInclusive, toExclusive) по возрастанию ключа.
+     * По умолчанию - через scan, то есть с сортировкой всего диапазона; упорядоченные движки
+     * переопределяют метод и останавливаются на limit.
+     */
+    default List<Map.Entry<String, byte[]>> scanPage(String fromInclusive, String toExclusive, int limit) {
+        List<Map.Entry<String, byte[]>> page = new ArrayList<>();
+        scan(fromInclusive, toExclusive, (key, value) -> {
+            if (page.size() < limit) {
+                page.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            }
+        });
+        return page;
+    }
+
+    String name();
+
+    // Освобождает ресурсы движка (память вне кучи, файлы)
+    default void close() {
+    }
+}
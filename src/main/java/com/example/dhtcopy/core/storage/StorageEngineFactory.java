@@ -0,0 +1,108 @@
+package com.example.dhtcopy.core.storage;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Создает хранилище для ноды по имени движка из конфигурации.
+ * Пустое имя означает движок по умолчанию; персистентные движки хранят
+ * данные ноды в подкаталоге dataDirectory с ее идентификатором.
+ */
+public class StorageEngineFactory {
+    private final String defaultEngine;
+    private final int offHeapSlabSize;
+    private final Path dataDirectory;
+    private final int segmentSize;
+    private final long mergeIntervalMs;
+    private final long memtableSize;
+    private WriteAheadLog.Durability walDurability = WriteAheadLog.Durability.NONE;
+    private long groupCommitWindowMicros = WriteAheadLog.DEFAULT_GROUP_COMMIT_WINDOW_MICROS;
+    private long asyncFlushIntervalMs = WriteAheadLog.DEFAULT_ASYNC_FLUSH_INTERVAL_MS;
+    private long maxLogSize = WriteAheadLog.DEFAULT_MAX_LOG_SIZE;
+    // Бюджет памяти ноды в байтах; 0 - без ограничения
+    private long maxMemoryBytes;
+    private EvictionPolicy.Type evictionPolicy = EvictionPolicy.Type.W_TINYLFU;
+
+    public StorageEngineFactory() {
+        this(HeapStorageEngine.NAME, OffHeapStorageEngine.DEFAULT_SLAB_SIZE, Path.of("data"),
+                BitcaskStorageEngine.DEFAULT_SEGMENT_SIZE, BitcaskStorageEngine.DEFAULT_MERGE_INTERVAL_MS,
+                LsmStorageEngine.DEFAULT_MEMTABLE_SIZE);
+    }
+
+    public StorageEngineFactory(String defaultEngine, int offHeapSlabSize, Path dataDirectory,
+                                int segmentSize, long mergeIntervalMs, long memtableSize) {
+        this.defaultEngine = normalize(defaultEngine == null || defaultEngine.isBlank() ? HeapStorageEngine.NAME : defaultEngine);
+        this.offHeapSlabSize = offHeapSlabSize;
+        this.dataDirectory = dataDirectory;
+        this.segmentSize = segmentSize;
+        this.mergeIntervalMs = mergeIntervalMs;
+        this.memtableSize = memtableSize;
+        // Неверное имя по умолчанию должно падать при старте, а не при первой ноде
+        checkSupported(this.defaultEngine);
+    }
+
+    public StorageEngine create(String nodeId, String engine) {
+        String name = engine == null || engine.isBlank() ? defaultEngine : normalize(engine);
+        checkSupported(name);
+        StorageEngine storage = switch (name) {
+            case OffHeapStorageEngine.NAME -> new OffHeapStorageEngine(offHeapSlabSize);
+            case BitcaskStorageEngine.NAME -> new BitcaskStorageEngine(dataDirectory.resolve(nodeId), segmentSize,
+                    mergeIntervalMs, BitcaskStorageEngine.DEFAULT_MERGE_THRESHOLD);
+            case LsmStorageEngine.NAME -> new LsmStorageEngine(dataDirectory.resolve(nodeId), memtableSize);
+            default -> new HeapStorageEngine();
+        };
+        return maxMemoryBytes > 0 ? new BoundedStorageEngine(storage, maxMemoryBytes, evictionPolicy) : storage;
+    }
+
+    // Ограничивает данные каждой создаваемой ноды бюджетом в байтах с вытеснением по политике
+    public StorageEngineFactory withMemoryBudget(long maxMemoryBytes, EvictionPolicy.Type evictionPolicy) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.evictionPolicy = evictionPolicy;
+        return this;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    // Включает журнал предзаписи для создаваемых нод; none - без журнала
+    public StorageEngineFactory withWriteAheadLog(WriteAheadLog.Durability durability, long groupCommitWindowMicros,
+                                                  long asyncFlushIntervalMs, long maxLogSize) {
+        this.walDurability = durability;
+        this.groupCommitWindowMicros = groupCommitWindowMicros;
+        this.asyncFlushIntervalMs = asyncFlushIntervalMs;
+        this.maxLogSize = maxLogSize;
+        return this;
+    }
+
+    // Журнал ноды лежит рядом с ее каталогом данных; null, если журнал выключен
+    public WriteAheadLog createWriteAheadLog(String nodeId) {
+        if (walDurability == WriteAheadLog.Durability.NONE) {
+            return null;
+        }
+        return new WriteAheadLog(dataDirectory.resolve(nodeId + ".wal"), walDurability, groupCommitWindowMicros,
+                asyncFlushIntervalMs, maxLogSize);
+    }
+
+    public WriteAheadLog.Durability getWalDurability() {
+        return walDurability;
+    }
+
+    public String getDefaultEngine() {
+        return defaultEngine;
+    }
+
+    private static String normalize(String engine) {
+        return engine.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static void checkSupported(String engine) {
+        switch (engine) {
+            case HeapStorageEngine.NAME, OffHeapStorageEngine.NAME, BitcaskStorageEngine.NAME, LsmStorageEngine.NAME -> {
+            }
+            default -> throw new IllegalArgumentException("Unknown storage engine: " + engine + " (supported: "
+                    + HeapStorageEngine.NAME + ", " + OffHeapStorageEngine.NAME + ", " + BitcaskStorageEngine.NAME
+                    + ", " + LsmStorageEngine.NAME + ")");
+        }
+    }
+}
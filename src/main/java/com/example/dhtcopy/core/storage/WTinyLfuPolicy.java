@@ -0,0 +1,162 @@
+package com.example.dhtcopy.core.storage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * W-TinyLFU: новые ключи попадают в маленькое LRU-окно (1% бюджета), вытесненный из окна
+ * кандидат допускается в основную область только если по count-min sketch он обращался чаще,
+ * чем ее жертва. Основная область - сегментированный LRU: испытательный сегмент и защищенный
+ * (80%), куда ключ переходит при повторном обращении. Так разовые сканы не вымывают горячие ключи.
+ */
+final class WTinyLfuPolicy extends EvictionPolicy {
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+    // Оценка среднего веса записи для размера sketch
+    private static final long ESTIMATED_ENTRY_BYTES = 128;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long windowMax;
+    private final long mainMax;
+    private final long protectedMax;
+    private final CountMinSketch sketch;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final AccessQueue window = new AccessQueue();
+    private final AccessQueue probation = new AccessQueue();
+    private final AccessQueue protectedQueue = new AccessQueue();
+
+    WTinyLfuPolicy(long maxBytes) {
+        this.windowMax = Math.max(1, (long) (maxBytes * WINDOW_SHARE));
+        this.mainMax = maxBytes - windowMax;
+        this.protectedMax = (long) (mainMax * PROTECTED_SHARE);
+        this.sketch = new CountMinSketch(maxBytes / ESTIMATED_ENTRY_BYTES);
+    }
+
+    @Override
+    void recordAccess(String key) {
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            onHit(entry);
+        }
+    }
+
+    @Override
+    void recordWrite(String key, long weight, List<String> evicted) {
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, weight);
+            entry.queue = WINDOW;
+            entries.put(key, entry);
+            window.addFirst(entry);
+        } else {
+            queueOf(entry).reweigh(entry, weight);
+            onHit(entry);
+        }
+        evict(evicted);
+    }
+
+    @Override
+    void recordRemoval(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            queueOf(entry).remove(entry);
+        }
+    }
+
+    @Override
+    void clear() {
+        entries.clear();
+        window.clear();
+        probation.clear();
+        protectedQueue.clear();
+        sketch.clear();
+    }
+
+    @Override
+    long weightedSize() {
+        return window.bytes() + probation.bytes() + protectedQueue.bytes();
+    }
+
+    @Override
+    Type type() {
+        return Type.W_TINYLFU;
+    }
+
+    private void onHit(Entry entry) {
+        switch (entry.queue) {
+            case WINDOW -> window.moveToFront(entry);
+            case PROBATION -> {
+                // Повторное обращение переводит ключ в защищенный сегмент
+                probation.remove(entry);
+                entry.queue = PROTECTED;
+                protectedQueue.addFirst(entry);
+                while (protectedQueue.bytes() > protectedMax) {
+                    Entry demoted = protectedQueue.peekLast();
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addFirst(demoted);
+                }
+            }
+            default -> protectedQueue.moveToFront(entry);
+        }
+    }
+
+    private void evict(List<String> evicted) {
+        while (window.bytes() > windowMax) {
+            Entry candidate = window.peekLast();
+            window.remove(candidate);
+            admit(candidate, evicted);
+        }
+        // Рост веса ключа в основной области тоже может превысить бюджет
+        while (probation.bytes() + protectedQueue.bytes() > mainMax) {
+            drop(mainVictim(), evicted);
+        }
+    }
+
+    // Кандидат из окна вытесняет жертв основной области, пока он популярнее каждой из них
+    private void admit(Entry candidate, List<String> evicted) {
+        if (candidate.weight > mainMax) {
+            entries.remove(candidate.key);
+            evicted.add(candidate.key);
+            return;
+        }
+        int candidateFrequency = sketch.frequency(candidate.key);
+        while (probation.bytes() + protectedQueue.bytes() + candidate.weight > mainMax) {
+            Entry victim = mainVictim();
+            if (candidateFrequency > sketch.frequency(victim.key)) {
+                drop(victim, evicted);
+            } else {
+                entries.remove(candidate.key);
+                evicted.add(candidate.key);
+                return;
+            }
+        }
+        candidate.queue = PROBATION;
+        probation.addFirst(candidate);
+    }
+
+    private Entry mainVictim() {
+        Entry victim = probation.peekLast();
+        return victim != null ? victim : protectedQueue.peekLast();
+    }
+
+    private void drop(Entry entry, List<String> evicted) {
+        queueOf(entry).remove(entry);
+        entries.remove(entry.key);
+        evicted.add(entry.key);
+    }
+
+    private AccessQueue queueOf(Entry entry) {
+        return switch (entry.queue) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            default -> protectedQueue;
+        };
+    }
+}
@@ -0,0 +1,514 @@
+package com.example.dhtcopy.core.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал предзаписи ноды: каждая запись и удаление сначала попадает в журнал,
+ * при старте журнал проигрывается в хранилище. Запись журнала и изменение хранилища
+ * выполняются под одной блокировкой, поэтому порядок в журнале совпадает с порядком применения.
+ *
+ * Режимы надежности:
+ * async - fsync фоном раз в интервал (при падении ОС теряется до интервала записей);
+ * group-commit - писатель ждет fsync, но один fsync покрывает всех, кто успел дописать за окно;
+ * sync - fsync на каждую запись.
+ *
+ * Запись: [crc32c][операция][длина ключа][длина значения][ключ][значение]; запись ключа с TTL
+ * (операция 4) несет после заголовка срок жизни [epoch ms]. Журнал помнит сроки ключей,
+ * чтобы переписывание и восстановление сохраняли TTL.
+ * Когда журнал разрастается, он переписывается снимком хранилища (одна запись на живой ключ).
+ */
+public class WriteAheadLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW_MICROS = 1000;
+    public static final long DEFAULT_ASYNC_FLUSH_INTERVAL_MS = 1000;
+    public static final long DEFAULT_MAX_LOG_SIZE = 64 * 1024 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final byte OP_PUT_EXPIRING = 4;
+    private static final int HEADER_SIZE = 4 + 1 + 4 + 4;
+    private static final int EXPIRY_SIZE = 8;
+    // Срок "без истечения" (совпадает с Node.NO_EXPIRY)
+    private static final long NO_EXPIRY = 0;
+    private static final byte[] EMPTY = new byte[0];
+
+    public enum Durability {
+        NONE, ASYNC, GROUP_COMMIT, SYNC;
+
+        // Имя из конфигурации: none | async | group-commit | sync
+        public static Durability parse(String value) {
+            String normalized = value == null ? "" : value.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+            for (Durability durability : values()) {
+                if (durability.name().equals(normalized)) {
+                    return durability;
+                }
+            }
+            throw new IllegalArgumentException("Unknown WAL mode: " + value + " (supported: none, async, group-commit, sync)");
+        }
+
+        public String configName() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    // Вызывается после каждого fsync: длительность и число записей, ставших надежными
+    @FunctionalInterface
+    public interface SyncListener {
+        void onSync(long latencyNanos, long batchSize);
+    }
+
+    private final Path file;
+    private final Durability durability;
+    private final long groupCommitWindowNanos;
+    private final long maxLogSize;
+    // Запись в журнал и применение к хранилищу - под одной блокировкой
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // fsync идет вне appendLock; подмена файла при переписывании не должна с ним пересекаться
+    private final ReentrantReadWriteLock channelLock = new ReentrantReadWriteLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private final ScheduledExecutorService asyncFlusher;
+
+    private FileChannel channel;
+    private StorageEngine storage;
+    // Сроки жизни ключей с TTL (epoch ms) в порядке журнала; под appendLock
+    private final Map<String, Long> expiries = new HashMap<>();
+    private long size;
+    private long rewriteThreshold;
+    private volatile long appendedSeq;
+    // Под syncLock
+    private long syncedSeq;
+    private boolean syncInProgress;
+    private volatile boolean closed;
+    private volatile SyncListener syncListener = (latencyNanos, batchSize) -> {
+    };
+
+    private final LongAdder syncCount = new LongAdder();
+    private final LongAdder syncedRecords = new LongAdder();
+
+    public WriteAheadLog(Path file, Durability durability) {
+        this(file, durability, DEFAULT_GROUP_COMMIT_WINDOW_MICROS, DEFAULT_ASYNC_FLUSH_INTERVAL_MS, DEFAULT_MAX_LOG_SIZE);
+    }
+
+    public WriteAheadLog(Path file, Durability durability, long groupCommitWindowMicros,
+                         long asyncFlushIntervalMs, long maxLogSize) {
+        if (durability == Durability.NONE) {
+            throw new IllegalArgumentException("WAL mode none means no WAL; do not create one");
+        }
+        this.file = file;
+        this.durability = durability;
+        this.groupCommitWindowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, groupCommitWindowMicros));
+        this.maxLogSize = maxLogSize;
+        this.rewriteThreshold = maxLogSize;
+
+        if (durability == Durability.ASYNC) {
+            this.asyncFlusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "wal-flush-" + file.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            asyncFlusher.scheduleWithFixedDelay(this::syncInBackground, asyncFlushIntervalMs, asyncFlushIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.asyncFlusher = null;
+        }
+    }
+
+    public long recover(StorageEngine target) {
+        return recover(target, new HashMap<>());
+    }
+
+    /**
+     * Проигрывает журнал в хранилище и привязывает к нему журнал (по нему он переписывается).
+     * Поврежденный хвост - след падения посреди записи - отрезается. Возвращает число проигранных записей.
+     * expiries - сроки ключей, восстановленных до журнала (из снимка); после проигрывания
+     * в нем сроки всех ключей с TTL на момент падения.
+     */
+    public long recover(StorageEngine target, Map<String, Long> expiries) {
+        appendLock.lock();
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            long valid = 0;
+            long records = 0;
+            if (Files.exists(file)) {
+                long fileSize = Files.size(file);
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+                    while (true) {
+                        int length = readRecord(in, fileSize - valid, target, expiries);
+                        if (length < 0) {
+                            break;
+                        }
+                        valid += length;
+                        records++;
+                    }
+                }
+            }
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() > valid) {
+                logger.warn("Truncating WAL {} from {} to {} bytes after a torn write", file, channel.size(), valid);
+                channel.truncate(valid);
+                channel.force(true);
+            }
+            channel.position(valid);
+            size = valid;
+            rewriteThreshold = Math.max(maxLogSize, size * 2);
+            storage = target;
+            this.expiries.clear();
+            this.expiries.putAll(expiries);
+            logger.info("Replayed {} WAL records from {} ({} mode)", records, file, durability.configName());
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover WAL " + file, e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public <T> T logPut(String key, byte[] value, Supplier<T> apply) {
+        return logPut(key, value, NO_EXPIRY, apply);
+    }
+
+    // expiresAt - срок жизни ключа (epoch ms) или 0 - бессрочно
+    public <T> T logPut(String key, byte[] value, long expiresAt, Supplier<T> apply) {
+        return expiresAt == NO_EXPIRY
+                ? append(OP_PUT, key, value, NO_EXPIRY, apply)
+                : append(OP_PUT_EXPIRING, key, value, expiresAt, apply);
+    }
+
+    public <T> T logRemove(String key, Supplier<T> apply) {
+        return append(OP_DELETE, key, EMPTY, NO_EXPIRY, apply);
+    }
+
+    public void logClear(Runnable apply) {
+        append(OP_CLEAR, "", EMPTY, NO_EXPIRY, () -> {
+            apply.run();
+            return null;
+        });
+    }
+
+    public void setSyncListener(SyncListener syncListener) {
+        this.syncListener = syncListener;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        appendLock.lock();
+        try {
+            return size;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long getSyncCount() {
+        return syncCount.sum();
+    }
+
+    public long getSyncedRecords() {
+        return syncedRecords.sum();
+    }
+
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (asyncFlusher != null) {
+                asyncFlusher.shutdownNow();
+            }
+            if (channel != null) {
+                sync();
+                channel.close();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Failed to close WAL {}: {}", file, e.getMessage());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private <T> T append(byte op, String key, byte[] value, long expiresAt, Supplier<T> apply) {
+        ByteBuffer record = encode(op, key, value, expiresAt);
+        long seq;
+        T result;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("WAL " + file + " is closed");
+            }
+            if (storage == null) {
+                throw new IllegalStateException("WAL " + file + " must be recovered before writes");
+            }
+            size += record.remaining();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            seq = ++appendedSeq;
+            result = apply.get();
+            applyExpiry(expiries, op, key, expiresAt);
+
+            if (durability == Durability.SYNC) {
+                sync();
+            }
+            if (size >= rewriteThreshold) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to WAL " + file, e);
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (durability == Durability.GROUP_COMMIT) {
+            awaitSync(seq, groupCommitWindowNanos);
+        }
+        return result;
+    }
+
+    // Групповой коммит: первый ожидающий становится лидером, выжидает окно и делает один fsync за всех
+    private void awaitSync(long seq, long windowNanos) {
+        syncLock.lock();
+        try {
+            while (syncedSeq < seq) {
+                if (syncInProgress) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncInProgress = true;
+                long target;
+                long latency;
+                syncLock.unlock();
+                try {
+                    if (windowNanos > 0) {
+                        LockSupport.parkNanos(windowNanos);
+                    }
+                    target = appendedSeq;
+                    latency = force();
+                } finally {
+                    syncLock.lock();
+                    syncInProgress = false;
+                    synced.signalAll();
+                }
+                recordSync(latency, target);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Синхронный fsync всего записанного; вызывается под appendLock
+    private void sync() {
+        awaitSync(appendedSeq, 0);
+    }
+
+    private void syncInBackground() {
+        try {
+            if (!closed) {
+                sync();
+            }
+        } catch (RuntimeException e) {
+            logger.error("Background WAL sync of {} failed: {}", file, e.getMessage());
+        }
+    }
+
+    private long force() {
+        channelLock.readLock().lock();
+        try {
+            long start = System.nanoTime();
+            channel.force(false);
+            return System.nanoTime() - start;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync WAL " + file, e);
+        } finally {
+            channelLock.readLock().unlock();
+        }
+    }
+
+    // Вызывается под syncLock
+    private void recordSync(long latencyNanos, long target) {
+        long batch = Math.max(0, target - syncedSeq);
+        syncedSeq = Math.max(syncedSeq, target);
+        if (batch > 0) {
+            syncCount.increment();
+            syncedRecords.add(batch);
+            syncListener.onSync(latencyNanos, batch);
+        }
+    }
+
+    /**
+     * Переписывает журнал снимком хранилища: старые версии ключей и удаления больше не нужны.
+     * Вызывается под appendLock, так что хранилище в этот момент не меняется.
+     */
+    private void rewrite() {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        channelLock.writeLock().lock();
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024);
+                IOException[] failure = new IOException[1];
+                storage.forEach((key, value) -> {
+                    if (failure[0] == null) {
+                        try {
+                            Long expiresAt = expiries.get(key);
+                            ByteBuffer record = expiresAt == null
+                                    ? encode(OP_PUT, key, value, NO_EXPIRY)
+                                    : encode(OP_PUT_EXPIRING, key, value, expiresAt);
+                            stream.write(record.array(), 0, record.limit());
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                stream.flush();
+                out.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            long before = size;
+            channel.close();
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = channel.size();
+            channel.position(size);
+            logger.debug("Rewrote WAL {} from {} to {} bytes", file, before, size);
+        } catch (IOException e) {
+            logger.error("Failed to rewrite WAL {}: {}", file, e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // временный файл удалится при следующей попытке
+            }
+        } finally {
+            rewriteThreshold = Math.max(maxLogSize, size * 2);
+            channelLock.writeLock().unlock();
+        }
+
+        // Новый файл уже на диске целиком - все ожидающие fsync записи в нем есть
+        syncLock.lock();
+        try {
+            syncedSeq = appendedSeq;
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // Сроки ключей меняются в порядке журнала: запись с TTL ставит срок, остальные операции снимают
+    private static void applyExpiry(Map<String, Long> expiries, byte op, String key, long expiresAt) {
+        switch (op) {
+            case OP_PUT_EXPIRING -> expiries.put(key, expiresAt);
+            case OP_PUT, OP_DELETE -> expiries.remove(key);
+            default -> expiries.clear();
+        }
+    }
+
+    private static ByteBuffer encode(byte op, String key, byte[] value, long expiresAt) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int expirySize = op == OP_PUT_EXPIRING ? EXPIRY_SIZE : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + expirySize + keyBytes.length + value.length);
+        buffer.putInt(0);
+        buffer.put(op);
+        buffer.putInt(keyBytes.length);
+        buffer.putInt(value.length);
+        if (op == OP_PUT_EXPIRING) {
+            buffer.putLong(expiresAt);
+        }
+        buffer.put(keyBytes);
+        buffer.put(value);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, buffer.position() - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.flip();
+    }
+
+    // Читает и применяет одну запись; -1 - конец журнала или поврежденная запись
+    private static int readRecord(DataInputStream in, long remaining, StorageEngine target,
+                                  Map<String, Long> expiries) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        try {
+            in.readFully(header);
+        } catch (EOFException e) {
+            return -1;
+        }
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        int checksum = fields.getInt();
+        byte op = fields.get();
+        int keyLength = fields.getInt();
+        int valueLength = fields.getInt();
+        int expirySize = op == OP_PUT_EXPIRING ? EXPIRY_SIZE : 0;
+        if (keyLength < 0 || valueLength < 0 || op < OP_PUT || op > OP_PUT_EXPIRING
+                || (long) HEADER_SIZE + expirySize + keyLength + valueLength > remaining) {
+            return -1;
+        }
+
+        byte[] body = new byte[expirySize + keyLength + valueLength];
+        try {
+            in.readFully(body);
+        } catch (EOFException e) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(header, 4, HEADER_SIZE - 4);
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+
+        long expiresAt = op == OP_PUT_EXPIRING ? ByteBuffer.wrap(body).getLong() : NO_EXPIRY;
+        String key = new String(body, expirySize, keyLength, StandardCharsets.UTF_8);
+        switch (op) {
+            case OP_PUT, OP_PUT_EXPIRING -> target.put(key, Arrays.copyOfRange(body, expirySize + keyLength, body.length));
+            case OP_DELETE -> target.remove(key);
+            default -> target.clear();
+        }
+        applyExpiry(expiries, op, key, expiresAt);
+        return HEADER_SIZE + body.length;
+    }
+}
@@ -1,8 +1,11 @@
 package com.example.dhtcopy.dto;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 
+import java.time.Duration;
+
 public class KeyValueDto {
     @NotBlank(message = "Key cannot be blank")
     @Size(max = 255, message = "Key cannot exceed 255 characters")
@@ -12,6 +15,10 @@ public class KeyValueDto {
     @Size(max = 1000, message = "Value cannot exceed 1000 characters")
     private String value;
 
+    // Время жизни ключа в секундах; null - ключ бессрочный
+    @Positive(message = "TTL must be positive")
+    private Long ttlSeconds;
+
     // Constructors
     public KeyValueDto() {}
 
@@ -26,5 +33,10 @@ public class KeyValueDto {
 
     public String getValue() { return value; }
     public void setValue(String value) { this.value = value; }
+
+    public Long getTtlSeconds() { return ttlSeconds; }
+    public void setTtlSeconds(Long ttlSeconds) { this.ttlSeconds = ttlSeconds; }
+
+    public Duration ttl() { return ttlSeconds == null ? null : Duration.ofSeconds(ttlSeconds); }
 }
 
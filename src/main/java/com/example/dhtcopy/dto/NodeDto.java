@@ -3,6 +3,7 @@ package com.example.dhtcopy.dto;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
 
 public class NodeDto {
     @NotBlank(message = "Node ID cannot be blank")
@@ -15,6 +16,14 @@ public class NodeDto {
     @Max(value = 65535, message = "Port must be less than 65536")
     private int port;
 
+    private String zone;
+
+    // heap | off-heap; пусто - движок по умолчанию
+    private String storageEngine;
+
+    @Positive(message = "Weight must be positive")
+    private double weight = 1.0;
+
     private boolean active = true;
     private int dataSize;
     private long operationCount;
@@ -38,6 +47,15 @@ public class NodeDto {
     public int getPort() { return port; }
     public void setPort(int port) { this.port = port; }
 
+    public String getZone() { return zone; }
+    public void setZone(String zone) { this.zone = zone; }
+
+    public String getStorageEngine() { return storageEngine; }
+    public void setStorageEngine(String storageEngine) { this.storageEngine = storageEngine; }
+
+    public double getWeight() { return weight; }
+    public void setWeight(double weight) { this.weight = weight; }
+
     public boolean isActive() { return active; }
     public void setActive(boolean active) { this.active = active; }
 
@@ -0,0 +1,25 @@
+package com.example.dhtcopy.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ScanResultDto {
+    // Записи страницы в порядке возрастания ключа
+    private Map<String, String> entries = new LinkedHashMap<>();
+    // Передается в cursor следующего запроса; null - больше записей нет
+    private String nextCursor;
+
+    public ScanResultDto() {}
+
+    public ScanResultDto(Map<String, String> entries, String nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters and setters
+    public Map<String, String> getEntries() { return entries; }
+    public void setEntries(Map<String, String> entries) { this.entries = entries; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
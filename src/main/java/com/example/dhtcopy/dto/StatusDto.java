@@ -1,17 +1,26 @@
 package com.example.dhtcopy.dto;
 
+import com.example.dhtcopy.core.MovementScheduler;
+
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 public class StatusDto {
     private int totalNodes;
     private int activeNodes;
     private boolean isRebalancing;
+    // Идущие и недавние задачи переноса данных и доля бюджета переноса, оставленная клиентской задержкой
+    private List<MovementScheduler.Progress> movement;
+    private double movementRateFactor;
     private long totalOperations;
     private long totalKeys;
     private double averageReadLatency;
     private double averageWriteLatency;
     private Map<String, Integer> dataDistribution;
+    // Доля пространства ключей по числу зон, в которых лежат реплики
+    private Map<Integer, Double> zoneCoverage;
+    private long topologyEpoch;
     private LocalDateTime timestamp;
 
     public StatusDto() {
@@ -28,6 +37,12 @@ public class StatusDto {
     public boolean isRebalancing() { return isRebalancing; }
     public void setRebalancing(boolean isRebalancing) { this.isRebalancing = isRebalancing; }
 
+    public List<MovementScheduler.Progress> getMovement() { return movement; }
+    public void setMovement(List<MovementScheduler.Progress> movement) { this.movement = movement; }
+
+    public double getMovementRateFactor() { return movementRateFactor; }
+    public void setMovementRateFactor(double movementRateFactor) { this.movementRateFactor = movementRateFactor; }
+
     public long getTotalOperations() { return totalOperations; }
     public void setTotalOperations(long totalOperations) { this.totalOperations = totalOperations; }
 
@@ -43,6 +58,12 @@ public class StatusDto {
     public Map<String, Integer> getDataDistribution() { return dataDistribution; }
     public void setDataDistribution(Map<String, Integer> dataDistribution) { this.dataDistribution = dataDistribution; }
 
+    public Map<Integer, Double> getZoneCoverage() { return zoneCoverage; }
+    public void setZoneCoverage(Map<Integer, Double> zoneCoverage) { this.zoneCoverage = zoneCoverage; }
+
+    public long getTopologyEpoch() { return topologyEpoch; }
+    public void setTopologyEpoch(long topologyEpoch) { this.topologyEpoch = topologyEpoch; }
+
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
 }
@@ -0,0 +1,35 @@
+package com.example.dhtcopy.service;
+
+import com.example.dhtcopy.config.DHTConfig;
+import com.example.dhtcopy.core.DistributedHashTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Периодическая сверка реплик; деревья хэшей нод включает DHTConfig.initializeNodes
+@Service
+public class AntiEntropyService {
+    private static final Logger logger = LoggerFactory.getLogger(AntiEntropyService.class);
+
+    private final DistributedHashTable distributedHashTable;
+    private final boolean enabled;
+
+    @Autowired
+    public AntiEntropyService(DistributedHashTable distributedHashTable, DHTConfig.DHTProperties properties) {
+        this.distributedHashTable = distributedHashTable;
+        this.enabled = properties.getAntiEntropy().isEnabled();
+    }
+
+    @Scheduled(fixedDelayString = "${dht.anti-entropy.interval-ms:60000}", initialDelayString = "${dht.anti-entropy.interval-ms:60000}")
+    public void scheduledRepair() {
+        if (enabled) {
+            try {
+                distributedHashTable.runAntiEntropy();
+            } catch (RuntimeException e) {
+                logger.error("Anti-entropy pass failed: {}", e.getMessage());
+            }
+        }
+    }
+}
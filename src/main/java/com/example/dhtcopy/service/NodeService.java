@@ -1,7 +1,8 @@
 package com.example.dhtcopy.service;
 
 import com.example.dhtcopy.core.Node;
-import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.PlacementStrategy;
+import com.example.dhtcopy.core.storage.StorageEngineFactory;
 import com.example.dhtcopy.dto.NodeDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,16 +18,28 @@ import java.util.stream.Collectors;
 public class NodeService {
     private static final Logger logger = LoggerFactory.getLogger(NodeService.class);
 
-    private final ConsistentHashRing hashRing;
+    private final PlacementStrategy hashRing;
+    private final StorageEngineFactory storageEngineFactory;
     private final List<Node> failedNodes = new CopyOnWriteArrayList<>();
 
     @Autowired
-    public NodeService(ConsistentHashRing hashRing) {
+    public NodeService(PlacementStrategy hashRing, StorageEngineFactory storageEngineFactory) {
         this.hashRing = hashRing;
+        this.storageEngineFactory = storageEngineFactory;
     }
 
     public Node createNode(String id, String host, int port) {
-        return new Node(id, host, port);
+        return createNode(id, host, port, 1.0, Node.DEFAULT_ZONE, null);
+    }
+
+    public Node createNode(String id, String host, int port, double weight, String zone) {
+        return createNode(id, host, port, weight, zone, null);
+    }
+
+    // storageEngine == null - движок по умолчанию из dht.storage.engine
+    public Node createNode(String id, String host, int port, double weight, String zone, String storageEngine) {
+        return new Node(id, host, port, weight, zone, storageEngineFactory.create(id, storageEngine),
+                storageEngineFactory.createWriteAheadLog(id));
     }
 
     public void addNode(Node node) {
@@ -106,6 +119,9 @@ public class NodeService {
     private NodeDto convertToDto(Node node) {
         NodeDto dto = new NodeDto(node.getId(), node.getHost(), node.getPort());
         dto.setActive(node.isActive());
+        dto.setWeight(node.getWeight());
+        dto.setZone(node.getZone());
+        dto.setStorageEngine(node.getStorageEngine().name());
         dto.setDataSize(node.getDataSize());
         dto.setOperationCount(node.getOperationCount());
         return dto;
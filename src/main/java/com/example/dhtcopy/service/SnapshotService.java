@@ -0,0 +1,62 @@
+package com.example.dhtcopy.service;
+
+import com.example.dhtcopy.config.DHTConfig;
+import com.example.dhtcopy.core.DistributedHashTable;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.snapshot.SnapshotStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Периодические снимки хранилищ всех нод; восстановление из них - в DHTConfig.initializeNodes
+@Service
+public class SnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotService.class);
+
+    private final DistributedHashTable distributedHashTable;
+    private final SnapshotStore snapshotStore;
+    private final boolean enabled;
+
+    @Autowired
+    public SnapshotService(DistributedHashTable distributedHashTable, SnapshotStore snapshotStore,
+                           DHTConfig.DHTProperties properties) {
+        this.distributedHashTable = distributedHashTable;
+        this.snapshotStore = snapshotStore;
+        this.enabled = properties.getSnapshot().isEnabled();
+    }
+
+    @Scheduled(fixedDelayString = "${dht.snapshot.interval-ms:60000}", initialDelayString = "${dht.snapshot.interval-ms:60000}")
+    public void scheduledSnapshot() {
+        if (enabled) {
+            snapshotAllNodes();
+        }
+    }
+
+    public List<SnapshotStore.SnapshotResult> snapshotAllNodes() {
+        List<SnapshotStore.SnapshotResult> results = new ArrayList<>();
+        for (Node node : distributedHashTable.getAllNodes()) {
+            try {
+                SnapshotStore.SnapshotResult result = snapshotStore.snapshot(node);
+                distributedHashTable.getMetrics().recordSnapshot(result);
+                results.add(result);
+            } catch (RuntimeException e) {
+                logger.error("Snapshot of node {} failed: {}", node.getId(), e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    // Бин зависит от DistributedHashTable, поэтому уничтожается раньше: хранилища еще открыты
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        if (enabled) {
+            snapshotAllNodes();
+        }
+    }
+}
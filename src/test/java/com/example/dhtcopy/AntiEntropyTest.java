@@ -0,0 +1,173 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.DistributedHashTable;
+import com.example.dhtcopy.core.MerkleIndex;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.ValueVersion;
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.yml")
+public class AntiEntropyTest {
+
+    private static final int KEY_COUNT = 500;
+
+    @Autowired
+    private DistributedHashTable distributedHashTable;
+
+    private Node node1;
+    private Node node2;
+    private Node node3;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        for (Node node : distributedHashTable.getAllNodes()) {
+            distributedHashTable.removeNode(node.getId());
+        }
+        distributedHashTable.configureAntiEntropy(MerkleIndex.DEFAULT_LEAVES_PER_RANGE);
+        node1 = new Node("ae_node1", "localhost", 8001);
+        node2 = new Node("ae_node2", "localhost", 8002);
+        node3 = new Node("ae_node3", "localhost", 8003);
+        distributedHashTable.addNode(node1);
+        distributedHashTable.addNode(node2);
+        distributedHashTable.addNode(node3);
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            distributedHashTable.put("ae:" + i, "value_" + i);
+        }
+        // Третья реплика пишется после кворума - ждем все копии
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((node1.getDataSize() < KEY_COUNT || node2.getDataSize() < KEY_COUNT || node3.getDataSize() < KEY_COUNT)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void testIncrementalTreeMatchesRebuiltAndDiffFindsLeaf() {
+        HashFunction hash = HashFunctions.murmur3();
+        ToLongFunction<String> token = hash::hash;
+        // Первый отрезок проходит через Long.MAX_VALUE -> Long.MIN_VALUE
+        long[] ends = {-(1L << 62), 0, 1L << 62};
+
+        MerkleIndex incremental = new MerkleIndex(token, 8);
+        incremental.layout(ends);
+        MerkleIndex rebuilt = new MerkleIndex(token, 8);
+        for (int i = 0; i < 1000; i++) {
+            byte[] value = ("v" + i).getBytes(StandardCharsets.UTF_8);
+            incremental.put("k" + i, value);
+            rebuilt.put("k" + i, value);
+        }
+        incremental.remove("k7");
+        rebuilt.remove("k7");
+        rebuilt.layout(ends);
+
+        Set<String> seen = new HashSet<>();
+        for (int range = 0; range < ends.length; range++) {
+            assertArrayEquals(incremental.tree(range), rebuilt.tree(range));
+            for (int leaf = 0; leaf < 8; leaf++) {
+                for (String key : incremental.leafEntries(range, leaf).keySet()) {
+                    // Каждый ключ - ровно в одном листе
+                    assertTrue(seen.add(key), key);
+                }
+            }
+        }
+        assertEquals(999, seen.size());
+
+        // Измененный ключ дает ровно один расходящийся лист, и в нем этот ключ с другим хэшем
+        rebuilt.put("k42", "changed".getBytes(StandardCharsets.UTF_8));
+        List<Integer> divergent = new ArrayList<>();
+        int divergentRange = -1;
+        long[] compared = new long[1];
+        for (int range = 0; range < ends.length; range++) {
+            List<Integer> leaves = MerkleIndex.diff(incremental.tree(range), rebuilt.tree(range), compared);
+            if (!leaves.isEmpty()) {
+                divergent.addAll(leaves);
+                divergentRange = range;
+            }
+        }
+        assertEquals(1, divergent.size());
+        // Спуск по одной ветви: корни трех отрезков и по паре детей на каждом из трех уровней ниже
+        assertEquals(3 + 2 * 3, compared[0]);
+        Map<String, Long> left = incremental.leafEntries(divergentRange, divergent.get(0));
+        Map<String, Long> right = rebuilt.leafEntries(divergentRange, divergent.get(0));
+        assertNotEquals(left.get("k42"), right.get("k42"));
+        left.remove("k42");
+        right.remove("k42");
+        assertEquals(left, right);
+
+        assertThrows(IllegalArgumentException.class, () -> new MerkleIndex(token, 12));
+    }
+
+    @Test
+    void testRepairTouchesOnlyDivergentKeys() throws InterruptedException {
+        node2.putBytes("ae:7", "corrupted".getBytes(StandardCharsets.UTF_8));
+        node3.removeBytes("ae:11");
+        node1.putBytes("ae:stray", "stray".getBytes(StandardCharsets.UTF_8));
+        // Большинство держит старое значение, новое есть только на одной реплике
+        byte[] old = node2.getBytes("ae:9");
+        distributedHashTable.put("ae:9", "newer");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!List.of(node1, node2, node3).stream().allMatch(n -> !Arrays.equals(old, n.getBytes("ae:9")))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        node2.putBytes("ae:9", old);
+        node3.putBytes("ae:9", old);
+        // Удаленный ключ вернулся на одну реплику со старой версией
+        byte[] deleted = node1.getBytes("ae:20");
+        assertTrue(distributedHashTable.remove("ae:20"));
+        node1.putBytes("ae:20", deleted);
+
+        DistributedHashTable.AntiEntropyResult result = distributedHashTable.runAntiEntropy();
+        assertNotNull(result);
+        assertEquals(7, result.keysRepaired());
+        assertTrue(result.leavesDivergent() >= 1 && result.leavesDivergent() <= 5, "leaves " + result.leavesDivergent());
+        // Читаются только ключи расходящихся листьев, а не все данные
+        assertTrue(result.keysCompared() < 80, "compared " + result.keysCompared());
+
+        // Побеждает последняя запись; значение, записанное в обход координатора, старше любой записи
+        assertEquals("value_7", distributedHashTable.get("ae:7"));
+        assertArrayEquals(node1.getBytes("ae:7"), node2.getBytes("ae:7"));
+        assertArrayEquals(node1.getBytes("ae:11"), node3.getBytes("ae:11"));
+        for (Node node : List.of(node1, node2, node3)) {
+            assertEquals("newer", Node.decode(ValueVersion.payload(node.getBytes("ae:9"))));
+            // Единственная копия без надгробия не удаляется, а восстанавливается
+            assertEquals("stray", Node.decode(node.getBytes("ae:stray")));
+            assertFalse(node.containsKey("ae:20"));
+            assertEquals(KEY_COUNT, node.getDataSize());
+        }
+
+        // Реплики сошлись - следующий проход сравнивает только корни
+        DistributedHashTable.AntiEntropyResult clean = distributedHashTable.runAntiEntropy();
+        assertEquals(0, clean.leavesDivergent());
+        assertEquals(0, clean.keysRepaired());
+        assertEquals(clean.rangesCompared() * 2L, clean.hashesCompared());
+    }
+
+    @Test
+    void testStaleTreeEntryIsRefreshedWithoutRewrite() {
+        // Хэш в дереве разошелся с хранилищем (как при вытеснении ключа движком в обход ноды)
+        node3.getMerkleIndex().put("ae:3", "stale".getBytes(StandardCharsets.UTF_8));
+
+        DistributedHashTable.AntiEntropyResult result = distributedHashTable.runAntiEntropy();
+        assertEquals(1, result.leavesDivergent());
+        assertEquals(0, result.keysRepaired());
+        assertEquals(0, distributedHashTable.runAntiEntropy().leavesDivergent());
+    }
+}
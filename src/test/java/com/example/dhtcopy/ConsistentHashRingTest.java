@@ -1,13 +1,22 @@
 package com.example.dhtcopy;
 
 
+import com.example.dhtcopy.core.BoundedLoadPolicy;
 import com.example.dhtcopy.core.ConsistentHashRing;
 import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.RangeTransfer;
+import com.example.dhtcopy.core.TokenRange;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.test.context.TestPropertySource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -129,5 +138,454 @@ public class ConsistentHashRingTest {
 
         assertEquals(firstResult, secondResult);
     }
-}
 
+    @Test
+    void testLookupsDuringMembershipChanges() throws InterruptedException {
+        Node stable = new Node("stable", "localhost", 8001);
+        hashRing.addNode(stable);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                // Стабильная нода всегда в кольце, поэтому пустой результат - ошибка
+                if (hashRing.getNodes("key_" + (i++ % 1000), 2).isEmpty()) {
+                    misses.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 50; i++) {
+            hashRing.addNode(new Node("churn" + i, "localhost", 9000 + i));
+            hashRing.removeNode("churn" + i);
+        }
+        running.set(false);
+        reader.join();
+
+        assertEquals(0, misses.get());
+        assertEquals(1, hashRing.getUniqueNodesCount());
+        assertTrue(hashRing.validateRingConsistency());
+    }
+
+    @Test
+    void testPreferenceListsFollowNodeLiveness() {
+        Node node1 = new Node("node1", "localhost", 8001);
+        Node node2 = new Node("node2", "localhost", 8002);
+        Node node3 = new Node("node3", "localhost", 8003);
+        hashRing.addNode(node1);
+        hashRing.addNode(node2);
+        hashRing.addNode(node3);
+
+        // Повторная маршрутизация возвращает заранее вычисленный список, без копирования
+        List<Node> replicas = hashRing.getNodes("routing-key", 3);
+        assertSame(replicas, hashRing.getNodes("routing-key", 3));
+        assertEquals(3, replicas.size());
+
+        Node primary = replicas.get(0);
+        primary.setActive(false);
+        List<Node> degraded = hashRing.getNodes("routing-key", 3);
+        assertEquals(2, degraded.size());
+        assertFalse(degraded.contains(primary));
+        assertNotEquals(primary, hashRing.getNode("routing-key"));
+
+        primary.setActive(true);
+        assertEquals(replicas, hashRing.getNodes("routing-key", 3));
+        assertEquals(primary, hashRing.getNode("routing-key"));
+    }
+
+    @Test
+    void testWeightedTokenAllocation() {
+        Node small = new Node("small", "localhost", 8001);
+        Node large = new Node("large", "localhost", 8002, 2.0);
+        Node tiny = new Node("tiny", "localhost", 8003, 0.001);
+        hashRing.addNode(small);
+        hashRing.addNode(large);
+        hashRing.addNode(tiny);
+
+        assertTrue(hashRing.validateRingConsistency());
+
+        Map<String, Integer> distribution = hashRing.testKeyDistribution(30000);
+        int smallKeys = distribution.getOrDefault("small", 0);
+        int largeKeys = distribution.getOrDefault("large", 0);
+        // Доля ключей пропорциональна весу
+        double ratio = (double) largeKeys / smallKeys;
+        assertTrue(ratio > 1.6 && ratio < 2.4, "large/small ratio: " + ratio);
+        // Даже очень маленький вес дает ноде хотя бы один токен
+        assertTrue(distribution.getOrDefault("tiny", 0) < 1000);
+    }
+
+    @Test
+    void testWeightChangeMovesOnlyAffectedRanges() {
+        Node node1 = new Node("node1", "localhost", 8001);
+        Node node2 = new Node("node2", "localhost", 8002);
+        Node node3 = new Node("node3", "localhost", 8003);
+        hashRing.addNode(node1);
+        hashRing.addNode(node2);
+        hashRing.addNode(node3);
+
+        Map<String, String> before = owners(10000);
+        node2.setWeight(2.0);
+        assertTrue(hashRing.validateRingConsistency());
+        Map<String, String> grown = owners(10000);
+
+        // При росте веса ключи переходят только к этой ноде
+        int moved = 0;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals(grown.get(entry.getKey()))) {
+                assertEquals("node2", grown.get(entry.getKey()));
+                moved++;
+            }
+        }
+        assertTrue(moved > 0);
+
+        // Возврат прежнего веса снимает ровно добавленные токены
+        node2.setWeight(1.0);
+        assertTrue(hashRing.validateRingConsistency());
+        assertEquals(before, owners(10000));
+
+        assertThrows(IllegalArgumentException.class, () -> node2.setWeight(0));
+    }
+
+    private Map<String, String> owners(int keyCount) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            owners.put("key_" + i, hashRing.getNode("key_" + i).getId());
+        }
+        return owners;
+    }
+
+    @Test
+    void testBoundedLoadSpillsPastOverloadedNode() {
+        Node hot = new Node("hot", "localhost", 8001);
+        Node node2 = new Node("node2", "localhost", 8002);
+        Node node3 = new Node("node3", "localhost", 8003);
+        Node node4 = new Node("node4", "localhost", 8004);
+        hashRing.addNode(hot);
+        hashRing.addNode(node2);
+        hashRing.addNode(node3);
+        hashRing.addNode(node4);
+        // Длинный интервал: нагрузка замеряется только явно
+        hashRing.setBoundedLoadPolicy(new BoundedLoadPolicy(0.1, BoundedLoadPolicy.LoadMetric.KEYS, 3_600_000));
+
+        for (Node node : List.of(node2, node3, node4)) {
+            for (int i = 0; i < 100; i++) {
+                node.put(node.getId() + "_key_" + i, "value");
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            hot.put("hot_key_" + i, "value");
+        }
+        hashRing.refreshLoads();
+        assertEquals(Set.of(hot), hashRing.getOverloadedNodes());
+
+        int hotKeys = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "key_" + i;
+            Node natural = hashRing.getFallbackNodes(key, 1).get(0);
+            Node bounded = hashRing.getNode(key);
+            assertNotEquals(hot, bounded);
+            assertFalse(hashRing.getNodes(key, 3).contains(hot));
+            if (natural.equals(hot)) {
+                hotKeys++;
+            } else {
+                assertEquals(natural, bounded);
+            }
+        }
+        assertTrue(hotKeys > 0);
+        assertTrue(hashRing.getBoundedLoadSpills() > 0);
+        assertTrue(hashRing.getBoundedLoadLookups() >= hashRing.getBoundedLoadSpills());
+
+        // Когда нагрузка выровнялась, ключи возвращаются естественным владельцам
+        hot.clearData();
+        for (int i = 0; i < 100; i++) {
+            hot.put("hot_key_" + i, "value");
+        }
+        hashRing.refreshLoads();
+        assertTrue(hashRing.getOverloadedNodes().isEmpty());
+        assertEquals(hashRing.getFallbackNodes("key_1", 1).get(0), hashRing.getNode("key_1"));
+    }
+
+    @Test
+    void testBoundedLoadByOperationRate() {
+        Node hot = new Node("hot", "localhost", 8001);
+        Node cold = new Node("cold", "localhost", 8002);
+        hashRing.addNode(hot);
+        hashRing.addNode(cold);
+        hashRing.setBoundedLoadPolicy(new BoundedLoadPolicy(0.25, BoundedLoadPolicy.LoadMetric.OPERATIONS, 3_600_000));
+
+        hashRing.refreshLoads();
+        for (int i = 0; i < 1000; i++) {
+            hot.get("key_" + i);
+        }
+        cold.get("key");
+        hashRing.refreshLoads();
+
+        assertEquals(Set.of(hot), hashRing.getOverloadedNodes());
+        // Выключение режима возвращает обычную маршрутизацию
+        hashRing.setBoundedLoadPolicy(null);
+        assertTrue(hashRing.getOverloadedNodes().isEmpty());
+        assertTrue(hashRing.getFallbackNodes("key", 2).isEmpty());
+    }
+
+    @Test
+    void testReplicasSpreadAcrossZones() {
+        String[] zones = {"zone-a", "zone-a", "zone-b", "zone-b", "zone-c", "zone-c"};
+        for (int i = 0; i < zones.length; i++) {
+            hashRing.addNode(new Node("node" + i, "localhost", 8001 + i, 1.0, zones[i]));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            List<Node> replicas = hashRing.getNodes("key_" + i, 3);
+            Set<String> replicaZones = replicas.stream().map(Node::getZone).collect(Collectors.toSet());
+            assertEquals(3, replicaZones.size(), "Replicas of key_" + i + " share a zone: " + replicas);
+        }
+
+        Map<Integer, Double> coverage = hashRing.getZoneCoverage(3);
+        assertEquals(Set.of(3), coverage.keySet());
+        assertEquals(1.0, coverage.get(3), 1e-9);
+
+        // Зоны c больше нет: третья реплика берется из уже занятой зоны
+        hashRing.removeNode("node4");
+        hashRing.removeNode("node5");
+        for (int i = 0; i < 1000; i++) {
+            List<Node> replicas = hashRing.getNodes("key_" + i, 3);
+            assertEquals(3, replicas.size());
+            assertEquals(2, replicas.stream().map(Node::getZone).distinct().count());
+        }
+        assertEquals(1.0, hashRing.getZoneCoverage(3).get(2), 1e-9);
+    }
+
+    @Test
+    void testZoneCoverageWithoutZones() {
+        hashRing.addNode(new Node("node1", "localhost", 8001));
+        hashRing.addNode(new Node("node2", "localhost", 8002));
+
+        Map<Integer, Double> coverage = hashRing.getZoneCoverage(2);
+        assertEquals(Set.of(1), coverage.keySet());
+        assertEquals(1.0, coverage.get(1), 1e-9);
+        assertEquals(Node.DEFAULT_ZONE, hashRing.getNode("key").getZone());
+    }
+
+    @Test
+    void testRouteBatchMatchesSingleKeyRouting() {
+        for (int i = 1; i <= 5; i++) {
+            hashRing.addNode(new Node("node" + i, "localhost", 8000 + i));
+        }
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add("batch_key_" + i);
+        }
+
+        for (int replicationFactor : new int[]{1, 3, 5}) {
+            Map<List<Node>, List<String>> groups = hashRing.routeBatch(keys, replicationFactor);
+
+            int routed = 0;
+            for (Map.Entry<List<Node>, List<String>> group : groups.entrySet()) {
+                for (String key : group.getValue()) {
+                    assertEquals(hashRing.getNodes(key, replicationFactor), group.getKey(), key);
+                    routed++;
+                }
+            }
+            assertEquals(keys.size(), routed);
+            // Ключей больше, чем различных наборов реплик
+            assertTrue(groups.size() < keys.size());
+        }
+
+        assertTrue(hashRing.routeBatch(List.of(), 3).isEmpty());
+    }
+
+    @Test
+    void testTopologyEpochAdvancesOnMembershipAndLiveness() {
+        long initial = hashRing.getTopologyEpoch();
+        Node node1 = new Node("node1", "localhost", 8001);
+        Node node2 = new Node("node2", "localhost", 8002);
+
+        hashRing.addNode(node1);
+        hashRing.addNode(node2);
+        assertEquals(initial + 2, hashRing.getTopologyEpoch());
+
+        node1.setActive(false);
+        assertEquals(initial + 3, hashRing.getTopologyEpoch());
+        // Повторная установка того же состояния эпоху не меняет
+        node1.setActive(false);
+        assertEquals(initial + 3, hashRing.getTopologyEpoch());
+
+        hashRing.removeNode("node2");
+        assertEquals(initial + 4, hashRing.getTopologyEpoch());
+        assertFalse(hashRing.removeNode("node2"));
+        assertEquals(initial + 4, hashRing.getTopologyEpoch());
+    }
+
+    @Test
+    void testRouteCacheInvalidatedByEpoch() {
+        hashRing.setRouteCacheSize(1024);
+        Node node1 = new Node("node1", "localhost", 8001);
+        Node node2 = new Node("node2", "localhost", 8002);
+        Node node3 = new Node("node3", "localhost", 8003);
+        hashRing.addNode(node1);
+        hashRing.addNode(node2);
+        hashRing.addNode(node3);
+
+        List<Node> first = hashRing.getNodes("hot_key", 3);
+        assertEquals(0, hashRing.getRouteCacheHits());
+        assertSame(first, hashRing.getNodes("hot_key", 3));
+        assertEquals(first.subList(0, 2), hashRing.getNodes("hot_key", 2));
+        assertEquals(first.get(0), hashRing.getNode("hot_key"));
+        assertEquals(3, hashRing.getRouteCacheHits());
+        assertEquals(1, hashRing.getRouteCacheMisses());
+
+        // Смена состояния ноды увеличивает эпоху - закэшированный маршрут больше не используется
+        Node primary = first.get(0);
+        primary.setActive(false);
+        List<Node> degraded = hashRing.getNodes("hot_key", 3);
+        assertFalse(degraded.contains(primary));
+        assertEquals(2, degraded.size());
+        assertEquals(2, hashRing.getRouteCacheMisses());
+
+        hashRing.setRouteCacheSize(0);
+        hashRing.getNodes("hot_key", 3);
+        assertEquals(0, hashRing.getRouteCacheHits());
+    }
+
+    @Test
+    void testTokenRangesMatchReplicaPlacement() {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            Node node = new Node("node" + i, "localhost", 8000 + i);
+            nodes.add(node);
+            hashRing.addNode(node);
+        }
+
+        for (int replicationFactor : new int[]{1, 3, 4}) {
+            for (Node node : nodes) {
+                List<TokenRange> ranges = hashRing.getTokenRanges(node, replicationFactor);
+                for (int i = 0; i < 2000; i++) {
+                    String key = "range_key_" + i;
+                    assertEquals(hashRing.getNodes(key, replicationFactor).contains(node),
+                            TokenRange.anyContains(ranges, hashRing.token(key)), node.getId() + " " + key);
+                }
+            }
+        }
+
+        // Нода в каждом списке реплик владеет всем кольцом; вне кольца - ничем
+        assertEquals(List.of(TokenRange.FULL), hashRing.getTokenRanges(nodes.get(0), 5));
+        assertTrue(hashRing.getTokenRanges(new Node("outsider", "localhost", 9000), 3).isEmpty());
+
+        // Обход по отрезкам видит ровно ключи, для которых нода - реплика
+        Node source = new Node("source", "localhost", 9001);
+        for (int i = 0; i < 500; i++) {
+            source.put("range_key_" + i, "value");
+        }
+        List<TokenRange> ranges = hashRing.getTokenRanges(nodes.get(1), 3);
+        Set<String> visited = new HashSet<>(source.keysInRanges(ranges, hashRing::token));
+        Set<String> expected = source.getAllBytes().keySet().stream()
+                .filter(key -> hashRing.getNodes(key, 3).contains(nodes.get(1)))
+                .collect(Collectors.toSet());
+        assertEquals(expected, visited);
+        assertTrue(visited.size() < 500);
+        assertEquals(visited, source.readBatch(visited).keySet());
+    }
+
+    @Test
+    void testJoinDiffListsTakenOverRangesWithPreviousReplicas() {
+        for (int i = 1; i <= 4; i++) {
+            hashRing.addNode(new Node("node" + i, "localhost", 8000 + i));
+        }
+        Map<String, List<Node>> before = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            before.put("join_key_" + i, hashRing.getNodes("join_key_" + i, 3));
+        }
+
+        Node joining = new Node("node5", "localhost", 8005);
+        List<RangeTransfer> transfers = hashRing.addNodeWithTransfers(joining, 3);
+        assertFalse(transfers.isEmpty());
+
+        int moved = 0;
+        for (Map.Entry<String, List<Node>> entry : before.entrySet()) {
+            long token = hashRing.token(entry.getKey());
+            List<RangeTransfer> covering = transfers.stream().filter(t -> t.range().contains(token)).toList();
+            List<Node> after = hashRing.getNodes(entry.getKey(), 3);
+            assertEquals(after.contains(joining), covering.size() == 1, entry.getKey());
+            if (!covering.isEmpty()) {
+                moved++;
+                assertEquals(entry.getValue(), covering.get(0).previousReplicas(), entry.getKey());
+                assertEquals(after, covering.get(0).currentReplicas(), entry.getKey());
+                // Ровно одна прежняя реплика уступает место новой ноде
+                assertEquals(1, covering.get(0).losers().size(), entry.getKey());
+            }
+        }
+        // Новая нода входит в реплики примерно 3/5 ключей, остальные не затрагиваются
+        assertTrue(moved > 2000 * 0.4 && moved < 2000 * 0.8, "moved " + moved);
+
+        // Повторное добавление ничего не меняет
+        assertTrue(hashRing.addNodeWithTransfers(joining, 3).isEmpty());
+    }
+
+    @Test
+    void testWeightIncreaseListsOnlyChangedRanges() {
+        for (int i = 1; i <= 5; i++) {
+            hashRing.addNode(new Node("node" + i, "localhost", 8000 + i));
+        }
+        Node growing = hashRing.getAllNodes().stream().filter(n -> n.getId().equals("node2")).findFirst().orElseThrow();
+        Map<String, List<Node>> before = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            before.put("weight_key_" + i, hashRing.getNodes("weight_key_" + i, 3));
+        }
+
+        List<RangeTransfer> transfers = hashRing.updateWeightWithTransfers(growing, 2.0, 3);
+        assertEquals(2.0, growing.getWeight());
+        assertFalse(transfers.isEmpty());
+        int changed = 0;
+        for (Map.Entry<String, List<Node>> entry : before.entrySet()) {
+            long token = hashRing.token(entry.getKey());
+            List<RangeTransfer> covering = transfers.stream().filter(t -> t.range().contains(token)).toList();
+            List<Node> after = hashRing.getNodes(entry.getKey(), 3);
+            boolean replicasChanged = !new HashSet<>(entry.getValue()).equals(new HashSet<>(after));
+            // В список попадают ровно те ключи, у которых сменился состав реплик
+            assertEquals(replicasChanged, covering.size() == 1, entry.getKey());
+            if (replicasChanged) {
+                changed++;
+                assertEquals(entry.getValue(), covering.get(0).previousReplicas(), entry.getKey());
+                assertTrue(after.contains(growing), entry.getKey());
+            }
+        }
+        // Затронута только часть ключей, а не вся доля ноды
+        assertTrue(changed > 0 && changed < 2000 * 0.5, "changed " + changed);
+
+        // Снижение веса ничего не добавляет ноде
+        assertTrue(hashRing.updateWeightWithTransfers(growing, 1.0, 3).isEmpty());
+    }
+
+    @Test
+    void testRemovalPlanListsLeavingNodeRangesWithNewReplicas() {
+        for (int i = 1; i <= 5; i++) {
+            hashRing.addNode(new Node("node" + i, "localhost", 8000 + i));
+        }
+        Node leaving = hashRing.getAllNodes().stream().filter(n -> n.getId().equals("node3")).findFirst().orElseThrow();
+        Map<String, List<Node>> before = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            before.put("leave_key_" + i, hashRing.getNodes("leave_key_" + i, 3));
+        }
+
+        // План строится без изменения кольца
+        List<RangeTransfer> plan = hashRing.planRemoval(leaving, 3);
+        assertFalse(plan.isEmpty());
+        assertEquals(before.get("leave_key_0"), hashRing.getNodes("leave_key_0", 3));
+
+        hashRing.removeNode("node3");
+        for (Map.Entry<String, List<Node>> entry : before.entrySet()) {
+            long token = hashRing.token(entry.getKey());
+            List<RangeTransfer> covering = plan.stream().filter(t -> t.range().contains(token)).toList();
+            assertEquals(entry.getValue().contains(leaving), covering.size() == 1, entry.getKey());
+            if (!covering.isEmpty()) {
+                assertEquals(entry.getValue(), covering.get(0).previousReplicas(), entry.getKey());
+                assertEquals(hashRing.getNodes(entry.getKey(), 3), covering.get(0).currentReplicas(), entry.getKey());
+                // Место уходящей ноды занимает ровно одна новая реплика
+                assertEquals(List.of(leaving), covering.get(0).losers(), entry.getKey());
+                assertEquals(1, covering.get(0).gainers().size(), entry.getKey());
+            }
+        }
+    }
+}
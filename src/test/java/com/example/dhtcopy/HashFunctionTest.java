@@ -0,0 +1,67 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashFunctionTest {
+
+    @Test
+    void testXxHash64KnownValues() {
+        HashFunction xxHash = HashFunctions.xxHash64();
+        assertEquals(0xEF46DB3751D8E999L, xxHash.hash(""));
+        assertEquals(0x44BC2CF5AD770999L, xxHash.hash("abc"));
+        assertEquals(0xFBCEA83C8A378BF1L, xxHash.hash("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    void testMurmur3KnownValues() {
+        HashFunction murmur3 = HashFunctions.murmur3();
+        assertEquals(0L, murmur3.hash(""));
+        // Первая половина 128-битного дайджеста 6c1b07bc7bbc4be3 47939ac4a93c437a (little-endian)
+        assertEquals(0xE34BBC7BBC071B6CL, murmur3.hash("The quick brown fox jumps over the lazy dog"));
+    }
+
+    @Test
+    void testStringAndBytesHashIdentically() {
+        String[] keys = {"", "a", "user:42", "ключ-на-русском", "emoji-🚀-key",
+                "a-longer-key-that-spans-several-32-byte-stripes-of-input-data"};
+
+        for (String name : new String[]{"murmur3", "xxhash64", "md5"}) {
+            HashFunction function = HashFunctions.forName(name);
+            for (String key : keys) {
+                assertEquals(function.hash(key.getBytes(StandardCharsets.UTF_8)), function.hash(key),
+                        name + " must hash '" + key + "' the same from String and byte[]");
+            }
+        }
+    }
+
+    @Test
+    void testUnknownHashFunctionIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> HashFunctions.forName("crc32"));
+        assertSame(HashFunctions.murmur3(), HashFunctions.forName(null));
+    }
+
+    @Test
+    void testRingUsesFull64BitTokens() {
+        ConsistentHashRing ring = new ConsistentHashRing(50, 2, HashFunctions.xxHash64());
+        ring.addNode(new Node("node1", "localhost", 8001));
+        ring.addNode(new Node("node2", "localhost", 8002));
+
+        // MD5-совместимые токены лежат в [0, 2^32), 64-битные выходят за эти границы
+        boolean outside32Bit = false;
+        for (int i = 0; i < 100; i++) {
+            long hash = ring.getHashFunction().hash("key_" + i);
+            outside32Bit |= hash < 0 || hash > 0xFFFFFFFFL;
+        }
+        assertTrue(outside32Bit);
+        assertEquals(2, ring.getNodes("any-key", 2).size());
+        assertTrue(ring.validateRingConsistency());
+    }
+}
@@ -1,7 +1,9 @@
 package com.example.dhtcopy;
 
 import com.example.dhtcopy.core.DistributedHashTable;
+import com.example.dhtcopy.core.MovementScheduler;
 import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.ValueVersion;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -198,6 +200,295 @@ public class LoadBalancingTest {
         assertTrue(newNodeHasData, "New node should have received some data after rebalancing");
     }
 
+    @Test
+    void testJoinMovesOnlyTakenOverKeys() throws InterruptedException {
+        int keyCount = 600;
+        for (int i = 0; i < keyCount; i++) {
+            distributedHashTable.put("join_key_" + i, "value_" + i);
+        }
+        awaitReplicas("join_key_", keyCount);
+
+        Node newNode = new Node("test_node4", "localhost", 8004);
+        distributedHashTable.addNode(newNode);
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+
+        // Каждый ключ лежит ровно на своих репликах: новая нода получила свои, прежний владелец отдал
+        for (int i = 0; i < keyCount; i++) {
+            String key = "join_key_" + i;
+            List<Node> replicas = distributedHashTable.getHashRing().getNodes(key, 3);
+            for (Node node : distributedHashTable.getAllNodes()) {
+                assertEquals(replicas.contains(node), node.containsKey(key), key + " on " + node.getId());
+            }
+            assertEquals("value_" + i, distributedHashTable.get(key));
+        }
+
+        DistributedHashTable.RebalanceResult result = distributedHashTable.getLastRebalance();
+        assertEquals("test_node4", result.nodeId());
+        assertTrue(result.keysMoved() > 0 && result.keysMoved() <= newNode.getDataSize());
+        // Новой ноде достается около четверти хранимых копий, а не все данные
+        assertTrue(result.movedFraction() < 0.5, "moved fraction " + result.movedFraction());
+        assertTrue(result.bytesMoved() > 0);
+
+        // Ход переноса виден и после его завершения
+        MovementScheduler.Progress progress = distributedHashTable.getMovementProgress().stream()
+                .filter(p -> p.type().equals(DistributedHashTable.RebalanceResult.JOIN) && p.nodeId().equals("test_node4"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        assertTrue(progress.finished());
+        assertEquals(result.keysMoved(), progress.keysMoved());
+        assertEquals(progress.rangesTotal(), progress.rangesDone());
+    }
+
+    @Test
+    void testKeysDeletedDuringJoinStayDeleted() throws InterruptedException {
+        int keyCount = 300;
+        for (int i = 0; i < keyCount; i++) {
+            distributedHashTable.put("join_delete_" + i, "value_" + i);
+        }
+        awaitReplicas("join_delete_", keyCount);
+
+        // Бюджет переноса исчерпан заранее: пачка прочитана с прежней реплики и ждет записи
+        distributedHashTable.configureMovement(MovementScheduler.DEFAULT_WORKERS, 0, 200, 0);
+        try {
+            distributedHashTable.getMovementScheduler().throttle(200, 0);
+            Node newNode = new Node("test_node4", "localhost", 8004);
+            distributedHashTable.addNode(newNode);
+
+            // Удаление идет уже на новые реплики, а прежняя реплика еще держит ключ
+            List<String> deleted = new ArrayList<>();
+            for (int i = 0; i < keyCount; i++) {
+                String key = "join_delete_" + i;
+                if (distributedHashTable.getHashRing().getNodes(key, 3).contains(newNode)) {
+                    assertTrue(distributedHashTable.remove(key), key);
+                    deleted.add(key);
+                }
+            }
+            assertFalse(deleted.isEmpty());
+            while (distributedHashTable.isRebalancing()) {
+                Thread.sleep(10);
+            }
+
+            for (String key : deleted) {
+                assertNull(distributedHashTable.get(key), key);
+                assertFalse(newNode.containsKey(key), key);
+            }
+        } finally {
+            distributedHashTable.configureMovement(MovementScheduler.DEFAULT_WORKERS,
+                    MovementScheduler.DEFAULT_MAX_BYTES_PER_SECOND, MovementScheduler.DEFAULT_MAX_KEYS_PER_SECOND,
+                    MovementScheduler.DEFAULT_TARGET_LATENCY_MS);
+        }
+    }
+
+    @Test
+    void testRestoredNodeJoinsWithoutMovement() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            distributedHashTable.put("restored_key_" + i, "value_" + i);
+        }
+        awaitReplicas("restored_key_", 100);
+        Map<String, Integer> before = distributedHashTable.getHashRing().getDataDistribution();
+
+        // Нода с уже восстановленными данными входит в кольцо без переноса
+        Node restored = new Node("test_node4", "localhost", 8004);
+        restored.putBytes("own_key", "own".getBytes());
+        distributedHashTable.addNode(restored, false);
+
+        assertFalse(distributedHashTable.isRebalancing());
+        assertTrue(distributedHashTable.getAllNodes().contains(restored));
+        Thread.sleep(50);
+        Map<String, Integer> after = distributedHashTable.getHashRing().getDataDistribution();
+        for (Map.Entry<String, Integer> entry : before.entrySet()) {
+            assertEquals(entry.getValue(), after.get(entry.getKey()), entry.getKey());
+        }
+        assertEquals(1, restored.getDataSize());
+    }
+
+    @Test
+    void testDecommissionHandsRangesToNewReplicas() throws InterruptedException {
+        int keyCount = 600;
+        distributedHashTable.addNode(new Node("test_node4", "localhost", 8004));
+        for (int i = 0; i < keyCount; i++) {
+            distributedHashTable.put("leave_key_" + i, "value_" + i);
+        }
+        awaitReplicas("leave_key_", keyCount);
+
+        distributedHashTable.configureDecommission(2, 16);
+        try {
+            assertTrue(distributedHashTable.removeNode("test_node2"));
+            while (distributedHashTable.isRebalancing()) {
+                Thread.sleep(10);
+            }
+        } finally {
+            distributedHashTable.configureDecommission(DistributedHashTable.DEFAULT_DECOMMISSION_WORKERS,
+                    DistributedHashTable.TRANSFER_CHUNK_SIZE);
+        }
+
+        // Перенос завершен до выхода ноды из кольца: все ключи уже на новых репликах
+        for (int i = 0; i < keyCount; i++) {
+            String key = "leave_key_" + i;
+            for (Node replica : distributedHashTable.getHashRing().getNodes(key, 3)) {
+                assertTrue(replica.containsKey(key), key + " on " + replica.getId());
+            }
+            assertEquals("value_" + i, distributedHashTable.get(key));
+        }
+
+        DistributedHashTable.DecommissionProgress progress = distributedHashTable.getDecommissionProgress("test_node2");
+        assertTrue(progress.finished());
+        assertTrue(progress.removed());
+        assertTrue(progress.ranges() > 0);
+        assertEquals(progress.keysTotal(), progress.keysScanned());
+        assertTrue(progress.keysMoved() > 0 && progress.keysMoved() <= progress.keysTotal());
+        assertEquals(0, progress.keysFailed());
+        assertEquals(DistributedHashTable.RebalanceResult.DECOMMISSION, distributedHashTable.getLastRebalance().type());
+    }
+
+    @Test
+    void testFailedDecommissionKeepsNodeInRing() throws InterruptedException {
+        int keyCount = 200;
+        distributedHashTable.addNode(new Node("test_node4", "localhost", 8004));
+        for (int i = 0; i < keyCount; i++) {
+            distributedHashTable.put("failed_leave_" + i, "value_" + i);
+        }
+        awaitReplicas("failed_leave_", keyCount);
+        Node leaving = distributedHashTable.getAllNodes().stream()
+                .filter(n -> n.getId().equals("test_node2"))
+                .findFirst()
+                .orElseThrow();
+        long storedKeys = leaving.getDataSize();
+        List<Node> others = distributedHashTable.getAllNodes().stream().filter(n -> n != leaving).toList();
+
+        // Пачки ждут бюджета, а новые владельцы к их записи уже недоступны
+        distributedHashTable.configureMovement(MovementScheduler.DEFAULT_WORKERS, 0, 200, 0);
+        try {
+            distributedHashTable.getMovementScheduler().throttle(200, 0);
+            assertTrue(distributedHashTable.removeNode("test_node2"));
+            // Вывод идет в фоне, вызов не ждет переноса
+            assertTrue(distributedHashTable.isRebalancing());
+            others.forEach(n -> n.setActive(false));
+            while (distributedHashTable.isRebalancing()) {
+                Thread.sleep(10);
+            }
+        } finally {
+            others.forEach(n -> n.setActive(true));
+            distributedHashTable.configureMovement(MovementScheduler.DEFAULT_WORKERS,
+                    MovementScheduler.DEFAULT_MAX_BYTES_PER_SECOND, MovementScheduler.DEFAULT_MAX_KEYS_PER_SECOND,
+                    MovementScheduler.DEFAULT_TARGET_LATENCY_MS);
+        }
+
+        DistributedHashTable.DecommissionProgress progress = distributedHashTable.getDecommissionProgress("test_node2");
+        assertTrue(progress.finished());
+        assertFalse(progress.removed());
+        assertTrue(progress.keysFailed() > 0);
+        // Нода осталась в кольце и отвечает со всеми своими данными
+        assertTrue(distributedHashTable.getAllNodes().contains(leaving));
+        assertTrue(leaving.isActive());
+        assertEquals(storedKeys, leaving.getDataSize());
+        for (int i = 0; i < keyCount; i++) {
+            assertEquals("value_" + i, distributedHashTable.get("failed_leave_" + i));
+        }
+    }
+
+    // Запись отвечает после кворума, последняя реплика может дописываться в фоне
+    private void awaitReplicas(String prefix, int keyCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        for (int i = 0; i < keyCount; i++) {
+            String key = prefix + i;
+            while (!distributedHashTable.getHashRing().getNodes(key, 3).stream().allMatch(n -> n.containsKey(key))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    void testNodeWeightChangeRebalancing() throws InterruptedException {
+        int keyCount = 200;
+        for (int i = 0; i < keyCount; i++) {
+            distributedHashTable.put("weight_key_" + i, "value_" + i);
+        }
+
+        // Увеличиваем емкость одной ноды и ждем переноса затронутых диапазонов
+        assertTrue(distributedHashTable.updateNodeWeight("test_node1", 3.0));
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+
+        for (int i = 0; i < keyCount; i++) {
+            assertEquals("value_" + i, distributedHashTable.get("weight_key_" + i),
+                    "Key should stay readable after weight change");
+        }
+
+        // Возвращаем прежний вес: лишние ключи уходят к новым владельцам
+        assertTrue(distributedHashTable.updateNodeWeight("test_node1", 1.0));
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+
+        for (int i = 0; i < keyCount; i++) {
+            assertEquals("value_" + i, distributedHashTable.get("weight_key_" + i));
+        }
+        assertFalse(distributedHashTable.updateNodeWeight("missing_node", 2.0));
+    }
+
+    @Test
+    void testBatchPutAndGet() {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            entries.put("batch_key_" + i, "batch_value_" + i);
+        }
+
+        distributedHashTable.putAll(entries);
+
+        // Пакетная запись видна поштучному чтению и наоборот
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), distributedHashTable.get(entry.getKey()));
+        }
+        distributedHashTable.put("single_key", "single_value");
+
+        List<String> keys = new ArrayList<>(entries.keySet());
+        keys.add("single_key");
+        keys.add("missing_key");
+        Map<String, String> values = distributedHashTable.getAll(keys);
+
+        assertEquals(101, values.size());
+        assertEquals("single_value", values.get("single_key"));
+        assertFalse(values.containsKey("missing_key"));
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            assertEquals(entry.getValue(), values.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void testBinaryValuesRoundTrip() throws InterruptedException {
+        byte[] binary = new byte[256];
+        for (int i = 0; i < binary.length; i++) {
+            binary[i] = (byte) i;
+        }
+
+        distributedHashTable.putBytes("binary_key", binary);
+        assertArrayEquals(binary, distributedHashTable.getBytes("binary_key"));
+        // Третья реплика пишется после кворума
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!distributedHashTable.getHashRing().getNodes("binary_key", 3).stream().allMatch(n -> n.containsKey("binary_key"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+
+        // Каждая реплика хранит те же байты, без промежуточной строки
+        long replicas = distributedHashTable.getAllNodes().stream()
+                .filter(node -> Arrays.equals(binary, ValueVersion.payload(node.getAllBytes().get("binary_key"))))
+                .count();
+        assertEquals(3, replicas);
+
+        Map<String, byte[]> batch = distributedHashTable.getAllBytes(List.of("binary_key", "missing_key"));
+        assertEquals(1, batch.size());
+        assertArrayEquals(binary, batch.get("binary_key"));
+
+        assertTrue(distributedHashTable.remove("binary_key"));
+        assertNull(distributedHashTable.getBytes("binary_key"));
+    }
+
     @Test
     void testLoadBalancingWithConcurrentWrites() throws InterruptedException {
         final int threadCount = 10;
@@ -0,0 +1,123 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.MovementScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MovementSchedulerTest {
+
+    private final MovementScheduler scheduler = new MovementScheduler();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testQueuedWorkRunsByLane() throws Exception {
+        scheduler.configure(1, 0, 0, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocker = scheduler.submit(MovementScheduler.Lane.REBALANCE, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // Единственный поток занят - остальное ждет в очереди и выходит по приоритету полосы
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> queued = List.of(
+                scheduler.submit(MovementScheduler.Lane.REBALANCE, () -> order.add("rebalance-1")),
+                scheduler.submit(MovementScheduler.Lane.REPAIR, () -> order.add("repair")),
+                scheduler.submit(MovementScheduler.Lane.REBALANCE, () -> order.add("rebalance-2")),
+                scheduler.submit(MovementScheduler.Lane.DECOMMISSION, () -> order.add("decommission")));
+        assertEquals(4, scheduler.getQueuedTasks());
+
+        release.countDown();
+        blocker.get();
+        CompletableFuture.allOf(queued.toArray(new CompletableFuture[0])).get();
+        assertEquals(List.of("repair", "decommission", "rebalance-1", "rebalance-2"), order);
+
+        // Ошибка порции доходит до ее future
+        CompletableFuture<Void> failing = scheduler.submit(MovementScheduler.Lane.REPAIR, () -> {
+            throw new IllegalStateException("boom");
+        });
+        assertThrows(Exception.class, failing::get);
+    }
+
+    @Test
+    void testThrottleHoldsKeyBudget() {
+        scheduler.configure(1, 0, 1000, 0);
+        long start = System.nanoTime();
+        // 600 ключей при 1000 ключей/с: первая порция идет из накопленного бюджета, остальные ждут
+        for (int i = 0; i < 6; i++) {
+            scheduler.throttle(100, 0);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs >= 350 && elapsedMs < 2000, "took " + elapsedMs + " ms");
+
+        assertThrows(IllegalArgumentException.class, () -> scheduler.configure(0, 0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.configure(1, -1, 0, 0));
+    }
+
+    @Test
+    void testBudgetBacksOffWhileForegroundIsSlow() throws InterruptedException {
+        scheduler.configure(1, 0, 0, 10);
+        assertEquals(1.0, scheduler.getRateFactor());
+
+        // Клиентская задержка выше цели - доля бюджета падает вдвое за интервал
+        for (int round = 0; round < 3; round++) {
+            scheduler.recordForegroundLatency(50);
+            Thread.sleep(110);
+            scheduler.throttle(1, 0);
+        }
+        assertEquals(0.125, scheduler.getRateFactor(), 1e-9);
+
+        // Задержка пришла в норму - доля растет на шаг
+        scheduler.recordForegroundLatency(1);
+        scheduler.recordForegroundLatency(1);
+        Thread.sleep(110);
+        scheduler.throttle(1, 0);
+        // Сглаженная задержка еще выше цели
+        assertEquals(0.0625, scheduler.getRateFactor(), 1e-9);
+        for (int round = 0; round < 4; round++) {
+            scheduler.recordForegroundLatency(1);
+            Thread.sleep(110);
+            scheduler.throttle(1, 0);
+        }
+        assertTrue(scheduler.getRateFactor() > 0.0625, "factor " + scheduler.getRateFactor());
+    }
+
+    @Test
+    void testJobProgressReportsEta() throws InterruptedException {
+        MovementScheduler.Job job = scheduler.startJob("join", "node4", 4, 100);
+        assertEquals(-1, job.progress().etaMs());
+
+        Thread.sleep(20);
+        job.advance(25);
+        job.moved(20, 2000);
+        job.rangesDone(1);
+        MovementScheduler.Progress progress = job.progress();
+        assertFalse(progress.finished());
+        assertEquals(25, progress.keysDone());
+        assertEquals(20, progress.keysMoved());
+        assertEquals(2000, progress.bytesMoved());
+        // Четверть работы за elapsed - осталось около трех таких же отрезков времени
+        assertTrue(progress.etaMs() >= progress.elapsedMs() * 2, "eta " + progress.etaMs());
+
+        job.finish();
+        MovementScheduler.Progress finished = scheduler.getProgress().get(0);
+        assertTrue(finished.finished());
+        assertEquals(0, finished.etaMs());
+        assertEquals("node4", finished.nodeId());
+    }
+}
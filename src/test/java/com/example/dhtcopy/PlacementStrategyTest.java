@@ -0,0 +1,184 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.PlacementStrategy;
+import com.example.dhtcopy.core.hash.HashFunctions;
+import com.example.dhtcopy.core.placement.JumpHashPlacementStrategy;
+import com.example.dhtcopy.core.placement.MaglevPlacementStrategy;
+import com.example.dhtcopy.core.placement.RendezvousPlacementStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlacementStrategyTest {
+
+    private static final List<Supplier<PlacementStrategy>> STRATEGIES = List.of(
+            () -> new ConsistentHashRing(100),
+            () -> new RendezvousPlacementStrategy(HashFunctions.murmur3()),
+            () -> new JumpHashPlacementStrategy(HashFunctions.murmur3()),
+            () -> new MaglevPlacementStrategy(HashFunctions.murmur3(), 5003));
+
+    @Test
+    void testReplicasAreDistinctActiveNodes() {
+        for (Supplier<PlacementStrategy> factory : STRATEGIES) {
+            PlacementStrategy strategy = factory.get();
+            assertTrue(strategy.isEmpty());
+            assertNull(strategy.getNode("key"));
+            assertTrue(strategy.getNodes("key", 3).isEmpty());
+
+            List<Node> nodes = addNodes(strategy, 5);
+            nodes.get(2).setActive(false);
+
+            for (int i = 0; i < 1000; i++) {
+                String key = "key_" + i;
+                List<Node> replicas = strategy.getNodes(key, 3);
+                assertEquals(3, replicas.size(), strategy.name());
+                assertEquals(3, new HashSet<>(replicas).size(), strategy.name());
+                assertTrue(replicas.stream().allMatch(Node::isActive), strategy.name());
+                assertEquals(replicas.get(0), strategy.getNode(key), strategy.name());
+            }
+
+            // Реплик не может быть больше, чем активных нод
+            assertEquals(4, strategy.getNodes("key", 10).size(), strategy.name());
+            assertEquals(5, strategy.getUniqueNodesCount(), strategy.name());
+        }
+    }
+
+    @Test
+    void testAllNodesReceiveKeys() {
+        for (Supplier<PlacementStrategy> factory : STRATEGIES) {
+            PlacementStrategy strategy = factory.get();
+            addNodes(strategy, 4);
+
+            Map<String, Integer> distribution = primaryOwners(strategy, 10000);
+            assertEquals(4, distribution.size(), strategy.name());
+            for (int count : distribution.values()) {
+                // Ожидаем около 2500 ключей на ноду
+                assertTrue(count > 1500 && count < 3500, strategy.name() + ": " + distribution);
+            }
+        }
+    }
+
+    @Test
+    void testAddingNodeOnlyMovesKeysToIt() {
+        for (Supplier<PlacementStrategy> factory : STRATEGIES) {
+            PlacementStrategy strategy = factory.get();
+            addNodes(strategy, 4);
+
+            Map<String, String> before = ownersByKey(strategy, 10000);
+            Node added = new Node("node5", "localhost", 8005);
+            strategy.addNode(added);
+            Map<String, String> after = ownersByKey(strategy, 10000);
+
+            int moved = 0;
+            for (Map.Entry<String, String> entry : before.entrySet()) {
+                String newOwner = after.get(entry.getKey());
+                if (!newOwner.equals(entry.getValue())) {
+                    moved++;
+                    // Maglev допускает небольшой перенос между старыми нодами
+                    if (!(strategy instanceof MaglevPlacementStrategy)) {
+                        assertEquals(added.getId(), newOwner, strategy.name());
+                    }
+                }
+            }
+
+            // Идеальная доля переносимых ключей - 1/5
+            double ratio = moved / 10000.0;
+            assertTrue(ratio > 0.1 && ratio < 0.3, strategy.name() + " moved " + ratio);
+        }
+    }
+
+    @Test
+    void testRemovedNodeIsNoLongerUsed() {
+        for (Supplier<PlacementStrategy> factory : STRATEGIES) {
+            PlacementStrategy strategy = factory.get();
+            addNodes(strategy, 3);
+
+            assertTrue(strategy.removeNode("node2"), strategy.name());
+            assertFalse(strategy.removeNode("node2"), strategy.name());
+            assertEquals(2, strategy.getAllNodes().size(), strategy.name());
+
+            for (int i = 0; i < 1000; i++) {
+                for (Node node : strategy.getNodes("key_" + i, 3)) {
+                    assertNotEquals("node2", node.getId(), strategy.name());
+                }
+            }
+        }
+    }
+
+    private static List<Node> addNodes(PlacementStrategy strategy, int count) {
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Node node = new Node("node" + i, "localhost", 8000 + i);
+            strategy.addNode(node);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static Map<String, String> ownersByKey(PlacementStrategy strategy, int keyCount) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            String key = "key_" + i;
+            owners.put(key, strategy.getNode(key).getId());
+        }
+        return owners;
+    }
+
+    private static Map<String, Integer> primaryOwners(PlacementStrategy strategy, int keyCount) {
+        Map<String, Integer> distribution = new HashMap<>();
+        for (String owner : ownersByKey(strategy, keyCount).values()) {
+            distribution.merge(owner, 1, Integer::sum);
+        }
+        return distribution;
+    }
+
+    @Test
+    void testWeightsShiftKeyShare() {
+        List<PlacementStrategy> weighted = List.of(
+                new ConsistentHashRing(100),
+                new RendezvousPlacementStrategy(HashFunctions.murmur3()),
+                new MaglevPlacementStrategy(HashFunctions.murmur3(), 5003));
+
+        for (PlacementStrategy strategy : weighted) {
+            List<Node> nodes = addNodes(strategy, 3);
+            nodes.get(0).setWeight(3.0);
+
+            Map<String, Integer> distribution = primaryOwners(strategy, 20000);
+            // Ожидаемая доля тяжелой ноды - 3/5
+            double share = distribution.get("node1") / 20000.0;
+            assertTrue(share > 0.5 && share < 0.7, strategy.name() + ": " + distribution);
+        }
+    }
+
+    @Test
+    void testRouteBatchGroupsKeysByReplicaSet() {
+        for (Supplier<PlacementStrategy> factory : STRATEGIES) {
+            PlacementStrategy strategy = factory.get();
+            addNodes(strategy, 4);
+
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                keys.add("key_" + i);
+            }
+
+            Map<List<Node>, List<String>> groups = strategy.routeBatch(keys, 2);
+            int routed = 0;
+            for (Map.Entry<List<Node>, List<String>> group : groups.entrySet()) {
+                for (String key : group.getValue()) {
+                    assertEquals(strategy.getNodes(key, 2), group.getKey(), strategy.name());
+                    routed++;
+                }
+            }
+            assertEquals(keys.size(), routed, strategy.name());
+        }
+    }
+}
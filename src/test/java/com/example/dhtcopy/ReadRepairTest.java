@@ -0,0 +1,133 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.DistributedHashTable;
+import com.example.dhtcopy.core.MerkleIndex;
+import com.example.dhtcopy.core.Node;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.yml")
+public class ReadRepairTest {
+
+    @Autowired
+    private DistributedHashTable distributedHashTable;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        for (Node node : distributedHashTable.getAllNodes()) {
+            distributedHashTable.removeNode(node.getId());
+        }
+        distributedHashTable.addNode(new Node("rr_node1", "localhost", 8001));
+        distributedHashTable.addNode(new Node("rr_node2", "localhost", 8002));
+        distributedHashTable.addNode(new Node("rr_node3", "localhost", 8003));
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 20; i++) {
+            distributedHashTable.put("rr:" + i, "value_" + i);
+        }
+        // Третья реплика пишется после кворума - ждем все копии
+        await(() -> distributedHashTable.getAllNodes().stream().allMatch(n -> n.getDataSize() == 20));
+    }
+
+    @AfterEach
+    void tearDown() {
+        distributedHashTable.configureReadRepair(0);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private List<Node> replicas(String key) {
+        return distributedHashTable.getHashRing().getNodes(key, 3);
+    }
+
+    @Test
+    void testStaleFirstReplicaLosesToNewerVersion() throws InterruptedException {
+        List<Node> replicas = replicas("rr:7");
+        byte[] good = replicas.get(1).getBytes("rr:7");
+        replicas.get(0).putBytes("rr:7", "stale".getBytes(StandardCharsets.UTF_8));
+
+        // Без проверки чтение отдает значение первой реплики как есть
+        assertEquals("stale", distributedHashTable.get("rr:7"));
+
+        distributedHashTable.configureReadRepair(1.0);
+        assertEquals("value_7", distributedHashTable.get("rr:7"));
+        await(() -> Arrays.equals(good, replicas.get(0).getBytes("rr:7")));
+        assertArrayEquals(good, replicas.get(0).getBytes("rr:7"));
+
+        // Новая запись дошла только до первой реплики - она побеждает старое большинство
+        byte[] old = replicas.get(1).getBytes("rr:8");
+        distributedHashTable.put("rr:8", "newer");
+        await(() -> replicas("rr:8").stream().noneMatch(n -> Arrays.equals(old, n.getBytes("rr:8"))));
+        replicas("rr:8").get(1).putBytes("rr:8", old);
+        replicas("rr:8").get(2).putBytes("rr:8", old);
+        assertEquals("newer", distributedHashTable.get("rr:8"));
+        await(() -> replicas("rr:8").stream().noneMatch(n -> Arrays.equals(old, n.getBytes("rr:8"))));
+        for (Node replica : replicas("rr:8")) {
+            assertArrayEquals(replicas("rr:8").get(0).getBytes("rr:8"), replica.getBytes("rr:8"));
+        }
+    }
+
+    @Test
+    void testMissingCopiesAreRestoredAndTombstonesWin() throws InterruptedException {
+        distributedHashTable.configureReadRepair(1.0);
+
+        // Копия пропала на одной реплике - дописывается
+        Node lagging = replicas("rr:3").get(2);
+        lagging.removeBytes("rr:3");
+        assertEquals("value_3", distributedHashTable.get("rr:3"));
+        await(() -> lagging.containsKey("rr:3"));
+        assertTrue(lagging.containsKey("rr:3"));
+
+        // Копии пропали с большинства без удаления (вытеснение) - единственная копия восстанавливается
+        List<Node> replicas = replicas("rr:5");
+        replicas.get(1).removeBytes("rr:5");
+        replicas.get(2).removeBytes("rr:5");
+        assertEquals("value_5", distributedHashTable.get("rr:5"));
+        await(() -> replicas.stream().allMatch(n -> n.containsKey("rr:5")));
+        assertTrue(replicas.stream().allMatch(n -> n.containsKey("rr:5")));
+
+        // Удаленный ключ вернулся на первую реплику со старой версией - надгробие новее, копия удаляется
+        byte[] deleted = replicas("rr:6").get(0).getBytes("rr:6");
+        assertTrue(distributedHashTable.remove("rr:6"));
+        replicas("rr:6").get(0).putBytes("rr:6", deleted);
+        assertNull(distributedHashTable.get("rr:6"));
+        await(() -> !replicas("rr:6").get(0).containsKey("rr:6"));
+        assertFalse(replicas("rr:6").get(0).containsKey("rr:6"));
+
+        // Согласованные реплики ничего не перезаписывают
+        assertEquals("value_4", distributedHashTable.get("rr:4"));
+        assertThrows(IllegalArgumentException.class, () -> distributedHashTable.configureReadRepair(1.5));
+    }
+
+    @Test
+    void testDigestsComeFromHashTree() {
+        Node replica = replicas("rr:2").get(1);
+        replica.enableMerkleIndex(distributedHashTable.getHashRing()::token, MerkleIndex.DEFAULT_LEAVES_PER_RANGE);
+        assertEquals(MerkleIndex.entryHash("rr:2", replica.getBytes("rr:2")), replica.getDigest("rr:2"));
+        assertNull(replica.getDigest("rr:missing"));
+
+        // Дайджест читается из дерева, а не из хранилища
+        byte[] other = "other".getBytes(StandardCharsets.UTF_8);
+        replica.getMerkleIndex().put("rr:2", other);
+        assertEquals(MerkleIndex.entryHash("rr:2", other), replica.getDigest("rr:2"));
+        replica.refreshMerkleIndex("rr:2");
+    }
+}
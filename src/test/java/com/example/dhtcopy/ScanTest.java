@@ -0,0 +1,132 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.DistributedHashTable;
+import com.example.dhtcopy.core.Node;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application-test.yml")
+public class ScanTest {
+
+    @Autowired
+    private DistributedHashTable distributedHashTable;
+
+    private Node node1;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        for (Node node : distributedHashTable.getAllNodes()) {
+            distributedHashTable.removeNode(node.getId());
+        }
+        // Переносы данных прошлых тестов не должны дописать ключи в новые ноды
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+        node1 = new Node("scan_node1", "localhost", 8001);
+        distributedHashTable.addNode(node1);
+        distributedHashTable.addNode(new Node("scan_node2", "localhost", 8002));
+        distributedHashTable.addNode(new Node("scan_node3", "localhost", 8003));
+        while (distributedHashTable.isRebalancing()) {
+            Thread.sleep(10);
+        }
+
+        // Ключи пишутся вперемешку; соседние префиксы не должны попасть в скан
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(7));
+        for (int i : order) {
+            distributedHashTable.put(String.format("scan:%04d", i), "value_" + i);
+        }
+        distributedHashTable.put("scam:0001", "outside");
+        distributedHashTable.put("scan;0001", "outside");
+    }
+
+    private static List<String> keys(DistributedHashTable.ScanPage page) {
+        return page.entries().stream().map(Map.Entry::getKey).toList();
+    }
+
+    @Test
+    void testPrefixScanIsOrderedWithoutReplicaDuplicates() {
+        DistributedHashTable.ScanPage page = distributedHashTable.scan("scan:", null, null, 1000);
+
+        List<String> keys = keys(page);
+        assertEquals(300, keys.size());
+        assertEquals(keys.stream().sorted().distinct().toList(), keys);
+        assertEquals("scan:0000", keys.get(0));
+        assertEquals("value_299", new String(page.entries().get(299).getValue(), StandardCharsets.UTF_8));
+        assertNull(page.nextCursor());
+
+        List<String> fromMiddle = keys(distributedHashTable.scan("scan:", "scan:0250", null, 1000));
+        assertEquals(50, fromMiddle.size());
+        assertEquals("scan:0250", fromMiddle.get(0));
+    }
+
+    @Test
+    void testCursorPagesThroughWholeRange() {
+        List<String> collected = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            DistributedHashTable.ScanPage page = distributedHashTable.scan("scan:", null, cursor, 37);
+            assertTrue(page.entries().size() <= 37);
+            collected.addAll(keys(page));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(9, pages);
+        assertEquals(300, collected.size());
+        assertEquals(collected.stream().sorted().distinct().toList(), collected);
+
+        assertThrows(IllegalArgumentException.class, () -> distributedHashTable.scan("scan:", null, null, 0));
+        // Без префикса - весь кластер
+        assertEquals(302, distributedHashTable.scan(null, null, null, 5000).entries().size());
+    }
+
+    @Test
+    void testScanSurvivesInactiveNodeAndSkipsDeletedKeys() {
+        distributedHashTable.remove("scan:0100");
+        node1.setActive(false);
+        try {
+            List<String> keys = keys(distributedHashTable.scan("scan:", null, null, 1000));
+            // Реплики на оставшихся нодах покрывают все ключи
+            assertEquals(299, keys.size());
+            assertFalse(keys.contains("scan:0100"));
+        } finally {
+            node1.setActive(true);
+        }
+    }
+
+    @Test
+    void testNodeScanUsesSortedIndex() {
+        Node node = new Node("scan_local", "localhost", 9001);
+        for (int i = 99; i >= 0; i--) {
+            node.put(String.format("k%03d", i), "v" + i);
+        }
+        assertEquals(List.of("k010", "k011", "k012"),
+                node.scanBytes("k010", "k020", 3).stream().map(Map.Entry::getKey).toList());
+
+        // Изменения после построения индекса видны следующим сканам
+        node.remove("k011");
+        node.put("k0105", "new");
+        node.putBytes("k012", "expired".getBytes(StandardCharsets.UTF_8), System.currentTimeMillis() - 1);
+        assertEquals(List.of("k010", "k0105", "k013"),
+                node.scanBytes("k010", "k020", 3).stream().map(Map.Entry::getKey).toList());
+        assertEquals(99, node.scanBytes("", null, 1000).size());
+
+        node.clearData();
+        assertTrue(node.scanBytes("", null, 10).isEmpty());
+        node.close();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.snapshot.SnapshotStore;
+import com.example.dhtcopy.core.storage.HeapStorageEngine;
+import com.example.dhtcopy.core.storage.OffHeapStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotStoreTest {
+    @TempDir
+    Path tempDir;
+
+    private static Map<String, String> contents(StorageEngine storage) {
+        Map<String, String> data = new HashMap<>();
+        storage.forEach((key, value) -> data.put(key, Node.decode(value)));
+        return data;
+    }
+
+    private List<String> snapshotFiles(String nodeId) throws IOException {
+        try (Stream<Path> files = Files.list(tempDir.resolve(nodeId))) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void testBaseAndDeltasRestoreLatestState() throws IOException {
+        SnapshotStore store = new SnapshotStore(tempDir, 8);
+        Node node = new Node("node1", "localhost", 8001);
+        for (int i = 0; i < 5000; i++) {
+            node.put("key_" + i, "value_" + i);
+        }
+        SnapshotStore.SnapshotResult base = store.snapshot(node);
+        assertTrue(base.full());
+        assertEquals(5000, base.entries());
+
+        // Инкрементальный снимок содержит только измененные и удаленные ключи
+        node.put("key_1", "updated");
+        node.remove("key_2");
+        node.put("new", "key");
+        SnapshotStore.SnapshotResult delta = store.snapshot(node);
+        assertFalse(delta.full());
+        assertEquals(3, delta.entries());
+        assertTrue(delta.bytes() < base.bytes() / 100);
+
+        // Без изменений файл не пишется
+        assertEquals(0, store.snapshot(node).entries());
+        assertEquals(List.of("000000000001-base.snap", "000000000002-delta.snap"), snapshotFiles("node1"));
+
+        StorageEngine restored = new OffHeapStorageEngine(4096);
+        SnapshotStore.RestoreResult result = store.restore("node1", restored);
+        assertEquals(2, result.files());
+        assertEquals(contents(node.getStorageEngine()), contents(restored));
+        assertNull(restored.get("key_2"));
+        assertTrue(result.throughputMbPerSecond() > 0);
+
+        assertEquals(0, store.restore("unknown", new HeapStorageEngine()).files());
+    }
+
+    @Test
+    void testExpiryIsRestoredWithKeys() throws InterruptedException {
+        SnapshotStore store = new SnapshotStore(tempDir, 8);
+        Node node = new Node("node1", "localhost", 8001);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            node.put("permanent_" + i, "value_" + i);
+        }
+        node.putBytes("session", Node.encode("alive"), now + 60_000);
+        assertTrue(store.snapshot(node).full());
+        node.putBytes("short", Node.encode("gone"), now + 100);
+        node.putBytes("session", Node.encode("renewed"), now + 120_000);
+        assertFalse(store.snapshot(node).full());
+        Thread.sleep(150);
+
+        StorageEngine storage = new HeapStorageEngine();
+        Map<String, Long> expiries = new HashMap<>();
+        store.restore("node1", storage, expiries);
+        assertEquals(Map.of("session", now + 120_000, "short", now + 100), expiries);
+
+        Node restored = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, storage, null, expiries);
+        assertEquals("renewed", restored.get("session"));
+        assertEquals(now + 120_000, restored.getExpiresAt("session"));
+        assertEquals(Node.NO_EXPIRY, restored.getExpiresAt("permanent_3"));
+        assertEquals("value_3", restored.get("permanent_3"));
+        assertNull(restored.get("short"));
+        restored.close();
+    }
+
+    @Test
+    void testNewBaseReplacesChainAfterClearOrMaxDeltas() throws IOException {
+        SnapshotStore store = new SnapshotStore(tempDir, 2);
+        Node node = new Node("node1", "localhost", 8001);
+        for (int i = 0; i < 100; i++) {
+            node.put("key_" + i, "value_" + i);
+        }
+        store.snapshot(node);
+        node.put("key_1", "a");
+        assertFalse(store.snapshot(node).full());
+        node.put("key_1", "b");
+        assertFalse(store.snapshot(node).full());
+        node.put("key_1", "c");
+        assertTrue(store.snapshot(node).full());
+        assertEquals(List.of("000000000004-base.snap"), snapshotFiles("node1"));
+
+        node.clearData();
+        node.put("only", "key");
+        assertTrue(store.snapshot(node).full());
+
+        StorageEngine restored = new HeapStorageEngine();
+        store.restore("node1", restored);
+        assertEquals(Map.of("only", "key"), contents(restored));
+    }
+
+    @Test
+    void testSnapshotDoesNotBlockWritersAndMissesNothing() throws Exception {
+        SnapshotStore store = new SnapshotStore(tempDir);
+        Node node = new Node("node1", "localhost", 8001);
+        for (int i = 0; i < 20_000; i++) {
+            node.put("key_" + i, "value_" + i);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<Integer> writer = CompletableFuture.supplyAsync(() -> {
+            int writes = 0;
+            while (running.get()) {
+                node.put("key_" + (writes % 20_000), "live_" + writes);
+                writes++;
+            }
+            return writes;
+        });
+        for (int i = 0; i < 5; i++) {
+            store.snapshot(node);
+        }
+        running.set(false);
+        assertTrue(writer.get() > 0);
+
+        // Записи во время снимков попадают в следующий инкрементальный снимок
+        store.snapshot(node);
+        StorageEngine restored = new HeapStorageEngine();
+        store.restore("node1", restored);
+        assertEquals(contents(node.getStorageEngine()), contents(restored));
+    }
+
+    @Test
+    void testCorruptedBlockIsDetected() throws IOException {
+        SnapshotStore store = new SnapshotStore(tempDir);
+        Node node = new Node("node1", "localhost", 8001);
+        for (int i = 0; i < 1000; i++) {
+            node.put("key_" + i, "value_" + i);
+        }
+        store.snapshot(node);
+
+        Path file = tempDir.resolve("node1").resolve("000000000001-base.snap");
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 0x5A;
+        Files.write(file, data);
+
+        assertThrows(UncheckedIOException.class, () -> store.restore("node1", new HeapStorageEngine()));
+    }
+}
@@ -0,0 +1,530 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.MerkleIndex;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.storage.BitcaskStorageEngine;
+import com.example.dhtcopy.core.storage.BoundedStorageEngine;
+import com.example.dhtcopy.core.storage.EvictionPolicy;
+import com.example.dhtcopy.core.storage.HeapStorageEngine;
+import com.example.dhtcopy.core.storage.LsmStorageEngine;
+import com.example.dhtcopy.core.storage.OffHeapStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngineFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageEngineTest {
+    @TempDir
+    Path tempDir;
+
+    // Маленькие слабы, сегменты и memtable, чтобы тесты задевали их границы и записи больше слаба
+    private List<Supplier<StorageEngine>> engines() {
+        return List.of(
+                HeapStorageEngine::new,
+                () -> new OffHeapStorageEngine(4096),
+                () -> new BitcaskStorageEngine(tempDir.resolve("engine-" + System.nanoTime()), 4096, 0, 0.5),
+                () -> new LsmStorageEngine(tempDir.resolve("engine-" + System.nanoTime()), 8192),
+                // Бюджет с запасом: обертка не должна менять поведение, пока данные в него укладываются
+                () -> new BoundedStorageEngine(new HeapStorageEngine(), 64L * 1024 * 1024, EvictionPolicy.Type.W_TINYLFU),
+                () -> new BoundedStorageEngine(new OffHeapStorageEngine(4096), 64L * 1024 * 1024, EvictionPolicy.Type.LRU));
+    }
+
+    private BitcaskStorageEngine openBitcask(Path directory) {
+        return new BitcaskStorageEngine(directory, 4096, 0, 0.5);
+    }
+
+    private LsmStorageEngine openLsm(Path directory) {
+        return new LsmStorageEngine(directory, 4096);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testPutGetOverwriteRemove() {
+        for (Supplier<StorageEngine> supplier : engines()) {
+            StorageEngine engine = supplier.get();
+            assertNull(engine.put("key", bytes("value")), engine.name());
+            assertEquals("value", string(engine.get("key")), engine.name());
+            assertTrue(engine.containsKey("key"), engine.name());
+
+            assertEquals("value", string(engine.put("key", bytes("a much longer value that needs a bigger block"))), engine.name());
+            assertEquals("a much longer value that needs a bigger block", string(engine.get("key")), engine.name());
+            assertEquals(1, engine.size(), engine.name());
+
+            assertEquals("a much longer value that needs a bigger block", string(engine.remove("key")), engine.name());
+            assertNull(engine.get("key"), engine.name());
+            assertNull(engine.remove("key"), engine.name());
+            assertFalse(engine.containsKey("key"), engine.name());
+            assertEquals(0, engine.size(), engine.name());
+        }
+    }
+
+    @Test
+    void testManyKeysAcrossResizesAndDeletes() {
+        for (Supplier<StorageEngine> supplier : engines()) {
+            StorageEngine engine = supplier.get();
+            Map<String, String> expected = new HashMap<>();
+            for (int i = 0; i < 20_000; i++) {
+                engine.put("key_" + i, bytes("value_" + i));
+                expected.put("key_" + i, "value_" + i);
+            }
+            for (int i = 0; i < 20_000; i += 3) {
+                engine.remove("key_" + i);
+                expected.remove("key_" + i);
+            }
+            // Ключи на UTF-8 и пустое значение
+            engine.put("ключ-🚀", bytes(""));
+            expected.put("ключ-🚀", "");
+
+            assertEquals(expected.size(), engine.size(), engine.name());
+            Map<String, String> actual = new HashMap<>();
+            engine.forEach((key, value) -> actual.put(key, string(value)));
+            assertEquals(expected, actual, engine.name());
+            // Обход только ключей видит те же ключи, включая удаления в сброшенных на диск файлах
+            Set<String> keys = new HashSet<>();
+            engine.forEachKey(keys::add);
+            assertEquals(expected.keySet(), keys, engine.name());
+            for (int i = 0; i < 20_000; i += 7) {
+                assertEquals(expected.get("key_" + i), string(engine.get("key_" + i)), engine.name());
+            }
+
+            engine.clear();
+            assertEquals(0, engine.size(), engine.name());
+            assertNull(engine.get("key_1"), engine.name());
+        }
+    }
+
+    @Test
+    void testOffHeapReusesFreedBlocks() {
+        OffHeapStorageEngine engine = new OffHeapStorageEngine(4096);
+        for (int i = 0; i < 1000; i++) {
+            engine.put("key_" + i, bytes("value_" + i));
+        }
+        long allocated = engine.getAllocatedBytes();
+        long live = engine.getLiveBytes();
+
+        // Удаленные блоки переиспользуются новыми записями того же размера - новых слабов не нужно
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 1000; i++) {
+                engine.remove("key_" + i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                engine.put("key_" + i, bytes("value_" + (i + round)));
+            }
+        }
+        assertEquals(allocated, engine.getAllocatedBytes());
+        assertEquals(live, engine.getLiveBytes());
+        assertEquals(1000, engine.size());
+    }
+
+    @Test
+    void testOffHeapRecordLargerThanSlab() {
+        OffHeapStorageEngine engine = new OffHeapStorageEngine(1024);
+        byte[] large = new byte[10_000];
+        new Random(42).nextBytes(large);
+        engine.put("small", bytes("value"));
+        long allocated = engine.getAllocatedBytes();
+
+        engine.put("large", large);
+        assertArrayEquals(large, engine.get("large"));
+        assertTrue(engine.getAllocatedBytes() > allocated);
+
+        // Отдельный буфер большой записи отпускается при удалении
+        assertArrayEquals(large, engine.remove("large"));
+        assertEquals(allocated, engine.getAllocatedBytes());
+        assertEquals("value", string(engine.get("small")));
+    }
+
+    @Test
+    void testFactoryAndNodeDelegation() {
+        StorageEngineFactory factory = new StorageEngineFactory(OffHeapStorageEngine.NAME, 4096, tempDir, 4096, 0, 4096);
+        assertEquals(OffHeapStorageEngine.NAME, factory.create("node1", null).name());
+        assertEquals(HeapStorageEngine.NAME, factory.create("node1", "heap").name());
+        StorageEngine bitcask = factory.create("node2", "bitcask");
+        assertEquals(BitcaskStorageEngine.NAME, bitcask.name());
+        assertEquals(tempDir.resolve("node2"), ((BitcaskStorageEngine) bitcask).getDirectory());
+        bitcask.close();
+        StorageEngine lsm = factory.create("node3", "LSM");
+        assertEquals(tempDir.resolve("node3"), ((LsmStorageEngine) lsm).getDirectory());
+        lsm.close();
+        assertThrows(IllegalArgumentException.class, () -> factory.create("node1", "rocksdb"));
+        assertThrows(IllegalArgumentException.class, () -> new StorageEngineFactory("rocksdb", 4096, tempDir, 4096, 0, 4096));
+
+        Node node = new Node("node1", "localhost", 8001, 1.0, "default", factory.create("node1", null));
+        node.put("key1", "value1");
+        node.transferData(Map.of("key2", "value2"));
+        assertEquals("value1", node.get("key1"));
+        assertEquals(Map.of("key1", "value1", "key2", "value2"), node.getAllData());
+        assertEquals(2, node.getDataSize());
+        assertEquals(OffHeapStorageEngine.NAME, node.getStorageEngine().name());
+    }
+
+    @Test
+    void testBinaryValuesAreStoredAsIs() {
+        // Невалидный UTF-8 не должен искажаться ни в одном движке
+        byte[] binary = {0, (byte) 0xFF, (byte) 0xC3, 0x28, (byte) 0x80, 127, -1, 0};
+        for (Supplier<StorageEngine> supplier : engines()) {
+            Node node = new Node("node1", "localhost", 8001, 1.0, "default", supplier.get());
+            assertNull(node.putBytes("binary", binary));
+            assertArrayEquals(binary, node.getBytes("binary"), node.getStorageEngine().name());
+            assertArrayEquals(binary, node.getAllBytes().get("binary"), node.getStorageEngine().name());
+
+            // Строковый API остается оберткой над тем же хранилищем
+            node.put("text", "значение");
+            assertArrayEquals("значение".getBytes(StandardCharsets.UTF_8), node.getBytes("text"));
+            assertArrayEquals(binary, node.removeBytes("binary"));
+            assertEquals("значение", node.remove("text"));
+        }
+    }
+
+    @Test
+    void testBitcaskSurvivesRestart() {
+        Path directory = tempDir.resolve("restart");
+        BitcaskStorageEngine engine = openBitcask(directory);
+        for (int i = 0; i < 1000; i++) {
+            engine.put("key_" + i, bytes("value_" + i));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            engine.remove("key_" + i);
+        }
+        engine.put("key_1", bytes("updated"));
+        // Маленькие сегменты: записи разошлись по нескольким файлам
+        assertTrue(engine.getSegmentCount() > 1);
+        engine.close();
+        assertThrows(IllegalStateException.class, () -> engine.put("key_1", bytes("after close")));
+
+        BitcaskStorageEngine reopened = openBitcask(directory);
+        assertEquals(500, reopened.size());
+        assertEquals("updated", string(reopened.get("key_1")));
+        assertEquals("value_999", string(reopened.get("key_999")));
+        assertNull(reopened.get("key_0"));
+
+        // Запись продолжается в последний сегмент после перезапуска
+        reopened.put("key_0", bytes("restored"));
+        reopened.close();
+        assertEquals("restored", string(openBitcask(directory).get("key_0")));
+    }
+
+    @Test
+    void testBitcaskRecoversWithoutHintsAndFromTornTail() throws IOException {
+        Path directory = tempDir.resolve("recovery");
+        BitcaskStorageEngine engine = openBitcask(directory);
+        for (int i = 0; i < 500; i++) {
+            engine.put("key_" + i, bytes("value_" + i));
+        }
+        engine.close();
+
+        // Без hint-файлов keydir восстанавливается сканированием сегментов
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".hint")).toList()) {
+                Files.delete(file);
+            }
+        }
+        BitcaskStorageEngine scanned = openBitcask(directory);
+        assertEquals(500, scanned.size());
+        assertEquals("value_42", string(scanned.get("key_42")));
+        scanned.put("torn", bytes("value"));
+        scanned.close();
+
+        // Портим последнюю запись, как при падении посреди записи
+        Path last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.filter(f -> f.toString().endsWith(".data")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        Files.deleteIfExists(Path.of(last.toString().replace(".data", ".hint")));
+        byte[] data = Files.readAllBytes(last);
+        int tail = 0;
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] != 0) {
+                tail = i;
+                break;
+            }
+        }
+        data[tail] ^= 0x55;
+        Files.write(last, data);
+
+        BitcaskStorageEngine recovered = openBitcask(directory);
+        assertNull(recovered.get("torn"));
+        assertEquals(500, recovered.size());
+        recovered.put("after", bytes("recovery"));
+        assertEquals("recovery", string(recovered.get("after")));
+        recovered.close();
+    }
+
+    @Test
+    void testBitcaskMergeDropsStaleRecords() throws IOException {
+        Path directory = tempDir.resolve("merge");
+        BitcaskStorageEngine engine = openBitcask(directory);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                engine.put("key_" + i, bytes("value_" + i + "_" + round));
+            }
+        }
+        for (int i = 0; i < 50; i++) {
+            engine.remove("key_" + i);
+        }
+        int before = engine.getSegmentCount();
+
+        assertTrue(engine.merge() > 0);
+        assertTrue(engine.getSegmentCount() < before);
+        assertEquals(50, engine.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i < 50 ? null : "value_" + i + "_9", string(engine.get("key_" + i)));
+        }
+        engine.close();
+
+        // Удаленные ключи не воскресают после сжатия и перезапуска
+        BitcaskStorageEngine reopened = openBitcask(directory);
+        assertEquals(50, reopened.size());
+        assertNull(reopened.get("key_0"));
+        assertEquals("value_99_9", string(reopened.get("key_99")));
+        reopened.close();
+    }
+
+    @Test
+    void testScanIsOrderedAndBounded() {
+        for (Supplier<StorageEngine> supplier : engines()) {
+            StorageEngine engine = supplier.get();
+            for (int i = 999; i >= 0; i--) {
+                engine.put(String.format("key_%04d", i), bytes("value_" + i));
+            }
+            engine.remove("key_0500");
+
+            List<String> keys = new ArrayList<>();
+            engine.scan("key_0490", "key_0510", (key, value) -> keys.add(key));
+            assertEquals(19, keys.size(), engine.name());
+            assertEquals("key_0490", keys.get(0), engine.name());
+            assertEquals("key_0509", keys.get(keys.size() - 1), engine.name());
+            assertFalse(keys.contains("key_0500"), engine.name());
+            assertEquals(keys.stream().sorted().toList(), keys, engine.name());
+
+            List<String> all = new ArrayList<>();
+            engine.scan(null, null, (key, value) -> all.add(key));
+            assertEquals(999, all.size(), engine.name());
+            assertEquals(all.stream().sorted().toList(), all, engine.name());
+            engine.close();
+        }
+    }
+
+    @Test
+    void testScanPageStopsAtLimit() {
+        for (Supplier<StorageEngine> supplier : engines()) {
+            StorageEngine engine = supplier.get();
+            for (int i = 0; i < 500; i++) {
+                engine.put(String.format("key_%04d", i), bytes("value_" + i));
+            }
+            engine.remove("key_0101");
+
+            List<Map.Entry<String, byte[]>> page = engine.scanPage("key_0100", null, 3);
+            assertEquals(List.of("key_0100", "key_0102", "key_0103"),
+                    page.stream().map(Map.Entry::getKey).toList(), engine.name());
+            assertArrayEquals(bytes("value_102"), page.get(1).getValue(), engine.name());
+            assertEquals(2, engine.scanPage("key_0498", "key_0600", 10).size(), engine.name());
+            engine.close();
+        }
+    }
+
+    @Test
+    void testLsmFlushesAndCompactsIntoLevels() {
+        LsmStorageEngine engine = openLsm(tempDir.resolve("lsm-compaction"));
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 2000; i++) {
+                engine.put("key_" + i, bytes("value_" + i + "_" + round));
+            }
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            engine.remove("key_" + i);
+        }
+        engine.flush();
+        engine.compact();
+
+        // L0 разобран компактацией, данные лежат на нижних уровнях
+        List<Integer> levels = engine.getLevelFileCounts();
+        assertTrue(levels.get(0) < 4, levels.toString());
+        assertTrue(levels.subList(1, levels.size()).stream().mapToInt(Integer::intValue).sum() > 0, levels.toString());
+        assertTrue(engine.getCompactionCount() > 0);
+        assertEquals(0, engine.getCompactionBacklogBytes());
+
+        assertEquals(1000, engine.size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i % 2 == 0 ? null : "value_" + i + "_4", string(engine.get("key_" + i)));
+        }
+        // Перезапись и компактация пишут на диск больше, чем записал клиент
+        assertTrue(engine.getWriteAmplification() > 1.0);
+        assertTrue(engine.getReadAmplification() > 0.0);
+        engine.close();
+    }
+
+    @Test
+    void testLsmSurvivesRestart() {
+        Path directory = tempDir.resolve("lsm-restart");
+        LsmStorageEngine engine = openLsm(directory);
+        for (int i = 0; i < 3000; i++) {
+            engine.put("key_" + i, bytes("value_" + i));
+        }
+        for (int i = 0; i < 3000; i += 3) {
+            engine.remove("key_" + i);
+        }
+        engine.put("key_1", bytes("updated"));
+        engine.close();
+        assertThrows(IllegalStateException.class, () -> engine.put("key_1", bytes("after close")));
+
+        // close сбросил memtable: все, включая удаления, читается из SSTable
+        LsmStorageEngine reopened = openLsm(directory);
+        assertEquals(2000, reopened.size());
+        assertEquals("updated", string(reopened.get("key_1")));
+        assertEquals("value_2999", string(reopened.get("key_2999")));
+        assertNull(reopened.get("key_0"));
+
+        reopened.put("key_0", bytes("restored"));
+        reopened.clear();
+        assertEquals(0, reopened.size());
+        reopened.put("key_0", bytes("after clear"));
+        reopened.close();
+
+        LsmStorageEngine cleared = openLsm(directory);
+        assertEquals(1, cleared.size());
+        assertEquals("after clear", string(cleared.get("key_0")));
+        cleared.close();
+    }
+
+    @Test
+    void testBoundedEngineStaysWithinBudget() {
+        long budget = 64 * 1024;
+        for (EvictionPolicy.Type type : EvictionPolicy.Type.values()) {
+            BoundedStorageEngine engine = new BoundedStorageEngine(new HeapStorageEngine(), budget, type);
+            Random random = new Random(7);
+            for (int i = 0; i < 5000; i++) {
+                engine.put("key_" + random.nextInt(2000), new byte[random.nextInt(200)]);
+                assertTrue(engine.getResidentBytes() <= budget, type + ": " + engine.getResidentBytes());
+            }
+
+            // Учет в байтах сходится с реальным содержимым
+            long[] actual = new long[1];
+            engine.forEach((key, value) -> actual[0] += BoundedStorageEngine.weigh(key, value));
+            assertEquals(actual[0], engine.getResidentBytes(), type.name());
+            assertTrue(engine.getEvictionCount() > 0, type.name());
+            assertTrue(engine.getResidentBytes() > budget / 2, type.name());
+
+            engine.clear();
+            assertEquals(0, engine.getResidentBytes(), type.name());
+            assertEquals(0, engine.size(), type.name());
+        }
+    }
+
+    @Test
+    void testLruEvictsLeastRecentlyUsed() {
+        long entry = BoundedStorageEngine.weigh("key_0", new byte[10]);
+        BoundedStorageEngine engine = new BoundedStorageEngine(new HeapStorageEngine(), entry * 3, EvictionPolicy.Type.LRU);
+        engine.put("key_0", new byte[10]);
+        engine.put("key_1", new byte[10]);
+        engine.put("key_2", new byte[10]);
+        engine.get("key_0");
+        engine.put("key_3", new byte[10]);
+
+        assertNull(engine.get("key_1"));
+        assertNotNull(engine.get("key_0"));
+        assertEquals(1, engine.getEvictionCount());
+        assertEquals(2.0 / 3, engine.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    void testNodeForgetsEvictedKeys() {
+        long entry = BoundedStorageEngine.weigh("key_0", new byte[10]);
+        Node node = new Node("node1", "localhost", 8080, 1.0, null,
+                new BoundedStorageEngine(new HeapStorageEngine(), entry * 3, EvictionPolicy.Type.LRU));
+        MerkleIndex merkle = node.enableMerkleIndex(String::hashCode, 4);
+        node.drainChanges();
+        node.putBytes("key_0", new byte[10], System.currentTimeMillis() + 60_000);
+        node.putBytes("key_1", new byte[10]);
+        node.putBytes("key_2", new byte[10]);
+        assertEquals(1, node.getPendingExpiries());
+        node.drainChanges();
+
+        node.putBytes("key_3", new byte[10]);
+
+        // Вытесненный ключ не держит таймер и не остается в дереве и наборе изменений для снимка
+        assertNull(node.getBytes("key_0"));
+        assertEquals(0, node.getPendingExpiries());
+        assertNull(merkle.hash("key_0"));
+        assertNotNull(merkle.hash("key_3"));
+        assertEquals(Set.of("key_0", "key_3"), node.drainChanges().keys());
+        node.close();
+    }
+
+    @Test
+    void testWTinyLfuKeepsHotKeysThroughScan() {
+        int hotKeys = 200;
+        long budget = hotKeys * BoundedStorageEngine.weigh("hot_000", new byte[100]) * 2;
+        Map<EvictionPolicy.Type, Integer> survivors = new HashMap<>();
+        for (EvictionPolicy.Type type : EvictionPolicy.Type.values()) {
+            BoundedStorageEngine engine = new BoundedStorageEngine(new HeapStorageEngine(), budget, type);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < hotKeys; i++) {
+                    String key = String.format("hot_%03d", i);
+                    if (engine.get(key) == null) {
+                        engine.put(key, new byte[100]);
+                    }
+                }
+            }
+            // Разовый проход по холодным ключам в несколько раз больше бюджета
+            for (int i = 0; i < 5000; i++) {
+                engine.put("scan_" + i, new byte[100]);
+            }
+            int alive = 0;
+            for (int i = 0; i < hotKeys; i++) {
+                if (engine.containsKey(String.format("hot_%03d", i))) {
+                    alive++;
+                }
+            }
+            survivors.put(type, alive);
+        }
+
+        assertEquals(0, survivors.get(EvictionPolicy.Type.LRU));
+        assertTrue(survivors.get(EvictionPolicy.Type.W_TINYLFU) > hotKeys * 9 / 10, survivors.toString());
+    }
+
+    @Test
+    void testFactoryAppliesMemoryBudget() {
+        assertEquals(EvictionPolicy.Type.W_TINYLFU, EvictionPolicy.Type.parse("w-tinylfu"));
+        assertEquals("w-tinylfu", EvictionPolicy.Type.W_TINYLFU.configName());
+        assertThrows(IllegalArgumentException.class, () -> EvictionPolicy.Type.parse("lfu"));
+
+        StorageEngineFactory factory = new StorageEngineFactory().withMemoryBudget(4096, EvictionPolicy.Type.LRU);
+        StorageEngine storage = factory.create("node1", OffHeapStorageEngine.NAME);
+        assertTrue(storage instanceof BoundedStorageEngine);
+        BoundedStorageEngine bounded = (BoundedStorageEngine) storage;
+        assertEquals(OffHeapStorageEngine.NAME, bounded.name());
+        assertEquals(EvictionPolicy.Type.LRU, bounded.getPolicyType());
+
+        Node node = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, storage);
+        for (int i = 0; i < 1000; i++) {
+            node.put("key_" + i, "value_" + i);
+        }
+        assertTrue(bounded.getResidentBytes() <= 4096);
+        assertTrue(node.getDataSize() < 1000);
+        assertEquals("value_999", node.get("key_999"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.TimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    private static List<String> keys(List<TimingWheel.Timer> timers) {
+        return timers.stream().map(TimingWheel.Timer::getKey).sorted().toList();
+    }
+
+    @Test
+    void testTimersFireOnTheirTickAcrossLevels() {
+        // Тик 10 мс, 8 корзин, 3 уровня: горизонт 5.12 с, дальше - последняя корзина верхнего уровня
+        TimingWheel wheel = new TimingWheel(10, 8, 3, 0);
+        long[] deadlines = {5, 10, 75, 80, 81, 640, 1234, 5119, 5120, 20_000};
+        for (long deadline : deadlines) {
+            wheel.schedule("at_" + deadline, deadline);
+        }
+        assertEquals(deadlines.length, wheel.size());
+
+        // Продвигаем по тику и проверяем, что каждый таймер сработал на первом тике не раньше срока
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 20_100; now += 10) {
+            for (TimingWheel.Timer timer : wheel.advance(now)) {
+                assertTrue(timer.getExpiresAt() <= now, timer.getKey() + " fired early at " + now);
+                assertTrue(now - timer.getExpiresAt() < 10, timer.getKey() + " fired late at " + now);
+                fired.add(timer.getExpiresAt());
+            }
+        }
+        assertEquals(deadlines.length, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testRandomDeadlinesAndCatchUp() {
+        TimingWheel wheel = new TimingWheel(10, 16, 3, 1_000);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long deadline = 1_000 + random.nextInt(100_000);
+            deadlines.add(deadline);
+            wheel.schedule("key_" + i, deadline);
+        }
+
+        // Колесо догоняет большие пропуски времени за один вызов и ничего не теряет
+        int fired = 0;
+        for (long now = 1_000; now <= 102_000; now += 777) {
+            for (TimingWheel.Timer timer : wheel.advance(now)) {
+                assertTrue(timer.getExpiresAt() <= now);
+                assertTrue(now - timer.getExpiresAt() < 777 + 10);
+                fired++;
+            }
+        }
+        assertEquals(deadlines.size(), fired);
+    }
+
+    @Test
+    void testCancelledTimerNeverFires() {
+        TimingWheel wheel = new TimingWheel(10, 8, 2, 0);
+        TimingWheel.Timer kept = wheel.schedule("kept", 300);
+        TimingWheel.Timer cancelled = wheel.schedule("cancelled", 300);
+        wheel.cancel(cancelled);
+        wheel.cancel(cancelled);
+        assertEquals(1, wheel.size());
+
+        assertEquals(List.of("kept"), keys(wheel.advance(400)));
+        assertEquals(300, kept.getExpiresAt());
+        // Таймер с прошедшим сроком срабатывает на следующем тике
+        wheel.schedule("late", 100);
+        assertEquals(List.of("late"), keys(wheel.advance(410)));
+    }
+
+    @Test
+    void testNodeHidesExpiredKeysAndReclaimsThem() throws InterruptedException {
+        Node node = new Node("node1", "localhost", 8001);
+        AtomicLong listened = new AtomicLong();
+        AtomicLong maxLag = new AtomicLong();
+        node.setExpiryListener((key, lagMillis) -> {
+            listened.incrementAndGet();
+            maxLag.accumulateAndGet(lagMillis, Math::max);
+        });
+
+        long expiresAt = System.currentTimeMillis() + 150;
+        for (int i = 0; i < 100; i++) {
+            node.putBytes("ttl_" + i, Node.encode("value_" + i), expiresAt);
+        }
+        node.put("forever", "value");
+        // Перезапись без TTL снимает срок жизни
+        node.putBytes("ttl_0", Node.encode("renewed"), Node.NO_EXPIRY);
+        node.remove("ttl_1");
+        assertEquals("value_5", node.get("ttl_5"));
+        assertEquals(expiresAt, node.getExpiresAt("ttl_5"));
+        assertEquals(98, node.getPendingExpiries());
+
+        while (System.currentTimeMillis() < expiresAt) {
+            Thread.sleep(10);
+        }
+        // Истекший ключ невидим сразу, не дожидаясь удаления
+        assertNull(node.get("ttl_5"));
+        assertFalse(node.containsKey("ttl_5"));
+        assertEquals(Map.of("forever", "value", "ttl_0", "renewed"), node.getAllData());
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (node.getDataSize() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, node.getDataSize());
+        assertEquals(98, node.getExpiredCount());
+        assertEquals(98, listened.get());
+        assertEquals(0, node.getPendingExpiries());
+        assertTrue(maxLag.get() < 5_000);
+        assertEquals("renewed", node.get("ttl_0"));
+        node.close();
+    }
+
+    @Test
+    void testOverwriteReplacesDeadline() throws InterruptedException {
+        Node node = new Node("node1", "localhost", 8001);
+        node.putBytes("key", Node.encode("short"), System.currentTimeMillis() + 50);
+        node.putBytes("key", Node.encode("long"), System.currentTimeMillis() + 60_000);
+        Thread.sleep(300);
+        // Таймер прежнего срока отменен и не удаляет перезаписанный ключ
+        assertEquals("long", node.get("key"));
+        assertEquals(0, node.getExpiredCount());
+        assertEquals(1, node.getPendingExpiries());
+
+        // Перезапись истекшего ключа не возвращает невидимое прежнее значение
+        node.putBytes("gone", Node.encode("old"), System.currentTimeMillis() - 1);
+        assertNull(node.putBytes("gone", Node.encode("new")));
+        assertEquals("new", node.get("gone"));
+        node.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.ValueVersion;
+import com.example.dhtcopy.core.compression.ValueCodec;
+import com.example.dhtcopy.core.compression.ValueCodec.Codec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueCodecTest {
+
+    private static byte[] json(int documents) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < documents; i++) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"user_").append(i)
+                    .append("\",\"email\":\"user_").append(i).append("@example.com\",\"active\":true,\"roles\":[\"reader\",\"writer\"]},");
+        }
+        return builder.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testRoundTripInEveryCodec() {
+        Random random = new Random(1);
+        byte[] noise = new byte[5000];
+        random.nextBytes(noise);
+        byte[] runs = new byte[70_000];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = (byte) (i / 1000);
+        }
+        List<byte[]> values = List.of(json(1), json(50), json(2000), noise, runs, new byte[0], new byte[100_000],
+                "short".getBytes(StandardCharsets.UTF_8));
+
+        for (Codec codec : Codec.values()) {
+            ValueCodec valueCodec = new ValueCodec(codec, 64);
+            for (byte[] value : values) {
+                byte[] stored = valueCodec.encode(value);
+                assertArrayEquals(value, ValueCodec.decode(stored), codec + " " + value.length);
+                assertEquals(value.length, ValueCodec.originalLength(stored), codec.name());
+            }
+        }
+        assertNull(ValueCodec.decode(null));
+    }
+
+    @Test
+    void testOnlyLargeCompressibleValuesAreCompressed() {
+        ValueCodec lz4 = new ValueCodec(Codec.LZ4, 1024);
+        ValueCodec deflate = new ValueCodec(Codec.DEFLATE, 1024);
+        byte[] document = json(200);
+
+        byte[] fast = lz4.encode(document);
+        byte[] strong = deflate.encode(document);
+        assertTrue(ValueCodec.isCompressed(fast));
+        assertTrue(fast.length < document.length / 3, "lz4: " + fast.length + " of " + document.length);
+        assertTrue(strong.length < fast.length, "deflate: " + strong.length + ", lz4: " + fast.length);
+
+        // Короткое и несжимаемое значение хранится как есть, без конверта
+        byte[] small = json(1);
+        assertSame(small, lz4.encode(small));
+        byte[] noise = new byte[4096];
+        new Random(2).nextBytes(noise);
+        noise[0] = 0;
+        assertSame(noise, lz4.encode(noise));
+        assertSame(document, new ValueCodec().encode(document));
+    }
+
+    @Test
+    void testValueThatLooksLikeEnvelopeIsEscaped() {
+        byte[] tricky = {(byte) 0xF5, 'D', 'Z', 1, 0, 0, 0, 3, 1, 2, 3};
+        for (ValueCodec codec : List.of(new ValueCodec(), new ValueCodec(Codec.LZ4, 4))) {
+            byte[] stored = codec.encode(tricky);
+            assertEquals(tricky.length + ValueCodec.HEADER_SIZE, stored.length);
+            assertFalse(ValueCodec.isCompressed(stored));
+            assertArrayEquals(tricky, ValueCodec.decode(stored));
+        }
+    }
+
+    @Test
+    void testCorruptedValueIsRejected() {
+        byte[] stored = new ValueCodec(Codec.LZ4, 64).encode(json(100));
+        byte[] truncated = java.util.Arrays.copyOf(stored, stored.length / 2);
+        assertThrows(IllegalArgumentException.class, () -> ValueCodec.decode(truncated));
+
+        assertEquals(Codec.DEFLATE, Codec.parse(" Deflate "));
+        assertThrows(IllegalArgumentException.class, () -> Codec.parse("zstd"));
+    }
+
+    @Test
+    void testVersionWrapsStoredFormAndNewestWins() {
+        ValueVersion.Clock clock = new ValueVersion.Clock();
+        long first = clock.next();
+        long second = clock.next();
+        assertTrue(second > first);
+        assertTrue(Math.abs(ValueVersion.timestamp(second) - System.currentTimeMillis()) < 1000);
+
+        byte[] compressed = new ValueCodec(Codec.LZ4, 64).encode(json(50));
+        byte[] stamped = ValueVersion.stamp(second, compressed);
+        assertEquals(second, ValueVersion.version(stamped));
+        assertArrayEquals(compressed, ValueVersion.payload(stamped));
+        assertArrayEquals(json(50), ValueCodec.decode(ValueVersion.payload(stamped)));
+
+        // Значение без версии старше любой записи с версией
+        byte[] plain = "plain".getBytes(StandardCharsets.UTF_8);
+        assertEquals(ValueVersion.NONE, ValueVersion.version(plain));
+        assertSame(plain, ValueVersion.payload(plain));
+        byte[] older = ValueVersion.stamp(first, "b".getBytes(StandardCharsets.UTF_8));
+        byte[] newer = ValueVersion.stamp(second, "a".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, ValueVersion.newest(Arrays.asList(plain, older, newer, null)));
+        assertEquals(-1, ValueVersion.newest(Arrays.asList(null, null)));
+        // Равные версии - выбор не зависит от порядка реплик
+        byte[] twin = ValueVersion.stamp(second, "z".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, ValueVersion.newest(Arrays.asList(newer, twin)));
+        assertEquals(0, ValueVersion.newest(Arrays.asList(twin, newer)));
+    }
+
+    @Test
+    void testNodeStringApiReadsStoredForm() {
+        Node node = new Node("node1", "localhost", 8080);
+        String document = new String(json(50), StandardCharsets.UTF_8);
+        byte[] stored = ValueVersion.stamp(new ValueVersion.Clock().next(),
+                new ValueCodec(Codec.LZ4, 64).encode(json(50)));
+        node.putBytes("doc", stored);
+        node.put("plain", "value");
+
+        assertEquals(document, node.get("doc"));
+        assertEquals("value", node.get("plain"));
+        assertEquals(document, node.getAllData().get("doc"));
+        assertEquals(document, node.remove("doc"));
+        assertNull(node.get("doc"));
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.dhtcopy;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.storage.HeapStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngineFactory;
+import com.example.dhtcopy.core.storage.WriteAheadLog;
+import com.example.dhtcopy.core.storage.WriteAheadLog.Durability;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WriteAheadLogTest {
+    @TempDir
+    Path tempDir;
+
+    // Нода с кучей в качестве хранилища: после перезапуска данные есть только в журнале
+    private Node openNode(Path file, Durability durability) {
+        return new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(),
+                new WriteAheadLog(file, durability, 200, 50, 1024 * 1024));
+    }
+
+    @Test
+    void testReplayRestoresHeapNodeInEveryMode() {
+        for (Durability durability : List.of(Durability.ASYNC, Durability.GROUP_COMMIT, Durability.SYNC)) {
+            Path file = tempDir.resolve(durability.configName() + ".wal");
+            Node node = openNode(file, durability);
+            for (int i = 0; i < 300; i++) {
+                node.put("key_" + i, "value_" + i);
+            }
+            for (int i = 0; i < 300; i += 3) {
+                node.remove("key_" + i);
+            }
+            node.put("key_1", "updated");
+            node.transferData(Map.of("moved", "in"));
+            node.close();
+            assertThrows(IllegalStateException.class, () -> node.put("key_1", "after close"));
+
+            Node restarted = openNode(file, durability);
+            assertEquals(201, restarted.getDataSize(), durability.name());
+            assertEquals("updated", restarted.get("key_1"), durability.name());
+            assertEquals("value_299", restarted.get("key_299"), durability.name());
+            assertEquals("in", restarted.get("moved"), durability.name());
+            assertNull(restarted.get("key_0"), durability.name());
+
+            restarted.clearData();
+            restarted.put("after", "clear");
+            restarted.close();
+            assertEquals(Map.of("after", "clear"), openNode(file, durability).getAllData(), durability.name());
+        }
+    }
+
+    @Test
+    void testGroupCommitBatchesConcurrentWriters() throws Exception {
+        WriteAheadLog wal = new WriteAheadLog(tempDir.resolve("group.wal"), Durability.GROUP_COMMIT, 2000, 1000, 64 * 1024 * 1024);
+        Node node = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(), wal);
+        AtomicLong listenedRecords = new AtomicLong();
+        AtomicLong largestBatch = new AtomicLong();
+        wal.setSyncListener((latencyNanos, batchSize) -> {
+            listenedRecords.addAndGet(batchSize);
+            largestBatch.accumulateAndGet(batchSize, Math::max);
+        });
+
+        int threads = 16;
+        int writesPerThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < writesPerThread; i++) {
+                    node.put("key_" + thread + "_" + i, "value");
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Каждая запись стала надежной до возврата из put, но fsync заметно меньше, чем записей
+        int total = threads * writesPerThread;
+        assertEquals(total, wal.getSyncedRecords());
+        assertEquals(total, listenedRecords.get());
+        assertTrue(wal.getSyncCount() < total / 2, "syncs: " + wal.getSyncCount());
+        assertTrue(largestBatch.get() > 1);
+        node.close();
+    }
+
+    @Test
+    void testTornTailIsTruncatedOnRecovery() throws IOException {
+        Path file = tempDir.resolve("torn.wal");
+        Node node = openNode(file, Durability.SYNC);
+        for (int i = 0; i < 100; i++) {
+            node.put("key_" + i, "value_" + i);
+        }
+        node.close();
+
+        // Обрезаем последнюю запись посередине, как при падении во время записи
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 5));
+
+        Node recovered = openNode(file, Durability.SYNC);
+        assertEquals(99, recovered.getDataSize());
+        assertNull(recovered.get("key_99"));
+        recovered.put("key_99", "rewritten");
+        recovered.close();
+        assertEquals("rewritten", openNode(file, Durability.SYNC).get("key_99"));
+    }
+
+    @Test
+    void testLogIsRewrittenWhenItGrows() throws IOException {
+        Path file = tempDir.resolve("rewrite.wal");
+        Node node = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(),
+                new WriteAheadLog(file, Durability.ASYNC, 0, 1000, 16 * 1024));
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 50; i++) {
+                node.put("key_" + i, "value_" + i + "_" + round);
+            }
+        }
+        // Тысячи перезаписей ужаты до снимка живых ключей
+        assertTrue(Files.size(file) < 32 * 1024, "size: " + Files.size(file));
+        node.close();
+
+        Node restarted = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(),
+                new WriteAheadLog(file, Durability.ASYNC, 0, 1000, 16 * 1024));
+        assertEquals(50, restarted.getDataSize());
+        assertEquals("value_7_49", restarted.get("key_7"));
+        restarted.close();
+    }
+
+    @Test
+    void testExpiryOfKeysSurvivesReplayAndRewrite() throws InterruptedException {
+        Path file = tempDir.resolve("ttl.wal");
+        Node node = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(),
+                new WriteAheadLog(file, Durability.SYNC, 0, 1000, 16 * 1024));
+        long now = System.currentTimeMillis();
+        node.putBytes("session", Node.encode("alive"), now + 60_000);
+        node.putBytes("short", Node.encode("gone"), now + 100);
+        node.putBytes("made_permanent", Node.encode("v1"), now + 100);
+        node.putBytes("made_permanent", Node.encode("v2"));
+        // Журнал несколько раз переписывается снимком - сроки не теряются
+        for (int i = 0; i < 500; i++) {
+            node.put("filler_" + (i % 20), "value_" + i);
+        }
+        node.close();
+        Thread.sleep(150);
+
+        Node restarted = new Node("node1", "localhost", 8001, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(),
+                new WriteAheadLog(file, Durability.SYNC, 0, 1000, 16 * 1024));
+        assertEquals(now + 60_000, restarted.getExpiresAt("session"));
+        assertEquals("alive", restarted.get("session"));
+        // Истекший за время простоя ключ не возвращается и удаляется таймером
+        assertNull(restarted.get("short"));
+        assertEquals("v2", restarted.get("made_permanent"));
+        assertEquals(Node.NO_EXPIRY, restarted.getExpiresAt("made_permanent"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (restarted.getStorageEngine().containsKey("short") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(restarted.getStorageEngine().containsKey("short"));
+        restarted.close();
+    }
+
+    @Test
+    void testModesFromConfiguration() {
+        assertEquals(Durability.GROUP_COMMIT, Durability.parse("group-commit"));
+        assertEquals(Durability.SYNC, Durability.parse(" SYNC "));
+        assertEquals("group-commit", Durability.GROUP_COMMIT.configName());
+        assertThrows(IllegalArgumentException.class, () -> Durability.parse("fsync-always"));
+
+        StorageEngineFactory factory = new StorageEngineFactory();
+        assertNull(factory.createWriteAheadLog("node1"));
+        factory.withWriteAheadLog(Durability.GROUP_COMMIT, 500, 1000, 1024 * 1024);
+        WriteAheadLog wal = factory.createWriteAheadLog("node1");
+        assertEquals(Path.of("data", "node1.wal"), wal.getFile());
+        assertEquals(Durability.GROUP_COMMIT, wal.getDurability());
+        wal.close();
+    }
+}
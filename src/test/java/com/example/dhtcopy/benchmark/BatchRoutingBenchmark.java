@@ -0,0 +1,75 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.Node;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Маршрутизация пачки ключей: поштучный getNodes с группировкой против routeBatch,
+ * который сортирует хэши и проходит по токенам один раз.
+ * Запуск: mvn test -Pbenchmark -Dtest=BatchRoutingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchRoutingBenchmark {
+
+    @Param({"100", "10000"})
+    public int batchSize;
+
+    @Param({"16"})
+    public int nodeCount;
+
+    private ConsistentHashRing ring;
+    private List<String> keys;
+
+    @Setup
+    public void setUp() {
+        ring = new ConsistentHashRing(150);
+        for (int i = 0; i < nodeCount; i++) {
+            ring.addNode(new Node("node" + i, "localhost", 9000 + i));
+        }
+        keys = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            keys.add("key_" + i);
+        }
+    }
+
+    @Benchmark
+    public void perKeyRouting(Blackhole blackhole) {
+        Map<List<Node>, List<String>> groups = new HashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(ring.getNodes(key, 3), nodes -> new ArrayList<>()).add(key);
+        }
+        blackhole.consume(groups);
+    }
+
+    @Benchmark
+    public void batchRouting(Blackhole blackhole) {
+        blackhole.consume(ring.routeBatch(keys, 3));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareBatchRouting() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BatchRoutingBenchmark.class.getName())
+                .build())
+                .run();
+    }
+}
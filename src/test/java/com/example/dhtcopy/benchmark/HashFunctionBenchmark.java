@@ -0,0 +1,90 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение хэш-функций кольца, включая прежний MD5 с общим MessageDigest под synchronized.
+ * Запуск: mvn test -Pbenchmark -Dtest=HashFunctionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashFunctionBenchmark {
+
+    @Param({"murmur3", "xxhash64", "md5"})
+    public String function;
+
+    @Param({"16", "64", "256"})
+    public int keyLength;
+
+    private HashFunction hashFunction;
+    private MessageDigest sharedMd5;
+    private String key;
+    private byte[] keyBytes;
+
+    @Setup
+    public void setUp() throws NoSuchAlgorithmException {
+        hashFunction = HashFunctions.forName(function);
+        sharedMd5 = MessageDigest.getInstance("MD5");
+
+        StringBuilder builder = new StringBuilder(keyLength);
+        for (int i = 0; i < keyLength; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        key = builder.toString();
+        keyBytes = key.getBytes();
+    }
+
+    @Benchmark
+    public long hashString() {
+        return hashFunction.hash(key);
+    }
+
+    @Benchmark
+    public long hashBytes() {
+        return hashFunction.hash(keyBytes);
+    }
+
+    // Прежняя реализация ConsistentHashRing.hash
+    @Benchmark
+    public long legacySynchronizedMd5() {
+        synchronized (sharedMd5) {
+            sharedMd5.reset();
+            sharedMd5.update(key.getBytes());
+            byte[] digest = sharedMd5.digest();
+
+            long hash = 0;
+            for (int i = 0; i < 4; i++) {
+                hash <<= 8;
+                hash |= ((int) digest[i]) & 0xFF;
+            }
+            return hash;
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareHashFunctions() throws RunnerException {
+        for (int threads : new int[]{1, 8}) {
+            new Runner(new OptionsBuilder()
+                    .include(HashFunctionBenchmark.class.getName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
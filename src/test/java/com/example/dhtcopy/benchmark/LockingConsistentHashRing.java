@@ -0,0 +1,112 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.Node;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Прежняя реализация кольца (ReentrantReadWriteLock поверх ConcurrentSkipListMap),
+ * сохраненная только как базовая линия для бенчмарков.
+ */
+public class LockingConsistentHashRing {
+    private final ConcurrentSkipListMap<Long, Node> ring = new ConcurrentSkipListMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int virtualNodes;
+    private final MessageDigest md5;
+
+    public LockingConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 algorithm not available", e);
+        }
+    }
+
+    public void addNode(Node node) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node.getId() + ":" + i), node);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Node getNode(String key) {
+        lock.readLock().lock();
+        try {
+            if (ring.isEmpty()) {
+                return null;
+            }
+            Map.Entry<Long, Node> entry = ring.ceilingEntry(hash(key));
+            if (entry == null) {
+                entry = ring.firstEntry();
+            }
+            return entry.getValue();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Node> getNodes(String key, int replicationFactor) {
+        lock.readLock().lock();
+        try {
+            if (ring.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            List<Node> allActiveNodes = new ArrayList<>(ring.values().stream()
+                    .filter(Node::isActive)
+                    .collect(Collectors.toMap(Node::getId, node -> node, (existing, replacement) -> existing))
+                    .values());
+            int effectiveReplicationFactor = Math.min(replicationFactor, allActiveNodes.size());
+
+            Map.Entry<Long, Node> startEntry = ring.ceilingEntry(hash(key));
+            if (startEntry == null) {
+                startEntry = ring.firstEntry();
+            }
+
+            List<Map.Entry<Long, Node>> orderedVirtualNodes = new ArrayList<>();
+            orderedVirtualNodes.addAll(ring.tailMap(startEntry.getKey()).entrySet());
+            orderedVirtualNodes.addAll(ring.headMap(startEntry.getKey()).entrySet());
+
+            List<Node> result = new ArrayList<>();
+            Set<String> addedNodeIds = new LinkedHashSet<>();
+            for (Map.Entry<Long, Node> entry : orderedVirtualNodes) {
+                Node physicalNode = entry.getValue();
+                if (physicalNode.isActive() && addedNodeIds.add(physicalNode.getId())) {
+                    result.add(physicalNode);
+                    if (result.size() >= effectiveReplicationFactor) {
+                        break;
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long hash(String key) {
+        synchronized (md5) {
+            md5.reset();
+            md5.update(key.getBytes());
+            byte[] digest = md5.digest();
+
+            long hash = 0;
+            for (int i = 0; i < 4; i++) {
+                hash <<= 8;
+                hash |= ((int) digest[i]) & 0xFF;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.PlacementStrategy;
+import com.example.dhtcopy.core.hash.HashFunction;
+import com.example.dhtcopy.core.hash.HashFunctions;
+import com.example.dhtcopy.core.placement.JumpHashPlacementStrategy;
+import com.example.dhtcopy.core.placement.MaglevPlacementStrategy;
+import com.example.dhtcopy.core.placement.RendezvousPlacementStrategy;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий стенд для стратегий размещения: задержка поиска (JMH), занимаемая память
+ * и доля перемещаемых ключей при добавлении и удалении ноды.
+ * Запуск: mvn test -Pbenchmark -Dtest=PlacementStrategyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacementStrategyBenchmark {
+    private static final String[] STRATEGIES = {
+            ConsistentHashRing.NAME, RendezvousPlacementStrategy.NAME,
+            JumpHashPlacementStrategy.NAME, MaglevPlacementStrategy.NAME};
+    private static final int KEY_COUNT = 100_000;
+
+    @Param({"ring", "rendezvous", "jump", "maglev"})
+    public String strategyName;
+
+    @Param({"8", "64"})
+    public int nodeCount;
+
+    private PlacementStrategy strategy;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        strategy = create(strategyName, HashFunctions.murmur3());
+        addNodes(strategy, nodeCount);
+        keys = new String[4096];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key_" + i;
+        }
+    }
+
+    @Benchmark
+    public Node getNode() {
+        return strategy.getNode(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+
+    @Benchmark
+    public List<Node> getReplicas() {
+        return strategy.getNodes(keys[ThreadLocalRandom.current().nextInt(keys.length)], 3);
+    }
+
+    static PlacementStrategy create(String name, HashFunction hashFunction) {
+        return switch (name) {
+            case ConsistentHashRing.NAME -> new ConsistentHashRing(150, 3, hashFunction);
+            case RendezvousPlacementStrategy.NAME -> new RendezvousPlacementStrategy(hashFunction);
+            case JumpHashPlacementStrategy.NAME -> new JumpHashPlacementStrategy(hashFunction);
+            case MaglevPlacementStrategy.NAME -> new MaglevPlacementStrategy(hashFunction);
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    private static void addNodes(PlacementStrategy strategy, int count) {
+        for (int i = 0; i < count; i++) {
+            strategy.addNode(new Node("node" + i, "localhost", 9000 + i));
+        }
+    }
+
+    private static String[] primaryOwners(PlacementStrategy strategy) {
+        String[] owners = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            owners[i] = strategy.getNode("key_" + i).getId();
+        }
+        return owners;
+    }
+
+    private static double movedRatio(String[] before, String[] after) {
+        int moved = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (!before[i].equals(after[i])) {
+                moved++;
+            }
+        }
+        return (double) moved / before.length;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareLookupLatency() throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PlacementStrategyBenchmark.class.getName())
+                .build())
+                .run();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void reportMemoryAndKeyMovement() {
+        HashFunction hashFunction = HashFunctions.murmur3();
+        for (int nodes : new int[]{8, 64}) {
+            System.out.printf("=== %d nodes, %d keys (ideal movement: add %.4f, remove %.4f) ===%n",
+                    nodes, KEY_COUNT, 1.0 / (nodes + 1), 1.0 / nodes);
+            for (String name : STRATEGIES) {
+                long baseline = usedMemory();
+                PlacementStrategy strategy = create(name, hashFunction);
+                addNodes(strategy, nodes);
+                long footprint = usedMemory() - baseline;
+
+                String[] before = primaryOwners(strategy);
+                strategy.addNode(new Node("extra", "localhost", 9999));
+                double addRatio = movedRatio(before, primaryOwners(strategy));
+                strategy.removeNode("extra");
+
+                // Удаляем ноду из середины: для jump это худший случай
+                strategy.removeNode("node" + (nodes / 2));
+                double removeRatio = movedRatio(before, primaryOwners(strategy));
+
+                System.out.printf("%-10s footprint=%8d KB  moved on add=%.4f  moved on remove=%.4f%n",
+                        name, Math.max(0, footprint) / 1024, addRatio, removeRatio);
+            }
+        }
+    }
+}
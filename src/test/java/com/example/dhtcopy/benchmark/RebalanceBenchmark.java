@@ -0,0 +1,49 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.DHTMetrics;
+import com.example.dhtcopy.core.DistributedHashTable;
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.compression.ValueCodec;
+import com.example.dhtcopy.service.ReplicationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Вход ноды в кластер из 8 нод: время переноса и объем переехавших данных в зависимости от размера
+ * набора. Переносятся только отрезки новой ноды, поэтому доля переехавших копий держится около 1/9.
+ * Запуск: mvn test -Pbenchmark -Dtest=RebalanceBenchmark
+ */
+public class RebalanceBenchmark {
+    private static final int NODES = 8;
+    private static final int VALUE_SIZE = 256;
+
+    @Test
+    @Tag("benchmark")
+    void measureJoin() throws InterruptedException {
+        System.out.printf("=== join of node %d, replication factor 3, %d-byte values ===%n", NODES + 1, VALUE_SIZE);
+        for (int keys : new int[]{10_000, 100_000, 400_000}) {
+            ConsistentHashRing ring = new ConsistentHashRing(150);
+            DistributedHashTable dht = new DistributedHashTable(ring, new ReplicationService(ring, 3),
+                    new DHTMetrics(new SimpleMeterRegistry()), new ValueCodec(), 3);
+            for (int i = 0; i < NODES; i++) {
+                dht.addNode(new Node("node" + i, "localhost", 9000 + i));
+            }
+            byte[] value = new byte[VALUE_SIZE];
+            for (int i = 0; i < keys; i++) {
+                dht.putBytes("key_" + i, value);
+            }
+
+            dht.addNode(new Node("node" + NODES, "localhost", 9000 + NODES));
+            while (dht.isRebalancing()) {
+                Thread.sleep(1);
+            }
+            DistributedHashTable.RebalanceResult result = dht.getLastRebalance();
+            System.out.printf("%8d keys: moved %8d of %8d copies (%4.1f%%), %6d KB in %6d ms%n",
+                    keys, result.keysMoved(), result.storedKeys(), result.movedFraction() * 100,
+                    result.bytesMoved() >> 10, result.nanos() / 1_000_000);
+            dht.shutdown();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.ConsistentHashRing;
+import com.example.dhtcopy.core.Node;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение lock-free снимков кольца с прежней реализацией на ReentrantReadWriteLock
+ * при 1-64 потоках чтения. Запуск: mvn test -Pbenchmark -Dtest=RingContentionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RingContentionBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int KEY_COUNT = 4096;
+
+    @Param({"8"})
+    public int nodeCount;
+
+    @Param({"150"})
+    public int virtualNodes;
+
+    private ConsistentHashRing snapshotRing;
+    private LockingConsistentHashRing lockingRing;
+    private String[] keys;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String nextKey(String[] keys) {
+            return keys[next++ & (KEY_COUNT - 1)];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        snapshotRing = new ConsistentHashRing(virtualNodes);
+        lockingRing = new LockingConsistentHashRing(virtualNodes);
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = new Node("node" + i, "localhost", 8000 + i);
+            snapshotRing.addNode(node);
+            lockingRing.addNode(node);
+        }
+
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key_" + i;
+        }
+    }
+
+    @Benchmark
+    public Node snapshotGetNode(Cursor cursor) {
+        return snapshotRing.getNode(cursor.nextKey(keys));
+    }
+
+    @Benchmark
+    public Node lockingGetNode(Cursor cursor) {
+        return lockingRing.getNode(cursor.nextKey(keys));
+    }
+
+    @Benchmark
+    public List<Node> snapshotGetNodes(Cursor cursor) {
+        return snapshotRing.getNodes(cursor.nextKey(keys), 3);
+    }
+
+    @Benchmark
+    public List<Node> lockingGetNodes(Cursor cursor) {
+        return lockingRing.getNodes(cursor.nextKey(keys), 3);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void contentionAcrossThreadCounts() throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                    .include(RingContentionBenchmark.class.getName())
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
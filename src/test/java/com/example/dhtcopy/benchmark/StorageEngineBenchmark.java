@@ -0,0 +1,248 @@
+package com.example.dhtcopy.benchmark;
+
+import com.example.dhtcopy.core.Node;
+import com.example.dhtcopy.core.storage.BitcaskStorageEngine;
+import com.example.dhtcopy.core.storage.BoundedStorageEngine;
+import com.example.dhtcopy.core.storage.EvictionPolicy;
+import com.example.dhtcopy.core.storage.HeapStorageEngine;
+import com.example.dhtcopy.core.storage.OffHeapStorageEngine;
+import com.example.dhtcopy.core.storage.StorageEngine;
+import com.example.dhtcopy.core.storage.WriteAheadLog;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Сравнение движков хранилища на большом числе ключей: занятая куча после сборки мусора,
+ * память вне кучи и p99 пауз GC за время заполнения и перезаписи, а также время
+ * старта bitcask с hint-файлами и без них, пропускная способность записи в режимах журнала предзаписи
+ * и доля попаданий политик вытеснения на перекошенной нагрузке со сканами.
+ * Запуск: mvn test -Pbenchmark -Dtest=StorageEngineBenchmark -DargLine="-Xmx4g -XX:MaxDirectMemorySize=4g"
+ * Число ключей: -Dstorage.benchmark.keys=10000000
+ */
+public class StorageEngineBenchmark {
+    private static final int KEY_COUNT = Integer.getInteger("storage.benchmark.keys", 10_000_000);
+    private static final int OVERWRITES = KEY_COUNT / 2;
+    // Размер значения для замера старта bitcask: hint-файлы выигрывают тем больше, чем крупнее значения
+    private static final int VALUE_SIZE = Integer.getInteger("storage.benchmark.valueSize", 100);
+    private static final int WAL_THREADS = Integer.getInteger("storage.benchmark.walThreads", 32);
+    private static final int WAL_WRITES = Integer.getInteger("storage.benchmark.walWrites", 20_000);
+    private static final int CACHE_KEYS = Integer.getInteger("storage.benchmark.cacheKeys", 1_000_000);
+    private static final int CACHE_READS = Integer.getInteger("storage.benchmark.cacheReads", 5_000_000);
+
+    @Test
+    @Tag("benchmark")
+    void compareHeapUsageAndGcPauses() {
+        System.out.printf("=== %d keys, %d random overwrites ===%n", KEY_COUNT, OVERWRITES);
+        report(new HeapStorageEngine());
+        report(new OffHeapStorageEngine());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void measureBitcaskStartup() throws IOException {
+        Path directory = Files.createTempDirectory("bitcask-benchmark");
+        try {
+            BitcaskStorageEngine engine = new BitcaskStorageEngine(directory);
+            byte[] value = new byte[VALUE_SIZE];
+            long start = System.nanoTime();
+            for (int i = 0; i < KEY_COUNT; i++) {
+                ThreadLocalRandom.current().nextBytes(value);
+                engine.put("key_" + i, value.clone());
+            }
+            long writeMs = (System.nanoTime() - start) / 1_000_000;
+            engine.close();
+
+            long withHintsMs = timeStartup(directory);
+
+            // Без hint-файлов keydir строится сканированием сегментов с проверкой контрольных сумм
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path hint : files.filter(file -> file.toString().endsWith(".hint")).toList()) {
+                    Files.delete(hint);
+                }
+            }
+            long scanMs = timeStartup(directory);
+
+            System.out.printf("=== bitcask, %d keys x %d bytes ===%nwrite=%d ms  startup with hints=%d ms  startup by scan=%d ms%n",
+                    KEY_COUNT, VALUE_SIZE, writeMs, withHintsMs, scanMs);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareWalDurabilityModes() throws Exception {
+        System.out.printf("=== WAL, %d writers, %d writes ===%n", WAL_THREADS, WAL_WRITES);
+        for (WriteAheadLog.Durability durability : WriteAheadLog.Durability.values()) {
+            Path directory = Files.createTempDirectory("wal-benchmark");
+            WriteAheadLog wal = durability == WriteAheadLog.Durability.NONE ? null
+                    : new WriteAheadLog(directory.resolve("node.wal"), durability);
+            Node node = new Node("node", "localhost", 8000, 1.0, Node.DEFAULT_ZONE, new HeapStorageEngine(), wal);
+            byte[] value = new byte[VALUE_SIZE];
+
+            ExecutorService executor = Executors.newFixedThreadPool(WAL_THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < WAL_THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = thread; i < WAL_WRITES; i += WAL_THREADS) {
+                        node.putBytes("key_" + i, value);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            executor.shutdown();
+
+            long syncs = wal == null ? 0 : wal.getSyncCount();
+            System.out.printf("%-12s %9.0f writes/s  fsyncs=%6d  records per fsync=%7.1f%n",
+                    durability.configName(), WAL_WRITES * 1e9 / elapsedNanos, syncs,
+                    syncs == 0 ? 0.0 : (double) wal.getSyncedRecords() / syncs);
+            node.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareEvictionPolicies() {
+        // Бюджет на 10% ключей; чтения перекошены к малым номерам, каждое 20-е - из разового скана
+        long budget = CACHE_KEYS / 10 * BoundedStorageEngine.weigh("key_" + CACHE_KEYS, new byte[VALUE_SIZE]);
+        System.out.printf("=== cache, %d keys, %d reads, budget %d MB ===%n", CACHE_KEYS, CACHE_READS, budget >> 20);
+        for (EvictionPolicy.Type type : EvictionPolicy.Type.values()) {
+            BoundedStorageEngine engine = new BoundedStorageEngine(new HeapStorageEngine(), budget, type);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            byte[] value = new byte[VALUE_SIZE];
+            long scan = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < CACHE_READS; i++) {
+                String key = i % 20 == 0
+                        ? "scan_" + scan++
+                        : "key_" + (int) (CACHE_KEYS * Math.pow(random.nextDouble(), 4));
+                if (engine.get(key) == null) {
+                    engine.put(key, value);
+                }
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            System.out.printf("%-10s hit ratio=%5.1f%%  evictions=%9d  resident=%5d MB  %9.0f ops/s%n",
+                    type.configName(), engine.getHitRatio() * 100, engine.getEvictionCount(),
+                    engine.getResidentBytes() >> 20, CACHE_READS * 1e9 / elapsedNanos);
+        }
+    }
+
+    private static long timeStartup(Path directory) {
+        long start = System.nanoTime();
+        BitcaskStorageEngine engine = new BitcaskStorageEngine(directory);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        if (engine.size() != KEY_COUNT) {
+            throw new IllegalStateException("Expected " + KEY_COUNT + " keys after restart, got " + engine.size());
+        }
+        engine.close();
+        return elapsedMs;
+    }
+
+    private static void report(StorageEngine engine) {
+        long baseline = usedHeap();
+        List<Long> pauses = Collections.synchronizedList(new ArrayList<>());
+        List<Runnable> unsubscribe = subscribeToGcPauses(pauses);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < KEY_COUNT; i++) {
+                engine.put("key_" + i, ("value_" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OVERWRITES; i++) {
+                int key = random.nextInt(KEY_COUNT);
+                engine.put("key_" + key, ("updated_value_" + key).getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            unsubscribe.forEach(Runnable::run);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        long heap = usedHeap() - baseline;
+        long offHeap = engine instanceof OffHeapStorageEngine offHeapEngine ? offHeapEngine.getAllocatedBytes() : 0;
+
+        System.out.printf("%-9s heap=%6d MB  off-heap=%6d MB  gc pauses=%4d  p99 pause=%4d ms  max pause=%4d ms  time=%6d ms%n",
+                engine.name(), Math.max(0, heap) >> 20, offHeap >> 20, pauses.size(),
+                percentile(pauses, 0.99), percentile(pauses, 1.0), elapsedMs);
+        engine.close();
+    }
+
+    // Паузы собираются из уведомлений GarbageCollectorMXBean (длительность каждой сборки)
+    private static List<Runnable> subscribeToGcPauses(List<Long> pauses) {
+        List<Runnable> unsubscribe = new ArrayList<>();
+        NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                pauses.add(info.getGcInfo().getDuration());
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(listener, null, null);
+                unsubscribe.add(() -> {
+                    try {
+                        emitter.removeNotificationListener(listener);
+                    } catch (ListenerNotFoundException ignored) {
+                        // слушатель уже снят
+                    }
+                });
+            }
+        }
+        return unsubscribe;
+    }
+
+    private static long percentile(List<Long> values, double percentile) {
+        List<Long> sorted;
+        synchronized (values) {
+            sorted = new ArrayList<>(values);
+        }
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}